@@ -0,0 +1,186 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.client;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+
+/**
+ * <p>{@link ContentDecoder} for the "deflate" encoding.</p>
+ * <p>The "deflate" encoding is defined as the zlib format (RFC 1950) wrapping
+ * deflate compressed data (RFC 1951), but some servers send raw deflate
+ * compressed data instead, so the zlib header is detected from the first
+ * bytes of the content.</p>
+ */
+public class DeflateContentDecoder implements ContentDecoder
+{
+    public static final int DEFAULT_BUFFER_SIZE = 8192;
+
+    private final ByteBufferPool byteBufferPool;
+    private final int bufferSize;
+    private Inflater inflater;
+    private byte[] input;
+    private boolean finished;
+
+    public DeflateContentDecoder()
+    {
+        this(DEFAULT_BUFFER_SIZE);
+    }
+
+    public DeflateContentDecoder(int bufferSize)
+    {
+        this(null, bufferSize);
+    }
+
+    public DeflateContentDecoder(ByteBufferPool byteBufferPool, int bufferSize)
+    {
+        this.byteBufferPool = byteBufferPool;
+        this.bufferSize = bufferSize;
+    }
+
+    @Override
+    public ByteBuffer decode(ByteBuffer buffer)
+    {
+        try
+        {
+            if (finished)
+            {
+                // Ignore bytes after the end of the compressed data.
+                buffer.position(buffer.limit());
+                return BufferUtil.EMPTY_BUFFER;
+            }
+
+            if (inflater == null)
+            {
+                if (!buffer.hasRemaining())
+                    return BufferUtil.EMPTY_BUFFER;
+                inflater = new Inflater(!isZlibHeader(buffer));
+            }
+
+            if (inflater.needsInput())
+            {
+                int length = buffer.remaining();
+                if (length == 0)
+                    return BufferUtil.EMPTY_BUFFER;
+                if (input == null || input.length < length)
+                    input = new byte[length];
+                buffer.get(input, 0, length);
+                inflater.setInput(input, 0, length);
+            }
+
+            ByteBuffer decoded = acquire(bufferSize);
+            int produced = inflater.inflate(decoded.array(), decoded.arrayOffset(), decoded.capacity());
+            if (inflater.needsDictionary())
+                throw new ZipException("Preset dictionary not supported");
+            decoded.limit(produced);
+            if (inflater.finished())
+            {
+                finished = true;
+                end();
+            }
+            if (produced == 0)
+            {
+                release(decoded);
+                return BufferUtil.EMPTY_BUFFER;
+            }
+            return decoded;
+        }
+        catch (DataFormatException | ZipException x)
+        {
+            end();
+            throw new IllegalArgumentException(x);
+        }
+    }
+
+    private static boolean isZlibHeader(ByteBuffer buffer)
+    {
+        int position = buffer.position();
+        int cmf = buffer.get(position) & 0xFF;
+        // Compression method 8, window size up to 32 KiB.
+        if ((cmf & 0x0F) != 8 || (cmf >> 4) > 7)
+            return false;
+        if (buffer.remaining() < 2)
+            return true;
+        int flg = buffer.get(position + 1) & 0xFF;
+        return ((cmf << 8) | flg) % 31 == 0;
+    }
+
+    private void end()
+    {
+        if (inflater != null)
+        {
+            inflater.end();
+            inflater = null;
+        }
+    }
+
+    private ByteBuffer acquire(int capacity)
+    {
+        return byteBufferPool == null ? BufferUtil.allocate(capacity) : byteBufferPool.acquire(capacity, false);
+    }
+
+    @Override
+    public void release(ByteBuffer decoded)
+    {
+        if (byteBufferPool != null && decoded != BufferUtil.EMPTY_BUFFER)
+            byteBufferPool.release(decoded);
+    }
+
+    /**
+     * Specialized {@link ContentDecoder.Factory} for the "deflate" encoding.
+     */
+    public static class Factory extends ContentDecoder.Factory
+    {
+        private final int bufferSize;
+        private final ByteBufferPool byteBufferPool;
+
+        public Factory()
+        {
+            this(DEFAULT_BUFFER_SIZE);
+        }
+
+        public Factory(int bufferSize)
+        {
+            this(null, bufferSize);
+        }
+
+        public Factory(ByteBufferPool byteBufferPool)
+        {
+            this(byteBufferPool, DEFAULT_BUFFER_SIZE);
+        }
+
+        public Factory(ByteBufferPool byteBufferPool, int bufferSize)
+        {
+            super("deflate");
+            this.byteBufferPool = byteBufferPool;
+            this.bufferSize = bufferSize;
+        }
+
+        @Override
+        public ContentDecoder newContentDecoder()
+        {
+            return new DeflateContentDecoder(byteBufferPool, bufferSize);
+        }
+    }
+}
@@ -36,6 +36,7 @@ import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -249,6 +250,12 @@ public class HttpClient extends ContainerLifeCycle
         handlers.put(new ProxyAuthenticationProtocolHandler(this));
 
         decoderFactories.add(new GZIPContentDecoder.Factory(byteBufferPool));
+        decoderFactories.add(new DeflateContentDecoder.Factory(byteBufferPool));
+        // Additional decoders, such as "br" or "zstd", may be provided as services.
+        for (ContentDecoder.Factory factory : ServiceLoader.load(ContentDecoder.Factory.class))
+        {
+            decoderFactories.add(factory);
+        }
 
         cookieManager = newCookieManager();
         cookieStore = cookieManager.getCookieStore();
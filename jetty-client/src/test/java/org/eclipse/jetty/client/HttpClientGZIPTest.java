@@ -27,6 +27,8 @@ import java.util.Arrays;
 import java.util.Random;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -79,6 +81,41 @@ public class HttpClientGZIPTest extends AbstractHttpClientServerTest
         assertArrayEquals(data, response.getContent());
     }
 
+    @ParameterizedTest
+    @ArgumentsSource(ScenarioProvider.class)
+    public void testDeflateContentEncoding(Scenario scenario) throws Exception
+    {
+        byte[] data = new byte[64 * 1024];
+        new Random().nextBytes(data);
+        Arrays.fill(data, 1024, data.length - 1024, (byte)'x');
+        start(scenario, new EmptyServerHandler()
+        {
+            @Override
+            protected void service(String target, Request jettyRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                response.setHeader("Content-Encoding", "deflate");
+                // Servers may send raw deflate data instead of the zlib format.
+                boolean raw = Boolean.parseBoolean(request.getParameter("raw"));
+                DeflaterOutputStream deflaterOutput = new DeflaterOutputStream(response.getOutputStream(), new Deflater(Deflater.DEFAULT_COMPRESSION, raw));
+                deflaterOutput.write(data);
+                deflaterOutput.finish();
+            }
+        });
+        client.getContentDecoderFactories().add(new DeflateContentDecoder.Factory(client.getByteBufferPool()));
+
+        for (boolean raw : new boolean[]{false, true})
+        {
+            ContentResponse response = client.newRequest("localhost", connector.getLocalPort())
+                .scheme(scenario.getScheme())
+                .param("raw", String.valueOf(raw))
+                .timeout(5, TimeUnit.SECONDS)
+                .send();
+
+            assertEquals(200, response.getStatus());
+            assertArrayEquals(data, response.getContent());
+        }
+    }
+
     @ParameterizedTest
     @ArgumentsSource(ScenarioProvider.class)
     public void testGZIPContentOneByteAtATime(Scenario scenario) throws Exception
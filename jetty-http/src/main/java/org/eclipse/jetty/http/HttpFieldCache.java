@@ -0,0 +1,293 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+import org.eclipse.jetty.util.ArrayTernaryTrie;
+import org.eclipse.jetty.util.FrequencySketch;
+import org.eclipse.jetty.util.Trie;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A cache of {@link HttpField}s shared by the {@link HttpParser}s of a connector.</p>
+ * <p>The per-parser field cache only helps requests on the same persistent connection,
+ * so with many short lived connections every parser allocates again the same fields,
+ * for example the {@code User-Agent} or {@code Accept} of the most common clients.
+ * Parsers look up this cache before allocating a field, and offer it the fields
+ * they had to allocate.</p>
+ * <p>The cache is read-mostly: lookups are lock free reads of an immutable {@link Trie},
+ * that is copied and published again when a field is admitted. Fields are admitted
+ * only when their frequency, estimated by a {@link FrequencySketch}, reaches
+ * {@link #getAdmissionFrequency()}; when the cache is full, a field is admitted only
+ * if it is more frequent than the least frequent cached field, which is evicted.</p>
+ */
+@ManagedObject("Cache of HTTP fields shared by parsers")
+public class HttpFieldCache
+{
+    private static final Logger LOG = Log.getLogger(HttpFieldCache.class);
+    private static final int MAX_CHARS = ArrayTernaryTrie.MAX_CAPACITY;
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final Map<String, HttpField> _fields = new HashMap<>();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _admissions = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private final int _maxFields;
+    private final int _maxFieldLength;
+    private final FrequencySketch _sketch;
+    private int _admissionFrequency = 3;
+    private int _chars;
+    private volatile Trie<HttpField> _trie = Trie.empty(true);
+
+    public HttpFieldCache()
+    {
+        this(512, 256);
+    }
+
+    /**
+     * @param maxFields the max number of cached fields
+     * @param maxFieldLength the max length of the {@code name: value} string of a cached field
+     */
+    public HttpFieldCache(int maxFields, int maxFieldLength)
+    {
+        if (maxFields <= 0)
+            throw new IllegalArgumentException("Invalid max fields " + maxFields);
+        _maxFields = maxFields;
+        _maxFieldLength = maxFieldLength;
+        _sketch = new FrequencySketch(Math.max(16, 4 * maxFields));
+    }
+
+    @ManagedAttribute("The max number of cached fields")
+    public int getMaxFields()
+    {
+        return _maxFields;
+    }
+
+    @ManagedAttribute("The max length of a cached field")
+    public int getMaxFieldLength()
+    {
+        return _maxFieldLength;
+    }
+
+    /**
+     * @return the estimated number of occurrences of a field before it is cached
+     */
+    @ManagedAttribute("The estimated number of occurrences of a field before it is cached")
+    public int getAdmissionFrequency()
+    {
+        return _admissionFrequency;
+    }
+
+    /**
+     * @param admissionFrequency the estimated number of occurrences of a field before it is cached, from 1 to 15
+     */
+    public void setAdmissionFrequency(int admissionFrequency)
+    {
+        if (admissionFrequency < 1 || admissionFrequency > 15)
+            throw new IllegalArgumentException("Invalid admission frequency " + admissionFrequency);
+        _admissionFrequency = admissionFrequency;
+    }
+
+    @ManagedAttribute("The number of cached fields")
+    public int getSize()
+    {
+        _lock.lock();
+        try
+        {
+            return _fields.size();
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    @ManagedAttribute("The number of parsed fields found in the cache")
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of parsed cacheable fields not found in the cache")
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute("The ratio of hits over hits and misses")
+    public double getHitRatio()
+    {
+        long hits = getHits();
+        long total = hits + getMisses();
+        return total == 0 ? 0 : (double)hits / total;
+    }
+
+    @ManagedAttribute("The number of fields admitted in the cache")
+    public long getAdmissions()
+    {
+        return _admissions.sum();
+    }
+
+    @ManagedAttribute("The number of fields evicted from the cache")
+    public long getEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _admissions.reset();
+        _evictions.reset();
+    }
+
+    @ManagedOperation(value = "Removes all the cached fields", impact = "ACTION")
+    public void clear()
+    {
+        _lock.lock();
+        try
+        {
+            _fields.clear();
+            _chars = 0;
+            _trie = Trie.empty(true);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Looks up the cached field that best matches the given bytes,
+     * that is the longest cached {@code name: value} string they start with.</p>
+     *
+     * @param buffer the buffer to look up
+     * @param offset the offset from the buffer position
+     * @param length the number of bytes to look up
+     * @return the best matching field, or null if none matches
+     * @see Trie#getBest(ByteBuffer, int, int)
+     */
+    public HttpField getBest(ByteBuffer buffer, int offset, int length)
+    {
+        return _trie.getBest(buffer, offset, length);
+    }
+
+    /**
+     * <p>Records that a field returned by {@link #getBest(ByteBuffer, int, int)}
+     * matched a whole parsed field.</p>
+     */
+    void hit()
+    {
+        _hits.increment();
+    }
+
+    /**
+     * <p>Offers a field that was parsed but not found in the cache.</p>
+     * <p>The frequency of the field is recorded, and the field is cached
+     * if it is frequent enough. Under contention the field may be ignored,
+     * as a sampled frequency is good enough to find the popular fields.</p>
+     *
+     * @param field the parsed field
+     */
+    public void offer(HttpField field)
+    {
+        _misses.increment();
+        String key = field.toString();
+        if (key.length() > _maxFieldLength)
+            return;
+
+        if (!_lock.tryLock())
+            return;
+        try
+        {
+            int hash = field.hashCode();
+            _sketch.increment(hash);
+            int frequency = _sketch.frequency(hash);
+            if (frequency < _admissionFrequency)
+                return;
+
+            // The trie is case insensitive, so are the keys.
+            key = key.toLowerCase(Locale.ENGLISH);
+            if (_fields.containsKey(key))
+                return;
+
+            // Evict until there is room for the field, both in number of fields and in trie capacity.
+            while (_fields.size() >= _maxFields || _chars + key.length() > MAX_CHARS)
+            {
+                String victim = null;
+                int victimFrequency = Integer.MAX_VALUE;
+                for (Map.Entry<String, HttpField> entry : _fields.entrySet())
+                {
+                    int f = _sketch.frequency(entry.getValue().hashCode());
+                    if (f < victimFrequency)
+                    {
+                        victim = entry.getKey();
+                        victimFrequency = f;
+                    }
+                }
+                if (victimFrequency >= frequency)
+                    return;
+                _fields.remove(victim);
+                _chars -= victim.length();
+                _evictions.increment();
+            }
+
+            _fields.put(key, field);
+            _chars += key.length();
+            _admissions.increment();
+            publish();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Admitted {} with frequency {} in {}", field, frequency, this);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    private void publish()
+    {
+        ArrayTernaryTrie<HttpField> trie = new ArrayTernaryTrie<>(_chars);
+        for (HttpField field : _fields.values())
+        {
+            trie.put(field);
+        }
+        _trie = trie;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{size=%d/%d,hits=%d,misses=%d}",
+            getClass().getSimpleName(), hashCode(), getSize(), _maxFields, getHits(), getMisses());
+    }
+}
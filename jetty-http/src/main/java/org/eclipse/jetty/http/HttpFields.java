@@ -49,6 +49,14 @@ import org.eclipse.jetty.util.log.Logger;
  * single thread.
  *
  * <p>The cookie handling provided by this class is guided by the Servlet specification and RFC6265.
+ *
+ * <p>Lookups by {@link HttpHeader} use an index of the position and count of each known header,
+ * that is lazily built when there are enough fields to make it worthwhile, kept up to date by
+ * {@link #add(HttpField)} and discarded by other modifications.
+ *
+ * <p>The {@link #HttpFields(HttpFields) copy constructor} shares the array of fields with the
+ * original, and the array is copied only when either is modified. The copy must therefore be
+ * made by the thread that owns the original, or must happen-before its further modifications.
  */
 public class HttpFields implements Iterable<HttpField>
 {
@@ -56,9 +64,16 @@ public class HttpFields implements Iterable<HttpField>
     public static final String __separators = ", \t";
 
     private static final Logger LOG = Log.getLogger(HttpFields.class);
+    private static final int INDEX_THRESHOLD = 8;
+    private static final int HEADERS = HttpHeader.values().length;
+    private static final int ALIASED = 2 * HEADERS;
 
     private HttpField[] _fields;
     private int _size;
+    private volatile boolean _shared;
+    private volatile int[] _index;
+    private PreEncodedHttpFields _template;
+    private int _templateStart;
 
     /**
      * Initialize an empty HttpFields.
@@ -80,13 +95,21 @@ public class HttpFields implements Iterable<HttpField>
 
     /**
      * Initialize HttpFields from copy.
+     * <p>The copy shares the array of fields with the original until either of them
+     * is modified. The original is marked as shared before its array is read, and the
+     * mark is volatile, so that the original copies its array before it is next modified,
+     * even if that is done by another thread.</p>
      *
      * @param fields the fields to copy data from
      */
     public HttpFields(HttpFields fields)
     {
-        _fields = Arrays.copyOf(fields._fields, fields._fields.length);
+        fields._shared = true;
+        _shared = true;
+        _fields = fields._fields;
         _size = fields._size;
+        _template = fields._template;
+        _templateStart = fields._templateStart;
     }
 
     /**
@@ -204,6 +227,8 @@ public class HttpFields implements Iterable<HttpField>
             return;
         }
 
+        mutate();
+
         // Are there any more occurrences?
         List<HttpField> found = null;
         for (int i = first + 1; i < _size; i++)
@@ -230,9 +255,15 @@ public class HttpFields implements Iterable<HttpField>
 
         HttpField newField = computeFn.apply(header, found);
         if (newField == null)
+        {
             remove(first);
+        }
         else
+        {
+            modified(first);
             _fields[first] = newField;
+            _index = null;
+        }
     }
 
     public int size()
@@ -300,13 +331,8 @@ public class HttpFields implements Iterable<HttpField>
 
     public HttpField getField(HttpHeader header)
     {
-        for (int i = 0; i < _size; i++)
-        {
-            HttpField f = _fields[i];
-            if (f.getHeader() == header)
-                return f;
-        }
-        return null;
+        int i = indexOf(header);
+        return i < 0 ? null : _fields[i];
     }
 
     public HttpField getField(String name)
@@ -322,8 +348,11 @@ public class HttpFields implements Iterable<HttpField>
 
     public List<HttpField> getFields(HttpHeader header)
     {
+        int first = indexOf(header);
+        if (first < 0)
+            return Collections.emptyList();
         List<HttpField> fields = null;
-        for (int i = 0; i < _size; i++)
+        for (int i = first; i < _size; i++)
         {
             HttpField f = _fields[i];
             if (f.getHeader() == header)
@@ -365,7 +394,10 @@ public class HttpFields implements Iterable<HttpField>
 
     public boolean contains(HttpHeader header, String value)
     {
-        for (int i = _size; i-- > 0; )
+        int first = indexOf(header);
+        if (first < 0)
+            return false;
+        for (int i = _size; i-- > first; )
         {
             HttpField f = _fields[i];
             if (f.getHeader() == header && f.contains(value))
@@ -387,13 +419,7 @@ public class HttpFields implements Iterable<HttpField>
 
     public boolean contains(HttpHeader header)
     {
-        for (int i = _size; i-- > 0; )
-        {
-            HttpField f = _fields[i];
-            if (f.getHeader() == header)
-                return true;
-        }
-        return false;
+        return indexOf(header) >= 0;
     }
 
     public boolean containsKey(String name)
@@ -415,13 +441,8 @@ public class HttpFields implements Iterable<HttpField>
 
     public String get(HttpHeader header)
     {
-        for (int i = 0; i < _size; i++)
-        {
-            HttpField f = _fields[i];
-            if (f.getHeader() == header)
-                return f.getValue();
-        }
-        return null;
+        int i = indexOf(header);
+        return i < 0 ? null : _fields[i].getValue();
     }
 
     @Deprecated
@@ -450,7 +471,10 @@ public class HttpFields implements Iterable<HttpField>
     public List<String> getValuesList(HttpHeader header)
     {
         final List<String> list = new ArrayList<>();
-        for (int i = 0; i < _size; i++)
+        int first = indexOf(header);
+        if (first < 0)
+            return list;
+        for (int i = first; i < _size; i++)
         {
             HttpField f = _fields[i];
             if (f.getHeader() == header)
@@ -791,6 +815,29 @@ public class HttpFields implements Iterable<HttpField>
 
     public void put(HttpField field)
     {
+        HttpHeader header = field == null ? null : field.getHeader();
+        int[] index = header == null ? null : index();
+        if (index != null && index[ALIASED] == 0)
+        {
+            // Without fields that have a known name but no header, the index finds all the fields with the same name.
+            int first = index[2 * header.ordinal()];
+            if (first < 0)
+            {
+                add(field);
+                return;
+            }
+            if (index[2 * header.ordinal() + 1] == 1 && _fields[first].isSameName(field))
+            {
+                // Replacing the only field with the same header does not change the index.
+                mutate();
+                modified(first);
+                _fields[first] = field;
+                return;
+            }
+        }
+
+        mutate();
+        _index = null;
         boolean put = false;
         for (int i = _size; i-- > 0; )
         {
@@ -799,11 +846,12 @@ public class HttpFields implements Iterable<HttpField>
             {
                 if (put)
                 {
-                    _size--;
-                    System.arraycopy(_fields, i + 1, _fields, i, _size - i);
+                    // Removing shifts the fields after it, so may also invalidate the template.
+                    remove(i);
                 }
                 else
                 {
+                    modified(i);
                     _fields[i] = field;
                     put = true;
                 }
@@ -917,8 +965,11 @@ public class HttpFields implements Iterable<HttpField>
      */
     public HttpField remove(HttpHeader name)
     {
+        int first = indexOf(name);
+        if (first < 0)
+            return null;
         HttpField removed = null;
-        for (int i = _size; i-- > 0; )
+        for (int i = _size; i-- > first; )
         {
             HttpField f = _fields[i];
             if (f.getHeader() == name)
@@ -953,6 +1004,9 @@ public class HttpFields implements Iterable<HttpField>
 
     private void remove(int i)
     {
+        mutate();
+        modified(i);
+        _index = null;
         _size--;
         System.arraycopy(_fields, i + 1, _fields, i, _size - i);
         _fields[_size] = null;
@@ -1126,6 +1180,8 @@ public class HttpFields implements Iterable<HttpField>
     public void clear()
     {
         _size = 0;
+        _index = null;
+        _template = null;
     }
 
     public void add(HttpField field)
@@ -1133,11 +1189,144 @@ public class HttpFields implements Iterable<HttpField>
         if (field != null)
         {
             if (_size == _fields.length)
+            {
                 _fields = Arrays.copyOf(_fields, _size * 2);
+                _shared = false;
+            }
+            else
+            {
+                mutate();
+            }
+            int[] index = _index;
+            if (index != null)
+                index(index, field, _size);
             _fields[_size++] = field;
         }
     }
 
+    /**
+     * <p>Adds the fields of the given template.</p>
+     * <p>As long as the added fields are not modified or removed, generators may encode
+     * them by copying the block of bytes pre-encoded by the template.</p>
+     *
+     * @param template the template whose fields are added
+     */
+    public void add(PreEncodedHttpFields template)
+    {
+        if (template.size() == 0)
+            return;
+        if (_template == null)
+        {
+            _template = template;
+            _templateStart = _size;
+        }
+        for (HttpField field : template)
+        {
+            add(field);
+        }
+    }
+
+    /**
+     * @return the template whose fields are still unmodified in these fields, or null
+     * @see #getTemplateStart()
+     */
+    PreEncodedHttpFields getTemplate()
+    {
+        return _template;
+    }
+
+    /**
+     * @return the position of the first field of the {@link #getTemplate() template}
+     */
+    int getTemplateStart()
+    {
+        return _templateStart;
+    }
+
+    private void modified(int position)
+    {
+        if (_template != null && position < _templateStart + _template.size())
+            _template = null;
+    }
+
+    /**
+     * <p>Copies the array of fields if it is shared with a copy of these fields.</p>
+     */
+    private void mutate()
+    {
+        if (_shared)
+        {
+            _fields = Arrays.copyOf(_fields, _fields.length);
+            _shared = false;
+        }
+    }
+
+    /**
+     * <p>Returns the index of the known headers, that for each header ordinal {@code o}
+     * holds at {@code 2*o} the position of the first field with that header, or -1,
+     * and at {@code 2*o+1} the number of fields with that header.</p>
+     * <p>The index is built by read methods, that may be called concurrently once the
+     * fields are no longer modified, so it is built in a new array that is published
+     * with a single write.</p>
+     *
+     * @return the index, or null if there are too few fields to be worth indexing
+     */
+    private int[] index()
+    {
+        if (_size < INDEX_THRESHOLD)
+            return null;
+        int[] index = _index;
+        if (index == null)
+        {
+            index = new int[ALIASED + 1];
+            for (int i = 0; i < ALIASED; i += 2)
+            {
+                index[i] = -1;
+            }
+            for (int i = 0; i < _size; i++)
+            {
+                index(index, _fields[i], i);
+            }
+            _index = index;
+        }
+        return index;
+    }
+
+    private static void index(int[] index, HttpField field, int position)
+    {
+        HttpHeader header = field.getHeader();
+        if (header == null)
+        {
+            // A field with a known name but no header is not found by the index.
+            if (index[ALIASED] == 0 && HttpHeader.CACHE.get(field.getName()) != null)
+                index[ALIASED] = 1;
+        }
+        else
+        {
+            int i = 2 * header.ordinal();
+            if (index[i] < 0)
+                index[i] = position;
+            index[i + 1]++;
+        }
+    }
+
+    /**
+     * @param header the header to look for
+     * @return the position of the first field with the given header, or -1 if there is no such field
+     */
+    private int indexOf(HttpHeader header)
+    {
+        int[] index = header == null ? null : index();
+        if (index != null)
+            return index[2 * header.ordinal()];
+        for (int i = 0; i < _size; i++)
+        {
+            if (_fields[i].getHeader() == header)
+                return i;
+        }
+        return -1;
+    }
+
     public void addAll(HttpFields fields)
     {
         for (int i = 0; i < fields._size; i++)
@@ -1388,9 +1577,16 @@ public class HttpFields implements Iterable<HttpField>
             if (_current < 0)
                 throw new IllegalStateException();
             if (field == null)
+            {
                 remove();
+            }
             else
+            {
+                mutate();
+                modified(_current);
                 _fields[_current] = field;
+                _index = null;
+            }
         }
 
         @Override
@@ -1399,6 +1595,9 @@ public class HttpFields implements Iterable<HttpField>
             if (field != null)
             {
                 _fields = Arrays.copyOf(_fields, _fields.length + 1);
+                _shared = false;
+                _index = null;
+                modified(_cursor);
                 System.arraycopy(_fields, _cursor, _fields, _cursor + 1, _size - _cursor);
                 _fields[_cursor++] = field;
                 _size++;
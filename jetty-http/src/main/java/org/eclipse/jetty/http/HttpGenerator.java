@@ -620,9 +620,36 @@ public class HttpGenerator
         if (fields != null)
         {
             int n = fields.size();
+
+            // Copy the pre-encoded fields of a template, with the cached date field if any.
+            PreEncodedHttpFields template = fields.getTemplate();
+            int templateStart = n;
+            int templateEnd = n;
+            HttpField date = null;
+            if (template != null)
+            {
+                templateStart = fields.getTemplateStart();
+                templateEnd = templateStart + template.size();
+                date = fields.getField(HttpHeader.DATE);
+                if (!(date instanceof PreEncodedHttpField))
+                    date = null;
+                template.putTo(header, (PreEncodedHttpField)date);
+                if (template.hasServer())
+                    send = send & ~SEND_SERVER;
+                if (template.hasContentType())
+                    contentType = true;
+            }
+
             for (int f = 0; f < n; f++)
             {
+                if (f == templateStart)
+                {
+                    f = templateEnd - 1;
+                    continue;
+                }
                 HttpField field = fields.getField(f);
+                if (field == date)
+                    continue;
                 HttpHeader h = field.getHeader();
                 if (h == null)
                     putTo(field, header);
@@ -68,7 +68,9 @@ import static org.eclipse.jetty.http.HttpComplianceSection.TRANSFER_ENCODING_WIT
  * (eg. "Connection: close"), or just header names (eg. "Connection:" ).
  * For headers who's value is not known statically (eg. Host, COOKIE) then a
  * per parser dynamic Trie of {@link HttpFields} from previous parsed messages
- * is used to help the parsing of subsequent messages.
+ * is used to help the parsing of subsequent messages. Parsers may also share
+ * a {@link HttpFieldCache} of the most frequent fields, that helps the parsing
+ * of the first messages of new connections.
  * </p>
  * <p>
  * The parser can work in varying compliance modes:
@@ -181,6 +183,8 @@ public class HttpParser
     private boolean _cr;
     private ByteBuffer _contentChunk;
     private Trie<HttpField> _fieldCache;
+    private HttpFieldCache _sharedFieldCache;
+    private boolean _scanAhead = true;
 
     private int _length;
     private final StringBuilder _string = new StringBuilder();
@@ -797,6 +801,7 @@ public class HttpParser
                         case COLON:
                         case OTEXT:
                             _uri.append(t.getByte());
+                            scanRequestTarget(buffer);
                             break;
 
                         default:
@@ -1067,6 +1072,13 @@ public class HttpParser
                 // Cache field?
                 if (addToFieldCache && _header != null && _valueString != null)
                 {
+                    if (_sharedFieldCache != null)
+                    {
+                        if (_field == null)
+                            _field = new HttpField(_header, caseInsensitiveHeader(_headerString, _header.asString()), _valueString);
+                        _sharedFieldCache.offer(_field);
+                    }
+
                     if (_fieldCache == null)
                     {
                         _fieldCache = (_handler.getHeaderCacheSize() > 0 && (_version != null && _version == HttpVersion.HTTP_1_1))
@@ -1266,6 +1278,12 @@ public class HttpParser
                             {
                                 // Try a look ahead for the known header name and value.
                                 HttpField cachedField = _fieldCache == null ? null : _fieldCache.getBest(buffer, -1, buffer.remaining());
+                                boolean shared = false;
+                                if (cachedField == null && _sharedFieldCache != null)
+                                {
+                                    cachedField = _sharedFieldCache.getBest(buffer, -1, buffer.remaining());
+                                    shared = cachedField != null;
+                                }
                                 if (cachedField == null)
                                     cachedField = CACHE.getBest(buffer, -1, buffer.remaining());
 
@@ -1315,6 +1333,8 @@ public class HttpParser
                                     byte peek = buffer.get(pos);
                                     if (peek == HttpTokens.CARRIAGE_RETURN || peek == HttpTokens.LINE_FEED)
                                     {
+                                        if (shared)
+                                            _sharedFieldCache.hit();
                                         _field = cachedField;
                                         _valueString = v;
                                         setState(FieldState.IN_VALUE);
@@ -1390,6 +1410,7 @@ public class HttpParser
                         case TCHAR:
                             _string.append(t.getChar());
                             _length = _string.length();
+                            scanFieldName(buffer);
                             break;
 
                         default:
@@ -1468,6 +1489,7 @@ public class HttpParser
                         case SPACE:
                         case HTAB:
                             _string.append(t.getChar());
+                            scanFieldValue(buffer);
                             break;
 
                         case ALPHA:
@@ -1478,6 +1500,7 @@ public class HttpParser
                         case OTEXT: // TODO review? should this be a utf8 string?
                             _string.append(t.getChar());
                             _length = _string.length();
+                            scanFieldValue(buffer);
                             break;
 
                         default:
@@ -1493,6 +1516,122 @@ public class HttpParser
         return false;
     }
 
+    /**
+     * @param buffer the buffer being parsed
+     * @return the absolute index that a bulk scan of the buffer may not exceed,
+     * so that the max header bytes are checked by the byte by byte parsing
+     */
+    private int scanLimit(ByteBuffer buffer)
+    {
+        int limit = buffer.limit();
+        if (_maxHeaderBytes > 0)
+            limit = (int)Math.min(limit, buffer.position() + Math.max(0L, (long)_maxHeaderBytes - _headerBytes));
+        return limit;
+    }
+
+    private void scanned(ByteBuffer buffer, int end)
+    {
+        if (_maxHeaderBytes > 0)
+            _headerBytes += end - buffer.position();
+        buffer.position(end);
+    }
+
+    /**
+     * Fast path of the {@link State#URI} state, that appends a run
+     * of request target characters found with {@link HttpTokens#scanRequestTarget(ByteBuffer, int, int)}.
+     */
+    private void scanRequestTarget(ByteBuffer buffer)
+    {
+        if (!_scanAhead)
+            return;
+        int position = buffer.position();
+        int end = HttpTokens.scanRequestTarget(buffer, position, scanLimit(buffer));
+        if (end == position)
+            return;
+        if (buffer.hasArray())
+        {
+            _uri.append(buffer.array(), buffer.arrayOffset() + position, end - position);
+        }
+        else
+        {
+            for (int i = position; i < end; i++)
+            {
+                _uri.append(buffer.get(i));
+            }
+        }
+        scanned(buffer, end);
+    }
+
+    /**
+     * Fast path of the {@link FieldState#IN_NAME} state, that appends a run
+     * of token characters found with {@link HttpTokens#scanFieldName(ByteBuffer, int, int)}.
+     */
+    private void scanFieldName(ByteBuffer buffer)
+    {
+        if (!_scanAhead)
+            return;
+        int position = buffer.position();
+        int end = HttpTokens.scanFieldName(buffer, position, scanLimit(buffer));
+        int i = position;
+        while (i < end)
+        {
+            HttpTokens.Token t = HttpTokens.TOKENS[0xff & buffer.get(i)];
+            HttpTokens.Type type = t.getType();
+            // Visible characters that are not token characters are left to the byte by byte parsing.
+            if (type != HttpTokens.Type.ALPHA && type != HttpTokens.Type.DIGIT && type != HttpTokens.Type.TCHAR)
+                break;
+            _string.append(t.getChar());
+            i++;
+        }
+        if (i == position)
+            return;
+        _length = _string.length();
+        scanned(buffer, i);
+    }
+
+    /**
+     * Fast path of the {@link FieldState#IN_VALUE} state, that appends a run
+     * of field value characters found with {@link HttpTokens#scanFieldValue(ByteBuffer, int, int)}.
+     */
+    private void scanFieldValue(ByteBuffer buffer)
+    {
+        if (!_scanAhead)
+            return;
+        int position = buffer.position();
+        int end = HttpTokens.scanFieldValue(buffer, position, scanLimit(buffer));
+        if (end == position)
+            return;
+        // Trailing spaces are not part of the value, so _length is the length up to the last non space.
+        int length = -1;
+        for (int i = position; i < end; i++)
+        {
+            char c = (char)(0xff & buffer.get(i));
+            _string.append(c);
+            if (c != ' ')
+                length = _string.length();
+        }
+        if (length > 0)
+            _length = length;
+        scanned(buffer, end);
+    }
+
+    /**
+     * @return whether runs of plain characters are scanned several bytes at a time
+     */
+    public boolean isScanAhead()
+    {
+        return _scanAhead;
+    }
+
+    /**
+     * @param scanAhead whether runs of plain characters, in request targets, field names
+     * and field values, are scanned several bytes at a time rather than byte by byte
+     */
+    public void setScanAhead(boolean scanAhead)
+    {
+        _scanAhead = scanAhead;
+    }
+
     /**
      * Parse until next Event.
      *
@@ -1925,6 +2064,20 @@ public class HttpParser
         return _fieldCache;
     }
 
+    public HttpFieldCache getSharedFieldCache()
+    {
+        return _sharedFieldCache;
+    }
+
+    /**
+     * @param fieldCache the cache of fields shared with other parsers, looked up
+     * before allocating fields that are not in the cache of this parser
+     */
+    public void setSharedFieldCache(HttpFieldCache fieldCache)
+    {
+        _sharedFieldCache = fieldCache;
+    }
+
     @Override
     public String toString()
     {
@@ -18,6 +18,9 @@
 
 package org.eclipse.jetty.http;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
 import org.eclipse.jetty.util.TypeUtil;
 
 /**
@@ -188,5 +191,129 @@ public class HttpTokens
             }
         }
     }
-}
 
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGHS = 0x8080808080808080L;
+
+    /**
+     * <p>Scans for the end of a run of field value characters, that is
+     * {@link Type#SPACE} or visible characters, in the given buffer.</p>
+     * <p>The bytes are scanned 8 at a time with SWAR (SIMD within a register)
+     * word operations; the bytes that end the run, such as CR, LF, HTAB, other
+     * controls and obs-text, are left to the byte by byte parsing.</p>
+     *
+     * @param buffer the buffer to scan
+     * @param index the absolute index to start scanning from
+     * @param limit the absolute index to stop scanning at
+     * @return the absolute index of the first byte that is not a field value character, or {@code limit}
+     */
+    static int scanFieldValue(ByteBuffer buffer, int index, int limit)
+    {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        while (index + 8 <= limit)
+        {
+            long word = littleEndian(buffer.getLong(index), bigEndian);
+            long stops = lessThan(word, 0x20) | greaterThan7E(word);
+            if (stops != 0)
+                return index + (Long.numberOfTrailingZeros(stops) >>> 3);
+            index += 8;
+        }
+        while (index < limit)
+        {
+            int b = buffer.get(index) & 0xFF;
+            if (b < 0x20 || b > 0x7E)
+                return index;
+            ++index;
+        }
+        return limit;
+    }
+
+    /**
+     * <p>Scans for the end of a run of request target characters, that is
+     * visible characters or obs-text, in the given buffer.</p>
+     *
+     * @param buffer the buffer to scan
+     * @param index the absolute index to start scanning from
+     * @param limit the absolute index to stop scanning at
+     * @return the absolute index of the first space, control or DEL byte, or {@code limit}
+     * @see #scanFieldValue(ByteBuffer, int, int)
+     */
+    static int scanRequestTarget(ByteBuffer buffer, int index, int limit)
+    {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        while (index + 8 <= limit)
+        {
+            long word = littleEndian(buffer.getLong(index), bigEndian);
+            long stops = lessThan(word, 0x21) | equalTo(word, 0x7F);
+            if (stops != 0)
+                return index + (Long.numberOfTrailingZeros(stops) >>> 3);
+            index += 8;
+        }
+        while (index < limit)
+        {
+            int b = buffer.get(index) & 0xFF;
+            if (b <= 0x20 || b == 0x7F)
+                return index;
+            ++index;
+        }
+        return limit;
+    }
+
+    /**
+     * <p>Scans for the end of a run of field name characters, that is
+     * the first space, colon, control, DEL or obs-text byte in the given buffer.</p>
+     * <p>The run may contain visible characters that are not token characters,
+     * that the caller must check.</p>
+     *
+     * @param buffer the buffer to scan
+     * @param index the absolute index to start scanning from
+     * @param limit the absolute index to stop scanning at
+     * @return the absolute index of the first byte that ends the run, or {@code limit}
+     * @see #scanFieldValue(ByteBuffer, int, int)
+     */
+    static int scanFieldName(ByteBuffer buffer, int index, int limit)
+    {
+        boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+        while (index + 8 <= limit)
+        {
+            long word = littleEndian(buffer.getLong(index), bigEndian);
+            long stops = lessThan(word, 0x21) | greaterThan7E(word) | equalTo(word, COLON);
+            if (stops != 0)
+                return index + (Long.numberOfTrailingZeros(stops) >>> 3);
+            index += 8;
+        }
+        while (index < limit)
+        {
+            int b = buffer.get(index) & 0xFF;
+            if (b <= 0x20 || b > 0x7E || b == COLON)
+                return index;
+            ++index;
+        }
+        return limit;
+    }
+
+    // In the masks below, the first byte of the buffer is the least significant byte of
+    // the word, so that borrows and carries only propagate towards the following bytes:
+    // the lowest flagged byte is always exact, while the following ones may be spurious.
+
+    private static long littleEndian(long word, boolean bigEndian)
+    {
+        return bigEndian ? Long.reverseBytes(word) : word;
+    }
+
+    private static long lessThan(long word, int n)
+    {
+        return (word - ONES * n) & ~word & HIGHS;
+    }
+
+    private static long greaterThan7E(long word)
+    {
+        return ((word + ONES) | word) & HIGHS;
+    }
+
+    private static long equalTo(long word, int n)
+    {
+        long x = word ^ (ONES * n);
+        return (x - ONES) & ~x & HIGHS;
+    }
+}
@@ -0,0 +1,160 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+
+/**
+ * <p>A constant set of response (or request) fields, pre-encoded for HTTP/1 as a single block of bytes.</p>
+ * <p>Applications that send the same fields on many responses, for example {@code Server},
+ * {@code Content-Type} and {@code Cache-Control}, can create a {@link PreEncodedHttpFields} once
+ * and {@link HttpFields#add(PreEncodedHttpFields) add} it to the fields of each response.
+ * The fields are added as usual, so that they can be read and modified, and other protocols
+ * encode them as usual; but as long as the fields of the template are not modified,
+ * the {@link HttpGenerator} copies the pre-encoded block rather than encoding each field.</p>
+ * <p>When the fields of the response also contain a {@link PreEncodedHttpField} {@code Date}
+ * field, such as the one cached every second by the server, the block is generated together
+ * with that field, and the combined block is cached until the date field changes.</p>
+ * <p>Templates cannot contain the fields that the generator needs to process,
+ * that is {@code Content-Length}, {@code Transfer-Encoding}, {@code Connection} and {@code Date}.</p>
+ * <p>Instances are immutable and may be shared by many threads.</p>
+ */
+public class PreEncodedHttpFields implements Iterable<HttpField>
+{
+    private final HttpField[] _fields;
+    private final byte[] _encoded;
+    private final boolean _server;
+    private final boolean _contentType;
+    private volatile Dated _dated;
+
+    public PreEncodedHttpFields(HttpField... fields)
+    {
+        _fields = fields.clone();
+        boolean server = false;
+        boolean contentType = false;
+        int length = 0;
+        for (HttpField field : _fields)
+        {
+            HttpHeader header = field.getHeader();
+            if (header != null)
+            {
+                switch (header)
+                {
+                    case CONTENT_LENGTH:
+                    case TRANSFER_ENCODING:
+                    case CONNECTION:
+                    case DATE:
+                        throw new IllegalArgumentException("Field not allowed in template: " + field);
+
+                    case SERVER:
+                        server = true;
+                        break;
+
+                    case CONTENT_TYPE:
+                        contentType = true;
+                        break;
+
+                    default:
+                        break;
+                }
+            }
+            String name = header == null ? field.getName() : header.asString();
+            length += name.length() + 2 + field.getValue().length() + 2;
+        }
+        _server = server;
+        _contentType = contentType;
+
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (HttpField field : _fields)
+        {
+            HttpGenerator.putTo(field, buffer);
+        }
+        _encoded = Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    public int size()
+    {
+        return _fields.length;
+    }
+
+    public HttpField getField(int index)
+    {
+        return _fields[index];
+    }
+
+    @Override
+    public Iterator<HttpField> iterator()
+    {
+        return Arrays.asList(_fields).iterator();
+    }
+
+    boolean hasServer()
+    {
+        return _server;
+    }
+
+    boolean hasContentType()
+    {
+        return _contentType;
+    }
+
+    /**
+     * @param bufferInFillMode the buffer to put the encoded fields into
+     * @param date the {@code Date} field to generate before the fields of the template, or null
+     */
+    void putTo(ByteBuffer bufferInFillMode, PreEncodedHttpField date)
+    {
+        if (date == null)
+        {
+            bufferInFillMode.put(_encoded);
+            return;
+        }
+
+        Dated dated = _dated;
+        if (dated == null || dated._date != date)
+        {
+            ByteBuffer buffer = ByteBuffer.allocate(date.getEncodedLength(HttpVersion.HTTP_1_1) + _encoded.length);
+            date.putTo(buffer, HttpVersion.HTTP_1_1);
+            buffer.put(_encoded);
+            dated = new Dated(date, buffer.array());
+            _dated = dated;
+        }
+        bufferInFillMode.put(dated._encoded);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x%s", getClass().getSimpleName(), hashCode(), Arrays.toString(_fields));
+    }
+
+    private static class Dated
+    {
+        private final PreEncodedHttpField _date;
+        private final byte[] _encoded;
+
+        private Dated(PreEncodedHttpField date, byte[] encoded)
+        {
+            _date = date;
+            _encoded = encoded;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class HttpFieldCacheTest
+{
+    private static final String REQUEST =
+        "GET / HTTP/1.0\r\n" +
+        "Host: localhost\r\n" +
+        "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:102.0) Gecko/20100101 Firefox/102.0\r\n" +
+        "\r\n";
+
+    @Test
+    public void testFrequentFieldIsSharedByNewParsers()
+    {
+        HttpFieldCache cache = new HttpFieldCache();
+        cache.setAdmissionFrequency(2);
+
+        HttpField first = parseUserAgent(cache, REQUEST);
+        assertEquals(0, cache.getSize());
+        HttpField second = parseUserAgent(cache, REQUEST);
+        assertNotSame(first, second);
+        assertTrue(cache.getSize() > 0);
+        assertEquals(0, cache.getHits());
+
+        // Every new parser now finds the same field instance.
+        HttpField third = parseUserAgent(cache, REQUEST);
+        HttpField fourth = parseUserAgent(cache, REQUEST);
+        assertSame(third, fourth);
+        assertEquals(2, cache.getHits());
+        assertThat(cache.getHitRatio(), greaterThan(0D));
+    }
+
+    @Test
+    public void testPrefixOfCachedFieldIsNotAHit()
+    {
+        HttpFieldCache cache = new HttpFieldCache();
+        cache.setAdmissionFrequency(1);
+        parseUserAgent(cache, REQUEST);
+
+        String longer = REQUEST.replace("Firefox/102.0", "Firefox/102.0.1");
+        HttpField field = parseUserAgent(cache, longer);
+        assertEquals("Mozilla/5.0 (X11; Linux x86_64; rv:102.0) Gecko/20100101 Firefox/102.0.1", field.getValue());
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void testBoundedWithFrequencyAdmission()
+    {
+        HttpFieldCache cache = new HttpFieldCache(2, 256);
+        cache.setAdmissionFrequency(1);
+
+        HttpField popular = new HttpField(HttpHeader.USER_AGENT, "popular");
+        for (int i = 0; i < 5; ++i)
+        {
+            cache.offer(popular);
+        }
+        cache.offer(new HttpField(HttpHeader.USER_AGENT, "rare1"));
+        assertEquals(2, cache.getSize());
+
+        // A field seen once does not evict a field seen more often.
+        cache.offer(new HttpField(HttpHeader.USER_AGENT, "rare2"));
+        assertEquals(2, cache.getSize());
+        assertNotNull(cache.getBest(BufferUtil.toBuffer("User-Agent: popular\r\n"), 0, 21));
+        assertNull(cache.getBest(BufferUtil.toBuffer("User-Agent: rare2\r\n"), 0, 19));
+
+        // Fields longer than the max length are never cached.
+        cache.clear();
+        char[] chars = new char[300];
+        Arrays.fill(chars, 'x');
+        HttpField large = new HttpField(HttpHeader.USER_AGENT, new String(chars));
+        cache.offer(large);
+        cache.offer(large);
+        assertEquals(0, cache.getSize());
+    }
+
+    private HttpField parseUserAgent(HttpFieldCache cache, String request)
+    {
+        List<HttpField> fields = new ArrayList<>();
+        HttpParser.RequestHandler handler = new HttpParser.RequestHandler()
+        {
+            @Override
+            public boolean startRequest(String method, String uri, HttpVersion version)
+            {
+                return false;
+            }
+
+            @Override
+            public void parsedHeader(HttpField field)
+            {
+                fields.add(field);
+            }
+
+            @Override
+            public boolean headerComplete()
+            {
+                return false;
+            }
+
+            @Override
+            public boolean content(ByteBuffer item)
+            {
+                return false;
+            }
+
+            @Override
+            public boolean contentComplete()
+            {
+                return false;
+            }
+
+            @Override
+            public boolean messageComplete()
+            {
+                return true;
+            }
+
+            @Override
+            public void earlyEOF()
+            {
+            }
+
+            @Override
+            public int getHeaderCacheSize()
+            {
+                return 1024;
+            }
+        };
+        HttpParser parser = new HttpParser(handler);
+        parser.setSharedFieldCache(cache);
+        parser.parseNext(BufferUtil.toBuffer(request));
+        return fields.stream().filter(f -> f.getHeader() == HttpHeader.USER_AGENT).findFirst().orElseThrow(IllegalStateException::new);
+    }
+}
@@ -26,6 +26,9 @@ import java.util.List;
 import java.util.ListIterator;
 import java.util.Locale;
 import java.util.NoSuchElementException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.eclipse.jetty.util.BufferUtil;
@@ -895,4 +898,165 @@ public class HttpFieldsTest
         header.computeField("TEST", (n, f) -> null);
         assertThat(header.stream().map(HttpField::toString).collect(Collectors.toList()), contains("Before: value", "After: value"));
     }
+
+    @Test
+    public void testIndexedLookups()
+    {
+        HttpFields header = new HttpFields();
+        for (int i = 0; i < 20; i++)
+        {
+            header.add("X-Name" + i, "value" + i);
+        }
+        header.add(HttpHeader.ACCEPT, "one");
+        header.add(HttpHeader.HOST, "localhost");
+        header.add(HttpHeader.ACCEPT, "two");
+
+        assertEquals("one", header.get(HttpHeader.ACCEPT));
+        assertEquals("localhost", header.getField(HttpHeader.HOST).getValue());
+        assertThat(header.getValuesList(HttpHeader.ACCEPT), contains("one", "two"));
+        assertTrue(header.contains(HttpHeader.ACCEPT, "two"));
+        assertFalse(header.contains(HttpHeader.COOKIE));
+        assertTrue(header.getFields(HttpHeader.COOKIE).isEmpty());
+        assertTrue(header.getValuesList(HttpHeader.COOKIE).isEmpty());
+        assertNull(header.remove(HttpHeader.COOKIE));
+
+        // Replace the only field with the same header in place.
+        header.put(HttpHeader.HOST, "example.com");
+        assertEquals(23, header.size());
+        assertEquals("example.com", header.get(HttpHeader.HOST));
+        assertEquals("example.com", header.getField(21).getValue());
+
+        // Replace fields with the same header.
+        header.put(HttpHeader.ACCEPT, "three");
+        assertEquals(22, header.size());
+        assertThat(header.getValuesList(HttpHeader.ACCEPT), contains("three"));
+
+        // Structural modifications keep the lookups consistent.
+        assertEquals("value0", header.remove("X-Name0").getValue());
+        assertEquals("example.com", header.get(HttpHeader.HOST));
+        assertEquals("three", header.remove(HttpHeader.ACCEPT).getValue());
+        assertNull(header.get(HttpHeader.ACCEPT));
+        header.add(HttpHeader.ACCEPT, "four");
+        assertEquals("four", header.get(HttpHeader.ACCEPT));
+        assertEquals(21, header.size());
+
+        ListIterator<HttpField> iterator = header.listIterator();
+        iterator.next();
+        iterator.set(new HttpField(HttpHeader.COOKIE, "a=b"));
+        assertEquals("a=b", header.get(HttpHeader.COOKIE));
+    }
+
+    @Test
+    public void testConcurrentIndexedLookups() throws Exception
+    {
+        HttpFields header = new HttpFields();
+        for (int i = 0; i < 20; i++)
+        {
+            header.add("X-Name" + i, "value" + i);
+        }
+        header.add(HttpHeader.ACCEPT, "one");
+        header.add(HttpHeader.HOST, "localhost");
+
+        // Readers that look up the fields concurrently build the index concurrently.
+        int readers = 4;
+        CyclicBarrier barrier = new CyclicBarrier(readers + 1);
+        List<CompletableFuture<Void>> results = new ArrayList<>();
+        for (int r = 0; r < readers; r++)
+        {
+            results.add(CompletableFuture.runAsync(() ->
+            {
+                try
+                {
+                    for (int i = 0; i < 1000; i++)
+                    {
+                        barrier.await(5, TimeUnit.SECONDS);
+                        assertEquals("localhost", header.get(HttpHeader.HOST));
+                        assertThat(header.getValuesList(HttpHeader.ACCEPT), contains("one"));
+                        barrier.await(5, TimeUnit.SECONDS);
+                    }
+                }
+                catch (Exception e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (int i = 0; i < 1000; i++)
+        {
+            // Invalidate the index.
+            header.put("X-Name0", "value" + i);
+            barrier.await(5, TimeUnit.SECONDS);
+            barrier.await(5, TimeUnit.SECONDS);
+        }
+        for (CompletableFuture<Void> result : results)
+        {
+            result.get(5, TimeUnit.SECONDS);
+        }
+    }
+
+    @Test
+    public void testPutReplacesFieldWithoutHeader()
+    {
+        HttpFields header = new HttpFields();
+        for (int i = 0; i < 10; i++)
+        {
+            header.add("X-Name" + i, "value" + i);
+        }
+        header.add(new HttpField(null, "Accept", "one"));
+        assertEquals("one", header.get("Accept"));
+
+        header.put(HttpHeader.ACCEPT, "two");
+        assertEquals(11, header.size());
+        assertThat(header.getValuesList("Accept"), contains("two"));
+        assertEquals("two", header.get(HttpHeader.ACCEPT));
+    }
+
+    @Test
+    public void testCopyOnWrite()
+    {
+        HttpFields original = new HttpFields();
+        original.add(HttpHeader.HOST, "localhost");
+        original.add(HttpHeader.ACCEPT, "*/*");
+        original.add("X-Name", "value");
+
+        HttpFields copy = new HttpFields(original);
+        assertEquals(original, copy);
+
+        copy.put(HttpHeader.HOST, "example.com");
+        copy.add("X-Other", "other");
+        assertEquals("localhost", original.get(HttpHeader.HOST));
+        assertEquals(3, original.size());
+        assertEquals("example.com", copy.get(HttpHeader.HOST));
+        assertEquals(4, copy.size());
+
+        HttpFields other = new HttpFields(original);
+        original.remove(HttpHeader.ACCEPT);
+        original.add("X-Added", "added");
+        assertEquals("*/*", other.get(HttpHeader.ACCEPT));
+        assertNull(other.get("X-Added"));
+        assertEquals(3, other.size());
+
+        HttpFields cleared = new HttpFields(other);
+        other.clear();
+        other.add(HttpHeader.COOKIE, "a=b");
+        assertEquals(3, cleared.size());
+        assertEquals("localhost", cleared.get(HttpHeader.HOST));
+    }
+
+    @Test
+    public void testCopyOnWriteFromOtherThread() throws Exception
+    {
+        HttpFields original = new HttpFields();
+        original.add(HttpHeader.HOST, "localhost");
+        original.add(HttpHeader.ACCEPT, "*/*");
+
+        // The copy marks the original as shared from the copying thread.
+        HttpFields copy = CompletableFuture.supplyAsync(() -> new HttpFields(original)).get(5, TimeUnit.SECONDS);
+
+        original.put(HttpHeader.HOST, "example.com");
+        original.remove(HttpHeader.ACCEPT);
+        assertEquals("localhost", copy.get(HttpHeader.HOST));
+        assertEquals("*/*", copy.get(HttpHeader.ACCEPT));
+        assertEquals(2, copy.size());
+    }
 }
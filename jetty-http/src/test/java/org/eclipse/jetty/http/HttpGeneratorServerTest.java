@@ -878,4 +878,108 @@ public class HttpGeneratorServerTest
         assertThat(headers, containsString("Connection: other, close\r\n"));
         assertThat(headers, not(containsString("keep-alive")));
     }
+
+    @Test
+    public void testResponseTemplate() throws Exception
+    {
+        PreEncodedHttpFields template = new PreEncodedHttpFields(
+            new HttpField(HttpHeader.SERVER, "Test"),
+            new HttpField(HttpHeader.CONTENT_TYPE, "text/plain"),
+            new HttpField(HttpHeader.CACHE_CONTROL, "max-age=3600"));
+        PreEncodedHttpField date = new PreEncodedHttpField(HttpHeader.DATE, DateGenerator.__01Jan1970);
+
+        HttpFields fields = new HttpFields();
+        fields.put(date);
+        fields.add(template);
+        fields.add("X-Dynamic", "value");
+        String response = generate(fields);
+
+        assertThat(response, startsWith("HTTP/1.1 200 OK\r\n" +
+            "Date: Thu, 01 Jan 1970 00:00:00 GMT\r\n" +
+            "Server: Test\r\n" +
+            "Content-Type: text/plain\r\n" +
+            "Cache-Control: max-age=3600\r\n" +
+            "X-Dynamic: value\r\n" +
+            "Content-Length: 10\r\n"));
+        assertThat(response, not(containsString("Server: Jetty")));
+
+        // The block with the date is cached until the date field changes.
+        HttpFields other = new HttpFields();
+        other.put(new PreEncodedHttpField(HttpHeader.DATE, "Fri, 02 Jan 1970 00:00:00 GMT"));
+        other.add(template);
+        assertThat(generate(other), containsString("Date: Fri, 02 Jan 1970 00:00:00 GMT\r\nServer: Test\r\n"));
+        assertThat(generate(fields), containsString("Date: Thu, 01 Jan 1970 00:00:00 GMT\r\nServer: Test\r\n"));
+    }
+
+    @Test
+    public void testModifiedResponseTemplate() throws Exception
+    {
+        PreEncodedHttpFields template = new PreEncodedHttpFields(
+            new HttpField(HttpHeader.CONTENT_TYPE, "text/plain"),
+            new HttpField(HttpHeader.CACHE_CONTROL, "max-age=3600"));
+
+        HttpFields fields = new HttpFields();
+        fields.add(template);
+        fields.put(HttpHeader.CACHE_CONTROL, "no-store");
+        String response = generate(fields);
+        assertThat(response, containsString("Content-Type: text/plain\r\n"));
+        assertThat(response, containsString("Cache-Control: no-store\r\n"));
+        assertThat(response, not(containsString("max-age")));
+        assertThat(response, containsString("Server: Jetty"));
+
+        fields = new HttpFields();
+        fields.add(template);
+        fields.remove(HttpHeader.CONTENT_TYPE);
+        response = generate(fields);
+        assertThat(response, not(containsString("Content-Type")));
+        assertThat(response, containsString("Cache-Control: max-age=3600\r\n"));
+
+        assertThrows(IllegalArgumentException.class, () -> new PreEncodedHttpFields(new HttpField(HttpHeader.CONTENT_LENGTH, "10")));
+    }
+
+    @Test
+    public void testFieldsBeforeResponseTemplateModified() throws Exception
+    {
+        PreEncodedHttpFields template = new PreEncodedHttpFields(
+            new HttpField(HttpHeader.SERVER, "Test"),
+            new HttpField(HttpHeader.CACHE_CONTROL, "max-age=3600"));
+
+        // Putting a field removes the duplicates before the template, which shifts it.
+        HttpFields fields = new HttpFields();
+        fields.add("X-Foo", "a");
+        fields.add(template);
+        fields.add("X-Foo", "b");
+        fields.put(new HttpField("X-Foo", "c"));
+        String response = generate(fields);
+        assertThat(response, containsString("Server: Test\r\n"));
+        assertEquals(response.indexOf("Server: "), response.lastIndexOf("Server: "));
+        assertThat(response, containsString("Cache-Control: max-age=3600\r\n"));
+        assertThat(response, containsString("X-Foo: c\r\n"));
+        assertThat(response, not(containsString("X-Foo: a")));
+        assertThat(response, not(containsString("X-Foo: b")));
+
+        // Removing a field before the template also shifts it.
+        fields = new HttpFields();
+        fields.add("X-Foo", "a");
+        fields.add(template);
+        fields.add("X-Bar", "b");
+        fields.remove("X-Foo");
+        response = generate(fields);
+        assertThat(response, containsString("Server: Test\r\n"));
+        assertEquals(response.indexOf("Server: "), response.lastIndexOf("Server: "));
+        assertThat(response, containsString("Cache-Control: max-age=3600\r\n"));
+        assertThat(response, containsString("X-Bar: b\r\n"));
+        assertThat(response, not(containsString("X-Foo")));
+    }
+
+    private static String generate(HttpFields fields) throws Exception
+    {
+        ByteBuffer header = BufferUtil.allocate(8096);
+        ByteBuffer content = BufferUtil.toBuffer("0123456789");
+        HttpGenerator gen = new HttpGenerator(true, false);
+        MetaData.Response info = new MetaData.Response(HttpVersion.HTTP_1_1, 200, null, fields, 10);
+        HttpGenerator.Result result = gen.generateResponse(info, false, header, null, content, true);
+        assertEquals(HttpGenerator.Result.FLUSH, result);
+        return BufferUtil.toString(header);
+    }
 }
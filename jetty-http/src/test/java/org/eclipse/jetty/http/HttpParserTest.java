@@ -121,6 +121,74 @@ public class HttpParserTest
         assertEquals(methodName.toUpperCase(Locale.US), method.toString());
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testScanAhead(boolean scanAhead)
+    {
+        ByteBuffer buffer = BufferUtil.toBuffer(
+            "GET /path/to/resource?query=value&other=%20x HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "X-Custom-Header-Name: some value with spaces   \r\n" +
+                "X-Tab:\tvalue\twith tabs\t\r\n" +
+                "X-Obs: caf\u00e9 and more\r\n" +
+                "X-Colon: a:b:c\r\n" +
+                "\r\n", StandardCharsets.ISO_8859_1);
+
+        HttpParser.RequestHandler handler = new Handler();
+        HttpParser parser = new HttpParser(handler);
+        parser.setScanAhead(scanAhead);
+        parseAll(parser, buffer);
+
+        assertNull(_bad);
+        assertEquals("/path/to/resource?query=value&other=%20x", _uriOrStatus);
+        assertEquals("X-Custom-Header-Name", _hdr[1]);
+        assertEquals("some value with spaces", _val[1]);
+        assertEquals("X-Tab", _hdr[2]);
+        assertEquals("value\twith tabs", _val[2]);
+        assertEquals("X-Obs", _hdr[3]);
+        assertEquals("caf\u00e9 and more", _val[3]);
+        assertEquals("X-Colon", _hdr[4]);
+        assertEquals("a:b:c", _val[4]);
+        assertEquals(4, _headers);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testScanAheadMaxHeaderBytes(boolean scanAhead)
+    {
+        String value = "0123456789abcdefghijklmnopqrstuvwxyz0123456789abcdefghijklmnopqrstuvwxyz";
+        ByteBuffer buffer = BufferUtil.toBuffer(
+            "GET / HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "X-Long: " + value + "\r\n" +
+                "\r\n");
+
+        HttpParser.RequestHandler handler = new Handler();
+        HttpParser parser = new HttpParser(handler, 64);
+        parser.setScanAhead(scanAhead);
+        parseAll(parser, buffer);
+
+        assertEquals("431", _bad);
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testScanAheadBadFieldName(boolean scanAhead)
+    {
+        ByteBuffer buffer = BufferUtil.toBuffer(
+            "GET / HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "X-Bad(Name): value\r\n" +
+                "\r\n");
+
+        HttpParser.RequestHandler handler = new Handler();
+        HttpParser parser = new HttpParser(handler);
+        parser.setScanAhead(scanAhead);
+        parseAll(parser, buffer);
+
+        assertThat(_bad, containsString("Illegal character"));
+    }
+
     @Test
     public void testLineParseMockIP()
     {
@@ -0,0 +1,83 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.function.IntPredicate;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HttpTokensTest
+{
+    private interface Scanner
+    {
+        int scan(ByteBuffer buffer, int index, int limit);
+    }
+
+    @Test
+    public void testScanFieldValue()
+    {
+        assertScan(HttpTokens::scanFieldValue, b -> b < 0x20 || b > 0x7E);
+    }
+
+    @Test
+    public void testScanRequestTarget()
+    {
+        assertScan(HttpTokens::scanRequestTarget, b -> b <= 0x20 || b == 0x7F);
+    }
+
+    @Test
+    public void testScanFieldName()
+    {
+        assertScan(HttpTokens::scanFieldName, b -> b <= 0x20 || b > 0x7E || b == ':');
+    }
+
+    private void assertScan(Scanner scanner, IntPredicate stop)
+    {
+        int length = 24;
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.allocate(length), ByteBuffer.allocateDirect(length).order(ByteOrder.LITTLE_ENDIAN)})
+        {
+            for (int b = 0; b < 256; b++)
+            {
+                for (int p = 0; p < length; p++)
+                {
+                    for (int i = 0; i < length; i++)
+                    {
+                        buffer.put(i, (byte)'a');
+                    }
+                    buffer.put(p, (byte)b);
+                    // A stop byte after the first one must not change the result.
+                    if (p + 1 < length)
+                        buffer.put(p + 1, (byte)0xFF);
+
+                    int expected = stop.test(b) ? p : p + 1 < length && stop.test(0xFF) ? p + 1 : length;
+                    assertEquals(expected, scanner.scan(buffer, 0, length), "byte=" + b + " position=" + p);
+                    // Scanning from an offset, across the word boundaries.
+                    int from = Math.min(p, 3);
+                    assertEquals(expected, scanner.scan(buffer, from, length), "byte=" + b + " position=" + p + " from=" + from);
+                    // The limit is honored.
+                    assertEquals(Math.min(expected, p), scanner.scan(buffer, 0, p));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,82 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+/**
+ * <p>Schedules the DATA frames of the streams of a session.</p>
+ * <p>{@link HTTP2Flusher} generates frames in passes over the queued entries,
+ * until the write threshold is exceeded or no progress can be made.
+ * Control frames are generated in every pass, while the DATA frames of a stream
+ * are generated, within the limits of the flow control windows, as long as the
+ * stream has credit: in every pass, each stream with queued DATA frames gains
+ * the {@link #getQuantum(IStream) quantum} of bytes returned by the scheduler
+ * and spends the bytes of the frames it generates, so that streams share the
+ * connection in proportion to their quanta (deficit round-robin).</p>
+ */
+public interface FrameScheduler
+{
+    /**
+     * <p>The scheduler that generates one DATA frame per stream in each pass, ignoring stream weights.</p>
+     */
+    FrameScheduler ROUND_ROBIN = stream -> 0;
+
+    /**
+     * @param stream the stream with queued DATA frames
+     * @return the number of frame bytes the stream may generate in each pass,
+     * or zero to generate one DATA frame per pass
+     */
+    int getQuantum(IStream stream);
+
+    /**
+     * <p>A scheduler that gives streams a quantum proportional to their
+     * {@link IStream#getWeight() weight}, so that a large download cannot
+     * starve smaller responses with the same or a higher weight.</p>
+     */
+    class Weighted implements FrameScheduler
+    {
+        private final int quantum;
+
+        public Weighted()
+        {
+            this(16 * 1024);
+        }
+
+        /**
+         * @param quantum the quantum of a stream with the default weight of 16
+         */
+        public Weighted(int quantum)
+        {
+            if (quantum <= 0)
+                throw new IllegalArgumentException("Invalid quantum " + quantum);
+            this.quantum = quantum;
+        }
+
+        @Override
+        public int getQuantum(IStream stream)
+        {
+            return Math.max(1, (int)((long)quantum * stream.getWeight() / IStream.DEFAULT_WEIGHT));
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[quantum=%d]", getClass().getSimpleName(), hashCode(), quantum);
+        }
+    }
+}
@@ -57,6 +57,9 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     private InvocationType invocationType = InvocationType.NON_BLOCKING;
     private Throwable terminated;
     private Entry stalledEntry;
+    private Entry resumedEntry;
+    private int maxFrameQueueSize;
+    private volatile int pendingFrameQueueSize;
 
     public HTTP2Flusher(HTTP2Session session)
     {
@@ -93,6 +96,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             if (closed == null)
             {
                 entries.offerFirst(entry);
+                maxFrameQueueSize = Math.max(maxFrameQueueSize, entries.size());
                 if (LOG.isDebugEnabled())
                     LOG.debug("Prepended {}, entries={}", entry, entries.size());
             }
@@ -112,6 +116,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             if (closed == null)
             {
                 entries.offer(entry);
+                maxFrameQueueSize = Math.max(maxFrameQueueSize, entries.size());
                 if (LOG.isDebugEnabled())
                     LOG.debug("Appended {}, entries={}", entry, entries.size());
             }
@@ -131,6 +136,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             if (closed == null)
             {
                 list.forEach(entries::offer);
+                maxFrameQueueSize = Math.max(maxFrameQueueSize, entries.size());
                 if (LOG.isDebugEnabled())
                     LOG.debug("Appended {}, entries={}", list, entries.size());
             }
@@ -157,6 +163,19 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         }
     }
 
+    public int getMaxFrameQueueSize()
+    {
+        synchronized (this)
+        {
+            return maxFrameQueueSize;
+        }
+    }
+
+    public int getPendingFrameQueueSize()
+    {
+        return pendingFrameQueueSize;
+    }
+
     @Override
     protected Action process() throws Throwable
     {
@@ -183,14 +202,20 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
         if (pendingEntries.isEmpty())
         {
+            pendingFrameQueueSize = 0;
             if (LOG.isDebugEnabled())
                 LOG.debug("Flushed {}", session);
             return Action.IDLE;
         }
 
+        // The entry interrupted by the write threshold resumes with its remaining credit.
+        Entry resumed = resumedEntry;
+        resumedEntry = null;
+
         while (true)
         {
             boolean progress = false;
+            boolean indebted = false;
 
             if (pendingEntries.isEmpty())
                 break;
@@ -215,7 +240,15 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
                 try
                 {
-                    if (entry.generate(lease))
+                    int generated = generate(entry, entry == resumed);
+                    resumed = null;
+                    if (generated < 0)
+                    {
+                        // The entry has no credit left in this pass,
+                        // which is not progress as nothing is written.
+                        indebted = true;
+                    }
+                    else if (generated > 0)
                     {
                         if (LOG.isDebugEnabled())
                             LOG.debug("Generated {} frame bytes for {}", entry.getFrameBytesGenerated(), entry);
@@ -259,14 +292,27 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
                     failed(failure);
                     return Action.SUCCEEDED;
                 }
-            }
 
-            if (!progress)
-                break;
+                // The write threshold interrupted a DATA entry with credit left,
+                // write now and resume the pass from that entry.
+                if (resumedEntry != null)
+                    break;
+            }
 
             if (stalledEntry != null)
                 break;
 
+            if (!progress)
+            {
+                // The entries that could generate frames are all paying
+                // back their deficit: skip the passes that would write
+                // nothing, rather than spinning through them.
+                if (!indebted)
+                    break;
+                skipIndebtedPasses();
+                continue;
+            }
+
             int writeThreshold = session.getWriteThreshold();
             if (lease.getTotalLength() >= writeThreshold)
             {
@@ -276,6 +322,8 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
             }
         }
 
+        pendingFrameQueueSize = pendingEntries.size();
+
         List<ByteBuffer> byteBuffers = lease.getByteBuffers();
         if (byteBuffers.isEmpty())
         {
@@ -296,6 +344,91 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         return Action.SCHEDULED;
     }
 
+    /**
+     * <p>Generates the frames of the given entry for one pass.</p>
+     * <p>Entries other than DATA entries generate one frame per pass.
+     * DATA entries are scheduled by the session's {@link FrameScheduler}:
+     * they gain their quantum in every pass and generate frames until their
+     * credit is spent, their data is exhausted, the flow control windows are
+     * exhausted or the write threshold is exceeded.
+     * Credit spent in excess is paid back in the following passes, and
+     * credit that cannot be spent does not accumulate.</p>
+     *
+     * @param entry the entry to generate
+     * @param resumed whether the entry resumes the pass interrupted by the write threshold
+     * @return a positive number if frames have been generated, zero if no frame
+     * could be generated, or a negative number if the entry has no credit in this pass
+     * @throws HpackException if the entry cannot be generated
+     */
+    private int generate(Entry entry, boolean resumed) throws HpackException
+    {
+        int quantum = 0;
+        if (entry.frame.getType() == FrameType.DATA)
+            quantum = session.getFrameScheduler().getQuantum(entry.stream);
+        if (quantum <= 0)
+            return entry.generate(lease) ? 1 : 0;
+
+        if (!resumed)
+            entry.deficit = Math.min(quantum, entry.deficit + quantum);
+        if (entry.deficit <= 0)
+            return -1;
+
+        int frames = 0;
+        int writeThreshold = session.getWriteThreshold();
+        while (entry.deficit > 0)
+        {
+            int frameBytes = entry.getFrameBytesGenerated();
+            if (!entry.generate(lease))
+            {
+                entry.deficit = 0;
+                break;
+            }
+            ++frames;
+            entry.deficit -= entry.getFrameBytesGenerated() - frameBytes;
+            if (entry.getDataBytesRemaining() == 0)
+            {
+                entry.deficit = 0;
+                break;
+            }
+            if (lease.getTotalLength() >= writeThreshold)
+            {
+                resumedEntry = entry;
+                break;
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * <p>Credits the DATA entries with the quanta of the passes in which none
+     * of them would have credit, so that the first of them to pay back its
+     * deficit has credit again in the next pass.</p>
+     * <p>This is equivalent to running those passes, that would generate no
+     * frames, so the deficits carried over are the same.</p>
+     */
+    private void skipIndebtedPasses()
+    {
+        FrameScheduler scheduler = session.getFrameScheduler();
+        int passes = Integer.MAX_VALUE;
+        for (Entry entry : pendingEntries)
+        {
+            int quantum = entry.frame.getType() == FrameType.DATA ? scheduler.getQuantum(entry.stream) : 0;
+            if (quantum > 0 && entry.deficit <= 0)
+                passes = Math.min(passes, -entry.deficit / quantum);
+        }
+        if (passes == Integer.MAX_VALUE || passes == 0)
+            return;
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Skipping {} passes of indebted entries", passes);
+        for (Entry entry : pendingEntries)
+        {
+            int quantum = entry.frame.getType() == FrameType.DATA ? scheduler.getQuantum(entry.stream) : 0;
+            if (quantum > 0)
+                entry.deficit = (int)Math.min(quantum, entry.deficit + (long)passes * quantum);
+        }
+    }
+
     void onFlushed(long bytes) throws IOException
     {
         // A single EndPoint write may be flushed multiple times (for example with SSL).
@@ -328,12 +461,15 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
         invocationType = InvocationType.NON_BLOCKING;
 
         if (stalledEntry != null)
+            resumedEntry = null;
+        Entry firstEntry = stalledEntry != null ? stalledEntry : resumedEntry;
+        if (firstEntry != null)
         {
             int size = pendingEntries.size();
             for (int i = 0; i < size; ++i)
             {
                 Entry entry = pendingEntries.peek();
-                if (entry == stalledEntry)
+                if (entry == firstEntry)
                     break;
                 pendingEntries.poll();
                 pendingEntries.offer(entry);
@@ -371,6 +507,7 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
 
         allEntries.addAll(processedEntries);
         processedEntries.clear();
+        resumedEntry = null;
         allEntries.addAll(pendingEntries);
         pendingEntries.clear();
         allEntries.forEach(entry -> entry.failed(x));
@@ -415,10 +552,11 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     @Override
     public String toString()
     {
-        return String.format("%s[window_queue=%d,frame_queue=%d,processed/pending=%d/%d]",
+        return String.format("%s[window_queue=%d,frame_queue=%d/%d,processed/pending=%d/%d]",
             super.toString(),
             getWindowQueueSize(),
             getFrameQueueSize(),
+            getMaxFrameQueueSize(),
             processedEntries.size(),
             pendingEntries.size());
     }
@@ -427,6 +565,8 @@ public class HTTP2Flusher extends IteratingCallback implements Dumpable
     {
         protected final Frame frame;
         protected final IStream stream;
+        // The DATA frame bytes this entry may still generate, see FrameScheduler.
+        int deficit;
 
         protected Entry(Frame frame, IStream stream, Callback callback)
         {
@@ -27,6 +27,7 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -104,6 +105,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
     private int initialSessionRecvWindow;
     private int writeThreshold;
     private boolean pushEnabled;
+    private FrameScheduler frameScheduler;
 
     public HTTP2Session(Scheduler scheduler, EndPoint endPoint, Generator generator, Session.Listener listener, FlowControlStrategy flowControl, int initialStreamId)
     {
@@ -121,6 +123,7 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         this.recvWindow.set(FlowControlStrategy.DEFAULT_WINDOW_SIZE);
         this.writeThreshold = 32 * 1024;
         this.pushEnabled = true; // SPEC: by default, push is enabled.
+        this.frameScheduler = new FrameScheduler.Weighted();
         addBean(flowControl);
         addBean(flusher);
     }
@@ -205,6 +208,35 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         this.writeThreshold = writeThreshold;
     }
 
+    @ManagedAttribute("The scheduler of DATA frames")
+    public FrameScheduler getFrameScheduler()
+    {
+        return frameScheduler;
+    }
+
+    public void setFrameScheduler(FrameScheduler frameScheduler)
+    {
+        this.frameScheduler = Objects.requireNonNull(frameScheduler);
+    }
+
+    @ManagedAttribute(value = "The number of frames queued for the flusher", readonly = true)
+    public int getFrameQueueSize()
+    {
+        return flusher.getFrameQueueSize();
+    }
+
+    @ManagedAttribute(value = "The number of frames pending in the flusher after its last pass", readonly = true)
+    public int getPendingFrameQueueSize()
+    {
+        return flusher.getPendingFrameQueueSize();
+    }
+
+    @ManagedAttribute(value = "The maximum number of frames queued for the flusher", readonly = true)
+    public int getMaxFrameQueueSize()
+    {
+        return flusher.getMaxFrameQueueSize();
+    }
+
     public EndPoint getEndPoint()
     {
         return endPoint;
@@ -303,6 +335,10 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
     {
         if (LOG.isDebugEnabled())
             LOG.debug("Received {} on {}", frame, this);
+        // Only the weight is used to schedule DATA frames, see FrameScheduler.
+        IStream stream = getStream(frame.getStreamId());
+        if (stream != null)
+            stream.setWeight(frame.getWeight());
     }
 
     @Override
@@ -910,6 +946,36 @@ public abstract class HTTP2Session extends ContainerLifeCycle implements ISessio
         return pushEnabled;
     }
 
+    @ManagedAttribute(value = "The number of header fields HPACK encoded", readonly = true)
+    public long getHpackEncodedFields()
+    {
+        return generator.getHpackEncoder().getEncodedFields();
+    }
+
+    @ManagedAttribute(value = "The number of header fields HPACK encoded as table references", readonly = true)
+    public long getHpackIndexedFields()
+    {
+        return generator.getHpackEncoder().getIndexedFields();
+    }
+
+    @ManagedAttribute(value = "The number of header bytes before HPACK encoding", readonly = true)
+    public long getHpackUncompressedBytes()
+    {
+        return generator.getHpackEncoder().getUncompressedBytes();
+    }
+
+    @ManagedAttribute(value = "The number of header bytes after HPACK encoding", readonly = true)
+    public long getHpackEncodedBytes()
+    {
+        return generator.getHpackEncoder().getEncodedBytes();
+    }
+
+    @ManagedAttribute(value = "The ratio of HPACK encoded header bytes to uncompressed header bytes", readonly = true)
+    public double getHpackCompressionRatio()
+    {
+        return generator.getHpackEncoder().getCompressionRatio();
+    }
+
     /**
      * <p>This method is called when the TCP FIN is received from the remote peer.</p>
      *
@@ -36,6 +36,7 @@ import org.eclipse.jetty.http2.frames.DataFrame;
 import org.eclipse.jetty.http2.frames.FailureFrame;
 import org.eclipse.jetty.http2.frames.Frame;
 import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PriorityFrame;
 import org.eclipse.jetty.http2.frames.PushPromiseFrame;
 import org.eclipse.jetty.http2.frames.ResetFrame;
 import org.eclipse.jetty.http2.frames.WindowUpdateFrame;
@@ -68,6 +69,7 @@ public class HTTP2Stream extends IdleTimeout implements IStream, Callback, Dumpa
     private Listener listener;
     private long dataLength;
     private boolean committed;
+    private volatile int weight = DEFAULT_WEIGHT;
 
     public HTTP2Stream(Scheduler scheduler, ISession session, int streamId, boolean local)
     {
@@ -350,6 +352,9 @@ public class HTTP2Stream extends IdleTimeout implements IStream, Callback, Dumpa
 
     private void onHeaders(HeadersFrame frame, Callback callback)
     {
+        PriorityFrame priority = frame.getPriority();
+        if (priority != null)
+            setWeight(priority.getWeight());
         MetaData metaData = frame.getMetaData();
         if (metaData.isRequest() || metaData.isResponse())
         {
@@ -561,6 +566,18 @@ public class HTTP2Stream extends IdleTimeout implements IStream, Callback, Dumpa
         return recvWindow.get();
     }
 
+    @Override
+    public int getWeight()
+    {
+        return weight;
+    }
+
+    @Override
+    public void setWeight(int weight)
+    {
+        this.weight = Math.max(1, Math.min(256, weight));
+    }
+
     @Override
     public int updateSendWindow(int delta)
     {
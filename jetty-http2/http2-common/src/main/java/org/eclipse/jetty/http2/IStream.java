@@ -39,6 +39,11 @@ import org.eclipse.jetty.util.Callback;
  */
 public interface IStream extends Stream, Attachable, Closeable
 {
+    /**
+     * <p>The weight of streams that have no priority information, as specified by RFC 7540, section 5.3.5.</p>
+     */
+    int DEFAULT_WEIGHT = 16;
+
     /**
      * @return whether this stream is local or remote
      */
@@ -126,6 +131,17 @@ public interface IStream extends Stream, Attachable, Closeable
      */
     boolean isResetOrFailed();
 
+    /**
+     * @return the weight of this stream, from 1 to 256, as specified by the remote peer
+     * @see #DEFAULT_WEIGHT
+     */
+    int getWeight();
+
+    /**
+     * @param weight the weight of this stream, from 1 to 256
+     */
+    void setWeight(int weight);
+
     /**
      * Marks this stream as committed.
      *
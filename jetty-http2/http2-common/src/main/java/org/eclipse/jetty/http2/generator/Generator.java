@@ -66,6 +66,11 @@ public class Generator
         return byteBufferPool;
     }
 
+    public HpackEncoder getHpackEncoder()
+    {
+        return hpackEncoder;
+    }
+
     public void setValidateHpackEncoding(boolean validateEncoding)
     {
         hpackEncoder.setValidateEncoding(validateEncoding);
@@ -0,0 +1,176 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.jetty.http2.api.Session;
+import org.eclipse.jetty.http2.frames.DataFrame;
+import org.eclipse.jetty.http2.frames.Frame;
+import org.eclipse.jetty.http2.frames.FrameType;
+import org.eclipse.jetty.http2.frames.HeadersFrame;
+import org.eclipse.jetty.http2.frames.PriorityFrame;
+import org.eclipse.jetty.http2.frames.PushPromiseFrame;
+import org.eclipse.jetty.http2.generator.Generator;
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class HTTP2FlusherTest
+{
+    private static final int CONTENT_LENGTH = 512 * 1024;
+
+    private ScheduledExecutorScheduler scheduler;
+    private ByteArrayEndPoint endPoint;
+    private HTTP2Session session;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        scheduler = new ScheduledExecutorScheduler();
+        scheduler.start();
+        // A small output buffer keeps the writes pending until the output is taken.
+        endPoint = new ByteArrayEndPoint(scheduler, 0, BufferUtil.EMPTY_BUFFER, BufferUtil.allocate(1024));
+        session = new HTTP2Session(scheduler, endPoint, new Generator(new MappedByteBufferPool()), new Session.Listener.Adapter(), new SimpleFlowControlStrategy(), 2)
+        {
+            @Override
+            public void onHeaders(HeadersFrame frame)
+            {
+            }
+
+            @Override
+            public void onPushPromise(PushPromiseFrame frame)
+            {
+            }
+        };
+        session.updateSendWindow(Integer.MAX_VALUE / 2);
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        scheduler.stop();
+    }
+
+    @Test
+    public void testHeavierStreamGetsLargerShare()
+    {
+        IStream light = newStream(1);
+        IStream heavy = newStream(3);
+        session.onPriority(new PriorityFrame(heavy.getId(), 0, 256, false));
+        assertEquals(256, heavy.getWeight());
+        assertEquals(IStream.DEFAULT_WEIGHT, light.getWeight());
+
+        // The light stream is queued first, yet the heavy stream completes first.
+        long[] dataBytes = writeAndCount(light, heavy);
+        assertEquals(CONTENT_LENGTH, dataBytes[heavy.getId()]);
+        assertThat(dataBytes[light.getId()], lessThan(CONTENT_LENGTH / 4L));
+    }
+
+    @Test
+    public void testRoundRobinIgnoresWeights()
+    {
+        session.setFrameScheduler(FrameScheduler.ROUND_ROBIN);
+        IStream light = newStream(1);
+        IStream heavy = newStream(3);
+        heavy.setWeight(256);
+
+        long[] dataBytes = writeAndCount(light, heavy);
+        assertEquals(CONTENT_LENGTH, dataBytes[heavy.getId()]);
+        assertThat(dataBytes[light.getId()], greaterThan(CONTENT_LENGTH / 2L));
+    }
+
+    @Test
+    public void testLargeFramesOfLowWeightStreamDoNotSpin()
+    {
+        // A stream with weight 1 gains a single byte of credit per pass,
+        // while each of its DATA frames spends the max frame size.
+        AtomicInteger passes = new AtomicInteger();
+        FrameScheduler weighted = new FrameScheduler.Weighted(16);
+        session.setFrameScheduler(stream ->
+        {
+            passes.incrementAndGet();
+            return weighted.getQuantum(stream);
+        });
+        IStream light = newStream(1);
+        light.setWeight(1);
+        assertEquals(1, session.getFrameScheduler().getQuantum(light));
+        passes.set(0);
+        IStream other = newStream(3);
+
+        long[] dataBytes = writeAndCount(light, other);
+        assertEquals(CONTENT_LENGTH, dataBytes[other.getId()]);
+
+        // Passes that write nothing are skipped, rather than
+        // run until the deficit of the light stream is paid back.
+        int frames = CONTENT_LENGTH / Frame.DEFAULT_MAX_LENGTH;
+        assertThat(passes.get(), lessThan(16 * frames));
+    }
+
+    private IStream newStream(int streamId)
+    {
+        IStream stream = session.createRemoteStream(streamId);
+        stream.updateSendWindow(Integer.MAX_VALUE / 2);
+        return stream;
+    }
+
+    /**
+     * @return the DATA bytes written for each stream id, until the second stream is complete
+     */
+    private long[] writeAndCount(IStream first, IStream second)
+    {
+        session.data(first, Callback.NOOP, new DataFrame(first.getId(), ByteBuffer.allocate(CONTENT_LENGTH), true));
+        session.data(second, Callback.NOOP, new DataFrame(second.getId(), ByteBuffer.allocate(CONTENT_LENGTH), true));
+
+        long[] dataBytes = new long[4];
+        ByteBuffer output = ByteBuffer.allocate(4 * CONTENT_LENGTH);
+        while (dataBytes[second.getId()] < CONTENT_LENGTH)
+        {
+            ByteBuffer taken = endPoint.takeOutput();
+            assertThat(taken.remaining(), greaterThan(0));
+            output.put(taken);
+            // Count the complete frames.
+            output.flip();
+            while (output.remaining() >= 9)
+            {
+                int length = (output.getShort(output.position()) & 0xFFFF) << 8 | (output.get(output.position() + 2) & 0xFF);
+                if (output.remaining() < 9 + length)
+                    break;
+                int type = output.get(output.position() + 3);
+                int streamId = output.getInt(output.position() + 5) & 0x7F_FF_FF_FF;
+                if (type == FrameType.DATA.getType())
+                    dataBytes[streamId] += length;
+                output.position(output.position() + 9 + length);
+            }
+            output.compact();
+        }
+        return dataBytes;
+    }
+}
@@ -42,6 +42,7 @@ public class HpackDecoder
     private final HpackContext _context;
     private final MetaDataBuilder _builder;
     private int _localMaxDynamicTableSize;
+    private byte[] _huffman = new byte[256];
 
     /**
      * @param localMaxDynamicTableSize The maximum allowed size of the local dynamic header field table.
@@ -173,7 +174,7 @@ public class HpackDecoder
                     int length = NBitInteger.decode(buffer, 7);
                     _builder.checkSize(length, huffmanName);
                     if (huffmanName)
-                        name = Huffman.decode(buffer, length);
+                        name = huffmanDecode(buffer, length);
                     else
                         name = toASCIIString(buffer, length);
                     check:
@@ -214,7 +215,7 @@ public class HpackDecoder
                 int length = NBitInteger.decode(buffer, 7);
                 _builder.checkSize(length, huffmanValue);
                 if (huffmanValue)
-                    value = Huffman.decode(buffer, length);
+                    value = huffmanDecode(buffer, length);
                 else
                     value = toASCIIString(buffer, length);
 
@@ -277,6 +278,15 @@ public class HpackDecoder
         return _builder.build();
     }
 
+    private String huffmanDecode(ByteBuffer buffer, int length) throws HpackException.CompressionException
+    {
+        // Decode into a reusable array, as the size of the header block has already been checked.
+        int needed = Huffman.maxDecodedLength(length);
+        if (_huffman.length < needed)
+            _huffman = new byte[Math.max(needed, 2 * _huffman.length)];
+        return Huffman.toString(_huffman, Huffman.decode(buffer, length, _huffman));
+    }
+
     public static String toASCIIString(ByteBuffer buffer, int length)
     {
         StringBuilder builder = new StringBuilder(length);
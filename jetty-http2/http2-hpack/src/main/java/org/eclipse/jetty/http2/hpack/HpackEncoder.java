@@ -22,8 +22,11 @@ import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.EnumMap;
 import java.util.EnumSet;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
@@ -36,11 +39,31 @@ import org.eclipse.jetty.http.MetaData;
 import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http2.hpack.HpackContext.Entry;
 import org.eclipse.jetty.http2.hpack.HpackContext.StaticEntry;
+import org.eclipse.jetty.util.FrequencySketch;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.TypeUtil;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 
+/**
+ * <p>Encodes HTTP fields into HPACK header blocks.</p>
+ * <p>The encoder decides for each literal field whether to add it to the dynamic table.
+ * When {@link #setAdaptiveIndexing(boolean) adaptive indexing} is enabled, which it is not
+ * by default, the decision takes into
+ * account how often the field has been seen recently, estimated by a {@link FrequencySketch},
+ * and how often fields of the same header have been hits in the dynamic table, so that
+ * fields whose values change at every request do not evict fields that repeat:</p>
+ * <ul>
+ * <li>a known header whose insertions rarely result in hits is indexed only
+ * when the same field has been seen before;</li>
+ * <li>a field with a custom name already in the table is indexed
+ * when the same field has been seen before.</li>
+ * </ul>
+ * <p>With adaptive indexing, the Huffman encoding of values that are frequently encoded
+ * as literals is cached.</p>
+ * <p>The encoder keeps statistics of the encoded fields, that can be used to compute
+ * the compression ratio achieved.</p>
+ */
 public class HpackEncoder
 {
     private static final Logger LOG = Log.getLogger(HpackEncoder.class);
@@ -95,8 +118,27 @@ public class HpackEncoder
         }
     }
 
+    private static final int CHURN_SAMPLES = 16;
+    private static final int CHURN_AGING = 256;
+    private static final int HUFFMAN_CACHE_FREQUENCY = 3;
+    private static final int HUFFMAN_CACHE_SIZE = 64;
+
     private final HpackContext _context;
     private final boolean _debug;
+    private final FrequencySketch _sketch = new FrequencySketch(512);
+    private final int[] _headerInsertions = new int[HttpHeader.values().length];
+    private final int[] _headerHits = new int[HttpHeader.values().length];
+    private final Map<String, byte[]> _huffmanCache = new HashMap<>();
+    private final LongAdder _encodedFields = new LongAdder();
+    private final LongAdder _indexedFields = new LongAdder();
+    private final LongAdder _insertedFields = new LongAdder();
+    private final LongAdder _uncompressedBytes = new LongAdder();
+    private final LongAdder _encodedBytes = new LongAdder();
+    private int _blockFields;
+    private int _blockIndexed;
+    private int _blockInserted;
+    private int _blockUncompressed;
+    private boolean _adaptiveIndexing;
     private int _remoteMaxDynamicTableSize;
     private int _localMaxDynamicTableSize;
     private int _maxHeaderListSize;
@@ -162,6 +204,80 @@ public class HpackEncoder
         _validateEncoding = validateEncoding;
     }
 
+    /**
+     * @return whether the decision to index literal fields depends on their observed repetition
+     */
+    public boolean isAdaptiveIndexing()
+    {
+        return _adaptiveIndexing;
+    }
+
+    /**
+     * @param adaptiveIndexing whether the decision to index literal fields depends on their observed repetition
+     */
+    public void setAdaptiveIndexing(boolean adaptiveIndexing)
+    {
+        _adaptiveIndexing = adaptiveIndexing;
+    }
+
+    /**
+     * @return the number of fields encoded
+     */
+    public long getEncodedFields()
+    {
+        return _encodedFields.sum();
+    }
+
+    /**
+     * @return the number of fields encoded as a reference to the static or dynamic table
+     */
+    public long getIndexedFields()
+    {
+        return _indexedFields.sum();
+    }
+
+    /**
+     * @return the number of fields added to the dynamic table
+     */
+    public long getInsertedFields()
+    {
+        return _insertedFields.sum();
+    }
+
+    /**
+     * @return the number of bytes that the encoded fields would take as HTTP/1 text
+     */
+    public long getUncompressedBytes()
+    {
+        return _uncompressedBytes.sum();
+    }
+
+    /**
+     * @return the number of bytes of the encoded header blocks
+     */
+    public long getEncodedBytes()
+    {
+        return _encodedBytes.sum();
+    }
+
+    /**
+     * @return the ratio between the encoded bytes and the uncompressed bytes, or 1 if nothing has been encoded
+     */
+    public double getCompressionRatio()
+    {
+        long uncompressed = getUncompressedBytes();
+        return uncompressed == 0 ? 1.0 : (double)getEncodedBytes() / uncompressed;
+    }
+
+    public void resetStatistics()
+    {
+        _encodedFields.reset();
+        _indexedFields.reset();
+        _insertedFields.reset();
+        _uncompressedBytes.reset();
+        _encodedBytes.reset();
+    }
+
     public void encode(ByteBuffer buffer, MetaData metadata) throws HpackException
     {
         try
@@ -263,6 +379,12 @@ public class HpackEncoder
                     LOG.debug("metadata={}", metadata);
             }
 
+            _encodedFields.add(_blockFields);
+            _indexedFields.add(_blockIndexed);
+            _insertedFields.add(_blockInserted);
+            _uncompressedBytes.add(_blockUncompressed);
+            _encodedBytes.add(buffer.position() - pos);
+
             if (LOG.isDebugEnabled())
                 LOG.debug(String.format("CtxTbl[%x] encoded %d octets", _context.hashCode(), buffer.position() - pos));
         }
@@ -276,6 +398,14 @@ public class HpackEncoder
             failure.initCause(x);
             throw failure;
         }
+        finally
+        {
+            // A failed block must not count in the statistics of the next one.
+            _blockFields = 0;
+            _blockIndexed = 0;
+            _blockInserted = 0;
+            _blockUncompressed = 0;
+        }
     }
 
     public void encodeMaxDynamicTableSize(ByteBuffer buffer, int maxDynamicTableSize)
@@ -294,6 +424,8 @@ public class HpackEncoder
 
         int fieldSize = field.getName().length() + field.getValue().length();
         _headerListSize += fieldSize + 32;
+        _blockFields++;
+        _blockUncompressed += fieldSize + 4;
 
         final int p = _debug ? buffer.position() : -1;
 
@@ -303,6 +435,11 @@ public class HpackEncoder
         Entry entry = _context.get(field);
         if (entry != null)
         {
+            _blockIndexed++;
+            HttpHeader header = field.getHeader();
+            if (header != null && !entry.isStatic())
+                _headerHits[header.ordinal()]++;
+
             // This is a known indexed field, send as static or dynamic indexed.
             if (entry.isStatic())
             {
@@ -342,14 +479,15 @@ public class HpackEncoder
                     if (_debug)
                         encoding = indexed ? "PreEncodedIdx" : "PreEncoded";
                 }
-                else if (name == null && fieldSize < _context.getMaxDynamicTableSize())
+                else if (fieldSize < _context.getMaxDynamicTableSize() && (name == null || _adaptiveIndexing && isRepeated(field)))
                 {
                     // unknown name and value that will fit in dynamic table, so let's index
                     // this just in case it is the first time we have seen a custom name or a
-                    // custom field.  Unless the name is once only, this is worthwhile
+                    // custom field.  Unless the name is once only, this is worthwhile.
+                    // A known custom name is indexed only if the value is repeating.
                     indexed = true;
-                    encodeName(buffer, (byte)0x40, 6, field.getName(), null);
-                    encodeValue(buffer, true, field.getValue());
+                    encodeName(buffer, (byte)0x40, 6, field.getName(), name);
+                    encodeValue(buffer, true, field.getValue(), field);
                     if (_debug)
                         encoding = "LitHuffNHuffVIdx";
                 }
@@ -359,7 +497,7 @@ public class HpackEncoder
                     // This is probably a custom field with changing value, so don't index.
                     indexed = false;
                     encodeName(buffer, (byte)0x00, 4, field.getName(), null);
-                    encodeValue(buffer, true, field.getValue());
+                    encodeValue(buffer, true, field.getValue(), field);
                     if (_debug)
                         encoding = "LitHuffNHuffV!Idx";
                 }
@@ -386,7 +524,10 @@ public class HpackEncoder
                     boolean neverIndex = NEVER_INDEX.contains(header);
                     boolean huffman = !DO_NOT_HUFFMAN.contains(header);
                     encodeName(buffer, neverIndex ? (byte)0x10 : (byte)0x00, 4, header.asString(), name);
-                    encodeValue(buffer, huffman, field.getValue());
+                    if (neverIndex)
+                        encodeValue(buffer, huffman, field.getValue());
+                    else
+                        encodeValue(buffer, huffman, field.getValue(), field);
 
                     if (_debug)
                         encoding = "Lit" +
@@ -394,12 +535,14 @@ public class HpackEncoder
                             (huffman ? "HuffV" : "LitV") +
                             (neverIndex ? "!!Idx" : "!Idx");
                 }
-                else if (fieldSize >= _context.getMaxDynamicTableSize() || header == HttpHeader.CONTENT_LENGTH && !"0".equals(field.getValue()))
+                else if (fieldSize >= _context.getMaxDynamicTableSize() || header == HttpHeader.CONTENT_LENGTH && !"0".equals(field.getValue()) ||
+                    _adaptiveIndexing && isChurning(header) && !isRepeated(field))
                 {
-                    // The field is too large or a non zero content length, so do not index.
+                    // The field is too large or a non zero content length, or the values of
+                    // this header rarely repeat and this value has not been seen, so do not index.
                     indexed = false;
                     encodeName(buffer, (byte)0x00, 4, header.asString(), name);
-                    encodeValue(buffer, true, field.getValue());
+                    encodeValue(buffer, true, field.getValue(), field);
                     if (_debug)
                         encoding = "Lit" +
                             ((name == null) ? "HuffN" : "IdxNS" + (1 + NBitInteger.octectsNeeded(4, _context.index(name)))) +
@@ -411,7 +554,7 @@ public class HpackEncoder
                     indexed = true;
                     boolean huffman = !DO_NOT_HUFFMAN.contains(header);
                     encodeName(buffer, (byte)0x40, 6, header.asString(), name);
-                    encodeValue(buffer, huffman, field.getValue());
+                    encodeValue(buffer, huffman, field.getValue(), field);
                     if (_debug)
                         encoding = ((name == null) ? "LitHuffN" : ("LitIdxN" + (name.isStatic() ? "S" : "") + (1 + NBitInteger.octectsNeeded(6, _context.index(name))))) +
                             (huffman ? "HuffVIdx" : "LitVIdx");
@@ -420,7 +563,13 @@ public class HpackEncoder
 
             // If we want the field referenced, then we add it to our table and reference set.
             if (indexed)
+            {
                 _context.add(field);
+                _blockInserted++;
+                if (header != null)
+                    inserted(header);
+            }
+            _sketch.increment(field.hashCode());
         }
 
         if (_debug)
@@ -449,6 +598,68 @@ public class HpackEncoder
         }
     }
 
+    /**
+     * @param field the field to check
+     * @return whether the field has been encoded as a literal recently
+     */
+    private boolean isRepeated(HttpField field)
+    {
+        return _sketch.frequency(field.hashCode()) > 0;
+    }
+
+    /**
+     * @param header the header to check
+     * @return whether few insertions of fields with the given header result in hits
+     */
+    private boolean isChurning(HttpHeader header)
+    {
+        int insertions = _headerInsertions[header.ordinal()];
+        return insertions >= CHURN_SAMPLES && _headerHits[header.ordinal()] * 8 < insertions;
+    }
+
+    private void inserted(HttpHeader header)
+    {
+        int o = header.ordinal();
+        if (++_headerInsertions[o] >= CHURN_AGING)
+        {
+            _headerInsertions[o] >>>= 1;
+            _headerHits[o] >>>= 1;
+        }
+    }
+
+    /**
+     * <p>Encodes a value, using the cached Huffman encoding if the field is frequently encoded as a literal.</p>
+     */
+    private void encodeValue(ByteBuffer buffer, boolean huffman, String value, HttpField field)
+    {
+        if (!huffman || !_adaptiveIndexing)
+        {
+            encodeValue(buffer, huffman, value);
+            return;
+        }
+
+        byte[] encoded = _huffmanCache.get(value);
+        if (encoded != null)
+        {
+            buffer.put(encoded);
+            return;
+        }
+
+        int position = buffer.position();
+        encodeValue(buffer, true, value);
+        if (_sketch.frequency(field.hashCode()) >= HUFFMAN_CACHE_FREQUENCY)
+        {
+            if (_huffmanCache.size() >= HUFFMAN_CACHE_SIZE)
+                _huffmanCache.clear();
+            encoded = new byte[buffer.position() - position];
+            for (int i = 0; i < encoded.length; ++i)
+            {
+                encoded[i] = buffer.get(position + i);
+            }
+            _huffmanCache.put(value, encoded);
+        }
+    }
+
     static void encodeValue(ByteBuffer buffer, boolean huffman, String value)
     {
         if (huffman)
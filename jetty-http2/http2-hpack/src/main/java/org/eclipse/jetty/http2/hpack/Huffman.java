@@ -19,6 +19,7 @@
 package org.eclipse.jetty.http2.hpack;
 
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.eclipse.jetty.util.Utf8StringBuilder;
 
@@ -291,13 +292,22 @@ public class Huffman
     static final int[][] LCCODES = new int[CODES.length][];
     static final char EOS = 256;
 
-    // Huffman decode tree stored in a flattened char array for good 
-    // locality of reference.
-    static final char[] tree;
-    static final char[] rowsym;
-    static final byte[] rowbits;
-
-    // Build the Huffman lookup tree and LC TABLE
+    // The decoder is a state machine whose states are the internal nodes of the
+    // Huffman tree, the root being state 0.  For each state and each input octet,
+    // DECODE holds the state reached after consuming the 8 bits of the octet, the
+    // (at most 2, since codes are at least 5 bits long) symbols decoded on the way,
+    // and whether the state reached is a valid end of the input.
+    private static final int[] DECODE;
+    private static final int DECODE_STATE_MASK = 0xFF;
+    private static final int DECODE_SYMBOL_SHIFT = 8;
+    private static final int DECODE_SYMBOL_BITS = 9;
+    private static final int DECODE_SYMBOL_MASK = (1 << DECODE_SYMBOL_BITS) - 1;
+    private static final int DECODE_COUNT_SHIFT = DECODE_SYMBOL_SHIFT + 2 * DECODE_SYMBOL_BITS;
+    private static final int DECODE_EOS = 1 << 28;
+    private static final int DECODE_ACCEPT = 1 << 29;
+    private static final int DECODE_BAD_PADDING = 1 << 30;
+
+    // Build the LC TABLE and the decoder state machine
     static
     {
         System.arraycopy(CODES, 0, LCCODES, 0, CODES.length);
@@ -306,49 +316,72 @@ public class Huffman
             LCCODES[i] = LCCODES['a' + i - 'A'];
         }
 
-        int r = 0;
-        for (int i = 0; i < CODES.length; i++)
-        {
-            r += (CODES[i][1] + 7) / 8;
-        }
-        tree = new char[r * 256];
-        rowsym = new char[r];
-        rowbits = new byte[r];
-
-        r = 0;
+        // Build the binary tree: positive children are internal nodes,
+        // negative children are the leaves of symbol -(child + 1).
+        int[][] children = new int[CODES.length][2];
+        int[] depth = new int[CODES.length];
+        boolean[] ones = new boolean[CODES.length];
+        ones[0] = true;
+        int nodes = 1;
         for (int sym = 0; sym < CODES.length; sym++)
         {
             int code = CODES[sym][0];
             int len = CODES[sym][1];
-
-            int current = 0;
-
-            while (len > 8)
+            int node = 0;
+            for (int i = len; i-- > 0; )
             {
-                len -= 8;
-                int i = ((code >>> len) & 0xFF);
-
-                int t = current * 256 + i;
-                current = tree[t];
-                if (current == 0)
+                int bit = (code >>> i) & 1;
+                if (i == 0)
                 {
-                    tree[t] = (char)++r;
-                    current = r;
+                    children[node][bit] = -(sym + 1);
+                }
+                else
+                {
+                    if (children[node][bit] == 0)
+                    {
+                        int child = nodes++;
+                        children[node][bit] = child;
+                        depth[child] = depth[node] + 1;
+                        ones[child] = ones[node] && bit == 1;
+                    }
+                    node = children[node][bit];
                 }
             }
+        }
+        if (nodes > DECODE_STATE_MASK + 1)
+            throw new IllegalStateException("Huffman tree too large");
 
-            int terminal = ++r;
-            rowsym[r] = (char)sym;
-            int b = len & 0x07;
-            int terminalBits = b == 0 ? 8 : b;
-
-            rowbits[r] = (byte)terminalBits;
-            int shift = 8 - len;
-            int start = current * 256 + ((code << shift) & 0xFF);
-            int end = start + (1 << shift);
-            for (int i = start; i < end; i++)
+        DECODE = new int[nodes * 256];
+        for (int state = 0; state < nodes; state++)
+        {
+            for (int octet = 0; octet < 256; octet++)
             {
-                tree[i] = (char)terminal;
+                int node = state;
+                int count = 0;
+                int entry = 0;
+                for (int i = 8; i-- > 0; )
+                {
+                    int child = children[node][(octet >>> i) & 1];
+                    if (child >= 0)
+                    {
+                        node = child;
+                        continue;
+                    }
+                    int sym = -(child + 1);
+                    if (sym == EOS)
+                    {
+                        entry |= DECODE_EOS;
+                        break;
+                    }
+                    entry |= sym << (DECODE_SYMBOL_SHIFT + count * DECODE_SYMBOL_BITS);
+                    count++;
+                    node = 0;
+                }
+                entry |= node | count << DECODE_COUNT_SHIFT;
+                // Padding must be the most significant bits of the EOS code, so it must be all ones and shorter than 8 bits.
+                if (depth[node] < 8)
+                    entry |= ones[node] ? DECODE_ACCEPT : DECODE_BAD_PADDING;
+                DECODE[state * 256 + octet] = entry;
             }
         }
     }
@@ -360,68 +393,100 @@ public class Huffman
 
     public static String decode(ByteBuffer buffer, int length) throws HpackException.CompressionException
     {
-        Utf8StringBuilder utf8 = new Utf8StringBuilder(length * 2);
-        int node = 0;
-        int current = 0;
-        int bits = 0;
+        byte[] octets = new byte[maxDecodedLength(length)];
+        return toString(octets, decode(buffer, length, octets));
+    }
 
-        for (int i = 0; i < length; i++)
+    /**
+     * @param length the number of Huffman encoded octets
+     * @return the max number of octets that the given number of encoded octets can decode to
+     */
+    public static int maxDecodedLength(int length)
+    {
+        // The shortest code is 5 bits long.
+        return length * 8 / 5;
+    }
+
+    /**
+     * <p>Decodes Huffman encoded octets into the given array, that can be reused across calls.</p>
+     *
+     * @param buffer the buffer to read the encoded octets from
+     * @param length the number of encoded octets to read
+     * @param octets the array to decode into, that must be at least {@link #maxDecodedLength(int)} long
+     * @return the number of decoded octets
+     * @throws HpackException.CompressionException if the encoded octets are invalid
+     */
+    public static int decode(ByteBuffer buffer, int length, byte[] octets) throws HpackException.CompressionException
+    {
+        int state = 0;
+        int entry = DECODE_ACCEPT;
+        int decoded = 0;
+
+        if (buffer.hasArray())
         {
-            int b = buffer.get() & 0xFF;
-            current = (current << 8) | b;
-            bits += 8;
-            while (bits >= 8)
+            byte[] array = buffer.array();
+            int offset = buffer.arrayOffset() + buffer.position();
+            for (int i = 0; i < length; i++)
             {
-                int c = (current >>> (bits - 8)) & 0xFF;
-                node = tree[node * 256 + c];
-                if (rowbits[node] != 0)
-                {
-                    if (rowsym[node] == EOS)
-                        throw new HpackException.CompressionException("EOS in content");
-
-                    // terminal node
-                    utf8.append((byte)(0xFF & rowsym[node]));
-                    bits -= rowbits[node];
-                    node = 0;
-                }
-                else
-                {
-                    // non-terminal node
-                    bits -= 8;
-                }
+                entry = DECODE[(state << 8) | (array[offset + i] & 0xFF)];
+                if ((entry & DECODE_EOS) != 0)
+                    throw new HpackException.CompressionException("EOS in content");
+                decoded = emit(entry, octets, decoded);
+                state = entry & DECODE_STATE_MASK;
             }
+            buffer.position(buffer.position() + length);
         }
-
-        while (bits > 0)
+        else
         {
-            int c = (current << (8 - bits)) & 0xFF;
-            int lastNode = node;
-            node = tree[node * 256 + c];
-
-            if (rowbits[node] == 0 || rowbits[node] > bits)
+            for (int i = 0; i < length; i++)
             {
-                int requiredPadding = 0;
-                for (int i = 0; i < bits; i++)
-                {
-                    requiredPadding = (requiredPadding << 1) | 1;
-                }
-
-                if ((c >> (8 - bits)) != requiredPadding)
-                    throw new HpackException.CompressionException("Incorrect padding");
-
-                node = lastNode;
-                break;
+                entry = DECODE[(state << 8) | (buffer.get() & 0xFF)];
+                if ((entry & DECODE_EOS) != 0)
+                    throw new HpackException.CompressionException("EOS in content");
+                decoded = emit(entry, octets, decoded);
+                state = entry & DECODE_STATE_MASK;
             }
-
-            utf8.append((byte)(0xFF & rowsym[node]));
-            bits -= rowbits[node];
-            node = 0;
         }
 
-        if (node != 0)
+        if (state != 0 && (entry & DECODE_ACCEPT) == 0)
+        {
+            if ((entry & DECODE_BAD_PADDING) != 0)
+                throw new HpackException.CompressionException("Incorrect padding");
             throw new HpackException.CompressionException("Bad termination");
+        }
 
-        return utf8.toString();
+        return decoded;
+    }
+
+    private static int emit(int entry, byte[] octets, int decoded)
+    {
+        int count = entry >>> DECODE_COUNT_SHIFT & 0x3;
+        if (count > 0)
+        {
+            octets[decoded++] = (byte)(entry >>> DECODE_SYMBOL_SHIFT);
+            if (count > 1)
+                octets[decoded++] = (byte)(entry >>> (DECODE_SYMBOL_SHIFT + DECODE_SYMBOL_BITS));
+        }
+        return decoded;
+    }
+
+    /**
+     * @param octets the decoded octets
+     * @param length the number of decoded octets
+     * @return the string of the UTF-8 decoded octets
+     */
+    static String toString(byte[] octets, int length)
+    {
+        for (int i = 0; i < length; i++)
+        {
+            if (octets[i] < 0)
+            {
+                Utf8StringBuilder utf8 = new Utf8StringBuilder(length);
+                utf8.append(octets, 0, length);
+                return utf8.toString();
+            }
+        }
+        return new String(octets, 0, length, StandardCharsets.ISO_8859_1);
     }
 
     public static int octetsNeeded(String s)
@@ -32,6 +32,7 @@ import org.junit.jupiter.api.Test;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.equalTo;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 public class HpackEncoderTest
 {
@@ -311,4 +312,98 @@ public class HpackEncoderTest
         assertThat(context.getMaxDynamicTableSize(), Matchers.is(50));
         assertThat(context.size(), Matchers.is(1));
     }
+
+    @Test
+    public void testAdaptiveIndexingOfChurningHeader() throws Exception
+    {
+        HpackEncoder encoder = new HpackEncoder(64 * 1024, 64 * 1024);
+        encoder.setAdaptiveIndexing(true);
+        HpackDecoder decoder = new HpackDecoder(64 * 1024, 64 * 1024);
+        HpackContext ctx = encoder.getHpackContext();
+
+        // Referer values that never repeat are indexed until they are found to churn.
+        for (int i = 0; i < 20; i++)
+        {
+            HttpFields fields = new HttpFields();
+            fields.put(HttpHeader.REFERER, "http://localhost/page/" + i);
+            assertEquals(fields, encodeDecode(encoder, decoder, fields));
+        }
+        int entries = ctx.size();
+        assertThat(entries, Matchers.lessThan(20));
+
+        // A churning value that is seen again is indexed.
+        HttpFields fields = new HttpFields();
+        fields.put(HttpHeader.REFERER, "http://localhost/page/19");
+        assertEquals(fields, encodeDecode(encoder, decoder, fields));
+        assertEquals(entries + 1, ctx.size());
+
+        // Without adaptive indexing, every value is indexed.
+        encoder.setAdaptiveIndexing(false);
+        fields.put(HttpHeader.REFERER, "http://localhost/page/20");
+        assertEquals(fields, encodeDecode(encoder, decoder, fields));
+        assertEquals(entries + 2, ctx.size());
+    }
+
+    @Test
+    public void testAdaptiveIndexingOfRepeatedCustomField() throws Exception
+    {
+        HpackEncoder encoder = new HpackEncoder();
+        encoder.setAdaptiveIndexing(true);
+        HpackDecoder decoder = new HpackDecoder(4096, 8192);
+        HpackContext ctx = encoder.getHpackContext();
+
+        HttpFields fields = new HttpFields();
+        fields.put("x-tenant", "a");
+        assertEquals(fields, encodeDecode(encoder, decoder, fields));
+        assertEquals(1, ctx.size());
+
+        // Known name with a new value is not indexed.
+        fields.put("x-tenant", "b");
+        assertEquals(fields, encodeDecode(encoder, decoder, fields));
+        assertEquals(1, ctx.size());
+
+        // The same value repeated is indexed.
+        assertEquals(fields, encodeDecode(encoder, decoder, fields));
+        assertEquals(2, ctx.size());
+
+        // And then sent as a dynamic table reference.
+        assertEquals(fields, encodeDecode(encoder, decoder, fields));
+        assertEquals(2, ctx.size());
+
+        assertEquals(4, encoder.getEncodedFields());
+        assertEquals(1, encoder.getIndexedFields());
+        assertEquals(2, encoder.getInsertedFields());
+        assertThat(encoder.getEncodedBytes(), Matchers.lessThan(encoder.getUncompressedBytes()));
+        assertThat(encoder.getCompressionRatio(), Matchers.lessThan(1.0));
+    }
+
+    @Test
+    public void testFailedBlockIsNotCounted() throws Exception
+    {
+        HpackEncoder encoder = new HpackEncoder();
+
+        HttpFields fields = new HttpFields();
+        fields.put("x-tenant", "a");
+        fields.put("x-other", "b");
+        // Too small for the block.
+        ByteBuffer buffer = BufferUtil.allocate(8);
+        int pos = BufferUtil.flipToFill(buffer);
+        assertThrows(HpackException.SessionException.class, () -> encoder.encode(buffer, new MetaData(HttpVersion.HTTP_2, fields)));
+        BufferUtil.flipToFlush(buffer, pos);
+        assertEquals(0, encoder.getEncodedFields());
+
+        HttpFields other = new HttpFields();
+        other.put("x-tenant", "c");
+        encoder.encode(ByteBuffer.allocate(4096), new MetaData(HttpVersion.HTTP_2, other));
+        assertEquals(1, encoder.getEncodedFields());
+    }
+
+    private static HttpFields encodeDecode(HpackEncoder encoder, HpackDecoder decoder, HttpFields fields) throws Exception
+    {
+        ByteBuffer buffer = BufferUtil.allocate(4096);
+        int pos = BufferUtil.flipToFill(buffer);
+        encoder.encode(buffer, new MetaData(HttpVersion.HTTP_2, fields));
+        BufferUtil.flipToFlush(buffer, pos);
+        return decoder.decode(buffer).getFields();
+    }
 }
@@ -21,11 +21,13 @@ package org.eclipse.jetty.http2.hpack;
 import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.util.Locale;
+import java.util.Random;
 import java.util.stream.Stream;
 
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.TypeUtil;
 import org.hamcrest.Matchers;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -84,4 +86,36 @@ public class HuffmanTest
         assertThrows(BufferOverflowException.class,
             () -> Huffman.encode(BufferUtil.allocate(32), s));
     }
+
+    @Test
+    public void testDecodeAllOctets() throws Exception
+    {
+        Random random = new Random(1234);
+        byte[] decoded = new byte[Huffman.maxDecodedLength(1024)];
+        for (int i = 0; i < 1000; i++)
+        {
+            byte[] bytes = new byte[random.nextInt(256)];
+            random.nextBytes(bytes);
+            if (i < 256)
+                bytes = new byte[]{(byte)i, (byte)i, (byte)i};
+
+            ByteBuffer buffer = BufferUtil.allocate(1024);
+            int pos = BufferUtil.flipToFill(buffer);
+            Huffman.encode(buffer, bytes);
+            BufferUtil.flipToFlush(buffer, pos);
+            int length = buffer.remaining();
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(length);
+            direct.put(buffer.slice()).flip();
+
+            int count = Huffman.decode(buffer, length, decoded);
+            assertEquals(bytes.length, count);
+            assertEquals(BufferUtil.toHexString(ByteBuffer.wrap(bytes)), BufferUtil.toHexString(ByteBuffer.wrap(decoded, 0, count)));
+            assertEquals(0, buffer.remaining());
+
+            count = Huffman.decode(direct, length, decoded);
+            assertEquals(bytes.length, count);
+            assertEquals(0, direct.remaining());
+        }
+    }
 }
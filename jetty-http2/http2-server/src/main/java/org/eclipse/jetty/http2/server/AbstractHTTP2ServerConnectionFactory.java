@@ -28,6 +28,7 @@ import java.util.concurrent.ConcurrentHashMap;
 
 import org.eclipse.jetty.http2.BufferingFlowControlStrategy;
 import org.eclipse.jetty.http2.FlowControlStrategy;
+import org.eclipse.jetty.http2.FrameScheduler;
 import org.eclipse.jetty.http2.HTTP2Connection;
 import org.eclipse.jetty.http2.api.Session;
 import org.eclipse.jetty.http2.api.server.ServerSessionListener;
@@ -62,6 +63,8 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
     private int maxSettingsKeys = SettingsFrame.DEFAULT_MAX_KEYS;
     private RateControl.Factory rateControlFactory = new WindowRateControl.Factory(50);
     private FlowControlStrategy.Factory flowControlStrategyFactory = () -> new BufferingFlowControlStrategy(0.5F);
+    private FrameScheduler frameScheduler = new FrameScheduler.Weighted();
+    private boolean adaptiveHpackIndexing;
     private long streamIdleTimeout;
 
     public AbstractHTTP2ServerConnectionFactory(@Name("config") HttpConfiguration httpConfiguration)
@@ -148,6 +151,31 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         this.flowControlStrategyFactory = flowControlStrategyFactory;
     }
 
+    public FrameScheduler getFrameScheduler()
+    {
+        return frameScheduler;
+    }
+
+    public void setFrameScheduler(FrameScheduler frameScheduler)
+    {
+        this.frameScheduler = frameScheduler;
+    }
+
+    /**
+     * @return whether the HPACK encoder indexes literal fields depending on their observed repetition
+     * @see org.eclipse.jetty.http2.hpack.HpackEncoder#setAdaptiveIndexing(boolean)
+     */
+    @ManagedAttribute("Whether HPACK indexing of literal fields depends on their observed repetition")
+    public boolean isAdaptiveHpackIndexing()
+    {
+        return adaptiveHpackIndexing;
+    }
+
+    public void setAdaptiveHpackIndexing(boolean adaptiveHpackIndexing)
+    {
+        this.adaptiveHpackIndexing = adaptiveHpackIndexing;
+    }
+
     @ManagedAttribute("The stream idle timeout in milliseconds")
     public long getStreamIdleTimeout()
     {
@@ -268,6 +296,7 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         ServerSessionListener listener = newSessionListener(connector, endPoint);
 
         Generator generator = new Generator(connector.getByteBufferPool(), getMaxDynamicTableSize(), getMaxHeaderBlockFragment());
+        generator.getHpackEncoder().setAdaptiveIndexing(isAdaptiveHpackIndexing());
         FlowControlStrategy flowControl = getFlowControlStrategyFactory().newFlowControlStrategy();
         HTTP2ServerSession session = new HTTP2ServerSession(connector.getScheduler(), endPoint, generator, listener, flowControl);
         session.setMaxLocalStreams(getMaxConcurrentStreams());
@@ -282,6 +311,7 @@ public abstract class AbstractHTTP2ServerConnectionFactory extends AbstractConne
         session.setStreamIdleTimeout(streamIdleTimeout);
         session.setInitialSessionRecvWindow(getInitialSessionRecvWindow());
         session.setWriteThreshold(getHttpConfiguration().getOutputBufferSize());
+        session.setFrameScheduler(getFrameScheduler());
 
         ServerParser parser = newServerParser(connector, session, getRateControlFactory().newRateControl(endPoint));
         parser.setMaxFrameLength(getMaxFrameLength());
@@ -0,0 +1,365 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.DumpableCollection;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link ByteBufferPool} that carves direct buffers out of large, pre-allocated direct slabs.</p>
+ * <p>Direct buffers are grouped in power of two size classes, from {@link #getMinCapacity()} to
+ * {@link #getMaxCapacity()}. Each size class allocates direct slabs of {@link #getSlabSize()} bytes
+ * on demand and slices them into buffers of the size class capacity, so that the native memory is
+ * allocated in few large chunks rather than one chunk per buffer.</p>
+ * <p>The total direct memory of the slabs is bounded by {@link #getMaxDirectMemory()}: when it is
+ * reached and a size class has no free buffers, a non pooled buffer is allocated and it is
+ * discarded when released. Slabs are retained for the lifetime of the pool.</p>
+ * <p>Heap buffers and direct buffers larger than the max capacity are not allocated from slabs,
+ * and are instead delegated to another pool.</p>
+ */
+@ManagedObject
+public class ArenaByteBufferPool extends ContainerLifeCycle implements ByteBufferPool
+{
+    private static final Logger LOG = Log.getLogger(ArenaByteBufferPool.class);
+
+    private final AtomicLong _directMemory = new AtomicLong();
+    private final AtomicLong _overflows = new AtomicLong();
+    private final SizeClass[] _sizeClasses;
+    private final ByteBufferPool _delegate;
+    private final int _minCapacity;
+    private final int _maxCapacity;
+    private final int _slabSize;
+    private final long _maxDirectMemory;
+
+    /**
+     * Creates a new ArenaByteBufferPool with a default configuration.
+     */
+    public ArenaByteBufferPool()
+    {
+        this(-1, -1, -1, 0);
+    }
+
+    /**
+     * Creates a new ArenaByteBufferPool with the given configuration.
+     *
+     * @param minCapacity the capacity of the smallest size class, rounded up to a power of two
+     * @param maxCapacity the capacity of the largest size class, rounded up to a power of two
+     * @param slabSize the size in bytes of each slab, at least the max capacity
+     * @param maxDirectMemory the max direct memory in bytes of all the slabs, -1 for unlimited memory or 0 to use default heuristic.
+     */
+    public ArenaByteBufferPool(int minCapacity, int maxCapacity, int slabSize, long maxDirectMemory)
+    {
+        this(minCapacity, maxCapacity, slabSize, maxDirectMemory, new ArrayByteBufferPool());
+    }
+
+    /**
+     * Creates a new ArenaByteBufferPool with the given configuration.
+     *
+     * @param minCapacity the capacity of the smallest size class, rounded up to a power of two
+     * @param maxCapacity the capacity of the largest size class, rounded up to a power of two
+     * @param slabSize the size in bytes of each slab, at least the max capacity
+     * @param maxDirectMemory the max direct memory in bytes of all the slabs, -1 for unlimited memory or 0 to use default heuristic.
+     * @param delegate the pool for heap buffers and for direct buffers larger than the max capacity
+     */
+    public ArenaByteBufferPool(int minCapacity, int maxCapacity, int slabSize, long maxDirectMemory, ByteBufferPool delegate)
+    {
+        _minCapacity = roundUpToPowerOfTwo(minCapacity <= 0 ? 1024 : minCapacity);
+        _maxCapacity = roundUpToPowerOfTwo(maxCapacity <= 0 ? 64 * 1024 : maxCapacity);
+        if (_minCapacity > _maxCapacity)
+            throw new IllegalArgumentException("minCapacity > maxCapacity");
+        _slabSize = Math.max(_maxCapacity, slabSize <= 0 ? 1024 * 1024 : slabSize);
+        _maxDirectMemory = (maxDirectMemory != 0) ? maxDirectMemory : Runtime.getRuntime().maxMemory() / 4;
+        _delegate = Objects.requireNonNull(delegate);
+
+        int length = Integer.numberOfTrailingZeros(_maxCapacity) - Integer.numberOfTrailingZeros(_minCapacity) + 1;
+        _sizeClasses = new SizeClass[length];
+        for (int i = 0; i < length; ++i)
+        {
+            _sizeClasses[i] = new SizeClass(_minCapacity << i);
+        }
+        addBean(delegate);
+    }
+
+    @ManagedAttribute("The capacity of the smallest size class")
+    public int getMinCapacity()
+    {
+        return _minCapacity;
+    }
+
+    @ManagedAttribute("The capacity of the largest size class")
+    public int getMaxCapacity()
+    {
+        return _maxCapacity;
+    }
+
+    @ManagedAttribute("The size in bytes of each slab")
+    public int getSlabSize()
+    {
+        return _slabSize;
+    }
+
+    @ManagedAttribute("The max num of bytes that can be allocated in slabs")
+    public long getMaxDirectMemory()
+    {
+        return _maxDirectMemory;
+    }
+
+    @ManagedAttribute("The bytes allocated in slabs")
+    public long getDirectMemory()
+    {
+        return _directMemory.get();
+    }
+
+    @ManagedAttribute("The bytes of the slab buffers in use")
+    public long getLiveBytes()
+    {
+        return Arrays.stream(_sizeClasses).mapToLong(SizeClass::getLiveBytes).sum();
+    }
+
+    @ManagedAttribute("The bytes of the slab buffers available for reuse")
+    public long getFreeBytes()
+    {
+        return Arrays.stream(_sizeClasses).mapToLong(SizeClass::getFreeBytes).sum();
+    }
+
+    @ManagedAttribute("The number of direct buffers allocated outside the slabs because the max direct memory was reached")
+    public long getOverflowCount()
+    {
+        return _overflows.get();
+    }
+
+    /**
+     * @param capacity the capacity of a size class
+     * @return the bytes of the buffers in use for the given size class
+     */
+    public long getLiveBytes(int capacity)
+    {
+        SizeClass sizeClass = sizeClassFor(capacity);
+        return sizeClass == null ? 0 : sizeClass.getLiveBytes();
+    }
+
+    /**
+     * @param capacity the capacity of a size class
+     * @return the bytes of the buffers available for reuse for the given size class
+     */
+    public long getFreeBytes(int capacity)
+    {
+        SizeClass sizeClass = sizeClassFor(capacity);
+        return sizeClass == null ? 0 : sizeClass.getFreeBytes();
+    }
+
+    @Override
+    public ByteBuffer acquire(int size, boolean direct)
+    {
+        SizeClass sizeClass = direct ? sizeClassFor(size) : null;
+        if (sizeClass == null)
+            return _delegate.acquire(size, direct);
+
+        ByteBuffer buffer = sizeClass.acquire();
+        if (buffer != null)
+            return buffer;
+
+        _overflows.incrementAndGet();
+        return newByteBuffer(sizeClass._capacity, true);
+    }
+
+    @Override
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer == null)
+            return;
+
+        if (buffer.isDirect())
+        {
+            SizeClass sizeClass = sizeClassFor(buffer.capacity());
+            if (sizeClass != null && sizeClass._capacity == buffer.capacity())
+            {
+                // Buffers that do not belong to the slabs are discarded.
+                if (!sizeClass.release(buffer) && LOG.isDebugEnabled())
+                    LOG.debug("ByteBuffer {} does not belong to this pool, discarding it", BufferUtil.toDetailString(buffer));
+                return;
+            }
+        }
+
+        _delegate.release(buffer);
+    }
+
+    private SizeClass sizeClassFor(int capacity)
+    {
+        if (capacity > _maxCapacity)
+            return null;
+        if (capacity <= _minCapacity)
+            return _sizeClasses[0];
+        int index = Integer.numberOfTrailingZeros(roundUpToPowerOfTwo(capacity)) - Integer.numberOfTrailingZeros(_minCapacity);
+        return _sizeClasses[index];
+    }
+
+    private boolean reserve()
+    {
+        while (true)
+        {
+            long memory = _directMemory.get();
+            long newMemory = memory + _slabSize;
+            if (_maxDirectMemory > 0 && newMemory > _maxDirectMemory)
+                return false;
+            if (_directMemory.compareAndSet(memory, newMemory))
+                return true;
+        }
+    }
+
+    private static int roundUpToPowerOfTwo(int value)
+    {
+        return value <= 1 ? 1 : Integer.highestOneBit(value - 1) << 1;
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        dumpObjects(out, indent,
+            String.format("DirectMemory: %d/%d", getDirectMemory(), getMaxDirectMemory()),
+            DumpableCollection.fromArray("SizeClasses", _sizeClasses));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{minCapacity=%d,maxCapacity=%d,slabSize=%d,directMemory=%d/%d}",
+            getClass().getSimpleName(), hashCode(), _minCapacity, _maxCapacity, _slabSize, getDirectMemory(), _maxDirectMemory);
+    }
+
+    /**
+     * <p>The slabs and the free buffers of one size class.</p>
+     */
+    private class SizeClass
+    {
+        private final Map<ByteBuffer, Slot> _slots = new IdentityHashMap<>();
+        private final ArrayDeque<Slot> _free = new ArrayDeque<>();
+        private final int _capacity;
+        private int _slabs;
+
+        private SizeClass(int capacity)
+        {
+            _capacity = capacity;
+        }
+
+        private ByteBuffer acquire()
+        {
+            synchronized (this)
+            {
+                Slot slot = _free.pollLast();
+                if (slot == null)
+                {
+                    if (!reserve())
+                        return null;
+                    allocateSlab();
+                    slot = _free.pollLast();
+                }
+                slot._free = false;
+                BufferUtil.clear(slot._buffer);
+                return slot._buffer;
+            }
+        }
+
+        private boolean release(ByteBuffer buffer)
+        {
+            synchronized (this)
+            {
+                Slot slot = _slots.get(buffer);
+                if (slot == null)
+                    return false;
+                if (slot._free)
+                {
+                    LOG.warn("ByteBuffer {} already released", BufferUtil.toDetailString(buffer));
+                    return true;
+                }
+                slot._free = true;
+                _free.offerLast(slot);
+                return true;
+            }
+        }
+
+        private void allocateSlab()
+        {
+            ByteBuffer slab = BufferUtil.allocateDirect(_slabSize);
+            int count = _slabSize / _capacity;
+            for (int i = 0; i < count; ++i)
+            {
+                slab.limit((i + 1) * _capacity).position(i * _capacity);
+                ByteBuffer buffer = slab.slice();
+                Slot slot = new Slot(buffer);
+                _slots.put(buffer, slot);
+                _free.offerLast(slot);
+            }
+            ++_slabs;
+            if (LOG.isDebugEnabled())
+                LOG.debug("Allocated slab #{} of {} buffers of capacity {}", _slabs, count, _capacity);
+        }
+
+        private long getLiveBytes()
+        {
+            synchronized (this)
+            {
+                return (long)(_slots.size() - _free.size()) * _capacity;
+            }
+        }
+
+        private long getFreeBytes()
+        {
+            synchronized (this)
+            {
+                return (long)_free.size() * _capacity;
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            synchronized (this)
+            {
+                return String.format("%s{capacity=%d,slabs=%d,live=%d,free=%d}",
+                    getClass().getSimpleName(), _capacity, _slabs, _slots.size() - _free.size(), _free.size());
+            }
+        }
+    }
+
+    private static class Slot
+    {
+        private final ByteBuffer _buffer;
+        private boolean _free = true;
+
+        private Slot(ByteBuffer buffer)
+        {
+            _buffer = buffer;
+        }
+    }
+}
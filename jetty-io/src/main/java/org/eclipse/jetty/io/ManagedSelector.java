@@ -97,6 +97,14 @@ public class ManagedSelector extends ContainerLifeCycle implements Dumpable
         _id = id;
         SelectorProducer producer = new SelectorProducer();
         Executor executor = selectorManager.getExecutor();
+        int partitionThreads = selectorManager.getPartitionThreads();
+        if (partitionThreads > 0)
+        {
+            SelectorPartition partition = new SelectorPartition(executor, id, partitionThreads,
+                selectorManager.getPartitionReservedThreads(), selectorManager.getPartitionMaxQueued());
+            addBean(partition, true);
+            executor = partition;
+        }
         _strategy = new EatWhatYouKill(producer, executor);
         addBean(_strategy, true);
         setStopTimeout(5000);
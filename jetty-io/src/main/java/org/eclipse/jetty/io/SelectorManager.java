@@ -66,6 +66,9 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
     private final IntUnaryOperator _selectorIndexUpdate;
     private final List<AcceptListener> _acceptListeners = new ArrayList<>();
     private long _connectTimeout = DEFAULT_CONNECT_TIMEOUT;
+    private int _partitionThreads;
+    private int _partitionReservedThreads = 1;
+    private int _partitionMaxQueued = -1;
     private ThreadPoolBudget.Lease _lease;
 
     private static int defaultSelectors(Executor executor)
@@ -153,6 +156,71 @@ public abstract class SelectorManager extends ContainerLifeCycle implements Dump
         throw new UnsupportedOperationException();
     }
 
+    /**
+     * @return the number of worker threads dedicated to each selector, or 0 if selectors share the executor
+     * @see SelectorPartition
+     */
+    @ManagedAttribute("The number of worker threads dedicated to each selector")
+    public int getPartitionThreads()
+    {
+        return _partitionThreads;
+    }
+
+    /**
+     * <p>Sets the number of worker threads dedicated to each selector.</p>
+     * <p>When positive, each selector is assigned a {@link SelectorPartition} whose threads,
+     * leased from the executor, run the tasks produced by that selector, so that the state of
+     * a connection is mostly accessed by the same few threads.
+     * When zero, the default, all selectors share the executor.</p>
+     *
+     * @param threads the number of worker threads dedicated to each selector
+     */
+    public void setPartitionThreads(int threads)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _partitionThreads = Math.max(0, threads);
+    }
+
+    /**
+     * @return the number of reserved threads of each selector partition
+     */
+    @ManagedAttribute("The number of reserved threads of each selector partition")
+    public int getPartitionReservedThreads()
+    {
+        return _partitionReservedThreads;
+    }
+
+    /**
+     * @param threads the number of reserved threads of each selector partition
+     */
+    public void setPartitionReservedThreads(int threads)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _partitionReservedThreads = Math.max(0, threads);
+    }
+
+    /**
+     * @return the max number of tasks queued to each selector partition before overflowing to the executor
+     */
+    @ManagedAttribute("The max number of tasks queued to each selector partition")
+    public int getPartitionMaxQueued()
+    {
+        return _partitionMaxQueued;
+    }
+
+    /**
+     * @param maxQueued the max number of tasks queued to each selector partition before
+     * overflowing to the executor, or a non positive value to use the number of partition threads
+     */
+    public void setPartitionMaxQueued(int maxQueued)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _partitionMaxQueued = maxQueued;
+    }
+
     /**
      * Executes the given task in a different thread.
      *
@@ -0,0 +1,271 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.io.Closeable;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.eclipse.jetty.util.IO;
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ReservedThreadExecutor;
+import org.eclipse.jetty.util.thread.ThreadPoolBudget;
+import org.eclipse.jetty.util.thread.TryExecutor;
+
+/**
+ * <p>A slice of worker threads and reserved threads dedicated to one {@link ManagedSelector}.</p>
+ * <p>The worker threads are leased from the shared executor and run the tasks produced by
+ * the selector they are dedicated to, so that the state of the connections of that selector
+ * is mostly touched by the same few threads. Tasks are queued to the partition workers only
+ * while there are idle workers to run them, and up to {@link #getMaxQueued()} tasks; when the
+ * partition workers are all busy, for example blocked in application code, tasks overflow to
+ * the shared executor rather than waiting behind the blocked tasks.</p>
+ * <p>The reserved threads of the partition are used by the selector's execution strategy to
+ * hand over production while the selector thread runs the task it produced.</p>
+ * <p>Java offers no portable way to pin threads to CPU cores or NUMA nodes, so the affinity
+ * between a selector and its workers is only approximated by dedicating threads to it.</p>
+ *
+ * @see SelectorManager#setPartitionThreads(int)
+ */
+@ManagedObject("A partition of threads dedicated to a selector")
+public class SelectorPartition extends ContainerLifeCycle implements TryExecutor, VirtualThreads.Configurable
+{
+    private static final Logger LOG = Log.getLogger(SelectorPartition.class);
+    private static final Runnable STOP = () ->
+    {
+    };
+
+    private final AtomicInteger _busy = new AtomicInteger();
+    private final LongAdder _localTasks = new LongAdder();
+    private final LongAdder _overflowTasks = new LongAdder();
+    private final Executor _executor;
+    private final int _id;
+    private final int _threads;
+    private final int _reservedThreads;
+    private final int _maxQueued;
+    private final BlockingQueue<Runnable> _queue;
+    private ThreadPoolBudget.Lease _lease;
+    private TryExecutor _tryExecutor = TryExecutor.NO_TRY;
+
+    /**
+     * @param executor the shared executor to lease threads from and to overflow tasks to
+     * @param id the id of this partition
+     * @param threads the number of worker threads of this partition
+     * @param reservedThreads the number of reserved threads of this partition
+     * @param maxQueued the max number of tasks queued to this partition before overflowing to the shared executor
+     */
+    public SelectorPartition(Executor executor, int id, int threads, int reservedThreads, int maxQueued)
+    {
+        if (threads <= 0)
+            throw new IllegalArgumentException("Invalid threads " + threads);
+        _executor = executor;
+        _id = id;
+        _threads = threads;
+        _reservedThreads = Math.max(0, reservedThreads);
+        _maxQueued = maxQueued <= 0 ? threads : maxQueued;
+        _queue = new BlockingArrayQueue<>();
+    }
+
+    @ManagedAttribute("The id of this partition")
+    public int getId()
+    {
+        return _id;
+    }
+
+    @ManagedAttribute("The number of worker threads of this partition")
+    public int getThreads()
+    {
+        return _threads;
+    }
+
+    @ManagedAttribute("The number of reserved threads of this partition")
+    public int getReservedThreads()
+    {
+        return _reservedThreads;
+    }
+
+    @ManagedAttribute("The max number of queued tasks before overflowing to the shared executor")
+    public int getMaxQueued()
+    {
+        return _maxQueued;
+    }
+
+    @ManagedAttribute("The number of tasks queued to this partition")
+    public int getQueueSize()
+    {
+        return _queue.size();
+    }
+
+    @ManagedAttribute("The number of worker threads running tasks")
+    public int getBusyThreads()
+    {
+        return _busy.get();
+    }
+
+    @ManagedAttribute("The number of tasks run by the workers of this partition")
+    public long getLocalTasks()
+    {
+        return _localTasks.sum();
+    }
+
+    @ManagedAttribute("The number of tasks that overflowed to the shared executor")
+    public long getOverflowTasks()
+    {
+        return _overflowTasks.sum();
+    }
+
+    @ManagedOperation(value = "Resets the partition statistics", impact = "ACTION")
+    public void reset()
+    {
+        _localTasks.reset();
+        _overflowTasks.reset();
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        _lease = ThreadPoolBudget.leaseFrom(_executor, this, _threads);
+        if (_reservedThreads > 0)
+        {
+            ReservedThreadExecutor reserved = new ReservedThreadExecutor(_executor, _reservedThreads);
+            addBean(reserved, true);
+            _tryExecutor = reserved;
+        }
+        super.doStart();
+        for (int i = 0; i < _threads; ++i)
+        {
+            _executor.execute(new Worker());
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        if (_tryExecutor instanceof ReservedThreadExecutor)
+            removeBean(_tryExecutor);
+        _tryExecutor = TryExecutor.NO_TRY;
+
+        // Wake up the workers, the tasks still queued are run before STOP.
+        for (int i = 0; i < _threads; ++i)
+        {
+            _queue.add(STOP);
+        }
+        if (_lease != null)
+            _lease.close();
+    }
+
+    @Override
+    public void execute(Runnable task)
+    {
+        // The bounds are approximate, but they avoid that tasks wait behind
+        // busy workers and that the STOP tasks cannot be queued.
+        int queued = _queue.size();
+        if (isRunning() && queued < _maxQueued && _busy.get() + queued < _threads && _queue.offer(task))
+            return;
+
+        _overflowTasks.increment();
+        try
+        {
+            _executor.execute(task);
+        }
+        catch (RejectedExecutionException x)
+        {
+            if (task instanceof Closeable)
+                IO.close((Closeable)task);
+            throw x;
+        }
+    }
+
+    @Override
+    public boolean tryExecute(Runnable task)
+    {
+        return _tryExecutor.tryExecute(task);
+    }
+
+    @Override
+    public Executor getVirtualThreadsExecutor()
+    {
+        return VirtualThreads.getVirtualThreadsExecutor(_executor);
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{id=%d,threads=%d,busy=%d,queue=%d/%d,local=%d,overflow=%d}",
+            getClass().getSimpleName(), hashCode(), _id, _threads, getBusyThreads(), getQueueSize(), _maxQueued, getLocalTasks(), getOverflowTasks());
+    }
+
+    private class Worker implements Runnable
+    {
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                Runnable task;
+                try
+                {
+                    task = _queue.take();
+                }
+                catch (InterruptedException x)
+                {
+                    LOG.ignore(x);
+                    if (isRunning())
+                        continue;
+                    return;
+                }
+
+                if (task == STOP)
+                    return;
+
+                _busy.incrementAndGet();
+                try
+                {
+                    _localTasks.increment();
+                    task.run();
+                }
+                catch (Throwable x)
+                {
+                    LOG.warn(x);
+                }
+                finally
+                {
+                    _busy.decrementAndGet();
+                }
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x[%d]", getClass().getSimpleName(), hashCode(), _id);
+        }
+    }
+}
@@ -0,0 +1,491 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.component.DumpableCollection;
+
+/**
+ * <p>A {@link ByteBufferPool} that keeps small per-thread caches of buffers in front of
+ * a shared delegate pool such as {@link ArrayByteBufferPool} or {@link MappedByteBufferPool}.</p>
+ * <p>Buffers acquired and released by the same thread, as it typically happens in selector
+ * threads and in threads that run a connection's read/write cycle, never touch the shared
+ * buckets of the delegate pool and therefore do not contend with other threads.</p>
+ * <p>Each thread caches at most {@link #getMaxCachedPerThread()} buffers per capacity, and
+ * only buffers whose capacity is a multiple of the capacity factor and not larger than
+ * {@link #getMaxCachedCapacity()}. When a thread cache is full, released buffers are
+ * returned to the delegate pool; when a thread cache is empty, buffers are acquired from
+ * the delegate pool.</p>
+ * <p>The bytes retained by all thread caches together are bounded by
+ * {@link #getMaxThreadCachedMemory()}: thread caches reserve memory from this shared
+ * budget in chunks, and return released buffers to the delegate pool when the budget
+ * is exhausted.</p>
+ * <p>Buffers cached by threads that have terminated are returned to the delegate pool
+ * on {@link #clear()} or when the thread caches are {@link #purge() purged}, which
+ * happens automatically when the number of thread caches doubles or when the memory
+ * budget is exhausted.</p>
+ */
+@ManagedObject
+public class ThreadLocalByteBufferPool extends ContainerLifeCycle implements ByteBufferPool
+{
+    private static final int MIN_PURGE_THRESHOLD = 64;
+    private static final long PURGE_INTERVAL = TimeUnit.SECONDS.toNanos(1);
+
+    private final ThreadLocal<Cache> _caches = ThreadLocal.withInitial(this::newCache);
+    private final Set<Cache> _registry = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger _generation = new AtomicInteger();
+    private final AtomicInteger _purgeThreshold = new AtomicInteger(MIN_PURGE_THRESHOLD);
+    private final AtomicLong _lastPurge = new AtomicLong(System.nanoTime() - PURGE_INTERVAL);
+    private final AtomicLong _reserved = new AtomicLong();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _returns = new LongAdder();
+    private final ByteBufferPool _delegate;
+    private final int _factor;
+    private final int _maxCachedCapacity;
+    private final int _maxCachedPerThread;
+    private final long _maxThreadCachedMemory;
+    private final int _reservation;
+
+    /**
+     * Creates a new ThreadLocalByteBufferPool in front of a default {@link ArrayByteBufferPool}.
+     */
+    public ThreadLocalByteBufferPool()
+    {
+        this(new ArrayByteBufferPool());
+    }
+
+    /**
+     * Creates a new ThreadLocalByteBufferPool with a default configuration.
+     *
+     * @param delegate the shared pool to acquire buffers from and return buffers to
+     */
+    public ThreadLocalByteBufferPool(ByteBufferPool delegate)
+    {
+        this(delegate, -1, -1, -1);
+    }
+
+    /**
+     * Creates a new ThreadLocalByteBufferPool with the given configuration.
+     *
+     * @param delegate the shared pool to acquire buffers from and return buffers to
+     * @param factor the capacity factor, which should be the same of the delegate pool
+     * @param maxCachedCapacity the max capacity of the buffers cached per thread
+     * @param maxCachedPerThread the max number of buffers per capacity cached per thread
+     */
+    public ThreadLocalByteBufferPool(ByteBufferPool delegate, int factor, int maxCachedCapacity, int maxCachedPerThread)
+    {
+        this(delegate, factor, maxCachedCapacity, maxCachedPerThread, 0);
+    }
+
+    /**
+     * Creates a new ThreadLocalByteBufferPool with the given configuration.
+     *
+     * @param delegate the shared pool to acquire buffers from and return buffers to
+     * @param factor the capacity factor, which should be the same of the delegate pool
+     * @param maxCachedCapacity the max capacity of the buffers cached per thread
+     * @param maxCachedPerThread the max number of buffers per capacity cached per thread
+     * @param maxThreadCachedMemory the max bytes retained by all thread caches together,
+     * -1 for unlimited memory or 0 to use default heuristic
+     */
+    public ThreadLocalByteBufferPool(ByteBufferPool delegate, int factor, int maxCachedCapacity, int maxCachedPerThread, long maxThreadCachedMemory)
+    {
+        _delegate = Objects.requireNonNull(delegate);
+        _factor = factor <= 0 ? 1024 : factor;
+        _maxCachedCapacity = maxCachedCapacity <= 0 ? 16 * 1024 : maxCachedCapacity;
+        _maxCachedPerThread = maxCachedPerThread <= 0 ? 8 : maxCachedPerThread;
+        _maxThreadCachedMemory = maxThreadCachedMemory != 0 ? maxThreadCachedMemory : Runtime.getRuntime().maxMemory() / 16;
+        _reservation = _maxThreadCachedMemory > 0 ? (int)Math.min(4L * _maxCachedCapacity, _maxThreadCachedMemory) : 4 * _maxCachedCapacity;
+        addBean(delegate);
+    }
+
+    public ByteBufferPool getDelegate()
+    {
+        return _delegate;
+    }
+
+    @ManagedAttribute("The max capacity of the buffers cached per thread")
+    public int getMaxCachedCapacity()
+    {
+        return _maxCachedCapacity;
+    }
+
+    @ManagedAttribute("The max number of buffers per capacity cached per thread")
+    public int getMaxCachedPerThread()
+    {
+        return _maxCachedPerThread;
+    }
+
+    @ManagedAttribute("The max bytes retained by all thread caches together")
+    public long getMaxThreadCachedMemory()
+    {
+        return _maxThreadCachedMemory;
+    }
+
+    /**
+     * @return the bytes reserved by the thread caches, which is an upper bound of the bytes they retain
+     */
+    @ManagedAttribute("The bytes reserved by the thread caches")
+    public long getThreadCachedMemory()
+    {
+        return _reserved.get();
+    }
+
+    @ManagedAttribute("The number of acquires satisfied by a thread cache")
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of acquires delegated to the shared pool")
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute("The number of releases returned to the shared pool because a thread cache was full")
+    public long getReturns()
+    {
+        return _returns.sum();
+    }
+
+    @ManagedAttribute("The number of thread caches")
+    public int getThreadCacheCount()
+    {
+        return _registry.size();
+    }
+
+    @ManagedAttribute("The number of buffers held by the thread caches")
+    public long getThreadCachedByteBufferCount()
+    {
+        return _registry.stream().mapToLong(Cache::size).sum();
+    }
+
+    @Override
+    public ByteBuffer acquire(int size, boolean direct)
+    {
+        int index = indexFor(size);
+        if (index >= 0)
+        {
+            ByteBuffer buffer = _caches.get().acquire(index, direct);
+            if (buffer != null)
+            {
+                _hits.increment();
+                return buffer;
+            }
+        }
+        _misses.increment();
+        return _delegate.acquire(size, direct);
+    }
+
+    @Override
+    public void release(ByteBuffer buffer)
+    {
+        if (buffer == null)
+            return;
+        int capacity = buffer.capacity();
+        int index = indexFor(capacity);
+        if (index >= 0 && capacity % _factor == 0)
+        {
+            BufferUtil.reset(buffer);
+            if (_caches.get().release(index, buffer))
+                return;
+            _returns.increment();
+        }
+        _delegate.release(buffer);
+    }
+
+    @Override
+    public void remove(ByteBuffer buffer)
+    {
+        _delegate.remove(buffer);
+    }
+
+    @Override
+    public ByteBuffer newByteBuffer(int capacity, boolean direct)
+    {
+        return _delegate.newByteBuffer(capacity, direct);
+    }
+
+    /**
+     * <p>Returns the buffers cached by threads that have terminated to the delegate pool.</p>
+     */
+    @ManagedOperation(value = "Returns the buffers of terminated threads to the shared pool", impact = "ACTION")
+    public void purge()
+    {
+        _lastPurge.set(System.nanoTime());
+        for (Cache cache : _registry)
+        {
+            if (cache.isOwnerTerminated() && _registry.remove(cache))
+                cache.drainTo(_delegate);
+        }
+    }
+
+    /**
+     * <p>Discards the buffers cached by all threads and clears the delegate pool, if possible.</p>
+     * <p>Live threads discard their cached buffers lazily, the next time they use the pool.</p>
+     */
+    @ManagedOperation(value = "Clears this ByteBufferPool", impact = "ACTION")
+    public void clear()
+    {
+        _generation.incrementAndGet();
+        for (Cache cache : _registry)
+        {
+            if (cache.isOwnerTerminated() && _registry.remove(cache))
+                cache.discard(null);
+        }
+        if (_delegate instanceof AbstractByteBufferPool)
+            ((AbstractByteBufferPool)_delegate).clear();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        purge();
+    }
+
+    /**
+     * @param bytes the bytes to reserve from the shared budget
+     * @return whether the bytes have been reserved
+     */
+    private boolean reserve(int bytes)
+    {
+        if (_maxThreadCachedMemory < 0)
+        {
+            _reserved.addAndGet(bytes);
+            return true;
+        }
+        while (true)
+        {
+            long reserved = _reserved.get();
+            if (reserved + bytes > _maxThreadCachedMemory)
+                return false;
+            if (_reserved.compareAndSet(reserved, reserved + bytes))
+                return true;
+        }
+    }
+
+    private void unreserve(long bytes)
+    {
+        if (bytes > 0)
+            _reserved.addAndGet(-bytes);
+    }
+
+    /**
+     * <p>Purges the caches of terminated threads, at most once per {@link #PURGE_INTERVAL},
+     * to recover the memory they reserved when the budget is exhausted.</p>
+     */
+    private void tryPurge()
+    {
+        long last = _lastPurge.get();
+        long now = System.nanoTime();
+        if (now - last >= PURGE_INTERVAL && _lastPurge.compareAndSet(last, now))
+            purge();
+    }
+
+    private int indexFor(int capacity)
+    {
+        if (capacity <= 0 || capacity > _maxCachedCapacity)
+            return -1;
+        return (capacity - 1) / _factor;
+    }
+
+    private Cache newCache()
+    {
+        // Purge only when the number of caches doubles, so that the cost is amortized.
+        int threshold = _purgeThreshold.get();
+        if (_registry.size() >= threshold && _purgeThreshold.compareAndSet(threshold, Integer.MAX_VALUE))
+        {
+            purge();
+            _purgeThreshold.set(Math.max(MIN_PURGE_THRESHOLD, 2 * _registry.size()));
+        }
+        Cache cache = new Cache(Thread.currentThread(), (_maxCachedCapacity + _factor - 1) / _factor);
+        _registry.add(cache);
+        return cache;
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        dumpObjects(out, indent, new DumpableCollection("threadCaches", _registry));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{maxCachedCapacity=%d,maxCachedPerThread=%d,factor=%d,threads=%d,delegate=%s}",
+            getClass().getSimpleName(), hashCode(), _maxCachedCapacity, _maxCachedPerThread, _factor, _registry.size(), _delegate);
+    }
+
+    /**
+     * <p>The per-thread cache, accessed only by its owner thread, apart from
+     * {@link #drainTo(ByteBufferPool)} that is called only after the owner
+     * thread terminated.</p>
+     */
+    private class Cache
+    {
+        private final WeakReference<Thread> _owner;
+        private final String _name;
+        private final ByteBuffer[][] _direct;
+        private final ByteBuffer[][] _indirect;
+        private final int[] _directSizes;
+        private final int[] _indirectSizes;
+        private volatile int _size;
+        private int _generation;
+        private long _retained;
+        private long _reserved;
+
+        private Cache(Thread owner, int length)
+        {
+            _owner = new WeakReference<>(owner);
+            _name = owner.getName();
+            _direct = new ByteBuffer[length][];
+            _indirect = new ByteBuffer[length][];
+            _directSizes = new int[length];
+            _indirectSizes = new int[length];
+            _generation = ThreadLocalByteBufferPool.this._generation.get();
+        }
+
+        private ByteBuffer acquire(int index, boolean direct)
+        {
+            checkGeneration();
+            int[] sizes = direct ? _directSizes : _indirectSizes;
+            int size = sizes[index];
+            if (size == 0)
+                return null;
+            ByteBuffer[] stack = (direct ? _direct : _indirect)[index];
+            ByteBuffer buffer = stack[--size];
+            stack[size] = null;
+            sizes[index] = size;
+            _size = _size - 1;
+            _retained -= buffer.capacity();
+            // Give back to the shared budget what this thread no longer needs.
+            long excess = _reserved - _retained - _reservation;
+            if (excess >= _reservation)
+            {
+                _reserved -= excess;
+                unreserve(excess);
+            }
+            return buffer;
+        }
+
+        private boolean release(int index, ByteBuffer buffer)
+        {
+            checkGeneration();
+            boolean direct = buffer.isDirect();
+            int[] sizes = direct ? _directSizes : _indirectSizes;
+            int size = sizes[index];
+            if (size == _maxCachedPerThread)
+                return false;
+            int capacity = buffer.capacity();
+            if (_retained + capacity > _reserved)
+            {
+                int bytes = Math.max(_reservation, capacity);
+                if (!reserve(bytes))
+                {
+                    tryPurge();
+                    return false;
+                }
+                _reserved += bytes;
+            }
+            ByteBuffer[][] stacks = direct ? _direct : _indirect;
+            ByteBuffer[] stack = stacks[index];
+            if (stack == null)
+                stack = stacks[index] = new ByteBuffer[_maxCachedPerThread];
+            stack[size] = buffer;
+            sizes[index] = size + 1;
+            _size = _size + 1;
+            _retained += capacity;
+            return true;
+        }
+
+        private void checkGeneration()
+        {
+            int generation = ThreadLocalByteBufferPool.this._generation.get();
+            if (_generation != generation)
+            {
+                _generation = generation;
+                discard(null);
+            }
+        }
+
+        private void drainTo(ByteBufferPool pool)
+        {
+            discard(pool);
+        }
+
+        private void discard(ByteBufferPool pool)
+        {
+            discard(_direct, _directSizes, pool);
+            discard(_indirect, _indirectSizes, pool);
+            _size = 0;
+            _retained = 0;
+            unreserve(_reserved);
+            _reserved = 0;
+        }
+
+        private void discard(ByteBuffer[][] stacks, int[] sizes, ByteBufferPool pool)
+        {
+            for (int i = 0; i < stacks.length; ++i)
+            {
+                ByteBuffer[] stack = stacks[i];
+                for (int j = 0; j < sizes[i]; ++j)
+                {
+                    if (pool != null)
+                        pool.release(stack[j]);
+                    stack[j] = null;
+                }
+                sizes[i] = 0;
+            }
+        }
+
+        private boolean isOwnerTerminated()
+        {
+            Thread owner = _owner.get();
+            return owner == null || owner.getState() == Thread.State.TERMINATED;
+        }
+
+        private int size()
+        {
+            return _size;
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s{size=%d,terminated=%b}", _name, _size, isOwnerTerminated());
+        }
+    }
+}
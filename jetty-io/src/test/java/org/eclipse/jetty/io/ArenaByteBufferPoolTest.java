@@ -0,0 +1,149 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ArenaByteBufferPoolTest
+{
+    @Test
+    public void testSizeClasses()
+    {
+        ArenaByteBufferPool pool = new ArenaByteBufferPool(1024, 8192, 16 * 1024, -1);
+
+        ByteBuffer small = pool.acquire(10, true);
+        assertTrue(small.isDirect());
+        assertEquals(1024, small.capacity());
+        assertEquals(0, small.remaining());
+
+        ByteBuffer medium = pool.acquire(1025, true);
+        assertEquals(2048, medium.capacity());
+
+        ByteBuffer large = pool.acquire(8192, true);
+        assertEquals(8192, large.capacity());
+
+        // One slab per size class.
+        assertEquals(3 * 16 * 1024, pool.getDirectMemory());
+        assertEquals(1024, pool.getLiveBytes(1024));
+        assertEquals(15 * 1024, pool.getFreeBytes(1024));
+        assertEquals(1024 + 2048 + 8192, pool.getLiveBytes());
+    }
+
+    @Test
+    public void testReleaseAndReuse()
+    {
+        ArenaByteBufferPool pool = new ArenaByteBufferPool(1024, 8192, 16 * 1024, -1);
+
+        ByteBuffer buffer = pool.acquire(4096, true);
+        buffer.clear();
+        buffer.put((byte)1).flip();
+        pool.release(buffer);
+        assertEquals(0, pool.getLiveBytes(4096));
+        assertEquals(16 * 1024, pool.getFreeBytes(4096));
+
+        ByteBuffer again = pool.acquire(4000, true);
+        assertSame(buffer, again);
+        assertEquals(0, again.remaining());
+        assertEquals(16 * 1024, pool.getDirectMemory());
+    }
+
+    @Test
+    public void testBuffersDoNotOverlap()
+    {
+        ArenaByteBufferPool pool = new ArenaByteBufferPool(1024, 1024, 4096, -1);
+
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i = 0; i < buffers.length; ++i)
+        {
+            buffers[i] = pool.acquire(1024, true);
+            buffers[i].clear();
+            while (buffers[i].hasRemaining())
+            {
+                buffers[i].put((byte)i);
+            }
+        }
+        for (int i = 0; i < buffers.length; ++i)
+        {
+            for (int j = 0; j < 1024; ++j)
+            {
+                assertEquals(i, buffers[i].get(j));
+            }
+        }
+        assertEquals(4096, pool.getDirectMemory());
+    }
+
+    @Test
+    public void testMaxDirectMemory()
+    {
+        ArenaByteBufferPool pool = new ArenaByteBufferPool(1024, 1024, 2048, 2048);
+
+        ByteBuffer b1 = pool.acquire(1024, true);
+        ByteBuffer b2 = pool.acquire(1024, true);
+        ByteBuffer b3 = pool.acquire(1024, true);
+        assertEquals(2048, pool.getDirectMemory());
+        assertEquals(1, pool.getOverflowCount());
+
+        // The overflow buffer is discarded on release.
+        pool.release(b3);
+        assertEquals(0, pool.getFreeBytes());
+
+        pool.release(b1);
+        assertSame(b1, pool.acquire(1024, true));
+        assertNotSame(b2, b1);
+    }
+
+    @Test
+    public void testHeapAndLargeBuffersDelegated()
+    {
+        ArrayByteBufferPool delegate = new ArrayByteBufferPool();
+        ArenaByteBufferPool pool = new ArenaByteBufferPool(1024, 8192, 16 * 1024, -1, delegate);
+
+        ByteBuffer heap = pool.acquire(1024, false);
+        assertFalse(heap.isDirect());
+        pool.release(heap);
+        assertEquals(1, delegate.getHeapByteBufferCount());
+
+        ByteBuffer large = pool.acquire(32 * 1024, true);
+        pool.release(large);
+        assertEquals(1, delegate.getDirectByteBufferCount());
+        assertEquals(0, pool.getDirectMemory());
+    }
+
+    @Test
+    public void testRetainableByteBuffer()
+    {
+        ArenaByteBufferPool pool = new ArenaByteBufferPool(1024, 8192, 16 * 1024, -1);
+
+        RetainableByteBuffer retainable = new RetainableByteBuffer(pool, 2048, true);
+        assertEquals(2048, pool.getLiveBytes(2048));
+        retainable.retain();
+        retainable.release();
+        assertEquals(2048, pool.getLiveBytes(2048));
+        retainable.release();
+        assertEquals(0, pool.getLiveBytes(2048));
+    }
+}
@@ -0,0 +1,192 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.io.IOException;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.SelectionKey;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.thread.QueuedThreadPool;
+import org.eclipse.jetty.util.thread.TimerScheduler;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SelectorPartitionTest
+{
+    private QueuedThreadPool executor = new QueuedThreadPool();
+    private TimerScheduler scheduler = new TimerScheduler();
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        executor.start();
+        scheduler.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        scheduler.stop();
+        executor.stop();
+    }
+
+    @Test
+    public void testTasksRunInPartitionThreads() throws Exception
+    {
+        SelectorPartition partition = new SelectorPartition(executor, 0, 2, 0, 64);
+        partition.start();
+
+        int tasks = 32;
+        Set<Thread> threads = ConcurrentHashMap.newKeySet();
+        for (int i = 0; i < tasks; ++i)
+        {
+            CountDownLatch latch = new CountDownLatch(1);
+            partition.execute(() ->
+            {
+                threads.add(Thread.currentThread());
+                latch.countDown();
+            });
+            assertTrue(latch.await(5, TimeUnit.SECONDS));
+        }
+
+        assertThat(threads.size(), lessThanOrEqualTo(2));
+        assertEquals(tasks, partition.getLocalTasks());
+        assertEquals(0, partition.getOverflowTasks());
+
+        partition.stop();
+    }
+
+    @Test
+    public void testSaturatedPartitionOverflowsToExecutor() throws Exception
+    {
+        SelectorPartition partition = new SelectorPartition(executor, 0, 1, 0, 1);
+        partition.start();
+
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        partition.execute(() ->
+        {
+            blocked.countDown();
+            await(release);
+        });
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+
+        // The only worker is busy: the tasks overflow rather than waiting behind it.
+        CountDownLatch latch = new CountDownLatch(2);
+        partition.execute(latch::countDown);
+        partition.execute(latch::countDown);
+        assertEquals(2, partition.getOverflowTasks());
+
+        release.countDown();
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+
+        partition.stop();
+    }
+
+    @Test
+    public void testBlockedWorkersOverflowToExecutor() throws Exception
+    {
+        int threads = 2;
+        SelectorPartition partition = new SelectorPartition(executor, 0, threads, 0, 64);
+        partition.start();
+
+        CountDownLatch blocked = new CountDownLatch(threads);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int i = 0; i < threads; ++i)
+        {
+            partition.execute(() ->
+            {
+                blocked.countDown();
+                await(release);
+            });
+        }
+        assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        assertEquals(threads, partition.getBusyThreads());
+
+        // All the partition workers are blocked, so the tasks must
+        // run in the shared executor rather than wait in the queue.
+        int tasks = 8;
+        CountDownLatch latch = new CountDownLatch(tasks);
+        for (int i = 0; i < tasks; ++i)
+        {
+            partition.execute(latch::countDown);
+        }
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, partition.getQueueSize());
+        assertEquals(tasks, partition.getOverflowTasks());
+
+        release.countDown();
+        partition.stop();
+    }
+
+    @Test
+    public void testSelectorManagerWithPartitions() throws Exception
+    {
+        SelectorManager selectorManager = new SelectorManager(executor, scheduler, 2)
+        {
+            @Override
+            protected EndPoint newEndPoint(SelectableChannel channel, ManagedSelector selector, SelectionKey key)
+            {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public Connection newConnection(SelectableChannel channel, EndPoint endpoint, Object attachment) throws IOException
+            {
+                throw new UnsupportedOperationException();
+            }
+        };
+        selectorManager.setPartitionThreads(2);
+        selectorManager.start();
+
+        int partitions = 0;
+        for (ManagedSelector selector : selectorManager.getBeans(ManagedSelector.class))
+        {
+            SelectorPartition partition = selector.getBean(SelectorPartition.class);
+            assertTrue(partition.isStarted());
+            assertEquals(2, partition.getThreads());
+            ++partitions;
+        }
+        assertEquals(2, partitions);
+
+        selectorManager.stop();
+    }
+
+    private static void await(CountDownLatch latch)
+    {
+        try
+        {
+            latch.await(5, TimeUnit.SECONDS);
+        }
+        catch (InterruptedException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ThreadLocalByteBufferPoolTest
+{
+    @Test
+    public void testAcquireReleaseSameThread()
+    {
+        ArrayByteBufferPool shared = new ArrayByteBufferPool();
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(shared);
+
+        ByteBuffer buffer = pool.acquire(1500, true);
+        assertTrue(buffer.isDirect());
+        assertThat(buffer.capacity(), greaterThanOrEqualTo(1500));
+        assertEquals(0, buffer.remaining());
+        assertEquals(1, pool.getMisses());
+
+        BufferUtil.append(buffer, (byte)1);
+        pool.release(buffer);
+        assertEquals(1, pool.getThreadCachedByteBufferCount());
+        assertEquals(0, shared.getDirectByteBufferCount());
+
+        ByteBuffer again = pool.acquire(2048, true);
+        assertSame(buffer, again);
+        assertEquals(0, again.remaining());
+        assertEquals(1, pool.getHits());
+
+        // Heap buffers are cached separately from direct buffers.
+        ByteBuffer heap = pool.acquire(2048, false);
+        assertNotSame(buffer, heap);
+        assertEquals(2, pool.getMisses());
+    }
+
+    @Test
+    public void testFullThreadCacheReturnsToSharedPool()
+    {
+        ArrayByteBufferPool shared = new ArrayByteBufferPool();
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(shared, 1024, 8192, 2);
+
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = pool.acquire(4096, false);
+        }
+        for (ByteBuffer buffer : buffers)
+        {
+            pool.release(buffer);
+        }
+
+        assertEquals(2, pool.getThreadCachedByteBufferCount());
+        assertEquals(2, pool.getReturns());
+        assertEquals(2, shared.getHeapByteBufferCount());
+    }
+
+    @Test
+    public void testLargeBuffersAreNotCached()
+    {
+        ArrayByteBufferPool shared = new ArrayByteBufferPool();
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(shared, 1024, 8192, 2);
+
+        ByteBuffer buffer = pool.acquire(16 * 1024, true);
+        pool.release(buffer);
+
+        assertEquals(0, pool.getThreadCachedByteBufferCount());
+        assertEquals(1, shared.getDirectByteBufferCount());
+    }
+
+    @Test
+    public void testTerminatedThreadBuffersArePurged() throws Exception
+    {
+        ArrayByteBufferPool shared = new ArrayByteBufferPool();
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(shared);
+
+        AtomicReference<ByteBuffer> released = new AtomicReference<>();
+        Thread thread = new Thread(() ->
+        {
+            ByteBuffer buffer = pool.acquire(1024, true);
+            pool.release(buffer);
+            released.set(buffer);
+        });
+        thread.start();
+        thread.join();
+
+        assertEquals(1, pool.getThreadCacheCount());
+        assertEquals(1, pool.getThreadCachedByteBufferCount());
+
+        pool.purge();
+
+        assertEquals(0, pool.getThreadCacheCount());
+        assertEquals(1, shared.getDirectByteBufferCount());
+        assertSame(released.get(), pool.acquire(1024, true));
+    }
+
+    @Test
+    public void testClearDiscardsThreadCaches()
+    {
+        ArrayByteBufferPool shared = new ArrayByteBufferPool();
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(shared);
+
+        ByteBuffer buffer = pool.acquire(1024, true);
+        pool.release(buffer);
+        assertEquals(1, pool.getThreadCachedByteBufferCount());
+
+        pool.clear();
+
+        assertNotSame(buffer, pool.acquire(1024, true));
+        assertThat(pool.getThreadCachedByteBufferCount(), is(0L));
+    }
+
+    @Test
+    public void testThreadCachedMemoryIsBounded()
+    {
+        ArrayByteBufferPool shared = new ArrayByteBufferPool();
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(shared, 1024, 4096, 8, 8192);
+
+        ByteBuffer[] buffers = new ByteBuffer[4];
+        for (int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = pool.acquire(4096, true);
+        }
+        for (ByteBuffer buffer : buffers)
+        {
+            pool.release(buffer);
+        }
+
+        assertEquals(2, pool.getThreadCachedByteBufferCount());
+        assertEquals(2, shared.getDirectByteBufferCount());
+        assertEquals(8192, pool.getThreadCachedMemory());
+
+        // Emptying the thread cache gives the reservation back, apart from one chunk.
+        pool.acquire(4096, true);
+        pool.acquire(4096, true);
+        assertEquals(8192, pool.getThreadCachedMemory());
+
+        // Live threads give back their reservation the next time they use the pool.
+        pool.clear();
+        pool.acquire(4096, true);
+        assertEquals(0, pool.getThreadCachedMemory());
+    }
+
+    @Test
+    public void testExhaustedMemoryPurgesTerminatedThreads() throws Exception
+    {
+        ArrayByteBufferPool shared = new ArrayByteBufferPool();
+        ThreadLocalByteBufferPool pool = new ThreadLocalByteBufferPool(shared, 1024, 4096, 8, 4096);
+
+        Thread thread = new Thread(() -> pool.release(pool.acquire(4096, true)));
+        thread.start();
+        thread.join();
+        assertEquals(1, pool.getThreadCachedByteBufferCount());
+        assertEquals(4096, pool.getThreadCachedMemory());
+
+        // The budget is exhausted, so the buffer goes to the shared
+        // pool and the caches of terminated threads are purged.
+        ByteBuffer buffer = ByteBuffer.allocateDirect(4096);
+        pool.release(buffer);
+        assertEquals(1, pool.getThreadCacheCount());
+        assertEquals(0, pool.getThreadCachedMemory());
+        assertEquals(2, shared.getDirectByteBufferCount());
+
+        // Now the memory can be reserved again.
+        pool.release(pool.acquire(4096, true));
+        assertEquals(1, pool.getThreadCachedByteBufferCount());
+    }
+}
@@ -0,0 +1,284 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.http2.hpack;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Utf8StringBuilder;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Compares the state machine Huffman decoder with the previous decoder,
+ * that walked a multi-level lookup tree symbol by symbol.</p>
+ */
+@State(Scope.Thread)
+@Threads(1)
+@Fork(1)
+@Warmup(iterations = 5, time = 2000, timeUnit = TimeUnit.MILLISECONDS)
+@Measurement(iterations = 5, time = 2000, timeUnit = TimeUnit.MILLISECONDS)
+public class HuffmanDecodeBenchmark
+{
+    private static final String[] REQUEST = {
+        "www.example.com",
+        "/catalog/products/search?q=running+shoes&size=42&color=blue&sort=price_asc&page=3",
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/116.0.0.0 Safari/537.36",
+        "text/html,application/xhtml+xml,application/xml;q=0.9,image/avif,image/webp,image/apng,*/*;q=0.8",
+        "gzip, deflate, br",
+        "en-GB,en-US;q=0.9,en;q=0.8",
+        "https://shop.example.com/catalog/products?category=shoes",
+        "_ga=GA1.2.1234567890.1693000000; session=3f9a1c2e7b8d4f60a1b2c3d4e5f60718; theme=dark",
+        "\"Chromium\";v=\"116\", \"Not)A;Brand\";v=\"24\", \"Google Chrome\";v=\"116\"",
+        "max-age=0",
+    };
+    private static final String[] RESPONSE = {
+        "Mon, 21 Oct 2013 20:13:21 GMT",
+        "text/html;charset=utf-8",
+        "private, max-age=0, no-cache",
+        "W/\"5e8c-17a2b3c4d5e\"",
+        "https://www.example.com/login?redirect=%2Faccount",
+        "id=a3fWa; Expires=Wed, 21 Oct 2015 07:28:00 GMT; Secure; HttpOnly",
+        "1834",
+    };
+    private static final String[] GRPC = {
+        "/helloworld.Greeter/SayHello",
+        "application/grpc+proto",
+        "grpc-java-netty/1.57.2",
+        "trailers",
+        "0",
+        "9999m",
+        "identity,deflate,gzip",
+    };
+
+    @Param({"REQUEST", "RESPONSE", "GRPC"})
+    public String corpus;
+
+    private ByteBuffer[] _encoded;
+    private byte[] _octets;
+
+    @Setup
+    public void setUp()
+    {
+        String[] values;
+        switch (corpus)
+        {
+            case "REQUEST":
+                values = REQUEST;
+                break;
+            case "RESPONSE":
+                values = RESPONSE;
+                break;
+            default:
+                values = GRPC;
+                break;
+        }
+
+        _encoded = new ByteBuffer[values.length];
+        int max = 0;
+        for (int i = 0; i < values.length; i++)
+        {
+            ByteBuffer buffer = BufferUtil.allocate(Huffman.octetsNeeded(values[i]));
+            int pos = BufferUtil.flipToFill(buffer);
+            Huffman.encode(buffer, values[i]);
+            BufferUtil.flipToFlush(buffer, pos);
+            _encoded[i] = buffer;
+            max = Math.max(max, buffer.remaining());
+        }
+        _octets = new byte[Huffman.maxDecodedLength(max)];
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testTreeDecoder(Blackhole blackhole) throws Exception
+    {
+        for (ByteBuffer encoded : _encoded)
+        {
+            ByteBuffer buffer = encoded.slice();
+            blackhole.consume(TreeDecoder.decode(buffer, buffer.remaining()));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testStateMachineDecoder(Blackhole blackhole) throws Exception
+    {
+        for (ByteBuffer encoded : _encoded)
+        {
+            ByteBuffer buffer = encoded.slice();
+            blackhole.consume(Huffman.decode(buffer, buffer.remaining()));
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    public void testStateMachineDecoderReusedArray(Blackhole blackhole) throws Exception
+    {
+        for (ByteBuffer encoded : _encoded)
+        {
+            ByteBuffer buffer = encoded.slice();
+            int length = Huffman.decode(buffer, buffer.remaining(), _octets);
+            blackhole.consume(Huffman.toString(_octets, length));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(HuffmanDecodeBenchmark.class.getSimpleName())
+            .addProfiler(GCProfiler.class)
+            .build();
+
+        new Runner(opt).run();
+    }
+
+    /**
+     * <p>The previous Huffman decoder, kept as the benchmark baseline.</p>
+     */
+    private static class TreeDecoder
+    {
+        private static final char[] tree;
+        private static final char[] rowsym;
+        private static final byte[] rowbits;
+
+        static
+        {
+            int r = 0;
+            for (int i = 0; i < Huffman.CODES.length; i++)
+            {
+                r += (Huffman.CODES[i][1] + 7) / 8;
+            }
+            tree = new char[r * 256];
+            rowsym = new char[r];
+            rowbits = new byte[r];
+
+            r = 0;
+            for (int sym = 0; sym < Huffman.CODES.length; sym++)
+            {
+                int code = Huffman.CODES[sym][0];
+                int len = Huffman.CODES[sym][1];
+
+                int current = 0;
+
+                while (len > 8)
+                {
+                    len -= 8;
+                    int i = ((code >>> len) & 0xFF);
+
+                    int t = current * 256 + i;
+                    current = tree[t];
+                    if (current == 0)
+                    {
+                        tree[t] = (char)++r;
+                        current = r;
+                    }
+                }
+
+                int terminal = ++r;
+                rowsym[r] = (char)sym;
+                int b = len & 0x07;
+                int terminalBits = b == 0 ? 8 : b;
+
+                rowbits[r] = (byte)terminalBits;
+                int shift = 8 - len;
+                int start = current * 256 + ((code << shift) & 0xFF);
+                int end = start + (1 << shift);
+                for (int i = start; i < end; i++)
+                {
+                    tree[i] = (char)terminal;
+                }
+            }
+        }
+
+        private static String decode(ByteBuffer buffer, int length) throws HpackException.CompressionException
+        {
+            Utf8StringBuilder utf8 = new Utf8StringBuilder(length * 2);
+            int node = 0;
+            int current = 0;
+            int bits = 0;
+
+            for (int i = 0; i < length; i++)
+            {
+                int b = buffer.get() & 0xFF;
+                current = (current << 8) | b;
+                bits += 8;
+                while (bits >= 8)
+                {
+                    int c = (current >>> (bits - 8)) & 0xFF;
+                    node = tree[node * 256 + c];
+                    if (rowbits[node] != 0)
+                    {
+                        if (rowsym[node] == Huffman.EOS)
+                            throw new HpackException.CompressionException("EOS in content");
+                        utf8.append((byte)(0xFF & rowsym[node]));
+                        bits -= rowbits[node];
+                        node = 0;
+                    }
+                    else
+                    {
+                        bits -= 8;
+                    }
+                }
+            }
+
+            while (bits > 0)
+            {
+                int c = (current << (8 - bits)) & 0xFF;
+                int lastNode = node;
+                node = tree[node * 256 + c];
+                if (rowbits[node] == 0 || rowbits[node] > bits)
+                {
+                    int requiredPadding = 0;
+                    for (int i = 0; i < bits; i++)
+                    {
+                        requiredPadding = (requiredPadding << 1) | 1;
+                    }
+                    if ((c >> (8 - bits)) != requiredPadding)
+                        throw new HpackException.CompressionException("Incorrect padding");
+                    node = lastNode;
+                    break;
+                }
+                utf8.append((byte)(0xFF & rowsym[node]));
+                bits -= rowbits[node];
+                node = 0;
+            }
+
+            if (node != 0)
+                throw new HpackException.CompressionException("Bad termination");
+
+            return utf8.toString();
+        }
+    }
+}
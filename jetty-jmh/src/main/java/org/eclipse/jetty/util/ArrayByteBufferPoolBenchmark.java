@@ -20,9 +20,13 @@ package org.eclipse.jetty.util;
 
 import java.nio.ByteBuffer;
 
+import org.eclipse.jetty.io.ArenaByteBufferPool;
 import org.eclipse.jetty.io.ArrayByteBufferPool;
 import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.io.ThreadLocalByteBufferPool;
 import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
 import org.openjdk.jmh.annotations.Scope;
 import org.openjdk.jmh.annotations.Setup;
 import org.openjdk.jmh.annotations.State;
@@ -35,12 +39,34 @@ import org.openjdk.jmh.runner.options.OptionsBuilder;
 @State(Scope.Benchmark)
 public class ArrayByteBufferPoolBenchmark
 {
+    @Param({"ARRAY", "MAPPED", "THREAD_LOCAL_ARRAY", "THREAD_LOCAL_MAPPED", "ARENA"})
+    public static String poolType;
+
     private ByteBufferPool pool;
 
     @Setup
     public void setUp() throws Exception
     {
-        pool = new ArrayByteBufferPool();
+        switch (poolType)
+        {
+            case "ARRAY":
+                pool = new ArrayByteBufferPool();
+                break;
+            case "MAPPED":
+                pool = new MappedByteBufferPool();
+                break;
+            case "THREAD_LOCAL_ARRAY":
+                pool = new ThreadLocalByteBufferPool(new ArrayByteBufferPool());
+                break;
+            case "THREAD_LOCAL_MAPPED":
+                pool = new ThreadLocalByteBufferPool(new MappedByteBufferPool());
+                break;
+            case "ARENA":
+                pool = new ArenaByteBufferPool();
+                break;
+            default:
+                throw new IllegalStateException();
+        }
     }
 
     @TearDown
@@ -56,6 +82,18 @@ public class ArrayByteBufferPoolBenchmark
         pool.release(buffer);
     }
 
+    @Benchmark
+    public void testAcquireReleaseMany()
+    {
+        // Simulates a connection that holds a few buffers at the same time.
+        ByteBuffer input = pool.acquire(4096, true);
+        ByteBuffer output = pool.acquire(32 * 1024, true);
+        ByteBuffer header = pool.acquire(1024, false);
+        pool.release(header);
+        pool.release(output);
+        pool.release(input);
+    }
+
     public static void main(String[] args) throws RunnerException
     {
         Options opt = new OptionsBuilder()
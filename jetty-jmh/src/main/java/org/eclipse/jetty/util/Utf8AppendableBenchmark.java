@@ -0,0 +1,98 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class Utf8AppendableBenchmark
+{
+    private static final String ASCII = "{\"id\":12345,\"type\":\"update\",\"payload\":\"the quick brown fox jumps over the lazy dog\"}";
+    // @checkstyle-disable-check : AvoidEscapedUnicodeCharactersCheck
+    private static final String MIXED = "{\"id\":12345,\"type\":\"\u00fcpdate\",\"payload\":\"der schnelle braune Fuchs \u2013 \u00e9t\u00e9 \u00e0 la plage\"}";
+
+    @Param({"125", "16384"})
+    public int size;
+
+    @Param({"ascii", "mixed"})
+    public String text;
+
+    private final Utf8StringBuilder utf8 = new Utf8StringBuilder();
+    private byte[] bytes;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setUp()
+    {
+        String source = "ascii".equals(text) ? ASCII : MIXED;
+        StringBuilder builder = new StringBuilder();
+        while (builder.length() < size)
+        {
+            builder.append(source);
+        }
+        bytes = builder.toString().getBytes(StandardCharsets.UTF_8);
+        buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+    }
+
+    @Benchmark
+    public String appendBytes()
+    {
+        utf8.reset();
+        utf8.append(bytes, 0, bytes.length);
+        return utf8.toString();
+    }
+
+    @Benchmark
+    public String appendDirectBuffer()
+    {
+        utf8.reset();
+        utf8.append(buffer.duplicate());
+        return utf8.toString();
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(Utf8AppendableBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(3)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,162 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.extensions.compress;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.compression.CompressionPool;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+import org.eclipse.jetty.util.compression.InflaterPool;
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.api.extensions.IncomingFrames;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * <p>Exchanges one message at a time on many mostly idle permessage-deflate sessions,
+ * reporting how many compressors and how many window bytes the sessions hold.</p>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class PerMessageDeflateDensityBenchmark
+{
+    private static final int SESSIONS = 1000;
+    private static final String MESSAGE = "{\"type\":\"quote\",\"symbol\":\"ACME\",\"bid\":41.97,\"ask\":42.03,\"volume\":1200}";
+
+    @Param({"false", "true"})
+    public boolean idleRelease;
+
+    @Param({"15", "10"})
+    public int maxWindowBits;
+
+    private DeflaterPool deflaterPool;
+    private InflaterPool inflaterPool;
+    private PerMessageDeflateExtension[] sessions;
+    private ByteBuffer compressed;
+    private long heldCompressors;
+    private long windowBytes;
+    private int next;
+
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Density
+    {
+        public long heldCompressors;
+        public long windowBytes;
+    }
+
+    @Setup
+    public void setUp()
+    {
+        ByteBufferPool bufferPool = new MappedByteBufferPool();
+        deflaterPool = new DeflaterPool(CompressionPool.INFINITE_CAPACITY, Deflater.DEFAULT_COMPRESSION, true);
+        inflaterPool = new InflaterPool(CompressionPool.INFINITE_CAPACITY, true);
+        IncomingFrames discard = frame ->
+        {
+        };
+
+        sessions = new PerMessageDeflateExtension[SESSIONS];
+        for (int i = 0; i < SESSIONS; ++i)
+        {
+            PerMessageDeflateExtension session = new PerMessageDeflateExtension();
+            session.setBufferPool(bufferPool);
+            session.setDeflaterPool(deflaterPool);
+            session.setInflaterPool(inflaterPool);
+            session.setPolicy(WebSocketPolicy.newServerPolicy());
+            session.setIdleRelease(idleRelease);
+            session.setMaxWindowBits(maxWindowBits);
+            session.setConfig(ExtensionConfig.parse("permessage-deflate; client_max_window_bits"));
+            session.setNextIncomingFrames(discard);
+            session.setNextOutgoingFrames((frame, callback, batchMode) -> callback.writeSuccess());
+            sessions[i] = session;
+        }
+
+        // A message compressed on its own is valid whatever the context of the receiver.
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        deflater.setInput(MESSAGE.getBytes(StandardCharsets.UTF_8));
+        byte[] output = new byte[1024];
+        int length = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+        deflater.end();
+        compressed = ByteBuffer.wrap(Arrays.copyOf(output, length - CompressExtension.TAIL_BYTES.length));
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        for (PerMessageDeflateExtension session : sessions)
+        {
+            session.doStop();
+        }
+        deflaterPool.doStop();
+        inflaterPool.doStop();
+    }
+
+    @Benchmark
+    public void testMessageOnIdleSession(Density density)
+    {
+        PerMessageDeflateExtension session = sessions[next];
+        next = (next + 1) % SESSIONS;
+
+        heldCompressors -= session.getHeldCompressors();
+        windowBytes -= session.getWindowBytes();
+
+        session.incomingFrame(new TextFrame().setPayload(compressed.slice()).setRsv1(true));
+        session.outgoingFrame(new TextFrame().setPayload(MESSAGE), null, BatchMode.OFF);
+
+        heldCompressors += session.getHeldCompressors();
+        windowBytes += session.getWindowBytes();
+        density.heldCompressors = heldCompressors;
+        density.windowBytes = windowBytes;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(PerMessageDeflateDensityBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(3)
+            .forks(1)
+            .threads(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -0,0 +1,127 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.io;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.io.ByteArrayEndPoint;
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.websocket.api.BatchMode;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.common.Generator;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Benchmark)
+@Threads(4)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class FrameFlusherBenchmark
+{
+    @Param({"false", "true"})
+    public boolean concurrentQueue;
+
+    @Param({"8", "0"})
+    public int maxGather;
+
+    private ByteBuffer payload;
+    private DiscardEndPoint endPoint;
+    private FrameFlusher flusher;
+
+    @Setup
+    public void setUp()
+    {
+        ByteBufferPool bufferPool = new MappedByteBufferPool();
+        Generator generator = new Generator(WebSocketPolicy.newServerPolicy(), bufferPool);
+        payload = BufferUtil.toBuffer("Hello, concurrent producers!");
+        flusher = new FrameFlusher(bufferPool, generator, endPoint = new DiscardEndPoint(), 4096, maxGather, concurrentQueue);
+    }
+
+    @TearDown
+    public void tearDown()
+    {
+        flusher.terminate(new IllegalStateException("Benchmark done"));
+    }
+
+    @Benchmark
+    public void testEnqueueAndFlush()
+    {
+        TextFrame frame = new TextFrame();
+        frame.setPayload(payload.slice());
+        flusher.enqueue(frame, null, BatchMode.OFF);
+        flusher.iterate();
+        endPoint.complete();
+    }
+
+    /**
+     * An endpoint that consumes the buffers and leaves the write pending until
+     * the next call to {@link #complete()}, like a network write would.
+     */
+    private static class DiscardEndPoint extends ByteArrayEndPoint
+    {
+        private final AtomicReference<Callback> pending = new AtomicReference<>();
+
+        @Override
+        public void write(Callback callback, ByteBuffer... buffers)
+        {
+            for (ByteBuffer buffer : buffers)
+            {
+                buffer.position(buffer.limit());
+            }
+            pending.set(callback);
+        }
+
+        private void complete()
+        {
+            Callback callback = pending.getAndSet(null);
+            if (callback != null)
+                callback.succeeded();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(FrameFlusherBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(3)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
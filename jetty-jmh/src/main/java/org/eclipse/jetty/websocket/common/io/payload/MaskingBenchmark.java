@@ -0,0 +1,109 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.io.payload;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.common.Generator;
+import org.eclipse.jetty.websocket.common.frames.BinaryFrame;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MaskingBenchmark
+{
+    @Param({"16", "125", "4096", "65536"})
+    public int size;
+
+    @Param({"false", "true"})
+    public boolean direct;
+
+    private final byte[] mask = {(byte)0x37, (byte)0xFA, (byte)0x21, (byte)0x3D};
+    private final DeMaskProcessor demask = new DeMaskProcessor();
+    private final Generator generator = new Generator(WebSocketPolicy.newClientPolicy(), new MappedByteBufferPool());
+    private final ByteBuffer header = ByteBuffer.allocate(Generator.MAX_HEADER_LENGTH);
+    private final BinaryFrame frame = new BinaryFrame();
+    private ByteBuffer payload;
+
+    @Setup
+    public void setUp()
+    {
+        byte[] bytes = new byte[size];
+        ThreadLocalRandom.current().nextBytes(bytes);
+        payload = direct ? ByteBuffer.allocateDirect(size) : ByteBuffer.allocate(size);
+        payload.put(bytes).flip();
+        frame.setPayload(payload);
+        frame.setMask(mask);
+    }
+
+    @Benchmark
+    public ByteBuffer byteByByte()
+    {
+        for (int i = payload.position(); i < payload.limit(); i++)
+        {
+            payload.put(i, (byte)(payload.get(i) ^ mask[i & 3]));
+        }
+        return payload;
+    }
+
+    @Benchmark
+    public ByteBuffer parserDeMask()
+    {
+        demask.reset(mask);
+        demask.process(payload);
+        return payload;
+    }
+
+    @Benchmark
+    public ByteBuffer generatorMask()
+    {
+        BufferUtil.clear(header);
+        generator.generateHeaderBytes(frame, header);
+        return payload;
+    }
+
+    public static void main(String[] args) throws RunnerException
+    {
+        Options opt = new OptionsBuilder()
+            .include(MaskingBenchmark.class.getSimpleName())
+            .warmupIterations(3)
+            .measurementIterations(3)
+            .forks(1)
+            .build();
+
+        new Runner(opt).run();
+    }
+}
@@ -28,6 +28,10 @@ db-connection-type?=datasource
 #jetty.session.gracePeriod.seconds=3600
 #jetty.session.savePeriod.seconds=0
 
+## Time in ms that session writes wait to be batched together, 0 to disable batching
+#jetty.session.jdbc.batchWindow.ms=0
+#jetty.session.jdbc.maxBatchSize=64
+
 #jetty.session.jdbc.blobType=
 #jetty.session.jdbc.longType=
 #jetty.session.jdbc.stringType=
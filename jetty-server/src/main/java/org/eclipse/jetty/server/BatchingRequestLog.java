@@ -0,0 +1,540 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+import org.eclipse.jetty.http.HttpHeader;
+import org.eclipse.jetty.util.DateCache;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.thread.ThreadPoolBudget;
+
+/**
+ * <p>A {@link CustomRequestLog} that moves the formatting and the writing of the log
+ * lines off the request threads.</p>
+ * <p>Request threads only capture the raw fields of the request and of the response
+ * into a pre-allocated record of a bounded ring buffer, without formatting them.
+ * A background task formats the captured records in batches into a reused buffer,
+ * and writes each batch to the {@link RequestLogWriter} with a single write.</p>
+ * <p>The background task runs on the {@link #setExecutor(Executor) executor}, typically
+ * the server thread pool, from which it leases a thread for as long as this request log
+ * is started; if no executor is configured, it runs on a dedicated daemon thread.</p>
+ * <p>Only the {@link #NCSA_FORMAT} and {@link #EXTENDED_NCSA_FORMAT} formats are supported,
+ * since arbitrary format codes may need to access the request and the response after
+ * they have been recycled.</p>
+ * <p>When the ring buffer is full, because the background thread cannot keep up with
+ * the request rate, the records are dropped and counted, rather than blocking the
+ * request threads.</p>
+ */
+@ManagedObject("Batching NCSA request log")
+public class BatchingRequestLog extends CustomRequestLog
+{
+    private static final byte[] LINE_SEPARATOR = System.lineSeparator().getBytes(StandardCharsets.ISO_8859_1);
+
+    private final RequestLogWriter _writer;
+    private final boolean _extended;
+    private final DateCache _dateCache = new DateCache(DEFAULT_DATE_FORMAT, Locale.getDefault(), TimeZone.getTimeZone("GMT"));
+    private final AtomicLong _claimed = new AtomicLong();
+    private final LongAdder _logged = new LongAdder();
+    private final LongAdder _dropped = new LongAdder();
+    private final LongAdder _batches = new LongAdder();
+    private final LongAdder _oversized = new LongAdder();
+    private int _capacity = 4096;
+    private int _batchSize = 64 * 1024;
+    private Record[] _records;
+    private volatile long _consumed;
+    private volatile boolean _waiting;
+    private volatile boolean _stopping;
+    private volatile Thread _thread;
+    private Executor _executor;
+    private ThreadPoolBudget.Lease _lease;
+    private CountDownLatch _stopped;
+
+    public BatchingRequestLog(String file)
+    {
+        this(new RequestLogWriter(file), EXTENDED_NCSA_FORMAT);
+    }
+
+    /**
+     * @param writer the writer of the log lines
+     * @param formatString either {@link #NCSA_FORMAT} or {@link #EXTENDED_NCSA_FORMAT}
+     */
+    public BatchingRequestLog(RequestLogWriter writer, String formatString)
+    {
+        super(writer, formatString);
+        if (NCSA_FORMAT.equals(formatString))
+            _extended = false;
+        else if (EXTENDED_NCSA_FORMAT.equals(formatString))
+            _extended = true;
+        else
+            throw new IllegalArgumentException("Unsupported format " + formatString);
+        _writer = writer;
+    }
+
+    /**
+     * @return the number of records of the ring buffer
+     */
+    @ManagedAttribute("The number of records of the ring buffer")
+    public int getCapacity()
+    {
+        return _capacity;
+    }
+
+    /**
+     * @param capacity the number of records of the ring buffer, rounded up to a power of 2
+     */
+    public void setCapacity(int capacity)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        if (capacity <= 0)
+            throw new IllegalArgumentException("Invalid capacity " + capacity);
+        _capacity = Integer.highestOneBit(capacity - 1) << 1;
+        if (_capacity == 0)
+            _capacity = 1;
+    }
+
+    /**
+     * @return the size in bytes of the buffer used to format a batch of log lines
+     */
+    @ManagedAttribute("The size in bytes of the buffer used to format a batch of log lines")
+    public int getBatchSize()
+    {
+        return _batchSize;
+    }
+
+    /**
+     * @param batchSize the size in bytes of the buffer used to format a batch of log lines
+     */
+    public void setBatchSize(int batchSize)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _batchSize = batchSize;
+    }
+
+    /**
+     * @return the executor that runs the background task, or null to run it on a dedicated thread
+     */
+    public Executor getExecutor()
+    {
+        return _executor;
+    }
+
+    /**
+     * @param executor the executor that runs the background task, or null to run it on a dedicated thread
+     */
+    public void setExecutor(Executor executor)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _executor = executor;
+    }
+
+    @ManagedAttribute("The number of captured records")
+    public long getLoggedRecords()
+    {
+        return _logged.sum();
+    }
+
+    @ManagedAttribute("The number of records dropped because the ring buffer was full")
+    public long getDroppedRecords()
+    {
+        return _dropped.sum();
+    }
+
+    @ManagedAttribute("The number of batches written")
+    public long getBatches()
+    {
+        return _batches.sum();
+    }
+
+    @ManagedAttribute("The number of log lines that overflowed the batch buffer")
+    public long getOversizedRecords()
+    {
+        return _oversized.sum();
+    }
+
+    @ManagedAttribute("The number of records waiting to be written")
+    public int getPendingRecords()
+    {
+        return (int)Math.max(0, _claimed.get() - _consumed);
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _logged.reset();
+        _dropped.reset();
+        _batches.reset();
+        _oversized.reset();
+    }
+
+    @Override
+    protected synchronized void doStart() throws Exception
+    {
+        Record[] records = new Record[_capacity];
+        for (int i = 0; i < records.length; ++i)
+        {
+            records[i] = new Record(i - records.length);
+        }
+        _records = records;
+        _claimed.set(0);
+        _consumed = 0;
+        _stopping = false;
+        _stopped = new CountDownLatch(1);
+        super.doStart();
+        Executor executor = _executor;
+        if (executor == null)
+        {
+            Thread thread = new Thread(this::consume, "BatchingRequestLog@" + Integer.toHexString(hashCode()));
+            thread.setDaemon(true);
+            thread.start();
+        }
+        else
+        {
+            _lease = ThreadPoolBudget.leaseFrom(executor, this, 1);
+            executor.execute(this::consume);
+        }
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        // Stop accepting records, then wait for the pending records to be written.
+        _stopping = true;
+        Thread thread = _thread;
+        if (thread != null)
+            LockSupport.unpark(thread);
+        if (!_stopped.await(30, TimeUnit.SECONDS))
+            LOG.warn("Pending records not written by {}", this);
+        if (_lease != null)
+            _lease.close();
+        _lease = null;
+        super.doStop();
+    }
+
+    @Override
+    public void log(Request request, Response response)
+    {
+        try
+        {
+            if (_stopping || isIgnored(request))
+                return;
+
+            Record[] records = _records;
+            long sequence;
+            while (true)
+            {
+                sequence = _claimed.get();
+                if (sequence - _consumed >= records.length)
+                {
+                    _dropped.increment();
+                    return;
+                }
+                if (_claimed.compareAndSet(sequence, sequence + 1))
+                    break;
+            }
+
+            Record record = records[(int)(sequence & (records.length - 1))];
+            try
+            {
+                record.capture(request, response, _extended);
+            }
+            finally
+            {
+                // Publish the record to the consumer thread, even if partially captured.
+                record._sequence = sequence;
+            }
+            _logged.increment();
+
+            if (_waiting)
+            {
+                Thread thread = _thread;
+                if (thread != null)
+                    LockSupport.unpark(thread);
+            }
+        }
+        catch (Throwable x)
+        {
+            LOG.warn(x);
+        }
+    }
+
+    private void consume()
+    {
+        _thread = Thread.currentThread();
+        try
+        {
+            consume(_records);
+        }
+        finally
+        {
+            _thread = null;
+            _stopped.countDown();
+        }
+    }
+
+    private void consume(Record[] records)
+    {
+        // The batch buffer is always in fill mode.
+        ByteBuffer batch = ByteBuffer.allocate(_batchSize);
+        while (true)
+        {
+            long sequence = _consumed;
+            Record record = records[(int)(sequence & (records.length - 1))];
+            if (record._sequence == sequence)
+            {
+                format(record, batch);
+                record.clear();
+                _consumed = sequence + 1;
+                continue;
+            }
+
+            // No more published records, write the batch.
+            if (batch.position() > 0)
+            {
+                write(batch);
+                continue;
+            }
+
+            if (_stopping && _claimed.get() == sequence)
+                break;
+
+            _waiting = true;
+            if (record._sequence != sequence)
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(_stopping ? 1 : 100));
+            _waiting = false;
+        }
+    }
+
+    private void format(Record record, ByteBuffer batch)
+    {
+        int position = batch.position();
+        try
+        {
+            record.format(batch, _dateCache);
+            return;
+        }
+        catch (BufferOverflowException x)
+        {
+            batch.position(position);
+        }
+
+        if (position > 0)
+        {
+            // Write the batch and retry with an empty buffer.
+            write(batch);
+            format(record, batch);
+            return;
+        }
+
+        // The log line does not fit in an empty batch buffer.
+        _oversized.increment();
+        int capacity = batch.capacity();
+        while (true)
+        {
+            capacity *= 2;
+            ByteBuffer buffer = ByteBuffer.allocate(capacity);
+            try
+            {
+                record.format(buffer, _dateCache);
+                write(buffer);
+                return;
+            }
+            catch (BufferOverflowException ignored)
+            {
+                // Try with a larger buffer.
+            }
+        }
+    }
+
+    private void write(ByteBuffer batch)
+    {
+        try
+        {
+            batch.flip();
+            _writer.write(batch);
+            _batches.increment();
+        }
+        catch (Throwable x)
+        {
+            LOG.warn(x);
+        }
+        finally
+        {
+            batch.clear();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s,capacity=%d,pending=%d,dropped=%d}",
+            getClass().getSimpleName(), hashCode(), getState(), _capacity, getPendingRecords(), getDroppedRecords());
+    }
+
+    /**
+     * <p>The raw fields of a request log line, captured by the request thread.</p>
+     */
+    private static class Record
+    {
+        private volatile long _sequence;
+        private boolean _extended;
+        private long _timeStamp;
+        private String _clientHost;
+        private String _user;
+        private String _method;
+        private String _uri;
+        private String _protocol;
+        private int _status;
+        private long _bytesWritten;
+        private String _referer;
+        private String _userAgent;
+
+        private Record(long sequence)
+        {
+            _sequence = sequence;
+        }
+
+        private void capture(Request request, Response response, boolean extended)
+        {
+            _extended = extended;
+            _timeStamp = request.getTimeStamp();
+            // Like %{client}a of CustomRequestLog.
+            _clientHost = request.getRemoteHost();
+            _user = getAuthentication(request, false);
+            _method = request.getMethod();
+            _uri = request.getOriginalURI();
+            _protocol = request.getProtocol();
+            _status = response.getCommittedMetaData().getStatus();
+            _bytesWritten = response.getHttpChannel().getBytesWritten();
+            if (extended)
+            {
+                _referer = request.getHeader(HttpHeader.REFERER.asString());
+                _userAgent = request.getHeader(HttpHeader.USER_AGENT.asString());
+            }
+        }
+
+        private void clear()
+        {
+            _clientHost = null;
+            _user = null;
+            _method = null;
+            _uri = null;
+            _protocol = null;
+            _referer = null;
+            _userAgent = null;
+        }
+
+        /**
+         * <p>Formats this record as {@link #NCSA_FORMAT} or {@link #EXTENDED_NCSA_FORMAT}.</p>
+         *
+         * @param buffer the buffer, in fill mode, to format into
+         * @param dateCache the cache of formatted request times
+         * @throws BufferOverflowException if the buffer is too small
+         */
+        private void format(ByteBuffer buffer, DateCache dateCache)
+        {
+            putString(buffer, _clientHost);
+            putAscii(buffer, " - ");
+            putString(buffer, _user);
+            putAscii(buffer, " [");
+            putString(buffer, dateCache.format(_timeStamp));
+            putAscii(buffer, "] \"");
+            putString(buffer, _method);
+            buffer.put((byte)' ');
+            putString(buffer, _uri);
+            buffer.put((byte)' ');
+            putString(buffer, _protocol);
+            putAscii(buffer, "\" ");
+            putLong(buffer, _status);
+            buffer.put((byte)' ');
+            putLong(buffer, _bytesWritten);
+            if (_extended)
+            {
+                putAscii(buffer, " \"");
+                putString(buffer, _referer);
+                putAscii(buffer, "\" \"");
+                putString(buffer, _userAgent);
+                buffer.put((byte)'"');
+            }
+            buffer.put(LINE_SEPARATOR);
+        }
+
+        private static void putAscii(ByteBuffer buffer, String s)
+        {
+            for (int i = 0; i < s.length(); ++i)
+            {
+                buffer.put((byte)s.charAt(i));
+            }
+        }
+
+        private static void putString(ByteBuffer buffer, String s)
+        {
+            if (s == null || s.isEmpty())
+            {
+                buffer.put((byte)'-');
+                return;
+            }
+            for (int i = 0; i < s.length(); ++i)
+            {
+                char c = s.charAt(i);
+                if (c >= 0x80)
+                {
+                    // Slow path for non ASCII strings.
+                    buffer.put(s.substring(i).getBytes(StandardCharsets.UTF_8));
+                    return;
+                }
+                buffer.put((byte)c);
+            }
+        }
+
+        private static void putLong(ByteBuffer buffer, long value)
+        {
+            if (value < 0)
+            {
+                buffer.put((byte)'-');
+                value = -value;
+            }
+            long divisor = 1;
+            while (value / divisor >= 10)
+            {
+                divisor *= 10;
+            }
+            while (divisor > 0)
+            {
+                buffer.put((byte)('0' + (value / divisor) % 10));
+                divisor /= 10;
+            }
+        }
+    }
+}
@@ -23,15 +23,19 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Objects;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.DateGenerator;
@@ -44,11 +48,15 @@ import org.eclipse.jetty.http.PreEncodedHttpField;
 import org.eclipse.jetty.http.PrecompressedHttpContent;
 import org.eclipse.jetty.http.ResourceHttpContent;
 import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.util.resource.Resource;
 import org.eclipse.jetty.util.resource.ResourceFactory;
 
+@ManagedObject("Cache of static content")
 public class CachedContentFactory implements HttpContent.ContentFactory
 {
     private static final Logger LOG = Log.getLogger(CachedContentFactory.class);
@@ -63,6 +71,10 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     private final boolean _etags;
     private final CompressedContentFormat[] _precompressedFormats;
     private final boolean _useFileMappedBuffer;
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private volatile EvictionPolicy _evictionPolicy = new LeastRecentlyAccessedEvictionPolicy();
 
     private int _maxCachedFileSize = 128 * 1024 * 1024;
     private int _maxCachedFiles = 2048;
@@ -91,16 +103,67 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         _precompressedFormats = precompressedFormats;
     }
 
+    @ManagedAttribute("The total size in bytes of the cached buffers")
     public int getCachedSize()
     {
         return _cachedSize.get();
     }
 
+    @ManagedAttribute("The number of cached files")
     public int getCachedFiles()
     {
         return _cachedFiles.get();
     }
 
+    @ManagedAttribute("The number of lookups that found valid cached content")
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of lookups that did not find valid cached content")
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute("The number of contents evicted to respect the cache limits")
+    public long getEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    @ManagedOperation(value = "Resets the hit, miss and eviction counters", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+    }
+
+    /**
+     * @return the policy that selects the contents to evict when the cache exceeds its limits
+     */
+    @ManagedAttribute("The eviction policy")
+    public EvictionPolicy getEvictionPolicy()
+    {
+        return _evictionPolicy;
+    }
+
+    /**
+     * <p>Sets the policy that selects the contents to evict when the cache exceeds its limits.</p>
+     * <p>The policy should be set before the cache is used, as the contents already cached
+     * are flushed when the policy is changed.</p>
+     *
+     * @param evictionPolicy the eviction policy
+     */
+    public void setEvictionPolicy(EvictionPolicy evictionPolicy)
+    {
+        _evictionPolicy = Objects.requireNonNull(evictionPolicy);
+        flushCache();
+    }
+
+    @ManagedAttribute("The max size in bytes of a cached file")
     public int getMaxCachedFileSize()
     {
         return _maxCachedFileSize;
@@ -112,6 +175,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         shrinkCache();
     }
 
+    @ManagedAttribute("The max total size in bytes of the cached buffers")
     public int getMaxCacheSize()
     {
         return _maxCacheSize;
@@ -126,6 +190,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
     /**
      * @return the max number of cached files.
      */
+    @ManagedAttribute("The max number of cached files")
     public int getMaxCachedFiles()
     {
         return _maxCachedFiles;
@@ -145,15 +210,14 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return _useFileMappedBuffer;
     }
 
+    @ManagedOperation(value = "Flushes the cached contents", impact = "ACTION")
     public void flushCache()
     {
         while (_cache.size() > 0)
         {
-            for (String path : _cache.keySet())
+            for (CachedHttpContent content : _cache.values())
             {
-                CachedHttpContent content = _cache.remove(path);
-                if (content != null)
-                    content.invalidate();
+                remove(content);
             }
         }
     }
@@ -182,7 +246,12 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         // Is the content in this cache?
         CachedHttpContent content = _cache.get(pathInContext);
         if (content != null && (content).isValid())
+        {
+            _hits.increment();
+            _evictionPolicy.onAccessed(content);
             return content;
+        }
+        _misses.increment();
 
         // try loading the content from our factory.
         Resource resource = _factory.getResource(pathInContext);
@@ -245,12 +314,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                             compressedResource.length() < resource.length())
                         {
                             compressedContent = new CachedHttpContent(compressedPathInContext, compressedResource, null);
-                            CachedHttpContent added = _cache.putIfAbsent(compressedPathInContext, compressedContent);
-                            if (added != null)
-                            {
-                                compressedContent.invalidate();
-                                compressedContent = added;
-                            }
+                            compressedContent = add(compressedContent);
                         }
                     }
                     if (compressedContent != null)
@@ -262,14 +326,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 content = new CachedHttpContent(pathInContext, resource, null);
 
             // Add it to the cache.
-            CachedHttpContent added = _cache.putIfAbsent(pathInContext, content);
-            if (added != null)
-            {
-                content.invalidate();
-                content = added;
-            }
-
-            return content;
+            return add(content);
         }
 
         // Look for non Cacheable precompressed resource or content
@@ -299,34 +356,47 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return new ResourceHttpContent(resource, mt, maxBufferSize);
     }
 
-    private void shrinkCache()
+    private CachedHttpContent add(CachedHttpContent content)
     {
-        // While we need to shrink
-        while (_cache.size() > 0 && (_cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize))
-        {
-            // Scan the entire cache and generate an ordered list by last accessed time.
-            SortedSet<CachedHttpContent> sorted = new TreeSet<>((c1, c2) ->
-            {
-                if (c1._lastAccessed < c2._lastAccessed)
-                    return -1;
+        // The policy is told first, so that it cannot be told of a removal before the addition.
+        EvictionPolicy policy = _evictionPolicy;
+        policy.onAdded(content);
+        CachedHttpContent added = _cache.putIfAbsent(content.getKey(), content);
+        if (added == null)
+            return content;
+        policy.onRemoved(content);
+        content.invalidate();
+        return added;
+    }
 
-                if (c1._lastAccessed > c2._lastAccessed)
-                    return 1;
+    private boolean remove(CachedHttpContent content)
+    {
+        if (!_cache.remove(content.getKey(), content))
+            return false;
+        _evictionPolicy.onRemoved(content);
+        content.invalidate();
+        return true;
+    }
 
-                if (c1._contentLengthValue < c2._contentLengthValue)
-                    return -1;
+    private boolean isOverLimits()
+    {
+        return _cachedFiles.get() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize;
+    }
 
-                return c1._key.compareTo(c2._key);
-            });
-            sorted.addAll(_cache.values());
+    private void shrinkCache()
+    {
+        // While we need to shrink
+        while (_cache.size() > 0 && isOverLimits())
+        {
+            Iterator<CachedHttpContent> candidates = _evictionPolicy.evictionCandidates(_cache.values());
+            if (!candidates.hasNext())
+                break;
 
-            // Invalidate least recently used first
-            for (CachedHttpContent content : sorted)
+            // Invalidate in the order chosen by the policy.
+            while (candidates.hasNext() && isOverLimits())
             {
-                if (_cachedFiles.get() <= _maxCachedFiles && _cachedSize.get() <= _maxCacheSize)
-                    break;
-                if (content == _cache.remove(content.getKey()))
-                    content.invalidate();
+                if (remove(candidates.next()))
+                    _evictions.increment();
             }
         }
     }
@@ -382,6 +452,87 @@ public class CachedContentFactory implements HttpContent.ContentFactory
         return "ResourceCache[" + _parent + "," + _factory + "]@" + hashCode();
     }
 
+    /**
+     * <p>A policy that selects which cached contents are evicted when the cache exceeds
+     * its {@link #getMaxCachedFiles() max files} or {@link #getMaxCacheSize() max size}.</p>
+     * <p>Implementations are notified of additions, accesses and removals of contents
+     * concurrently from multiple threads and must be thread safe.</p>
+     */
+    public interface EvictionPolicy
+    {
+        /**
+         * <p>Invoked just before a content is added to the cache.</p>
+         *
+         * @param content the content being added
+         */
+        default void onAdded(CachedHttpContent content)
+        {
+        }
+
+        /**
+         * <p>Invoked when a lookup finds a valid cached content.</p>
+         *
+         * @param content the content accessed
+         */
+        default void onAccessed(CachedHttpContent content)
+        {
+        }
+
+        /**
+         * <p>Invoked when a content is removed from the cache, either because it was
+         * evicted, invalidated or because the cache was flushed.</p>
+         *
+         * @param content the content removed
+         */
+        default void onRemoved(CachedHttpContent content)
+        {
+        }
+
+        /**
+         * <p>Returns the contents to evict, in order of preference.</p>
+         * <p>The cache removes the returned contents one by one until it is within
+         * its limits, so the iterator should compute the candidates lazily.</p>
+         *
+         * @param contents the contents currently cached
+         * @return an iterator over the contents to evict
+         */
+        Iterator<CachedHttpContent> evictionCandidates(Collection<CachedHttpContent> contents);
+    }
+
+    /**
+     * <p>The default {@link EvictionPolicy} that scans and sorts all the cached contents
+     * to evict the least recently accessed ones first.</p>
+     */
+    public static class LeastRecentlyAccessedEvictionPolicy implements EvictionPolicy
+    {
+        @Override
+        public Iterator<CachedHttpContent> evictionCandidates(Collection<CachedHttpContent> contents)
+        {
+            // Scan the entire cache and generate an ordered list by last accessed time.
+            SortedSet<CachedHttpContent> sorted = new TreeSet<>((c1, c2) ->
+            {
+                if (c1._lastAccessed < c2._lastAccessed)
+                    return -1;
+
+                if (c1._lastAccessed > c2._lastAccessed)
+                    return 1;
+
+                if (c1._contentLengthValue < c2._contentLengthValue)
+                    return -1;
+
+                return c1._key.compareTo(c2._key);
+            });
+            sorted.addAll(contents);
+            return sorted.iterator();
+        }
+
+        @Override
+        public String toString()
+        {
+            return getClass().getSimpleName();
+        }
+    }
+
     /**
      * MetaData associated with a context Resource.
      */
@@ -478,8 +629,7 @@ public class CachedContentFactory implements HttpContent.ContentFactory
                 return true;
             }
 
-            if (this == _cache.remove(_key))
-                invalidate();
+            remove(this);
             return false;
         }
 
@@ -327,7 +327,7 @@ public class CustomRequestLog extends ContainerLifeCycle implements RequestLog
     {
         try
         {
-            if (_ignorePathMap != null && _ignorePathMap.getMatched(request.getRequestURI()) != null)
+            if (isIgnored(request))
                 return;
 
             StringBuilder sb = _buffers.get();
@@ -344,6 +344,15 @@ public class CustomRequestLog extends ContainerLifeCycle implements RequestLog
         }
     }
 
+    /**
+     * @param request the request to log
+     * @return whether the request path matches one of the {@link #setIgnorePaths(String[]) ignored paths}
+     */
+    protected boolean isIgnored(Request request)
+    {
+        return _ignorePathMap != null && _ignorePathMap.getMatched(request.getRequestURI()) != null;
+    }
+
     /**
      * Extract the user authentication
      *
@@ -192,6 +192,17 @@ public class HttpChannel implements Runnable, HttpOutput.Interceptor
         return _written;
     }
 
+    /**
+     * <p>Accounts for response content bytes that have been written directly
+     * to the transport, rather than via {@link #write(ByteBuffer, boolean, Callback)}.</p>
+     *
+     * @param bytes the number of bytes written
+     */
+    void onBytesTransferred(long bytes)
+    {
+        _written += bytes;
+    }
+
     /**
      * @return the number of requests handled by this connection
      */
@@ -71,6 +71,7 @@ public class HttpConfiguration implements Dumpable
     private boolean _sendXPoweredBy = false;
     private boolean _sendDateHeader = true;
     private boolean _delayDispatchUntilContent = true;
+    private boolean _useFileChannelTransfer = true;
     private boolean _persistentConnectionsEnabled = true;
     private int _maxErrorDispatches = 10;
     private long _minRequestDataRate;
@@ -140,6 +141,7 @@ public class HttpConfiguration implements Dumpable
         _sendServerVersion = config._sendServerVersion;
         _sendXPoweredBy = config._sendXPoweredBy;
         _delayDispatchUntilContent = config._delayDispatchUntilContent;
+        _useFileChannelTransfer = config._useFileChannelTransfer;
         _persistentConnectionsEnabled = config._persistentConnectionsEnabled;
         _maxErrorDispatches = config._maxErrorDispatches;
         _minRequestDataRate = config._minRequestDataRate;
@@ -365,6 +367,26 @@ public class HttpConfiguration implements Dumpable
         return _delayDispatchUntilContent;
     }
 
+    /**
+     * <p>Sets whether file content is transferred directly from the file to the socket with
+     * {@link java.nio.channels.FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)}.</p>
+     * <p>The direct transfer is only possible for non secure HTTP/1.x connections, when the
+     * response content length is known and no {@link HttpOutput.Interceptor} is installed;
+     * otherwise file content is copied into buffers as usual.</p>
+     *
+     * @param useFileChannelTransfer whether file content may be transferred directly to the socket (defaults to true)
+     */
+    public void setUseFileChannelTransfer(boolean useFileChannelTransfer)
+    {
+        _useFileChannelTransfer = useFileChannelTransfer;
+    }
+
+    @ManagedAttribute("Whether file content may be transferred directly to the socket")
+    public boolean isUseFileChannelTransfer()
+    {
+        return _useFileChannelTransfer;
+    }
+
     /**
      * <p>Sets the {@link Customizer}s that are invoked for every
      * request received.</p>
@@ -761,6 +783,7 @@ public class HttpConfiguration implements Dumpable
             "sendServerVersion=" + _sendServerVersion,
             "sendXPoweredBy=" + _sendXPoweredBy,
             "delayDispatchUntilContent=" + _delayDispatchUntilContent,
+            "useFileChannelTransfer=" + _useFileChannelTransfer,
             "persistentConnectionsEnabled=" + _persistentConnectionsEnabled,
             "maxErrorDispatches=" + _maxErrorDispatches,
             "minRequestDataRate=" + _minRequestDataRate,
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.server;
 
 import org.eclipse.jetty.http.HttpCompliance;
+import org.eclipse.jetty.http.HttpFieldCache;
 import org.eclipse.jetty.http.HttpVersion;
 import org.eclipse.jetty.io.Connection;
 import org.eclipse.jetty.io.EndPoint;
@@ -35,6 +36,7 @@ public class HttpConnectionFactory extends AbstractConnectionFactory implements
     private final HttpConfiguration _config;
     private HttpCompliance _httpCompliance;
     private boolean _recordHttpComplianceViolations = false;
+    private HttpFieldCache _fieldCache;
 
     public HttpConnectionFactory()
     {
@@ -80,10 +82,33 @@ public class HttpConnectionFactory extends AbstractConnectionFactory implements
         _httpCompliance = httpCompliance;
     }
 
+    /**
+     * @return the cache of request fields shared by the connections of this factory, or null
+     */
+    public HttpFieldCache getSharedFieldCache()
+    {
+        return _fieldCache;
+    }
+
+    /**
+     * <p>Sets a cache of request fields shared by the connections of this factory,
+     * so that the frequent fields, such as the {@code User-Agent} of the most common
+     * clients, are not allocated again by every new connection.</p>
+     *
+     * @param fieldCache the cache of request fields, or null for no shared cache
+     */
+    public void setSharedFieldCache(HttpFieldCache fieldCache)
+    {
+        updateBean(_fieldCache, fieldCache);
+        _fieldCache = fieldCache;
+    }
+
     @Override
     public Connection newConnection(Connector connector, EndPoint endPoint)
     {
         HttpConnection conn = new HttpConnection(_config, connector, endPoint, _httpCompliance, isRecordHttpComplianceViolations());
+        if (_fieldCache != null)
+            conn.getParser().setSharedFieldCache(_fieldCache);
         return configure(conn, connector, endPoint);
     }
 
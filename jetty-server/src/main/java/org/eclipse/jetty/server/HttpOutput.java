@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.channels.WritePendingException;
 import java.nio.charset.Charset;
@@ -39,6 +40,7 @@ import javax.servlet.WriteListener;
 
 import org.eclipse.jetty.http.HttpContent;
 import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.ChannelEndPoint;
 import org.eclipse.jetty.io.EofException;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
@@ -1221,6 +1223,24 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * Blocking send of a region of file content.
+     * The file channel will be closed after sending the content.
+     *
+     * @param file The file channel to send the content of
+     * @param position The position in the file of the first byte to send
+     * @param count The number of bytes to send
+     * @throws IOException if the send fails
+     */
+    public void sendContent(FileChannel file, long position, long count) throws IOException
+    {
+        try (Blocker blocker = _writeBlocker.acquire())
+        {
+            sendContent(file, position, count, blocker);
+            blocker.block();
+        }
+    }
+
     /**
      * Blocking send of HTTP content.
      *
@@ -1295,10 +1315,63 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         if (LOG.isDebugEnabled())
             LOG.debug("sendContent(channel={},{})", in, callback);
 
+        if (in instanceof FileChannel && isFileChannelTransferable())
+        {
+            FileChannel file = (FileChannel)in;
+            try
+            {
+                long position = file.position();
+                sendContent(file, position, file.size() - position, callback);
+            }
+            catch (Throwable x)
+            {
+                IO.close(file);
+                callback.failed(x);
+            }
+            return;
+        }
+
         if (prepareSendContent(0, callback))
             new ReadableByteChannelWritingCB(in, callback).iterate();
     }
 
+    /**
+     * <p>Asynchronous send of a region of file content, typically the whole file or a
+     * single range of it.</p>
+     * <p>When {@link HttpConfiguration#isUseFileChannelTransfer() enabled}, the connection
+     * is a non secure HTTP/1.x connection, the response content length is known and
+     * equal to {@code count}, and no {@link Interceptor} is installed, the file content
+     * is transferred directly to the socket with
+     * {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)};
+     * otherwise the file content is copied into buffers and written as usual.</p>
+     * <p>The file channel will be closed after sending the content.</p>
+     *
+     * @param file The file channel to send the content of
+     * @param position The position in the file of the first byte to send
+     * @param count The number of bytes to send
+     * @param callback The callback to use to notify success or failure
+     */
+    public void sendContent(FileChannel file, long position, long count, Callback callback)
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("sendContent(file={},{},{},{})", file, position, count, callback);
+
+        boolean transfer = isFileChannelTransferable() && _channel.getResponse().getLongContentLength() == count;
+        if (prepareSendContent(0, callback))
+            new FileChannelWritingCB(file, position, count, transfer, callback).iterate();
+        else
+            IO.close(file);
+    }
+
+    private boolean isFileChannelTransferable()
+    {
+        return _channel.getHttpConfiguration().isUseFileChannelTransfer() &&
+            _interceptor == _channel &&
+            _channel.getHttpTransport() instanceof HttpConnection &&
+            _channel.getEndPoint() instanceof ChannelEndPoint &&
+            !_channel.getRequest().isHead();
+    }
+
     private boolean prepareSendContent(int len, Callback callback)
     {
         synchronized (_channelState)
@@ -1911,6 +1984,117 @@ public class HttpOutput extends ServletOutputStream implements Runnable
         }
     }
 
+    /**
+     * An iterating callback that will write a region of a file to the {@link HttpChannel}.
+     * When the direct transfer is possible, the response headers are written first, then the
+     * file bytes are transferred directly to the socket for as long as it is writable; when it
+     * is not, a buffer of size {@link HttpOutput#getBufferSize()} is filled from the file and
+     * written to the {@link HttpChannel}, so that the write is completed when the socket is
+     * writable again, before resuming the direct transfer.
+     * When the direct transfer is not possible, the whole region is written via the buffer.
+     */
+    private class FileChannelWritingCB extends NestedChannelWriteCB
+    {
+        private final FileChannel _file;
+        private final boolean _transfer;
+        private long _position;
+        private long _remaining;
+        private ByteBuffer _buffer;
+        private boolean _committed;
+        private boolean _completed;
+        private boolean _closed;
+
+        private FileChannelWritingCB(FileChannel file, long position, long count, boolean transfer, Callback callback)
+        {
+            super(callback, true);
+            _file = file;
+            _position = position;
+            _remaining = count;
+            _transfer = transfer;
+            _committed = !transfer;
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            // Commit the response headers before transferring directly to the socket.
+            if (!_committed)
+            {
+                _committed = true;
+                channelWrite(BufferUtil.EMPTY_BUFFER, _remaining == 0, this);
+                _completed = _remaining == 0;
+                return Action.SCHEDULED;
+            }
+
+            if (_transfer)
+            {
+                ChannelEndPoint endPoint = (ChannelEndPoint)_channel.getEndPoint();
+                while (_remaining > 0)
+                {
+                    long transferred = endPoint.transferFrom(_file, _position, _remaining);
+                    if (transferred <= 0)
+                        break;
+                    _position += transferred;
+                    _remaining -= transferred;
+                    _written += transferred;
+                    _channel.onBytesTransferred(transferred);
+                    onFlushed(transferred);
+                }
+            }
+
+            if (_remaining > 0)
+            {
+                // Copy into a buffer, either because the direct transfer is not possible,
+                // or to wait for the socket to be writable again.
+                if (_buffer == null)
+                    _buffer = _channel.getByteBufferPool().acquire(getBufferSize(), _channel.useDirectBuffers());
+                BufferUtil.clearToFill(_buffer);
+                if (_buffer.remaining() > _remaining)
+                    _buffer.limit(_buffer.position() + (int)_remaining);
+                int read = _file.read(_buffer, _position);
+                if (read < 0)
+                    throw new EofException("Unexpected EOF of " + _file);
+                BufferUtil.flipToFlush(_buffer, 0);
+                _position += read;
+                _remaining -= read;
+                _written += read;
+                _completed = _remaining == 0;
+                channelWrite(_buffer, _completed, this);
+                return Action.SCHEDULED;
+            }
+
+            if (!_completed)
+            {
+                _completed = true;
+                channelWrite(BufferUtil.EMPTY_BUFFER, true, this);
+                return Action.SCHEDULED;
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("EOF of {}", this);
+            release();
+            return Action.SUCCEEDED;
+        }
+
+        private void release()
+        {
+            if (!_closed)
+            {
+                _closed = true;
+                if (_buffer != null)
+                    _channel.getByteBufferPool().release(_buffer);
+                IO.close(_file);
+            }
+        }
+
+        @Override
+        public void onCompleteFailure(Throwable x)
+        {
+            release();
+            super.onCompleteFailure(x);
+        }
+    }
+
     private static class WriteBlocker extends SharedBlockingCallback
     {
         private final HttpChannel _channel;
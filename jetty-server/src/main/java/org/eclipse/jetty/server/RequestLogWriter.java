@@ -22,6 +22,7 @@ import java.io.IOException;
 import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.io.Writer;
+import java.nio.ByteBuffer;
 import java.util.TimeZone;
 
 import org.eclipse.jetty.util.RolloverFileOutputStream;
@@ -191,6 +192,27 @@ public class RequestLogWriter extends AbstractLifeCycle implements RequestLog.Wr
         }
     }
 
+    /**
+     * <p>Writes a batch of pre-formatted request log lines, already terminated by line separators,
+     * with a single write to the underlying stream.</p>
+     *
+     * @param lines the heap buffer with the encoded log lines, which is consumed by this method
+     * @throws IOException if the write fails
+     */
+    public void write(ByteBuffer lines) throws IOException
+    {
+        synchronized (this)
+        {
+            if (_writer == null)
+                return;
+            // Preserve the ordering with the lines written as strings.
+            _writer.flush();
+            _out.write(lines.array(), lines.arrayOffset() + lines.position(), lines.remaining());
+            _out.flush();
+            lines.position(lines.limit());
+        }
+    }
+
     @Override
     protected synchronized void doStart() throws Exception
     {
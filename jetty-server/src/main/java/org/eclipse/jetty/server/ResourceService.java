@@ -22,6 +22,8 @@ import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Enumeration;
@@ -50,6 +52,7 @@ import org.eclipse.jetty.server.resource.HttpContentRangeWriter;
 import org.eclipse.jetty.server.resource.RangeWriter;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
+import org.eclipse.jetty.util.IO;
 import org.eclipse.jetty.util.MultiPartOutputStream;
 import org.eclipse.jetty.util.URIUtil;
 import org.eclipse.jetty.util.log.Log;
@@ -765,7 +768,14 @@ public class ResourceService
                     response.addDateHeader(HttpHeader.DATE.asString(), System.currentTimeMillis());
                 response.setHeader(HttpHeader.CONTENT_RANGE.asString(),
                     singleSatisfiableRange.toHeaderRangeString(content_length));
-                content.getResource().writeTo(out, singleSatisfiableRange.getFirst(), singleLength);
+                ReadableByteChannel channel = (include || written) ? null : content.getReadableByteChannel();
+                if (channel instanceof FileChannel)
+                    ((HttpOutput)out).sendContent((FileChannel)channel, singleSatisfiableRange.getFirst(), singleLength);
+                else
+                {
+                    IO.close(channel);
+                    content.getResource().writeTo(out, singleSatisfiableRange.getFirst(), singleLength);
+                }
                 return true;
             }
 
@@ -0,0 +1,142 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import org.eclipse.jetty.server.CachedContentFactory.CachedHttpContent;
+import org.eclipse.jetty.util.TinyLFU;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+
+/**
+ * <p>A {@link CachedContentFactory.EvictionPolicy} that evicts contents with the W-TinyLFU algorithm.</p>
+ *
+ * @see TinyLFU
+ */
+@ManagedObject("W-TinyLFU eviction policy")
+public class TinyLFUEvictionPolicy implements CachedContentFactory.EvictionPolicy
+{
+    private final TinyLFU<CachedHttpContent> _tinyLFU;
+
+    public TinyLFUEvictionPolicy()
+    {
+        this(2048);
+    }
+
+    /**
+     * @param capacity the expected maximum number of cached contents
+     */
+    public TinyLFUEvictionPolicy(int capacity)
+    {
+        this(capacity, 1);
+    }
+
+    /**
+     * @param capacity the expected maximum number of cached contents
+     * @param windowPercent the percentage of the cached contents kept in the admission window
+     */
+    public TinyLFUEvictionPolicy(int capacity, int windowPercent)
+    {
+        _tinyLFU = new TinyLFU<>(capacity, windowPercent, content -> content.getKey().hashCode());
+    }
+
+    @Override
+    public void onAdded(CachedHttpContent content)
+    {
+        _tinyLFU.add(content);
+    }
+
+    @Override
+    public void onAccessed(CachedHttpContent content)
+    {
+        _tinyLFU.access(content);
+    }
+
+    @Override
+    public void onRemoved(CachedHttpContent content)
+    {
+        _tinyLFU.remove(content);
+    }
+
+    @Override
+    public Iterator<CachedHttpContent> evictionCandidates(Collection<CachedHttpContent> contents)
+    {
+        return new Iterator<CachedHttpContent>()
+        {
+            private CachedHttpContent _next;
+
+            @Override
+            public boolean hasNext()
+            {
+                if (_next == null)
+                    _next = _tinyLFU.evict();
+                return _next != null;
+            }
+
+            @Override
+            public CachedHttpContent next()
+            {
+                if (!hasNext())
+                    throw new NoSuchElementException();
+                CachedHttpContent next = _next;
+                _next = null;
+                return next;
+            }
+        };
+    }
+
+    @ManagedAttribute("The number of contents in the admission window")
+    public int getWindowSize()
+    {
+        return _tinyLFU.getWindowSize();
+    }
+
+    @ManagedAttribute("The number of contents in the probation segment")
+    public int getProbationSize()
+    {
+        return _tinyLFU.getProbationSize();
+    }
+
+    @ManagedAttribute("The number of contents in the protected segment")
+    public int getProtectedSize()
+    {
+        return _tinyLFU.getProtectedSize();
+    }
+
+    @ManagedAttribute("The number of candidates retained by the admission filter")
+    public long getAdmitted()
+    {
+        return _tinyLFU.getAdmitted();
+    }
+
+    @ManagedAttribute("The number of candidates evicted by the admission filter")
+    public long getRejected()
+    {
+        return _tinyLFU.getRejected();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{%s}", getClass().getSimpleName(), hashCode(), _tinyLFU);
+    }
+}
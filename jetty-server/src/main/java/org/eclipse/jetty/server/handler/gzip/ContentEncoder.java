@@ -0,0 +1,115 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.http.CompressedContentFormat;
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.component.AbstractLifeCycle;
+
+/**
+ * <p>{@link ContentEncoder} encodes the content bytes of a response with a content
+ * encoding other than {@code gzip}, which {@link GzipHandler} supports natively.</p>
+ * <p>Encoders are created by {@link Factory}s, that are either added explicitly with
+ * {@link GzipHandler#addContentEncoderFactory(Factory)} or discovered with
+ * {@link java.util.ServiceLoader} when the {@link GzipHandler} is started, so that
+ * codecs such as {@code br} or {@code zstd}, typically backed by native libraries,
+ * can be plugged in by just adding them to the class-path.</p>
+ *
+ * @see Factory
+ */
+public interface ContentEncoder
+{
+    /**
+     * <p>Encodes the bytes of the given {@code input} into the given {@code output}.</p>
+     * <p>This method consumes as many input bytes as possible and writes as many
+     * encoded bytes as they fit in the output space. Callers should write the
+     * encoded bytes and call this method again until it returns true, or until
+     * the input is consumed and no encoded bytes are produced when {@code last}
+     * is false.</p>
+     *
+     * @param input the bytes to encode
+     * @param last whether the input contains the last bytes of the content
+     * @param output the buffer, in flush mode, to append encoded bytes to
+     * @return true if the encoding is complete, that is {@code last} is true, all the input
+     * has been consumed and all the encoded bytes have been appended to the output
+     * @throws IOException if the encoding fails
+     */
+    boolean encode(ByteBuffer input, boolean last, ByteBuffer output) throws IOException;
+
+    /**
+     * <p>Releases the resources of this encoder, once the encoding is complete or failed.</p>
+     */
+    default void release()
+    {
+    }
+
+    /**
+     * <p>Factory for {@link ContentEncoder}s; subclasses must implement {@link #newContentEncoder(Request)}.</p>
+     * <p>{@link Factory}s have an {@link #getEncoding() encoding}, which is the string
+     * used in the {@code Accept-Encoding} request header and in the {@code Content-Encoding}
+     * response header.</p>
+     */
+    abstract class Factory extends AbstractLifeCycle
+    {
+        private final CompressedContentFormat format;
+
+        protected Factory(String encoding)
+        {
+            this(new CompressedContentFormat(encoding, "." + encoding));
+        }
+
+        protected Factory(CompressedContentFormat format)
+        {
+            this.format = format;
+        }
+
+        /**
+         * @return the encoding of the encoders created by this factory
+         */
+        public String getEncoding()
+        {
+            return format.getEncoding();
+        }
+
+        /**
+         * @return the format of the content encoded by the encoders created by this factory
+         */
+        public CompressedContentFormat getCompressedContentFormat()
+        {
+            return format;
+        }
+
+        /**
+         * Factory method for {@link ContentEncoder}s
+         *
+         * @param request the request whose response content is encoded
+         * @return a new {@link ContentEncoder}, or null if the response content should not be encoded
+         */
+        public abstract ContentEncoder newContentEncoder(Request request);
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s@%x{%s}", getClass().getSimpleName(), hashCode(), getEncoding());
+        }
+    }
+}
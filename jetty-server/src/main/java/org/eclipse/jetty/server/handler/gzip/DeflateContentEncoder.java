@@ -0,0 +1,136 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.server.Request;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.compression.CompressionPool;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+
+/**
+ * <p>{@link ContentEncoder} for the {@code deflate} encoding, that is the
+ * zlib format defined by RFC 1950 wrapping deflate compressed data.</p>
+ */
+public class DeflateContentEncoder implements ContentEncoder
+{
+    private final DeflaterPool _pool;
+    private Deflater _deflater;
+    private byte[] _input;
+
+    public DeflateContentEncoder(DeflaterPool pool)
+    {
+        _pool = pool;
+        _deflater = pool.acquire();
+    }
+
+    @Override
+    public boolean encode(ByteBuffer input, boolean last, ByteBuffer output)
+    {
+        if (_deflater.needsInput())
+        {
+            int length = input.remaining();
+            if (length > 0)
+            {
+                // The Deflater API in Java 8 only accepts arrays.
+                if (input.hasArray())
+                {
+                    _deflater.setInput(input.array(), input.arrayOffset() + input.position(), length);
+                }
+                else
+                {
+                    if (_input == null || _input.length < length)
+                        _input = new byte[length];
+                    input.duplicate().get(_input, 0, length);
+                    _deflater.setInput(_input, 0, length);
+                }
+                input.position(input.limit());
+            }
+            if (last)
+                _deflater.finish();
+        }
+
+        int position = BufferUtil.flipToFill(output);
+        try
+        {
+            int produced = _deflater.deflate(output.array(), output.arrayOffset() + output.position(), output.remaining());
+            output.position(output.position() + produced);
+        }
+        finally
+        {
+            BufferUtil.flipToFlush(output, position);
+        }
+        return _deflater.finished();
+    }
+
+    @Override
+    public void release()
+    {
+        if (_deflater != null)
+        {
+            _pool.release(_deflater);
+            _deflater = null;
+        }
+    }
+
+    /**
+     * <p>Specialized {@link ContentEncoder.Factory} for the {@code deflate} encoding.</p>
+     */
+    public static class Factory extends ContentEncoder.Factory
+    {
+        private final DeflaterPool _pool;
+
+        public Factory()
+        {
+            this(CompressionPool.INFINITE_CAPACITY, Deflater.DEFAULT_COMPRESSION);
+        }
+
+        /**
+         * @param capacity the max number of pooled {@link Deflater}s
+         * @param compressionLevel the compression level
+         */
+        public Factory(int capacity, int compressionLevel)
+        {
+            super("deflate");
+            _pool = new DeflaterPool(capacity, compressionLevel, false);
+        }
+
+        @Override
+        protected void doStart() throws Exception
+        {
+            _pool.start();
+            super.doStart();
+        }
+
+        @Override
+        protected void doStop() throws Exception
+        {
+            super.doStop();
+            _pool.stop();
+        }
+
+        @Override
+        public ContentEncoder newContentEncoder(Request request)
+        {
+            return new DeflateContentEncoder(_pool);
+        }
+    }
+}
@@ -0,0 +1,300 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.server.TinyLFUEvictionPolicy;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.TinyLFU;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A cache of compressed response bodies, used by {@link GzipHandler} to avoid
+ * compressing again the same content for every request.</p>
+ * <p>Only complete responses with status 200 and an {@code ETag} are cached, keyed by
+ * the content encoding, the request URI and the {@code ETag} of the uncompressed
+ * representation, so that a change of the content, that changes its {@code ETag},
+ * results in a cache miss.</p>
+ * <p>The cache is bounded in the number of entries, in the total size of the cached
+ * bytes and in the size of each entry; when the bounds are exceeded, entries are
+ * evicted with the W-TinyLFU algorithm, like {@link TinyLFUEvictionPolicy} does for
+ * static content, so that eviction is O(1) per entry.</p>
+ */
+@ManagedObject("Cache of compressed response bodies")
+public class GzipContentCache
+{
+    private static final Logger LOG = Log.getLogger(GzipContentCache.class);
+
+    private final ConcurrentMap<String, CachedContent> _cache = new ConcurrentHashMap<>();
+    private final AtomicInteger _cachedSize = new AtomicInteger();
+    private final LongAdder _hits = new LongAdder();
+    private final LongAdder _misses = new LongAdder();
+    private final LongAdder _evictions = new LongAdder();
+    private volatile TinyLFU<String> _tinyLFU = newTinyLFU(2048);
+    private int _maxCachedFiles = 2048;
+    private int _maxCachedFileSize = 128 * 1024;
+    private int _maxCacheSize = 32 * 1024 * 1024;
+
+    /**
+     * @return the max number of cached entries
+     */
+    @ManagedAttribute("The max number of cached entries")
+    public int getMaxCachedFiles()
+    {
+        return _maxCachedFiles;
+    }
+
+    /**
+     * @param maxCachedFiles the max number of cached entries
+     */
+    public void setMaxCachedFiles(int maxCachedFiles)
+    {
+        if (maxCachedFiles != _maxCachedFiles)
+        {
+            // The frequency sketch is sized for the max number of entries.
+            TinyLFU<String> tinyLFU = newTinyLFU(maxCachedFiles);
+            for (String key : _cache.keySet())
+            {
+                tinyLFU.add(key);
+            }
+            _tinyLFU = tinyLFU;
+        }
+        _maxCachedFiles = maxCachedFiles;
+        shrink();
+    }
+
+    private static TinyLFU<String> newTinyLFU(int maxCachedFiles)
+    {
+        return new TinyLFU<>(maxCachedFiles, 1, String::hashCode);
+    }
+
+    /**
+     * @return the max size in bytes of a cached compressed body
+     */
+    @ManagedAttribute("The max size in bytes of a cached compressed body")
+    public int getMaxCachedFileSize()
+    {
+        return _maxCachedFileSize;
+    }
+
+    /**
+     * @param maxCachedFileSize the max size in bytes of a cached compressed body
+     */
+    public void setMaxCachedFileSize(int maxCachedFileSize)
+    {
+        _maxCachedFileSize = maxCachedFileSize;
+        shrink();
+    }
+
+    /**
+     * @return the max size in bytes of all the cached compressed bodies
+     */
+    @ManagedAttribute("The max size in bytes of all the cached compressed bodies")
+    public int getMaxCacheSize()
+    {
+        return _maxCacheSize;
+    }
+
+    /**
+     * @param maxCacheSize the max size in bytes of all the cached compressed bodies
+     */
+    public void setMaxCacheSize(int maxCacheSize)
+    {
+        _maxCacheSize = maxCacheSize;
+        shrink();
+    }
+
+    @ManagedAttribute("The number of cached entries")
+    public int getCachedFiles()
+    {
+        return _cache.size();
+    }
+
+    @ManagedAttribute("The size in bytes of the cached compressed bodies")
+    public int getCachedSize()
+    {
+        return _cachedSize.get();
+    }
+
+    @ManagedAttribute("The number of cache hits")
+    public long getHits()
+    {
+        return _hits.sum();
+    }
+
+    @ManagedAttribute("The number of cache misses")
+    public long getMisses()
+    {
+        return _misses.sum();
+    }
+
+    @ManagedAttribute("The number of cache evictions")
+    public long getEvictions()
+    {
+        return _evictions.sum();
+    }
+
+    @ManagedOperation(value = "Resets the cache statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _hits.reset();
+        _misses.reset();
+        _evictions.reset();
+    }
+
+    @ManagedOperation(value = "Removes all the cached entries", impact = "ACTION")
+    public void flushCache()
+    {
+        for (String key : _cache.keySet())
+        {
+            remove(key);
+        }
+    }
+
+    /**
+     * @param encoding the content encoding, for example {@code gzip}
+     * @param uri the request URI, including the query string
+     * @param etag the {@code ETag} of the uncompressed representation
+     * @return the cache key
+     */
+    public static String key(String encoding, String uri, String etag)
+    {
+        return encoding + '|' + etag + '|' + uri;
+    }
+
+    /**
+     * @param key the cache key
+     * @return a read only buffer with the compressed body, or null if the body is not cached
+     */
+    public ByteBuffer get(String key)
+    {
+        CachedContent entry = _cache.get(key);
+        if (entry == null)
+        {
+            _misses.increment();
+            return null;
+        }
+        _hits.increment();
+        _tinyLFU.access(key);
+        return entry._content.asReadOnlyBuffer();
+    }
+
+    /**
+     * @param size the size in bytes of a compressed body
+     * @return whether a compressed body of the given size may be cached
+     */
+    public boolean isCacheable(long size)
+    {
+        return size <= _maxCachedFileSize && size <= _maxCacheSize;
+    }
+
+    /**
+     * <p>Caches the given compressed body, evicting other entries if necessary.</p>
+     *
+     * @param key the cache key
+     * @param content the compressed body, which must not be modified after this call
+     */
+    public void put(String key, ByteBuffer content)
+    {
+        int size = content.remaining();
+        if (!isCacheable(size))
+            return;
+
+        CachedContent entry = new CachedContent(content.slice());
+        // The policy is told first, so that it cannot be told of a removal before the addition.
+        _tinyLFU.add(key);
+        CachedContent previous = _cache.put(key, entry);
+        _cachedSize.addAndGet(size);
+        if (previous != null)
+            _cachedSize.addAndGet(-previous._content.remaining());
+        if (LOG.isDebugEnabled())
+            LOG.debug("Cached {} bytes for {}", size, key);
+        shrink();
+    }
+
+    private void remove(String key)
+    {
+        _tinyLFU.remove(key);
+        CachedContent entry = _cache.remove(key);
+        if (entry != null)
+            _cachedSize.addAndGet(-entry._content.remaining());
+    }
+
+    private boolean isOverLimits()
+    {
+        return _cache.size() > _maxCachedFiles || _cachedSize.get() > _maxCacheSize;
+    }
+
+    private void shrink()
+    {
+        while (isOverLimits())
+        {
+            TinyLFU<String> tinyLFU = _tinyLFU;
+            String key = tinyLFU.evict();
+            if (key == null)
+                break;
+            CachedContent entry = _cache.get(key);
+            if (entry == null)
+                continue;
+            if (_cache.remove(key, entry))
+            {
+                _cachedSize.addAndGet(-entry._content.remaining());
+                _evictions.increment();
+            }
+            else
+            {
+                // The entry has been replaced concurrently, keep tracking its key.
+                tinyLFU.add(key);
+            }
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{entries=%d/%d,size=%d/%d,hits=%d,misses=%d}",
+            getClass().getSimpleName(), hashCode(), getCachedFiles(), _maxCachedFiles,
+            getCachedSize(), _maxCacheSize, getHits(), getMisses());
+    }
+
+    private static class CachedContent
+    {
+        private final ByteBuffer _content;
+
+        private CachedContent(ByteBuffer content)
+        {
+            _content = content;
+        }
+
+        @Override
+        public String toString()
+        {
+            return BufferUtil.toDetailString(_content);
+        }
+    }
+}
@@ -20,6 +20,7 @@ package org.eclipse.jetty.server.handler.gzip;
 
 import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.server.Request;
 
 public interface GzipFactory
@@ -29,4 +30,33 @@ public interface GzipFactory
     boolean isMimeTypeGzipable(String mimetype);
 
     void recycle(Deflater deflater);
+
+    /**
+     * <p>Negotiates a content encoding other than {@code gzip} for the response to the given request.</p>
+     *
+     * @param request the request
+     * @param contentLength the response content length, or -1 if unknown
+     * @return the factory of the preferred content encoding, or null if {@code gzip}
+     * should be used, subject to {@link #getDeflater(Request, long)}
+     */
+    default ContentEncoder.Factory getContentEncoderFactory(Request request, long contentLength)
+    {
+        return null;
+    }
+
+    /**
+     * @return the formats of the content encodings that may be used
+     */
+    default CompressedContentFormat[] getCompressedContentFormats()
+    {
+        return new CompressedContentFormat[]{CompressedContentFormat.GZIP};
+    }
+
+    /**
+     * @return the cache of compressed response bodies, or null if compressed bodies are not cached
+     */
+    default GzipContentCache getCompressedContentCache()
+    {
+        return null;
+    }
 }
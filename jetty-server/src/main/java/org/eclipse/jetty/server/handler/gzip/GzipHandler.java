@@ -22,8 +22,11 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.EnumSet;
+import java.util.List;
 import java.util.ListIterator;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.regex.Pattern;
 import java.util.zip.Deflater;
 import javax.servlet.DispatcherType;
@@ -39,6 +42,7 @@ import org.eclipse.jetty.http.HttpHeader;
 import org.eclipse.jetty.http.HttpMethod;
 import org.eclipse.jetty.http.MimeTypes;
 import org.eclipse.jetty.http.PreEncodedHttpField;
+import org.eclipse.jetty.http.QuotedQualityCSV;
 import org.eclipse.jetty.http.pathmap.PathSpecSet;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.Request;
@@ -163,6 +167,8 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
 
     private int _poolCapacity = -1;
     private DeflaterPool _deflaterPool = null;
+    private GzipContentCache _compressedContentCache;
+    private final List<ContentEncoder.Factory> _contentEncoderFactories = new CopyOnWriteArrayList<>();
 
     private int _minGzipSize = DEFAULT_MIN_GZIP_SIZE;
     private int _compressionLevel = Deflater.DEFAULT_COMPRESSION;
@@ -345,6 +351,56 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
         }
     }
 
+    @Override
+    public GzipContentCache getCompressedContentCache()
+    {
+        return _compressedContentCache;
+    }
+
+    /**
+     * <p>Sets the cache of compressed response bodies.</p>
+     * <p>When set, the compressed bodies of complete responses with status 200 and an
+     * {@code ETag} are cached, so that subsequent requests for the same content are
+     * served the cached bytes without compressing them again.
+     * Compressed bodies are not cached when {@link #isSyncFlush() sync flush} is used.</p>
+     *
+     * @param cache the cache of compressed response bodies, or null to not cache compressed bodies
+     */
+    public void setCompressedContentCache(GzipContentCache cache)
+    {
+        updateBean(_compressedContentCache, cache);
+        _compressedContentCache = cache;
+    }
+
+    /**
+     * <p>Adds a {@link ContentEncoder.Factory} for a content encoding other than {@code gzip}.</p>
+     * <p>The content encoding used for a response is negotiated with the quality values of the
+     * {@code Accept-Encoding} request header; when the quality values are equal, the encodings
+     * of the factories are preferred over {@code gzip}, in the order they were added.</p>
+     * <p>Factories are also discovered with {@link ServiceLoader} when this handler is started,
+     * unless a factory for the same encoding has already been added.</p>
+     *
+     * @param factory the factory to add
+     */
+    public void addContentEncoderFactory(ContentEncoder.Factory factory)
+    {
+        for (ContentEncoder.Factory f : _contentEncoderFactories)
+        {
+            if (f.getEncoding().equalsIgnoreCase(factory.getEncoding()))
+                throw new IllegalArgumentException("Duplicate encoding " + factory.getEncoding());
+        }
+        if (_contentEncoderFactories.add(factory))
+            addBean(factory);
+    }
+
+    /**
+     * @return the factories for content encodings other than {@code gzip}
+     */
+    public List<ContentEncoder.Factory> getContentEncoderFactories()
+    {
+        return _contentEncoderFactories;
+    }
+
     /**
      * Is the {@link Deflater} running {@link Deflater#SYNC_FLUSH} or not.
      *
@@ -422,6 +478,15 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     {
         _deflaterPool = newDeflaterPool(_poolCapacity);
         addBean(_deflaterPool);
+        for (ContentEncoder.Factory factory : ServiceLoader.load(ContentEncoder.Factory.class))
+        {
+            if (_contentEncoderFactories.stream().noneMatch(f -> f.getEncoding().equalsIgnoreCase(factory.getEncoding())))
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("{} discovered {}", this, factory);
+                addContentEncoderFactory(factory);
+            }
+        }
         _vary = (_agentPatterns.size() > 0) ? GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING_USER_AGENT : GzipHttpOutputInterceptor.VARY_ACCEPT_ENCODING;
         super.doStart();
     }
@@ -443,28 +508,90 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
     @Override
     public Deflater getDeflater(Request request, long contentLength)
     {
+        if (!isCompressible(request, contentLength))
+            return null;
+
+        // check the accept encoding header
         HttpFields httpFields = request.getHttpFields();
-        String ua = httpFields.get(HttpHeader.USER_AGENT);
-        if (ua != null && !isAgentGzipable(ua))
+        if (!httpFields.contains(HttpHeader.ACCEPT_ENCODING, "gzip"))
         {
-            LOG.debug("{} excluded user agent {}", this, request);
+            LOG.debug("{} excluded not gzip accept {}", this, request);
             return null;
         }
 
-        if (contentLength >= 0 && contentLength < _minGzipSize)
-        {
-            LOG.debug("{} excluded minGzipSize {}", this, request);
+        return _deflaterPool.acquire();
+    }
+
+    @Override
+    public ContentEncoder.Factory getContentEncoderFactory(Request request, long contentLength)
+    {
+        if (_contentEncoderFactories.isEmpty())
+            return null;
+
+        List<String> acceptEncodings = request.getHttpFields().getValuesList(HttpHeader.ACCEPT_ENCODING);
+        if (acceptEncodings.isEmpty())
             return null;
+
+        if (!isCompressible(request, contentLength))
+            return null;
+
+        String[] preferredOrder = new String[_contentEncoderFactories.size() + 1];
+        for (int i = 0; i < _contentEncoderFactories.size(); ++i)
+        {
+            preferredOrder[i] = _contentEncoderFactories.get(i).getEncoding();
         }
+        preferredOrder[preferredOrder.length - 1] = GZIP;
 
-        // check the accept encoding header
-        if (!httpFields.contains(HttpHeader.ACCEPT_ENCODING, "gzip"))
+        QuotedQualityCSV encodings = new QuotedQualityCSV(preferredOrder);
+        for (String acceptEncoding : acceptEncodings)
         {
-            LOG.debug("{} excluded not gzip accept {}", this, request);
-            return null;
+            encodings.addValue(acceptEncoding);
         }
 
-        return _deflaterPool.acquire();
+        for (String encoding : encodings)
+        {
+            if (GZIP.equalsIgnoreCase(encoding) || "*".equals(encoding))
+                return null;
+            for (ContentEncoder.Factory factory : _contentEncoderFactories)
+            {
+                if (factory.getEncoding().equalsIgnoreCase(encoding))
+                {
+                    LOG.debug("{} negotiated {} for {}", this, encoding, request);
+                    return factory;
+                }
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public CompressedContentFormat[] getCompressedContentFormats()
+    {
+        CompressedContentFormat[] formats = new CompressedContentFormat[_contentEncoderFactories.size() + 1];
+        formats[0] = CompressedContentFormat.GZIP;
+        for (int i = 0; i < _contentEncoderFactories.size(); ++i)
+        {
+            formats[i + 1] = _contentEncoderFactories.get(i).getCompressedContentFormat();
+        }
+        return formats;
+    }
+
+    private boolean isCompressible(Request request, long contentLength)
+    {
+        String ua = request.getHttpFields().get(HttpHeader.USER_AGENT);
+        if (ua != null && !isAgentGzipable(ua))
+        {
+            LOG.debug("{} excluded user agent {}", this, request);
+            return false;
+        }
+
+        if (contentLength >= 0 && contentLength < _minGzipSize)
+        {
+            LOG.debug("{} excluded minGzipSize {}", this, request);
+            return false;
+        }
+
+        return true;
     }
 
     /**
@@ -705,7 +832,11 @@ public class GzipHandler extends HandlerWrapper implements GzipFactory
                 if (field.getHeader() == HttpHeader.IF_NONE_MATCH || field.getHeader() == HttpHeader.IF_MATCH)
                 {
                     String etags = field.getValue();
-                    String etagsNoSuffix = CompressedContentFormat.GZIP.stripSuffixes(etags);
+                    String etagsNoSuffix = etags;
+                    for (CompressedContentFormat format : getCompressedContentFormats())
+                    {
+                        etagsNoSuffix = format.stripSuffixes(etagsNoSuffix);
+                    }
                     if (!etagsNoSuffix.equals(etags))
                     {
                         fields.set(new HttpField(field.getHeader(), etagsNoSuffix));
@@ -18,12 +18,14 @@
 
 package org.eclipse.jetty.server.handler.gzip;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.ByteBuffer;
 import java.nio.channels.WritePendingException;
 import java.util.concurrent.atomic.AtomicReference;
 import java.util.zip.CRC32;
 import java.util.zip.Deflater;
 
+import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpField;
 import org.eclipse.jetty.http.HttpFields;
 import org.eclipse.jetty.http.HttpHeader;
@@ -50,7 +52,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
 
     private enum GZState
     {
-        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, FINISHED
+        MIGHT_COMPRESS, NOT_COMPRESSING, COMMITTING, COMPRESSING, CACHED, FINISHED
     }
 
     private final AtomicReference<GZState> _state = new AtomicReference<>(GZState.MIGHT_COMPRESS);
@@ -64,7 +66,11 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
     private final boolean _syncFlush;
 
     private Deflater _deflater;
+    private ContentEncoder _encoder;
     private ByteBuffer _buffer;
+    private GzipContentCache _cache;
+    private String _cacheKey;
+    private ByteArrayOutputStream _captured;
 
     public GzipHttpOutputInterceptor(GzipFactory factory, HttpChannel channel, HttpOutput.Interceptor next, boolean syncFlush)
     {
@@ -119,6 +125,11 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 gzip(content, complete, callback);
                 break;
 
+            case CACHED:
+                // The cached compressed body has already been written.
+                callback.succeeded();
+                break;
+
             default:
                 callback.failed(new IllegalStateException("state=" + _state.get()));
                 break;
@@ -134,7 +145,12 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
     private void gzip(ByteBuffer content, boolean complete, final Callback callback)
     {
         if (content.hasRemaining() || complete)
-            new GzipBufferCB(content, complete, callback).iterate();
+        {
+            if (_encoder != null)
+                new EncoderBufferCB(content, complete, callback).iterate();
+            else
+                new GzipBufferCB(content, complete, callback).iterate();
+        }
         else
             callback.succeeded();
     }
@@ -155,9 +171,15 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 String responseEtag = response.getHttpFields().get(HttpHeader.ETAG);
                 if (requestEtags != null && responseEtag != null)
                 {
-                    String responseEtagGzip = etagGzip(responseEtag);
-                    if (requestEtags.contains(responseEtagGzip))
-                        response.getHttpFields().put(HttpHeader.ETAG, responseEtagGzip);
+                    for (CompressedContentFormat format : _factory.getCompressedContentFormats())
+                    {
+                        String responseEtagCompressed = format.etag(responseEtag);
+                        if (requestEtags.contains(responseEtagCompressed))
+                        {
+                            response.getHttpFields().put(HttpHeader.ETAG, responseEtagCompressed);
+                            break;
+                        }
+                    }
                 }
             }
 
@@ -206,9 +228,20 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             if (contentLength < 0 && complete)
                 contentLength = content.remaining();
 
-            _deflater = _factory.getDeflater(_channel.getRequest(), contentLength);
+            // Is an encoding other than gzip preferred?
+            CompressedContentFormat format = GZIP;
+            ContentEncoder.Factory encoderFactory = _factory.getContentEncoderFactory(_channel.getRequest(), contentLength);
+            if (encoderFactory != null)
+            {
+                _encoder = encoderFactory.newContentEncoder(_channel.getRequest());
+                if (_encoder != null)
+                    format = encoderFactory.getCompressedContentFormat();
+            }
 
-            if (_deflater == null)
+            if (_encoder == null)
+                _deflater = _factory.getDeflater(_channel.getRequest(), contentLength);
+
+            if (_deflater == null && _encoder == null)
             {
                 LOG.debug("{} exclude no deflater", this);
                 _state.set(GZState.NOT_COMPRESSING);
@@ -216,16 +249,36 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
                 return;
             }
 
-            fields.put(GZIP.getContentEncoding());
+            fields.put(format.getContentEncoding());
             _crc.reset();
 
             // Adjust headers
             response.setContentLength(-1);
             String etag = fields.get(HttpHeader.ETAG);
             if (etag != null)
-                fields.put(HttpHeader.ETAG, etagGzip(etag));
+                fields.put(HttpHeader.ETAG, format.etag(etag));
+
+            // Can the compressed body be served from, or stored into, the cache?
+            GzipContentCache cache = _factory.getCompressedContentCache();
+            if (cache != null && etag != null && !_syncFlush && (sc <= 0 || sc == HttpStatus.OK_200))
+            {
+                String cacheKey = GzipContentCache.key(format.getEncoding(), _channel.getRequest().getHttpURI().getPathQuery(), etag);
+                ByteBuffer cached = cache.get(cacheKey);
+                if (cached != null)
+                {
+                    LOG.debug("{} cached {}", this, cacheKey);
+                    releaseEncoder();
+                    fields.putLongField(HttpHeader.CONTENT_LENGTH, cached.remaining());
+                    _state.set(GZState.CACHED);
+                    _interceptor.write(cached, true, callback);
+                    return;
+                }
+                _cache = cache;
+                _cacheKey = cacheKey;
+                _captured = new ByteArrayOutputStream();
+            }
 
-            LOG.debug("{} compressing {}", this, _deflater);
+            LOG.debug("{} compressing {}", this, _encoder != null ? _encoder : _deflater);
             _state.set(GZState.COMPRESSING);
 
             if (BufferUtil.isEmpty(content))
@@ -242,9 +295,37 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             callback.failed(new WritePendingException());
     }
 
-    private String etagGzip(String etag)
+    private void releaseEncoder()
     {
-        return GZIP.etag(etag);
+        if (_deflater != null)
+        {
+            _factory.recycle(_deflater);
+            _deflater = null;
+        }
+        if (_encoder != null)
+        {
+            _encoder.release();
+            _encoder = null;
+        }
+    }
+
+    private void capture(ByteBuffer compressed)
+    {
+        if (_captured == null)
+            return;
+        int length = compressed.remaining();
+        if (_cache.isCacheable(_captured.size() + length))
+            _captured.write(compressed.array(), compressed.arrayOffset() + compressed.position(), length);
+        else
+            _captured = null;
+    }
+
+    private void cacheCaptured()
+    {
+        if (_captured == null)
+            return;
+        _cache.put(_cacheKey, ByteBuffer.wrap(_captured.toByteArray()));
+        _captured = null;
     }
 
     public void noCompression()
@@ -293,6 +374,99 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         return _state.get() == GZState.MIGHT_COMPRESS;
     }
 
+    private class EncoderBufferCB extends IteratingNestedCallback
+    {
+        private final ByteBuffer _content;
+        private final boolean _last;
+        private boolean _finished;
+
+        private EncoderBufferCB(ByteBuffer content, boolean complete, Callback callback)
+        {
+            super(callback);
+            _content = content;
+            _last = complete;
+        }
+
+        @Override
+        protected void onCompleteFailure(Throwable x)
+        {
+            releaseEncoder();
+            if (_buffer != null)
+            {
+                _channel.getByteBufferPool().release(_buffer);
+                _buffer = null;
+            }
+            _captured = null;
+            super.onCompleteFailure(x);
+        }
+
+        @Override
+        protected Action process() throws Exception
+        {
+            if (_finished)
+            {
+                // The last encoded bytes have been written.
+                if (_buffer != null)
+                {
+                    _channel.getByteBufferPool().release(_buffer);
+                    _buffer = null;
+                }
+                return Action.SUCCEEDED;
+            }
+
+            if (_buffer == null)
+                _buffer = _channel.getByteBufferPool().acquire(_bufferSize, false);
+
+            boolean stalled = false;
+            while (true)
+            {
+                BufferUtil.clear(_buffer);
+                int remaining = _content.remaining();
+                _finished = _encoder.encode(_content, _last, _buffer);
+                if (_finished)
+                {
+                    releaseEncoder();
+                    capture(_buffer);
+                    cacheCaptured();
+                    _interceptor.write(_buffer, true, this);
+                    return Action.SCHEDULED;
+                }
+
+                if (BufferUtil.hasContent(_buffer))
+                {
+                    capture(_buffer);
+                    _interceptor.write(_buffer, false, this);
+                    return Action.SCHEDULED;
+                }
+
+                // No encoded bytes produced, wait for more content.
+                if (!_last && !_content.hasRemaining())
+                    return Action.SUCCEEDED;
+
+                // The last content must be encoded until the encoder
+                // finishes, so that its trailer is written.
+                if (_last && (_content.remaining() < remaining || !stalled))
+                {
+                    stalled = _content.remaining() == remaining;
+                    continue;
+                }
+
+                throw new IllegalStateException("No progress encoding with " + _encoder);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[content=%s last=%b buffer=%s encoder=%s]",
+                super.toString(),
+                BufferUtil.toDetailString(_content),
+                _last,
+                BufferUtil.toDetailString(_buffer),
+                _encoder);
+        }
+    }
+
     private class GzipBufferCB extends IteratingNestedCallback
     {
         private ByteBuffer _copy;
@@ -311,6 +485,7 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
         {
             _factory.recycle(_deflater);
             _deflater = null;
+            _captured = null;
             super.onCompleteFailure(x);
         }
 
@@ -411,6 +586,9 @@ public class GzipHttpOutputInterceptor implements HttpOutput.Interceptor
             }
 
             // write the compressed buffer.
+            capture(_buffer);
+            if (_deflater == null)
+                cacheCaptured();
             _interceptor.write(_buffer, _deflater == null, this);
             return Action.SCHEDULED;
         }
@@ -28,20 +28,43 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
 import org.eclipse.jetty.util.StringUtil;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
 
 /**
  * JDBCSessionDataStore
  *
  * Session data stored in database
+ * <p>
+ * By default every store and delete is a separate round-trip to the database.
+ * When a {@link #setBatchWindowMs(long) batch window} is configured, the stores
+ * and deletes requested within the window are coalesced per session and written
+ * together as JDBC batches in a single transaction. Stores return as soon as they
+ * are queued, so that the request threads do not wait for the database, while
+ * deletes wait for their write to be committed. Loading a session, or checking
+ * whether it exists, first writes its queued store, and so does the scavenger
+ * before it selects the expired sessions.
  */
 @ManagedObject
 public class JDBCSessionDataStore extends AbstractSessionDataStore
@@ -59,6 +82,19 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     protected boolean _schemaProvided;
 
     private static final ByteArrayInputStream EMPTY = new ByteArrayInputStream(new byte[0]);
+    private static final int MAX_IDS_PER_QUERY = 100;
+
+    private final Object _batchLock = new Object();
+    private final Object _flushLock = new Object();
+    private final Map<String, PendingWrite> _pendingWrites = new LinkedHashMap<>();
+    private final LongAdder _batches = new LongAdder();
+    private final LongAdder _batchedWrites = new LongAdder();
+    private final LongAdder _coalescedWrites = new LongAdder();
+    private final LongAdder _failedWrites = new LongAdder();
+    private long _batchWindowMs = 0;
+    private int _maxBatchSize = 64;
+    private boolean _flushScheduled;
+    private Scheduler _scheduler;
 
     /**
      * SessionTableSchema
@@ -317,14 +353,47 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                 " values (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
         }
 
-        public PreparedStatement getUpdateSessionStatement(Connection connection, String id, SessionContext context)
-            throws SQLException
+        public String getUpdateSessionStatementAsString()
         {
-            String s = "update " + getSchemaTableName() +
+            return "update " + getSchemaTableName() +
                 " set " + getLastNodeColumn() + " = ?, " + getAccessTimeColumn() + " = ?, " +
                 getLastAccessTimeColumn() + " = ?, " + getLastSavedTimeColumn() + " = ?, " + getExpiryTimeColumn() + " = ?, " +
                 getMaxIntervalColumn() + " = ?, " + getMapColumn() + " = ? where " + getIdColumn() + " = ? and " + getContextPathColumn() +
                 " = ? and " + getVirtualHostColumn() + " = ?";
+        }
+
+        public String getDeleteSessionStatementAsString()
+        {
+            return "delete from " + getSchemaTableName() +
+                " where " + getIdColumn() + " = ? and " + getContextPathColumn() +
+                " = ? and " + getVirtualHostColumn() + " = ?";
+        }
+
+        /**
+         * @param count the number of session ids to check
+         * @return the query selecting which of {@code count} session ids of a context exist
+         */
+        public String getCheckSessionsExistStatementAsString(int count)
+        {
+            StringBuilder builder = new StringBuilder();
+            builder.append("select ").append(getIdColumn())
+                .append(" from ").append(getSchemaTableName())
+                .append(" where ").append(getContextPathColumn()).append(" = ? and ")
+                .append(getVirtualHostColumn()).append(" = ? and ")
+                .append(getIdColumn()).append(" in (");
+            for (int i = 0; i < count; ++i)
+            {
+                if (i > 0)
+                    builder.append(", ");
+                builder.append('?');
+            }
+            return builder.append(')').toString();
+        }
+
+        public PreparedStatement getUpdateSessionStatement(Connection connection, String id, SessionContext context)
+            throws SQLException
+        {
+            String s = getUpdateSessionStatementAsString();
 
             String cp = context.getCanonicalContextPath();
             if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
@@ -337,29 +406,21 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             return statement;
         }
 
+        /**
+         * @deprecated the store selects the expired sessions with {@link #getExpiredSessionsStatement(Connection, SessionContext, long, long)}
+         */
+        @Deprecated
         public PreparedStatement getExpiredSessionsStatement(Connection connection, String canonicalContextPath, String vhost, long expiry)
             throws SQLException
         {
-            // TODO expiry should be a delay rather than an absolute time.
-
-            if (_dbAdaptor == null)
-                throw new IllegalStateException("No DB adaptor");
-
-            String cp = canonicalContextPath;
-            if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
-                cp = NULL_CONTEXT_PATH;
-
-            PreparedStatement statement = connection.prepareStatement("select " + getIdColumn() + ", " + getExpiryTimeColumn() +
-                " from " + getSchemaTableName() + " where " + getContextPathColumn() + " = ? and " +
-                getVirtualHostColumn() + " = ? and " +
-                getExpiryTimeColumn() + " >0 and " + getExpiryTimeColumn() + " <= ?");
-
-            statement.setString(1, cp);
-            statement.setString(2, vhost);
-            statement.setLong(3, expiry);
-            return statement;
+            // No session expires at or before 0, so only the sessions of the context are selected.
+            return getExpiredSessionsStatement(connection, canonicalContextPath, vhost, expiry, 0);
         }
 
+        /**
+         * @deprecated the store selects the expired sessions with {@link #getExpiredSessionsStatement(Connection, SessionContext, long, long)}
+         */
+        @Deprecated
         public PreparedStatement getMyExpiredSessionsStatement(Connection connection, SessionContext sessionContext, long expiry)
             throws SQLException
         {
@@ -386,6 +447,10 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             return statement;
         }
 
+        /**
+         * @deprecated the store selects the expired sessions with {@link #getExpiredSessionsStatement(Connection, SessionContext, long, long)}
+         */
+        @Deprecated
         public PreparedStatement getAllAncientExpiredSessionsStatement(Connection connection)
             throws SQLException
         {
@@ -398,6 +463,48 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             return statement;
         }
 
+        /**
+         * <p>Selects, with a single range query over the expiry index, the sessions of the
+         * given context that expired before the given time, and the sessions of any context
+         * that expired before the given ancient time.</p>
+         *
+         * @param connection the connection
+         * @param context the session context
+         * @param expiry the upper bound of the expiry range for the sessions of the context
+         * @param ancientExpiry the upper bound of the expiry range for the sessions of any context
+         * @return the statement selecting the id and expiry time of the expired sessions
+         * @throws SQLException if the statement cannot be prepared
+         */
+        public PreparedStatement getExpiredSessionsStatement(Connection connection, SessionContext context, long expiry, long ancientExpiry)
+            throws SQLException
+        {
+            return getExpiredSessionsStatement(connection, context.getCanonicalContextPath(), context.getVhost(), expiry, ancientExpiry);
+        }
+
+        private PreparedStatement getExpiredSessionsStatement(Connection connection, String canonicalContextPath, String vhost, long expiry, long ancientExpiry)
+            throws SQLException
+        {
+            if (_dbAdaptor == null)
+                throw new IllegalStateException("No DB adaptor");
+
+            String cp = canonicalContextPath;
+            if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+                cp = NULL_CONTEXT_PATH;
+
+            PreparedStatement statement = connection.prepareStatement("select " + getIdColumn() + ", " + getExpiryTimeColumn() +
+                " from " + getSchemaTableName() +
+                " where " + getExpiryTimeColumn() + " >0 and ((" +
+                getContextPathColumn() + " = ? and " +
+                getVirtualHostColumn() + " = ? and " +
+                getExpiryTimeColumn() + " <= ?) or " +
+                getExpiryTimeColumn() + " <= ?)");
+            statement.setString(1, cp);
+            statement.setString(2, vhost);
+            statement.setLong(3, expiry);
+            statement.setLong(4, ancientExpiry);
+            return statement;
+        }
+
         public PreparedStatement getCheckSessionExistsStatement(Connection connection, SessionContext context)
             throws SQLException
         {
@@ -473,9 +580,7 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
                 cp = NULL_CONTEXT_PATH;
 
-            PreparedStatement statement = connection.prepareStatement("delete from " + getSchemaTableName() +
-                " where " + getIdColumn() + " = ? and " + getContextPathColumn() +
-                " = ? and " + getVirtualHostColumn() + " = ?");
+            PreparedStatement statement = connection.prepareStatement(getDeleteSessionStatementAsString());
             statement.setString(1, id);
             statement.setString(2, cp);
             statement.setString(3, contextId.getVhost());
@@ -605,6 +710,103 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         super();
     }
 
+    /**
+     * @return the time in ms that stores and deletes wait to be batched together, or 0 if batching is disabled
+     */
+    @ManagedAttribute(value = "time in ms that writes wait to be batched together", readonly = true)
+    public long getBatchWindowMs()
+    {
+        return _batchWindowMs;
+    }
+
+    /**
+     * <p>Sets the time in ms that stores and deletes wait to be batched together
+     * with other writes, before they are written to the database.</p>
+     * <p>Stores do not wait for the window to elapse, so a window of a few ms gives
+     * far fewer round-trips to the database under heavy session churn, at the cost
+     * of a store failure being logged rather than reported to the caller.</p>
+     *
+     * @param batchWindowMs the batch window in ms, or 0 to disable batching
+     */
+    public void setBatchWindowMs(long batchWindowMs)
+    {
+        checkStarted();
+        _batchWindowMs = batchWindowMs;
+    }
+
+    /**
+     * @return the max number of writes in a batch
+     */
+    @ManagedAttribute(value = "max number of writes in a batch", readonly = true)
+    public int getMaxBatchSize()
+    {
+        return _maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize the max number of writes in a batch; a batch
+     * that reaches this size is written without waiting for the batch window to elapse
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        checkStarted();
+        if (maxBatchSize <= 0)
+            throw new IllegalArgumentException("Invalid max batch size " + maxBatchSize);
+        _maxBatchSize = maxBatchSize;
+    }
+
+    /**
+     * @param scheduler the scheduler used to flush the batches when the batch window elapses
+     */
+    public void setScheduler(Scheduler scheduler)
+    {
+        checkStarted();
+        updateBean(_scheduler, scheduler);
+        _scheduler = scheduler;
+    }
+
+    @ManagedAttribute(value = "number of batches written", readonly = true)
+    public long getBatches()
+    {
+        return _batches.sum();
+    }
+
+    @ManagedAttribute(value = "number of stores and deletes written in batches", readonly = true)
+    public long getBatchedWrites()
+    {
+        return _batchedWrites.sum();
+    }
+
+    @ManagedAttribute(value = "number of writes coalesced with a later write of the same session", readonly = true)
+    public long getCoalescedWrites()
+    {
+        return _coalescedWrites.sum();
+    }
+
+    @ManagedAttribute(value = "number of batched stores that failed after the caller returned", readonly = true)
+    public long getFailedWrites()
+    {
+        return _failedWrites.sum();
+    }
+
+    @ManagedAttribute(value = "number of writes waiting to be batched", readonly = true)
+    public int getPendingWrites()
+    {
+        synchronized (_batchLock)
+        {
+            return _pendingWrites.size();
+        }
+    }
+
+    @ManagedOperation(value = "reset statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _batches.reset();
+        _batchedWrites.reset();
+        _coalescedWrites.reset();
+        _failedWrites.reset();
+    }
+
     @Override
     protected void doStart() throws Exception
     {
@@ -612,12 +814,19 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             throw new IllegalStateException("No jdbc config");
 
         initialize();
+        if (_batchWindowMs > 0 && _scheduler == null)
+        {
+            _scheduler = new ScheduledExecutorScheduler(String.format("JDBCSessionDataStore-Scheduler-%x", hashCode()), true);
+            addBean(_scheduler, true);
+        }
         super.doStart();
     }
 
     @Override
     protected void doStop() throws Exception
     {
+        // Write the batched writes before stopping the scheduler.
+        flush();
         super.doStop();
         _initialized = false;
         if (!_schemaProvided)
@@ -646,6 +855,7 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     @Override
     public SessionData doLoad(String id) throws Exception
     {
+        flushPending(id);
         try (Connection connection = _dbAdaptor.getConnection();
              PreparedStatement statement = _sessionTableSchema.getLoadStatement(connection, id, _context);
              ResultSet result = statement.executeQuery())
@@ -688,6 +898,9 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     @Override
     public boolean delete(String id) throws Exception
     {
+        if (_batchWindowMs > 0)
+            return await(enqueue(new PendingWrite(id)));
+
         try (Connection connection = _dbAdaptor.getConnection();
              PreparedStatement statement = _sessionTableSchema.getDeleteStatement(connection, id, _context))
         {
@@ -706,7 +919,20 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         if (data == null || id == null)
             return;
 
-        if (lastSaveTime <= 0)
+        if (_batchWindowMs > 0)
+        {
+            // Do not wait for the batch: the write is completed by the flush.
+            enqueue(new PendingWrite(lastSaveTime <= 0 ? WriteType.INSERT : WriteType.UPDATE, id, data))
+                .whenComplete((r, x) ->
+                {
+                    if (x != null)
+                    {
+                        _failedWrites.increment();
+                        LOG.warn("Unable to store session " + id, x);
+                    }
+                });
+        }
+        else if (lastSaveTime <= 0)
         {
             doInsert(id, data);
         }
@@ -800,66 +1026,47 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
         if (LOG.isDebugEnabled())
             LOG.debug("Getting expired sessions at time {}", System.currentTimeMillis());
 
+        // Queued stores may have extended the expiry of the sessions.
+        flush();
+
         long now = System.currentTimeMillis();
 
         Set<String> expiredSessionKeys = new HashSet<>();
-        try (Connection connection = _dbAdaptor.getConnection())
+        try (Connection connection = _dbAdaptor.getConnection();
+             StatementCache statements = new StatementCache(connection))
         {
             connection.setAutoCommit(true);
 
             /*
-             * 1. Select sessions managed by this node for our context that have expired
+             * Select with a single range query over the expiry index:
+             * 1. sessions for our context that have expired
+             * 2. sessions for any node or context that have expired
+             * at least 1 graceperiod since the last expiry check. If we haven't done previous expiry checks, then
+             * those that have expired at least 3 graceperiod ago.
              */
-            long upperBound = now;
-            if (LOG.isDebugEnabled())
-                LOG.debug("{}- Pass 1: Searching for sessions for context {} managed by me and expired before {}", _context.getWorkerName(), _context.getCanonicalContextPath(), upperBound);
+            long ancientBound;
+            if (_lastExpiryCheckTime <= 0)
+                ancientBound = (now - (3 * (1000L * _gracePeriodSec)));
+            else
+                ancientBound = _lastExpiryCheckTime - (1000L * _gracePeriodSec);
 
-            try (PreparedStatement statement = _sessionTableSchema.getExpiredSessionsStatement(connection, _context.getCanonicalContextPath(), _context.getVhost(), upperBound))
-            {
-                try (ResultSet result = statement.executeQuery())
-                {
-                    while (result.next())
-                    {
-                        String sessionId = result.getString(_sessionTableSchema.getIdColumn());
-                        long exp = result.getLong(_sessionTableSchema.getExpiryTimeColumn());
-                        expiredSessionKeys.add(sessionId);
-                        if (LOG.isDebugEnabled())
-                            LOG.debug(_context.getCanonicalContextPath() + "- Found expired sessionId=" + sessionId);
-                    }
-                }
-            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("{}- Searching for sessions for context {} expired before {}, or any context expired before {}",
+                    _context.getWorkerName(), _context.getCanonicalContextPath(), now, ancientBound);
 
-            /*
-             *  2. Select sessions for any node or context that have expired
-             *  at least 1 graceperiod since the last expiry check. If we haven't done previous expiry checks, then check
-             *  those that have expired at least 3 graceperiod ago.
-             */
-            try (PreparedStatement selectExpiredSessions = _sessionTableSchema.getAllAncientExpiredSessionsStatement(connection))
+            try (PreparedStatement statement = _sessionTableSchema.getExpiredSessionsStatement(connection, _context, now, ancientBound);
+                 ResultSet result = statement.executeQuery())
             {
-                if (_lastExpiryCheckTime <= 0)
-                    upperBound = (now - (3 * (1000L * _gracePeriodSec)));
-                else
-                    upperBound = _lastExpiryCheckTime - (1000L * _gracePeriodSec);
-
-                if (LOG.isDebugEnabled())
-                    LOG.debug("{}- Pass 2: Searching for sessions expired before {}", _context.getWorkerName(), upperBound);
-
-                selectExpiredSessions.setLong(1, upperBound);
-                try (ResultSet result = selectExpiredSessions.executeQuery())
+                while (result.next())
                 {
-                    while (result.next())
-                    {
-                        String sessionId = result.getString(_sessionTableSchema.getIdColumn());
-                        String ctxtpth = result.getString(_sessionTableSchema.getContextPathColumn());
-                        String vh = result.getString(_sessionTableSchema.getVirtualHostColumn());
-                        expiredSessionKeys.add(sessionId);
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("{}- Found expired sessionId=", _context.getWorkerName(), sessionId);
-                    }
+                    String sessionId = result.getString(_sessionTableSchema.getIdColumn());
+                    expiredSessionKeys.add(sessionId);
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("{}- Found expired sessionId={}", _context.getWorkerName(), sessionId);
                 }
             }
 
-            Set<String> notExpiredInDB = new HashSet<>();
+            List<String> notExpiredInDB = new ArrayList<>();
             for (String k : candidates)
             {
                 //there are some keys that the session store thought had expired, but were not
@@ -869,29 +1076,39 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
                     notExpiredInDB.add(k);
             }
 
-            if (!notExpiredInDB.isEmpty())
+            //check the remaining candidates with one query per chunk of ids, rather than one per id
+            for (int from = 0; from < notExpiredInDB.size(); from += MAX_IDS_PER_QUERY)
             {
-                //we have some sessions to check
-                try (PreparedStatement checkSessionExists = _sessionTableSchema.getCheckSessionExistsStatement(connection, _context))
+                List<String> ids = notExpiredInDB.subList(from, Math.min(from + MAX_IDS_PER_QUERY, notExpiredInDB.size()));
+                try
                 {
-                    for (String k : notExpiredInDB)
+                    PreparedStatement checkSessionsExist = statements.prepare(_sessionTableSchema.getCheckSessionsExistStatementAsString(ids.size()));
+                    checkSessionsExist.setString(1, getContextPath());
+                    checkSessionsExist.setString(2, _context.getVhost());
+                    for (int i = 0; i < ids.size(); ++i)
                     {
-                        checkSessionExists.setString(1, k);
-                        try (ResultSet result = checkSessionExists.executeQuery())
-                        {
-                            if (!result.next())
-                            {
-                                //session doesn't exist any more, can be expired
-                                expiredSessionKeys.add(k);
-                            }
-                            //else its expiry time has not been reached
-                        }
-                        catch (Exception e)
+                        checkSessionsExist.setString(3 + i, ids.get(i));
+                    }
+                    Set<String> existing = new HashSet<>();
+                    try (ResultSet result = checkSessionsExist.executeQuery())
+                    {
+                        while (result.next())
                         {
-                            LOG.warn("{} Problem checking if potentially expired session {} exists in db", _context.getWorkerName(), k);
-                            LOG.warn(e);
+                            existing.add(result.getString(_sessionTableSchema.getIdColumn()));
                         }
                     }
+                    for (String k : ids)
+                    {
+                        //session doesn't exist any more, can be expired
+                        //else its expiry time has not been reached
+                        if (!existing.contains(k))
+                            expiredSessionKeys.add(k);
+                    }
+                }
+                catch (Exception e)
+                {
+                    LOG.warn("{} Problem checking if potentially expired sessions {} exist in db", _context.getWorkerName(), ids);
+                    LOG.warn(e);
                 }
             }
 
@@ -930,6 +1147,7 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
     public boolean exists(String id)
         throws Exception
     {
+        flushPending(id);
         try (Connection connection = _dbAdaptor.getConnection())
         {
             connection.setAutoCommit(true);
@@ -956,4 +1174,375 @@ public class JDBCSessionDataStore extends AbstractSessionDataStore
             }
         }
     }
+
+    private String getContextPath()
+    {
+        String cp = _context.getCanonicalContextPath();
+        if (_dbAdaptor.isEmptyStringNull() && StringUtil.isBlank(cp))
+            cp = NULL_CONTEXT_PATH;
+        return cp;
+    }
+
+    /**
+     * <p>Queues the given write to be written with the next batch, coalescing it with
+     * a queued write of the same session.</p>
+     *
+     * @param write the write to queue
+     * @return the future result of the write
+     */
+    private CompletableFuture<Boolean> enqueue(PendingWrite write)
+    {
+        while (true)
+        {
+            synchronized (_batchLock)
+            {
+                PendingWrite previous = _pendingWrites.get(write._id);
+                // A delete and a store of the same session cannot be coalesced,
+                // so the queued one is written before this one is queued.
+                if (previous == null || (previous._type == WriteType.DELETE) == (write._type == WriteType.DELETE))
+                {
+                    if (previous != null)
+                    {
+                        write.coalesce(previous);
+                        _coalescedWrites.increment();
+                    }
+                    _pendingWrites.put(write._id, write);
+                    if (_pendingWrites.size() == _maxBatchSize)
+                    {
+                        // The batch is full, write it without waiting for the window to elapse.
+                        _scheduler.schedule(this::flush, 0, TimeUnit.MILLISECONDS);
+                    }
+                    else if (!_flushScheduled)
+                    {
+                        _flushScheduled = true;
+                        _scheduler.schedule(this::scheduledFlush, _batchWindowMs, TimeUnit.MILLISECONDS);
+                    }
+                    return write._result;
+                }
+            }
+
+            flush();
+        }
+    }
+
+    /**
+     * <p>Writes the queued writes if one of them is for the given session,
+     * so that it is read back from the database.</p>
+     *
+     * @param id the session id
+     */
+    private void flushPending(String id)
+    {
+        if (_batchWindowMs <= 0)
+            return;
+        boolean pending;
+        synchronized (_batchLock)
+        {
+            pending = _pendingWrites.containsKey(id);
+        }
+        if (pending)
+            flush();
+    }
+
+    private boolean await(CompletableFuture<Boolean> result) throws Exception
+    {
+        try
+        {
+            return result.get();
+        }
+        catch (ExecutionException e)
+        {
+            Throwable cause = e.getCause();
+            if (cause instanceof Exception)
+                throw (Exception)cause;
+            throw e;
+        }
+    }
+
+    private void scheduledFlush()
+    {
+        synchronized (_batchLock)
+        {
+            _flushScheduled = false;
+        }
+        flush();
+    }
+
+    /**
+     * <p>Writes all the queued writes as JDBC batches in a single transaction.</p>
+     * <p>If the batch fails, for example because of a duplicate insert, the writes
+     * are retried one by one so that only the offending ones fail.</p>
+     */
+    private void flush()
+    {
+        synchronized (_flushLock)
+        {
+            List<PendingWrite> writes;
+            synchronized (_batchLock)
+            {
+                if (_pendingWrites.isEmpty())
+                    return;
+                writes = new ArrayList<>(_pendingWrites.values());
+                _pendingWrites.clear();
+            }
+
+            try
+            {
+                writeBatch(writes);
+                _batches.increment();
+                _batchedWrites.add(writes.size());
+            }
+            catch (Throwable x)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Batch of {} writes failed, writing them one by one", writes.size(), x);
+                writeEach(writes);
+            }
+        }
+    }
+
+    private void writeBatch(List<PendingWrite> writes) throws Exception
+    {
+        Map<WriteType, List<PendingWrite>> byType = new EnumMap<>(WriteType.class);
+        for (PendingWrite write : writes)
+        {
+            byType.computeIfAbsent(write._type, t -> new ArrayList<>()).add(write);
+        }
+
+        String cp = getContextPath();
+        Map<PendingWrite, Boolean> results = new HashMap<>();
+        try (Connection connection = _dbAdaptor.getConnection();
+             StatementCache statements = new StatementCache(connection))
+        {
+            connection.setAutoCommit(false);
+            try
+            {
+                for (Map.Entry<WriteType, List<PendingWrite>> entry : byType.entrySet())
+                {
+                    PreparedStatement statement = statements.prepare(getStatementAsString(entry.getKey()));
+                    for (PendingWrite write : entry.getValue())
+                    {
+                        write.bind(statement, cp, _context.getVhost());
+                        statement.addBatch();
+                    }
+                    int[] counts = statement.executeBatch();
+                    Iterator<PendingWrite> iterator = entry.getValue().iterator();
+                    for (int count : counts)
+                    {
+                        results.put(iterator.next(), count > 0 || count == Statement.SUCCESS_NO_INFO);
+                    }
+                }
+                connection.commit();
+            }
+            catch (Throwable x)
+            {
+                connection.rollback();
+                throw x;
+            }
+            finally
+            {
+                connection.setAutoCommit(true);
+            }
+        }
+
+        if (LOG.isDebugEnabled())
+            LOG.debug("Wrote batch of {} writes", writes.size());
+        for (PendingWrite write : writes)
+        {
+            write._result.complete(results.getOrDefault(write, Boolean.FALSE));
+        }
+    }
+
+    private void writeEach(List<PendingWrite> writes)
+    {
+        String cp = getContextPath();
+        for (PendingWrite write : writes)
+        {
+            try (Connection connection = _dbAdaptor.getConnection();
+                 PreparedStatement statement = connection.prepareStatement(getStatementAsString(write._type)))
+            {
+                connection.setAutoCommit(true);
+                write.bind(statement, cp, _context.getVhost());
+                write._result.complete(statement.executeUpdate() > 0);
+            }
+            catch (Throwable x)
+            {
+                write._result.completeExceptionally(x);
+            }
+        }
+    }
+
+    private String getStatementAsString(WriteType type)
+    {
+        switch (type)
+        {
+            case INSERT:
+                return _sessionTableSchema.getInsertSessionStatementAsString();
+            case UPDATE:
+                return _sessionTableSchema.getUpdateSessionStatementAsString();
+            case DELETE:
+                return _sessionTableSchema.getDeleteSessionStatementAsString();
+            default:
+                throw new IllegalStateException(type.toString());
+        }
+    }
+
+    private enum WriteType
+    {
+        INSERT, UPDATE, DELETE
+    }
+
+    /**
+     * <p>A store or delete waiting to be written with the next batch.</p>
+     * <p>The session fields and attributes are captured when the write is
+     * queued, so that the batch does not race with the request threads.</p>
+     */
+    private static class PendingWrite
+    {
+        private final String _id;
+        private final CompletableFuture<Boolean> _result = new CompletableFuture<>();
+        private WriteType _type;
+        private String _lastNode;
+        private long _accessed;
+        private long _lastAccessed;
+        private long _created;
+        private long _cookieSet;
+        private long _lastSaved;
+        private long _expiry;
+        private long _maxInactiveMs;
+        private byte[] _attributes;
+
+        private PendingWrite(String id)
+        {
+            _id = id;
+            _type = WriteType.DELETE;
+        }
+
+        private PendingWrite(WriteType type, String id, SessionData data) throws Exception
+        {
+            _id = id;
+            _type = type;
+            _lastNode = data.getLastNode();
+            _accessed = data.getAccessed();
+            _lastAccessed = data.getLastAccessed();
+            _created = data.getCreated();
+            _cookieSet = data.getCookieSet();
+            _lastSaved = data.getLastSaved();
+            _expiry = data.getExpiry();
+            _maxInactiveMs = data.getMaxInactiveMs();
+            try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
+                 ObjectOutputStream oos = new ObjectOutputStream(baos))
+            {
+                SessionData.serializeAttributes(data, oos);
+                oos.flush();
+                _attributes = baos.toByteArray();
+            }
+        }
+
+        /**
+         * <p>Replaces the given earlier write of the same session, which completes with this one.</p>
+         *
+         * @param previous the earlier write
+         */
+        private void coalesce(PendingWrite previous)
+        {
+            // The row is not in the database yet, so it must still be inserted.
+            if (previous._type == WriteType.INSERT)
+                _type = WriteType.INSERT;
+            _result.whenComplete((r, x) ->
+            {
+                if (x == null)
+                    previous._result.complete(r);
+                else
+                    previous._result.completeExceptionally(x);
+            });
+        }
+
+        private void bind(PreparedStatement statement, String cp, String vhost) throws SQLException
+        {
+            switch (_type)
+            {
+                case INSERT:
+                    statement.setString(1, _id); //session id
+                    statement.setString(2, cp); //context path
+                    statement.setString(3, vhost); //first vhost
+                    statement.setString(4, _lastNode); //my node id
+                    statement.setLong(5, _accessed); //accessTime
+                    statement.setLong(6, _lastAccessed); //lastAccessTime
+                    statement.setLong(7, _created); //time created
+                    statement.setLong(8, _cookieSet); //time cookie was set
+                    statement.setLong(9, _lastSaved); //last saved time
+                    statement.setLong(10, _expiry);
+                    statement.setLong(11, _maxInactiveMs);
+                    statement.setBinaryStream(12, new ByteArrayInputStream(_attributes), _attributes.length); //attribute map as blob
+                    break;
+                case UPDATE:
+                    statement.setString(1, _lastNode); //should be my node id
+                    statement.setLong(2, _accessed); //accessTime
+                    statement.setLong(3, _lastAccessed); //lastAccessTime
+                    statement.setLong(4, _lastSaved); //last saved time
+                    statement.setLong(5, _expiry);
+                    statement.setLong(6, _maxInactiveMs);
+                    statement.setBinaryStream(7, new ByteArrayInputStream(_attributes), _attributes.length); //attribute map as blob
+                    statement.setString(8, _id);
+                    statement.setString(9, cp);
+                    statement.setString(10, vhost);
+                    break;
+                case DELETE:
+                    statement.setString(1, _id);
+                    statement.setString(2, cp);
+                    statement.setString(3, vhost);
+                    break;
+                default:
+                    throw new IllegalStateException(_type.toString());
+            }
+        }
+    }
+
+    /**
+     * <p>Caches the {@link PreparedStatement}s prepared on a connection, so that
+     * the same SQL is prepared only once while the connection is in use.</p>
+     */
+    private static class StatementCache implements AutoCloseable
+    {
+        private final Connection _connection;
+        private final Map<String, PreparedStatement> _statements = new HashMap<>();
+
+        private StatementCache(Connection connection)
+        {
+            _connection = connection;
+        }
+
+        private PreparedStatement prepare(String sql) throws SQLException
+        {
+            PreparedStatement statement = _statements.get(sql);
+            if (statement == null)
+            {
+                statement = _connection.prepareStatement(sql);
+                _statements.put(sql, statement);
+            }
+            else
+            {
+                statement.clearParameters();
+            }
+            return statement;
+        }
+
+        @Override
+        public void close()
+        {
+            for (PreparedStatement statement : _statements.values())
+            {
+                try
+                {
+                    statement.close();
+                }
+                catch (SQLException x)
+                {
+                    LOG.ignore(x);
+                }
+            }
+            _statements.clear();
+        }
+    }
 }
@@ -34,6 +34,10 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
      */
     JDBCSessionDataStore.SessionTableSchema _schema;
 
+    long _batchWindowMs = 0;
+
+    int _maxBatchSize = 64;
+
     /**
      * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
      */
@@ -45,6 +49,8 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
         ds.setSessionTableSchema(_schema);
         ds.setGracePeriodSec(getGracePeriodSec());
         ds.setSavePeriodSec(getSavePeriodSec());
+        ds.setBatchWindowMs(getBatchWindowMs());
+        ds.setMaxBatchSize(getMaxBatchSize());
         return ds;
     }
 
@@ -63,4 +69,36 @@ public class JDBCSessionDataStoreFactory extends AbstractSessionDataStoreFactory
     {
         _schema = schema;
     }
+
+    /**
+     * @return the time in ms that writes wait to be batched together, or 0 if batching is disabled
+     */
+    public long getBatchWindowMs()
+    {
+        return _batchWindowMs;
+    }
+
+    /**
+     * @param batchWindowMs the time in ms that writes wait to be batched together, or 0 to disable batching
+     */
+    public void setBatchWindowMs(long batchWindowMs)
+    {
+        _batchWindowMs = batchWindowMs;
+    }
+
+    /**
+     * @return the max number of writes in a batch
+     */
+    public int getMaxBatchSize()
+    {
+        return _maxBatchSize;
+    }
+
+    /**
+     * @param maxBatchSize the max number of writes in a batch
+     */
+    public void setMaxBatchSize(int maxBatchSize)
+    {
+        _maxBatchSize = maxBatchSize;
+    }
 }
@@ -0,0 +1,815 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+import java.util.zip.CRC32;
+
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * LogFileSessionDataStore
+ *
+ * A file-based store of session data that, unlike the {@link FileSessionDataStore},
+ * does not use a file per session, but appends the serialized session data to
+ * a small number of segment files.
+ *
+ * An in-memory index maps each session id to the position of its most recent
+ * record, and an expiry-ordered index of the same records is used to find the
+ * expired sessions, so that loads, stores and expiry lookups do not depend on
+ * the number of stored sessions, nor need to list or scan the store directory.
+ *
+ * Deleting a session appends a tombstone record. Segments whose live records
+ * fall below {@link #getCompactionThreshold() a threshold} of their size are
+ * compacted in the background, by copying their live records to the active
+ * segment and deleting them. The index is rebuilt by replaying the segments
+ * when the store is started.
+ *
+ * The segments are written without being forced to the storage device, unless
+ * a {@link #setSyncPolicy(SyncPolicy) sync policy} is configured. The segment
+ * channels are shared by all the sessions, so a channel that is closed because
+ * a thread using it is interrupted is reopened.
+ */
+@ManagedObject
+public class LogFileSessionDataStore extends AbstractSessionDataStore
+{
+    private static final Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+    private static final String SUFFIX = ".slog";
+    private static final byte STORE = 1;
+    private static final byte DELETE = 2;
+    private static final int HEADER_LENGTH = 9;
+
+    /**
+     * When the segments are forced to the storage device.
+     */
+    public enum SyncPolicy
+    {
+        /**
+         * The segments are never forced, the operating system writes them.
+         */
+        NONE,
+        /**
+         * A segment is forced when it is full, before the segments whose
+         * records it holds are deleted, and when the store is stopped.
+         */
+        SEGMENT,
+        /**
+         * The segment is forced after every store and delete.
+         */
+        ALWAYS
+    }
+
+    private final Map<String, Entry> _index = new ConcurrentHashMap<>();
+    private final NavigableSet<Entry> _expiries = new ConcurrentSkipListSet<>(Comparator.comparingLong((Entry e) -> e.expiry).thenComparing(e -> e.id));
+    private final List<Segment> _segments = new CopyOnWriteArrayList<>();
+    private final Object _lock = new Object();
+    protected File _storeDir;
+    protected long _maxSegmentSize = 64 * 1024 * 1024;
+    protected double _compactionThreshold = 0.5;
+    protected long _compactionIntervalSec = 60;
+    protected String _contextString;
+    protected SyncPolicy _syncPolicy = SyncPolicy.NONE;
+    private Segment _active;
+    private Scheduler _scheduler;
+    private Scheduler.Task _task;
+
+    @Override
+    public void initialize(SessionContext context) throws Exception
+    {
+        super.initialize(context);
+        _contextString = _context.getCanonicalContextPath() + "_" + _context.getVhost();
+    }
+
+    @ManagedAttribute(value = "dir where sessions are stored", readonly = true)
+    public File getStoreDir()
+    {
+        return _storeDir;
+    }
+
+    public void setStoreDir(File storeDir)
+    {
+        checkStarted();
+        _storeDir = storeDir;
+    }
+
+    @ManagedAttribute(value = "max size in bytes of a segment file", readonly = true)
+    public long getMaxSegmentSize()
+    {
+        return _maxSegmentSize;
+    }
+
+    public void setMaxSegmentSize(long maxSegmentSize)
+    {
+        checkStarted();
+        _maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * @return the ratio of live bytes of a segment below which the segment is compacted
+     */
+    @ManagedAttribute(value = "ratio of live bytes below which a segment is compacted", readonly = true)
+    public double getCompactionThreshold()
+    {
+        return _compactionThreshold;
+    }
+
+    public void setCompactionThreshold(double compactionThreshold)
+    {
+        checkStarted();
+        _compactionThreshold = compactionThreshold;
+    }
+
+    @ManagedAttribute(value = "interval in secs between compactions", readonly = true)
+    public long getCompactionIntervalSec()
+    {
+        return _compactionIntervalSec;
+    }
+
+    public void setCompactionIntervalSec(long compactionIntervalSec)
+    {
+        checkStarted();
+        _compactionIntervalSec = compactionIntervalSec;
+    }
+
+    @ManagedAttribute(value = "when segments are forced to the storage device", readonly = true)
+    public SyncPolicy getSyncPolicy()
+    {
+        return _syncPolicy;
+    }
+
+    public void setSyncPolicy(SyncPolicy syncPolicy)
+    {
+        checkStarted();
+        _syncPolicy = syncPolicy == null ? SyncPolicy.NONE : syncPolicy;
+    }
+
+    @ManagedAttribute(value = "number of stored sessions", readonly = true)
+    public int getSessions()
+    {
+        return _index.size();
+    }
+
+    @ManagedAttribute(value = "number of segment files", readonly = true)
+    public int getSegments()
+    {
+        return _segments.size();
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_storeDir == null)
+            throw new IllegalStateException("No file store specified");
+        if (!_storeDir.exists() && !_storeDir.mkdirs())
+            throw new IllegalStateException("Unable to create " + _storeDir);
+        if (!_storeDir.isDirectory() || !_storeDir.canWrite() || !_storeDir.canRead())
+            throw new IllegalStateException(_storeDir.getAbsolutePath() + " must be readable/writeable dir");
+
+        replay();
+        _active = newSegment(_segments.isEmpty() ? 0 : _segments.get(_segments.size() - 1).sequence + 1);
+
+        if (_scheduler == null)
+        {
+            _scheduler = new ScheduledExecutorScheduler(String.format("LogFileSessionDataStore-Compactor-%x", hashCode()), true);
+            addBean(_scheduler, true);
+        }
+        super.doStart();
+        if (_compactionIntervalSec > 0)
+            _task = _scheduler.schedule(this::scheduledCompaction, _compactionIntervalSec, TimeUnit.SECONDS);
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        Scheduler.Task task = _task;
+        if (task != null)
+            task.cancel();
+        _task = null;
+        super.doStop();
+        synchronized (_lock)
+        {
+            if (_active != null && _syncPolicy != SyncPolicy.NONE)
+                _active.force();
+            for (Segment segment : _segments)
+            {
+                segment.close();
+            }
+            _segments.clear();
+            _active = null;
+            _index.clear();
+            _expiries.clear();
+        }
+    }
+
+    @Override
+    public SessionData doLoad(String id) throws Exception
+    {
+        while (true)
+        {
+            Entry entry = _index.get(id);
+            if (entry == null)
+                return null;
+
+            byte[] record;
+            try
+            {
+                record = entry.segment.read(entry.offset, entry.length);
+            }
+            catch (ClosedChannelException x)
+            {
+                // The segment has been compacted, retry with the new position.
+                if (_index.get(id) == entry)
+                    throw x;
+                continue;
+            }
+
+            try
+            {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, HEADER_LENGTH, record.length - HEADER_LENGTH));
+                return readSessionData(in, id);
+            }
+            catch (Exception e)
+            {
+                throw new UnreadableSessionDataException(id, _context, e);
+            }
+        }
+    }
+
+    @Override
+    public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
+    {
+        byte[] record;
+        try
+        {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            // Room for the header.
+            out.write(new byte[HEADER_LENGTH]);
+            writeSessionData(out, id, data);
+            out.flush();
+            record = bytes.toByteArray();
+        }
+        catch (Exception e)
+        {
+            throw new UnwriteableSessionDataException(id, _context, e);
+        }
+
+        synchronized (_lock)
+        {
+            Entry entry = append(STORE, record, id, data.getExpiry());
+            if (_syncPolicy == SyncPolicy.ALWAYS)
+                entry.segment.force();
+            update(entry);
+        }
+    }
+
+    @Override
+    public boolean delete(String id) throws Exception
+    {
+        synchronized (_lock)
+        {
+            Entry entry = _index.remove(id);
+            if (entry == null)
+                return false;
+            entry.segment.dead(entry.length);
+            _expiries.remove(entry);
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(HEADER_LENGTH + 64);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.write(new byte[HEADER_LENGTH]);
+            out.writeUTF(id);
+            Entry tombstone = append(DELETE, bytes.toByteArray(), id, 0);
+            tombstone.segment.dead(tombstone.length);
+            if (_syncPolicy == SyncPolicy.ALWAYS)
+                tombstone.segment.force();
+            return true;
+        }
+    }
+
+    @Override
+    public boolean exists(String id) throws Exception
+    {
+        Entry entry = _index.get(id);
+        if (entry == null)
+            return false;
+        return entry.expiry <= 0 || entry.expiry > System.currentTimeMillis();
+    }
+
+    @Override
+    public Set<String> doGetExpired(Set<String> candidates)
+    {
+        long now = System.currentTimeMillis();
+        Set<String> expired = new HashSet<>();
+
+        // Only the expired entries are visited.
+        for (Entry entry : _expiries)
+        {
+            if (entry.expiry >= now)
+                break;
+            expired.add(entry.id);
+        }
+
+        // Candidates that are not stored do not exist anymore.
+        for (String candidate : candidates)
+        {
+            if (!_index.containsKey(candidate))
+                expired.add(candidate);
+        }
+        return expired;
+    }
+
+    @Override
+    @ManagedAttribute(value = "are sessions serialized by this store", readonly = true)
+    public boolean isPassivating()
+    {
+        return true;
+    }
+
+    /**
+     * Compacts the segments whose ratio of live bytes is below the compaction threshold.
+     */
+    @ManagedOperation(value = "compact the segment files", impact = "ACTION")
+    public void compact()
+    {
+        for (Segment segment : _segments)
+        {
+            if (segment == _active || !segment.isCompactable(_compactionThreshold))
+                continue;
+            try
+            {
+                compact(segment);
+            }
+            catch (Exception e)
+            {
+                LOG.warn("Unable to compact " + segment, e);
+            }
+        }
+    }
+
+    private void scheduledCompaction()
+    {
+        try
+        {
+            compact();
+        }
+        finally
+        {
+            if (isRunning())
+                _task = _scheduler.schedule(this::scheduledCompaction, _compactionIntervalSec, TimeUnit.SECONDS);
+        }
+    }
+
+    private void compact(Segment segment) throws IOException
+    {
+        if (LOG.isDebugEnabled())
+            LOG.debug("Compacting {}", segment);
+
+        int moved = 0;
+        long offset = 0;
+        long size = segment.size;
+        while (offset < size)
+        {
+            byte[] header = segment.read(offset, HEADER_LENGTH);
+            int length = HEADER_LENGTH + ByteBuffer.wrap(header).getInt(0);
+            byte[] record = segment.read(offset, length);
+            byte type = record[8];
+            String id = new DataInputStream(new ByteArrayInputStream(record, HEADER_LENGTH, length - HEADER_LENGTH)).readUTF();
+
+            synchronized (_lock)
+            {
+                Entry entry = _index.get(id);
+                if (type == STORE && entry != null && entry.segment == segment && entry.offset == offset)
+                {
+                    // Move the live record to the active segment.
+                    update(append(STORE, record, id, entry.expiry));
+                    ++moved;
+                }
+                else if (type == DELETE && entry == null && hasOlderSegment(segment))
+                {
+                    // Keep the tombstone while an older segment may contain the deleted session.
+                    Entry tombstone = append(DELETE, record, id, 0);
+                    tombstone.segment.dead(tombstone.length);
+                }
+            }
+            offset += length;
+        }
+
+        synchronized (_lock)
+        {
+            // The moved records must be stored before their segment is deleted.
+            if (_syncPolicy != SyncPolicy.NONE)
+                _active.force();
+            _segments.remove(segment);
+            segment.close();
+        }
+        Files.deleteIfExists(segment.path);
+        if (LOG.isDebugEnabled())
+            LOG.debug("Compacted {}, moved {} sessions", segment, moved);
+    }
+
+    private boolean hasOlderSegment(Segment segment)
+    {
+        for (Segment s : _segments)
+        {
+            if (s.sequence < segment.sequence)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Appends a record, whose header is filled by this method, to the active segment.
+     * Must be called with the lock held.
+     */
+    private Entry append(byte type, byte[] record, String id, long expiry) throws IOException
+    {
+        // The header is the payload length, the checksum of the type and payload, and the type.
+        record[8] = type;
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, record.length - 8);
+        ByteBuffer header = ByteBuffer.wrap(record, 0, 8);
+        header.putInt(record.length - HEADER_LENGTH);
+        header.putInt((int)crc.getValue());
+
+        Segment segment = _active;
+        if (segment.size > 0 && segment.size + record.length > _maxSegmentSize)
+        {
+            if (_syncPolicy != SyncPolicy.NONE)
+                segment.force();
+            segment = newSegment(segment.sequence + 1);
+            _active = segment;
+        }
+        long offset = segment.append(record);
+        return new Entry(id, segment, offset, record.length, expiry);
+    }
+
+    /**
+     * Makes the given entry the most recent one for its session.
+     * Must be called with the lock held.
+     */
+    private void update(Entry entry)
+    {
+        Entry old = _index.put(entry.id, entry);
+        if (old != null)
+        {
+            old.segment.dead(old.length);
+            _expiries.remove(old);
+        }
+        if (entry.expiry > 0)
+            _expiries.add(entry);
+    }
+
+    private Segment newSegment(long sequence) throws IOException
+    {
+        Path path = _storeDir.toPath().resolve(String.format("%s_%016x%s", _contextString, sequence, SUFFIX));
+        Segment segment = new Segment(sequence, path, FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        _segments.add(segment);
+        return segment;
+    }
+
+    /**
+     * Rebuilds the index by reading the segments of this context, in order.
+     */
+    private void replay() throws IOException
+    {
+        // Other contexts may have names that start with the name of this context.
+        Pattern pattern = Pattern.compile(Pattern.quote(_contextString) + "_[0-9a-f]{16}" + Pattern.quote(SUFFIX));
+        List<Path> paths = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(_storeDir.toPath(), p -> pattern.matcher(p.getFileName().toString()).matches()))
+        {
+            for (Path path : stream)
+            {
+                paths.add(path);
+            }
+        }
+        paths.sort(Comparator.comparing(Path::toString));
+
+        for (Path path : paths)
+        {
+            String name = path.getFileName().toString();
+            long sequence = Long.parseUnsignedLong(name.substring(_contextString.length() + 1, name.length() - SUFFIX.length()), 16);
+            Segment segment = new Segment(sequence, path, FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE));
+            if (segment.size == 0)
+            {
+                segment.close();
+                Files.deleteIfExists(path);
+                continue;
+            }
+            _segments.add(segment);
+            long offset = 0;
+            while (offset < segment.size)
+            {
+                byte[] record = readRecord(segment, offset);
+                if (record == null)
+                {
+                    LOG.warn("Truncating {} at corrupted record at offset {}", path, offset);
+                    segment.truncate(offset);
+                    break;
+                }
+
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(record, HEADER_LENGTH, record.length - HEADER_LENGTH));
+                String id = in.readUTF();
+                if (record[8] == STORE)
+                {
+                    // Skip context path, vhost, last node, created, accessed, last accessed and cookie set.
+                    in.readUTF();
+                    in.readUTF();
+                    in.readUTF();
+                    in.skipBytes(4 * 8);
+                    long expiry = in.readLong();
+                    update(new Entry(id, segment, offset, record.length, expiry));
+                }
+                else
+                {
+                    segment.dead(record.length);
+                    Entry old = _index.remove(id);
+                    if (old != null)
+                    {
+                        old.segment.dead(old.length);
+                        _expiries.remove(old);
+                    }
+                }
+                offset += record.length;
+            }
+        }
+        if (LOG.isDebugEnabled())
+            LOG.debug("Replayed {} segments, {} sessions", _segments.size(), _index.size());
+    }
+
+    private static byte[] readRecord(Segment segment, long offset) throws IOException
+    {
+        if (segment.size - offset < HEADER_LENGTH)
+            return null;
+        ByteBuffer header = ByteBuffer.wrap(segment.read(offset, HEADER_LENGTH));
+        int length = header.getInt();
+        int checksum = header.getInt();
+        if (length < 0 || segment.size - offset - HEADER_LENGTH < length)
+            return null;
+        byte[] record = segment.read(offset, HEADER_LENGTH + length);
+        CRC32 crc = new CRC32();
+        crc.update(record, 8, length + 1);
+        if ((int)crc.getValue() != checksum)
+            return null;
+        return record;
+    }
+
+    private void writeSessionData(DataOutputStream out, String id, SessionData data) throws IOException
+    {
+        out.writeUTF(id);
+        out.writeUTF(_context.getCanonicalContextPath());
+        out.writeUTF(_context.getVhost());
+        out.writeUTF(data.getLastNode());
+        out.writeLong(data.getCreated());
+        out.writeLong(data.getAccessed());
+        out.writeLong(data.getLastAccessed());
+        out.writeLong(data.getCookieSet());
+        out.writeLong(data.getExpiry());
+        out.writeLong(data.getMaxInactiveMs());
+        out.writeLong(data.getLastSaved());
+
+        ObjectOutputStream oos = new ObjectOutputStream(out);
+        SessionData.serializeAttributes(data, oos);
+        oos.flush();
+    }
+
+    private SessionData readSessionData(DataInputStream in, String expectedId) throws Exception
+    {
+        String id = in.readUTF();
+        if (!id.equals(expectedId))
+            throw new IllegalStateException("Expected session " + expectedId + ", found " + id);
+        String contextPath = in.readUTF();
+        String vhost = in.readUTF();
+        String lastNode = in.readUTF();
+        long created = in.readLong();
+        long accessed = in.readLong();
+        long lastAccessed = in.readLong();
+        long cookieSet = in.readLong();
+        long expiry = in.readLong();
+        long maxIdle = in.readLong();
+        long lastSaved = in.readLong();
+
+        SessionData data = newSessionData(id, created, accessed, lastAccessed, maxIdle);
+        data.setContextPath(contextPath);
+        data.setVhost(vhost);
+        data.setLastNode(lastNode);
+        data.setCookieSet(cookieSet);
+        data.setExpiry(expiry);
+        data.setMaxInactiveMs(maxIdle);
+        data.setLastSaved(lastSaved);
+
+        ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(in);
+        SessionData.deserializeAttributes(data, ois);
+        return data;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s[dir=%s,sessions=%d,segments=%d]", super.toString(), _storeDir, _index.size(), _segments.size());
+    }
+
+    private static class Entry
+    {
+        private final String id;
+        private final Segment segment;
+        private final long offset;
+        private final int length;
+        private final long expiry;
+
+        private Entry(String id, Segment segment, long offset, int length, long expiry)
+        {
+            this.id = id;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+            this.expiry = expiry;
+        }
+    }
+
+    private static class Segment
+    {
+        private final long sequence;
+        private final Path path;
+        private volatile FileChannel channel;
+        private volatile boolean closed;
+        private volatile long size;
+        private volatile long dead;
+
+        private Segment(long sequence, Path path, FileChannel channel) throws IOException
+        {
+            this.sequence = sequence;
+            this.path = path;
+            this.channel = channel;
+            this.size = channel.size();
+        }
+
+        private long append(byte[] record) throws IOException
+        {
+            long offset = size;
+            ByteBuffer buffer = ByteBuffer.wrap(record);
+            while (buffer.hasRemaining())
+            {
+                io(c -> c.write(buffer, offset + buffer.position()));
+            }
+            size = offset + record.length;
+            return offset;
+        }
+
+        private byte[] read(long offset, int length) throws IOException
+        {
+            byte[] bytes = new byte[length];
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            while (buffer.hasRemaining())
+            {
+                if (io(c -> c.read(buffer, offset + buffer.position())) < 0)
+                    throw new EOFException(path + "@" + offset);
+            }
+            return bytes;
+        }
+
+        private void truncate(long offset) throws IOException
+        {
+            io(c -> c.truncate(offset));
+            size = offset;
+        }
+
+        private void force() throws IOException
+        {
+            io(c ->
+            {
+                c.force(true);
+                return null;
+            });
+        }
+
+        /**
+         * <p>Performs an operation on the channel, that is shared by all the sessions.</p>
+         * <p>A channel is closed when a thread that uses it is interrupted, so the operation
+         * is performed with the interrupt status cleared, and the channel is reopened and the
+         * operation retried if the channel has been closed by an interrupt.</p>
+         *
+         * @throws ClosedChannelException if the segment has been closed
+         */
+        private <T> T io(Operation<T> operation) throws IOException
+        {
+            boolean interrupted = Thread.interrupted();
+            try
+            {
+                while (true)
+                {
+                    FileChannel channel = this.channel;
+                    try
+                    {
+                        return operation.apply(channel);
+                    }
+                    catch (ClosedChannelException x)
+                    {
+                        if (Thread.interrupted())
+                            interrupted = true;
+                        reopen(channel);
+                    }
+                }
+            }
+            finally
+            {
+                if (interrupted)
+                    Thread.currentThread().interrupt();
+            }
+        }
+
+        private synchronized void reopen(FileChannel failed) throws IOException
+        {
+            if (closed)
+                throw new ClosedChannelException();
+            if (channel == failed)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Reopening {}", this);
+                channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            }
+        }
+
+        private void dead(int length)
+        {
+            dead += length;
+        }
+
+        private boolean isCompactable(double threshold)
+        {
+            return size > 0 && (size - dead) < size * threshold;
+        }
+
+        private synchronized void close()
+        {
+            closed = true;
+            try
+            {
+                channel.close();
+            }
+            catch (IOException e)
+            {
+                LOG.ignore(e);
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            return String.format("%s[size=%d,dead=%d]", path.getFileName(), size, dead);
+        }
+    }
+
+    private interface Operation<T>
+    {
+        T apply(FileChannel channel) throws IOException;
+    }
+}
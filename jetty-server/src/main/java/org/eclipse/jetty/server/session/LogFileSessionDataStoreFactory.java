@@ -0,0 +1,112 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.File;
+
+/**
+ * LogFileSessionDataStoreFactory
+ */
+public class LogFileSessionDataStoreFactory extends AbstractSessionDataStoreFactory
+{
+    File _storeDir;
+    long _maxSegmentSize = 64 * 1024 * 1024;
+    double _compactionThreshold = 0.5;
+    long _compactionIntervalSec = 60;
+
+    /**
+     * @return the storeDir
+     */
+    public File getStoreDir()
+    {
+        return _storeDir;
+    }
+
+    /**
+     * @param storeDir the storeDir to set
+     */
+    public void setStoreDir(File storeDir)
+    {
+        _storeDir = storeDir;
+    }
+
+    /**
+     * @return the max size in bytes of a segment file
+     */
+    public long getMaxSegmentSize()
+    {
+        return _maxSegmentSize;
+    }
+
+    /**
+     * @param maxSegmentSize the max size in bytes of a segment file
+     */
+    public void setMaxSegmentSize(long maxSegmentSize)
+    {
+        _maxSegmentSize = maxSegmentSize;
+    }
+
+    /**
+     * @return the ratio of live bytes of a segment below which the segment is compacted
+     */
+    public double getCompactionThreshold()
+    {
+        return _compactionThreshold;
+    }
+
+    /**
+     * @param compactionThreshold the ratio of live bytes of a segment below which the segment is compacted
+     */
+    public void setCompactionThreshold(double compactionThreshold)
+    {
+        _compactionThreshold = compactionThreshold;
+    }
+
+    /**
+     * @return the interval in seconds between compactions
+     */
+    public long getCompactionIntervalSec()
+    {
+        return _compactionIntervalSec;
+    }
+
+    /**
+     * @param compactionIntervalSec the interval in seconds between compactions
+     */
+    public void setCompactionIntervalSec(long compactionIntervalSec)
+    {
+        _compactionIntervalSec = compactionIntervalSec;
+    }
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
+     */
+    @Override
+    public SessionDataStore getSessionDataStore(SessionHandler handler)
+    {
+        LogFileSessionDataStore store = new LogFileSessionDataStore();
+        store.setStoreDir(getStoreDir());
+        store.setMaxSegmentSize(getMaxSegmentSize());
+        store.setCompactionThreshold(getCompactionThreshold());
+        store.setCompactionIntervalSec(getCompactionIntervalSec());
+        store.setGracePeriodSec(getGracePeriodSec());
+        store.setSavePeriodSec(getSavePeriodSec());
+        return store;
+    }
+}
@@ -106,37 +106,63 @@ public class Session implements SessionHandler.SessionIf
      * been idle (ie not accessed by a request) for a configurable amount of
      * time, or the Session expires.
      *
+     * The timer is scheduled on the {@link SessionTimingWheel} of the
+     * SessionHandler if it has one, otherwise on its scheduler.
+     *
      * @see SessionCache
      */
     public class SessionInactivityTimer
     {
         protected final CyclicTimeout _timer;
+        protected final SessionTimingWheel.Timeout _wheelTimeout;
 
         public SessionInactivityTimer()
         {
-            _timer = new CyclicTimeout((getSessionHandler().getScheduler()))
+            SessionTimingWheel wheel = getSessionHandler().getSessionTimingWheel();
+            if (wheel == null)
             {
-                @Override
-                public void onTimeoutExpired()
+                _wheelTimeout = null;
+                _timer = new CyclicTimeout((getSessionHandler().getScheduler()))
                 {
-                    if (LOG.isDebugEnabled())
-                        LOG.debug("Timer expired for session {}", getId());
-                    long now = System.currentTimeMillis();
-                    //handle what to do with the session after the timer expired
-                    getSessionHandler().sessionInactivityTimerExpired(Session.this, now);
-                    try (Lock lock = Session.this.lock())
+                    @Override
+                    public void onTimeoutExpired()
                     {
-                        //grab the lock and check what happened to the session: if it didn't get evicted and
-                        //it hasn't expired, we need to reset the timer
-                        if (Session.this.isResident() && Session.this.getRequests() <= 0 && Session.this.isValid() &&
-                            !Session.this.isExpiredAt(now))
-                        {
-                            //session wasn't expired or evicted, we need to reset the timer
-                            SessionInactivityTimer.this.schedule(Session.this.calculateInactivityTimeout(now));
-                        }
+                        expired();
+                    }
+                };
+            }
+            else
+            {
+                _timer = null;
+                _wheelTimeout = new SessionTimingWheel.Timeout(wheel)
+                {
+                    @Override
+                    public void onTimeoutExpired()
+                    {
+                        expired();
                     }
+                };
+            }
+        }
+
+        private void expired()
+        {
+            if (LOG.isDebugEnabled())
+                LOG.debug("Timer expired for session {}", getId());
+            long now = System.currentTimeMillis();
+            //handle what to do with the session after the timer expired
+            getSessionHandler().sessionInactivityTimerExpired(Session.this, now);
+            try (Lock lock = Session.this.lock())
+            {
+                //grab the lock and check what happened to the session: if it didn't get evicted and
+                //it hasn't expired, we need to reset the timer
+                if (Session.this.isResident() && Session.this.getRequests() <= 0 && Session.this.isValid() &&
+                    !Session.this.isExpiredAt(now))
+                {
+                    //session wasn't expired or evicted, we need to reset the timer
+                    SessionInactivityTimer.this.schedule(Session.this.calculateInactivityTimeout(now));
                 }
-            };
+            }
         }
 
         /**
@@ -160,7 +186,10 @@ public class Session implements SessionHandler.SessionIf
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug("(Re)starting timer for session {} at {}ms", getId(), time);
-                _timer.schedule(time, TimeUnit.MILLISECONDS);
+                if (_wheelTimeout != null)
+                    _wheelTimeout.schedule(time, TimeUnit.MILLISECONDS);
+                else
+                    _timer.schedule(time, TimeUnit.MILLISECONDS);
             }
             else
             {
@@ -171,14 +200,20 @@ public class Session implements SessionHandler.SessionIf
 
         public void cancel()
         {
-            _timer.cancel();
+            if (_wheelTimeout != null)
+                _wheelTimeout.cancel();
+            else
+                _timer.cancel();
             if (LOG.isDebugEnabled())
                 LOG.debug("Cancelled timer for session {}", getId());
         }
 
         public void destroy()
         {
-            _timer.destroy();
+            if (_wheelTimeout != null)
+                _wheelTimeout.destroy();
+            else
+                _timer.destroy();
             if (LOG.isDebugEnabled())
                 LOG.debug("Destroyed timer for session {}", getId());
         }
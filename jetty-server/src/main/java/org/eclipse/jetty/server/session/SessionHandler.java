@@ -197,6 +197,8 @@ public class SessionHandler extends ScopedHandler
 
     protected Scheduler _scheduler;
     protected boolean _ownScheduler = false;
+    protected SessionTimingWheel _sessionTimingWheel;
+    protected boolean _serverTimingWheel = false;
 
     /**
      * Constructor.
@@ -466,6 +468,38 @@ public class SessionHandler extends ScopedHandler
                 _ownScheduler = true;
                 _scheduler.start();
             }
+
+            if (_sessionTimingWheel == null)
+            {
+                _sessionTimingWheel = server.getBean(SessionTimingWheel.class);
+                _serverTimingWheel = _sessionTimingWheel != null;
+            }
+
+            if (_sessionTimingWheel != null)
+            {
+                //the wheel is shared by the contexts, so it is managed by the
+                //Server rather than by this handler. It may be started after
+                //this handler, so start it now if it is not running, being
+                //careful NOT to use the webapp context's classloader.
+                if (!server.contains(_sessionTimingWheel))
+                    server.addBean(_sessionTimingWheel, true);
+                else if (server.isAuto(_sessionTimingWheel))
+                    server.manage(_sessionTimingWheel);
+
+                if (server.isManaged(_sessionTimingWheel) && !_sessionTimingWheel.isRunning())
+                {
+                    ClassLoader serverLoader = server.getClass().getClassLoader();
+                    try
+                    {
+                        Thread.currentThread().setContextClassLoader(serverLoader);
+                        _sessionTimingWheel.start();
+                    }
+                    finally
+                    {
+                        Thread.currentThread().setContextClassLoader(_loader);
+                    }
+                }
+            }
         }
 
         // Look for a session cookie name
@@ -517,6 +551,9 @@ public class SessionHandler extends ScopedHandler
         if (_ownScheduler && _scheduler != null)
             _scheduler.stop();
         _scheduler = null;
+        if (_serverTimingWheel)
+            _sessionTimingWheel = null;
+        _serverTimingWheel = false;
         super.doStop();
         _loader = null;
     }
@@ -1368,6 +1405,26 @@ public class SessionHandler extends ScopedHandler
         return _scheduler;
     }
 
+    /**
+     * @return the timing wheel used for the session inactivity timers, or null if each session has its own timer
+     */
+    public SessionTimingWheel getSessionTimingWheel()
+    {
+        return _sessionTimingWheel;
+    }
+
+    /**
+     * @param wheel the timing wheel to use for the session inactivity timers;
+     * if not set, a {@link SessionTimingWheel} bean of the Server is used if present.
+     * The wheel is managed by the Server, as it may be shared by other contexts.
+     */
+    public void setSessionTimingWheel(SessionTimingWheel wheel)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Started");
+        _sessionTimingWheel = wheel;
+    }
+
     /**
      * SessionIf
      *
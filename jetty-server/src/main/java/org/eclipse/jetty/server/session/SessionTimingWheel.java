@@ -0,0 +1,604 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * SessionTimingWheel
+ *
+ * A hierarchical timing wheel shared by the {@link SessionHandler}s of a
+ * server to track the max inactive and idle eviction deadlines of the
+ * sessions, instead of a scheduler timer per session.
+ * <p>
+ * The wheel has a number of levels, each of {@link #getWheelSize()} buckets.
+ * The buckets of the first level are {@link #getTickMs()} wide, the buckets of
+ * each following level are as wide as the whole previous level. Scheduling and
+ * cancelling a {@link Timeout} is O(1), as it only links or unlinks it from a
+ * bucket. Every tick the wheel cascades the timeouts of the higher levels that
+ * come into range down to the lower levels, and expires all the timeouts of the
+ * current bucket of the first level as a single batch.
+ * <p>
+ * Timeouts never expire before their deadline, but may expire up to one tick
+ * after it; the delay between the deadline and the actual expiry is reported
+ * as the scavenge lag.
+ * <p>
+ * To use it, add an instance as a bean of the {@link org.eclipse.jetty.server.Server}:
+ * the {@link SessionHandler}s find it when they are started.
+ */
+@ManagedObject
+public class SessionTimingWheel extends ContainerLifeCycle
+{
+    private static final Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+
+    private final Object _lock = new Object();
+    private final LongAdder _expired = new LongAdder();
+    private final LongAdder _batches = new LongAdder();
+    private final LongAdder _totalLag = new LongAdder();
+    private long _tickMs = 1000;
+    private int _wheelSize = 64;
+    private int _levels = 4;
+    private Scheduler _scheduler;
+    private Executor _executor;
+    private int _bits;
+    private Bucket[][] _buckets;
+    private int[] _levelTimeouts;
+    private int _timeouts;
+    private long _startTime;
+    private long _currentTick;
+    private volatile long _maxLag;
+    private Scheduler.Task _task;
+
+    /**
+     * @return the width in ms of the buckets of the first level
+     */
+    @ManagedAttribute(value = "width in ms of the buckets of the first level", readonly = true)
+    public long getTickMs()
+    {
+        return _tickMs;
+    }
+
+    /**
+     * @param tickMs the width in ms of the buckets of the first level,
+     * that is the max delay between a deadline and its expiry
+     */
+    public void setTickMs(long tickMs)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Started");
+        if (tickMs <= 0)
+            throw new IllegalArgumentException("Invalid tick " + tickMs);
+        _tickMs = tickMs;
+    }
+
+    /**
+     * @return the number of buckets of each level
+     */
+    @ManagedAttribute(value = "number of buckets of each level", readonly = true)
+    public int getWheelSize()
+    {
+        return _wheelSize;
+    }
+
+    /**
+     * @param wheelSize the number of buckets of each level, rounded up to a power of 2
+     */
+    public void setWheelSize(int wheelSize)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Started");
+        if (wheelSize < 2 || wheelSize > (1 << 16))
+            throw new IllegalArgumentException("Invalid wheel size " + wheelSize);
+        _wheelSize = Integer.highestOneBit(wheelSize - 1) << 1;
+    }
+
+    /**
+     * @return the number of levels
+     */
+    @ManagedAttribute(value = "number of levels", readonly = true)
+    public int getLevels()
+    {
+        return _levels;
+    }
+
+    /**
+     * @param levels the number of levels; deadlines beyond the range of the
+     * last level are cascaded again when the last level comes around
+     */
+    public void setLevels(int levels)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Started");
+        if (levels < 1)
+            throw new IllegalArgumentException("Invalid levels " + levels);
+        _levels = levels;
+    }
+
+    public Scheduler getScheduler()
+    {
+        return _scheduler;
+    }
+
+    /**
+     * @param scheduler the scheduler that ticks the wheel
+     */
+    public void setScheduler(Scheduler scheduler)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Started");
+        updateBean(_scheduler, scheduler);
+        _scheduler = scheduler;
+    }
+
+    public Executor getExecutor()
+    {
+        return _executor;
+    }
+
+    /**
+     * @param executor the executor that runs the batches of expired timeouts,
+     * or null to run them in the scheduler thread
+     */
+    public void setExecutor(Executor executor)
+    {
+        if (isStarted())
+            throw new IllegalStateException("Started");
+        _executor = executor;
+    }
+
+    @ManagedAttribute(value = "number of scheduled timeouts", readonly = true)
+    public int getTimeouts()
+    {
+        synchronized (_lock)
+        {
+            return _timeouts;
+        }
+    }
+
+    @ManagedAttribute(value = "number of scheduled timeouts in each level", readonly = true)
+    public int[] getLevelOccupancy()
+    {
+        synchronized (_lock)
+        {
+            return _levelTimeouts == null ? new int[0] : _levelTimeouts.clone();
+        }
+    }
+
+    @ManagedAttribute(value = "number of expired timeouts", readonly = true)
+    public long getExpiredTimeouts()
+    {
+        return _expired.sum();
+    }
+
+    @ManagedAttribute(value = "number of batches of expired timeouts", readonly = true)
+    public long getExpiredBatches()
+    {
+        return _batches.sum();
+    }
+
+    @ManagedAttribute(value = "max delay in ms between the deadline and the expiry of a timeout", readonly = true)
+    public long getMaxScavengeLagMs()
+    {
+        return _maxLag;
+    }
+
+    @ManagedAttribute(value = "mean delay in ms between the deadline and the expiry of a timeout", readonly = true)
+    public double getMeanScavengeLagMs()
+    {
+        long expired = _expired.sum();
+        return expired == 0 ? 0 : (double)_totalLag.sum() / expired;
+    }
+
+    @ManagedOperation(value = "reset statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _expired.reset();
+        _batches.reset();
+        _totalLag.reset();
+        _maxLag = 0;
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_scheduler == null)
+        {
+            _scheduler = new ScheduledExecutorScheduler(String.format("Session-TimingWheel-%x", hashCode()), true);
+            addBean(_scheduler, true);
+        }
+
+        synchronized (_lock)
+        {
+            _bits = Integer.numberOfTrailingZeros(_wheelSize);
+            if ((long)_bits * _levels > 62)
+                throw new IllegalStateException("Wheel range overflow: size=" + _wheelSize + " levels=" + _levels);
+            _buckets = new Bucket[_levels][_wheelSize];
+            for (Bucket[] level : _buckets)
+            {
+                for (int i = 0; i < level.length; ++i)
+                {
+                    level[i] = new Bucket();
+                }
+            }
+            _levelTimeouts = new int[_levels];
+            _timeouts = 0;
+            _startTime = System.currentTimeMillis();
+            _currentTick = 0;
+        }
+
+        super.doStart();
+        _task = _scheduler.schedule(this::tick, _tickMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        Scheduler.Task task = _task;
+        if (task != null)
+            task.cancel();
+        _task = null;
+        synchronized (_lock)
+        {
+            if (_buckets != null)
+            {
+                for (Bucket[] level : _buckets)
+                {
+                    for (Bucket bucket : level)
+                    {
+                        bucket.clear();
+                    }
+                }
+            }
+            _timeouts = 0;
+        }
+        super.doStop();
+    }
+
+    private long toTick(long time)
+    {
+        // Round up, so that timeouts never expire before their deadline.
+        long elapsed = time - _startTime;
+        return elapsed <= 0 ? 0 : (elapsed + _tickMs - 1) / _tickMs;
+    }
+
+    private void insert(Timeout timeout)
+    {
+        long tick = Math.max(timeout._deadlineTick, _currentTick + 1);
+        long delta = tick - _currentTick;
+        int level = 0;
+        while (level < _levels - 1 && delta >= (1L << (_bits * (level + 1))))
+        {
+            ++level;
+        }
+        // Clamp the deadlines beyond the range of the wheel: they are
+        // cascaded again when their bucket of the last level comes around.
+        long range = 1L << (_bits * _levels);
+        if (delta >= range)
+            tick = _currentTick + range - 1;
+        int index = (int)((tick >>> (_bits * level)) & (_wheelSize - 1));
+        _buckets[level][index].add(timeout);
+        timeout._level = level;
+        ++_levelTimeouts[level];
+    }
+
+    private void remove(Timeout timeout)
+    {
+        timeout._bucket.remove(timeout);
+        --_levelTimeouts[timeout._level];
+    }
+
+    private void tick()
+    {
+        List<Expired> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        long next;
+        synchronized (_lock)
+        {
+            if (_buckets == null)
+                return;
+
+            long targetTick = (now - _startTime) / _tickMs;
+            if (_timeouts == 0)
+                _currentTick = Math.max(_currentTick, targetTick);
+
+            while (_currentTick < targetTick)
+            {
+                ++_currentTick;
+
+                // Cascade the higher levels first, so that their timeouts
+                // can land in the lower level buckets cascaded next.
+                for (int level = _levels - 1; level > 0; --level)
+                {
+                    if ((_currentTick & ((1L << (_bits * level)) - 1)) != 0)
+                        continue;
+                    int index = (int)((_currentTick >>> (_bits * level)) & (_wheelSize - 1));
+                    Bucket bucket = _buckets[level][index];
+                    Timeout timeout;
+                    while ((timeout = bucket.poll()) != null)
+                    {
+                        --_levelTimeouts[level];
+                        insert(timeout);
+                    }
+                }
+
+                Bucket bucket = _buckets[0][(int)(_currentTick & (_wheelSize - 1))];
+                Timeout timeout;
+                while ((timeout = bucket.poll()) != null)
+                {
+                    --_levelTimeouts[0];
+                    --_timeouts;
+                    expired.add(new Expired(timeout, timeout._version));
+                }
+
+                if (_timeouts == 0)
+                    _currentTick = targetTick;
+            }
+
+            next = _startTime + (_currentTick + 1) * _tickMs - now;
+        }
+
+        if (!expired.isEmpty())
+        {
+            long maxLag = 0;
+            for (Expired e : expired)
+            {
+                long lag = Math.max(0, now - e._timeout._deadline);
+                _totalLag.add(lag);
+                maxLag = Math.max(maxLag, lag);
+            }
+            if (maxLag > _maxLag)
+                _maxLag = maxLag;
+            _expired.add(expired.size());
+            _batches.increment();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Expiring batch of {} timeouts, max lag {}ms", expired.size(), maxLag);
+
+            Runnable batch = () -> expire(expired);
+            Executor executor = _executor;
+            if (executor == null)
+            {
+                batch.run();
+            }
+            else
+            {
+                try
+                {
+                    executor.execute(batch);
+                }
+                catch (RejectedExecutionException x)
+                {
+                    LOG.debug(x);
+                    batch.run();
+                }
+            }
+        }
+
+        if (isRunning())
+            _task = _scheduler.schedule(this::tick, Math.max(0, next), TimeUnit.MILLISECONDS);
+    }
+
+    private void expire(List<Expired> expired)
+    {
+        for (Expired e : expired)
+        {
+            // Skip the timeouts that were rescheduled or cancelled after they were polled.
+            if (e._timeout._version != e._version)
+                continue;
+            try
+            {
+                e._timeout.onTimeoutExpired();
+            }
+            catch (Throwable x)
+            {
+                LOG.warn(x);
+            }
+        }
+    }
+
+    @Override
+    public void dump(Appendable out, String indent) throws IOException
+    {
+        dumpObjects(out, indent, String.format("timeouts=%d, levels=%s", getTimeouts(), Arrays.toString(getLevelOccupancy())));
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[tick=%dms,size=%d,levels=%d,timeouts=%d]",
+            getClass().getSimpleName(), hashCode(), _tickMs, _wheelSize, _levels, getTimeouts());
+    }
+
+    private void schedule(Timeout timeout, long delayMs)
+    {
+        long deadline = System.currentTimeMillis() + delayMs;
+        synchronized (_lock)
+        {
+            ++timeout._version;
+            if (_buckets == null)
+                return;
+            if (timeout._bucket != null)
+                remove(timeout);
+            else
+                ++_timeouts;
+            timeout._deadline = deadline;
+            timeout._deadlineTick = toTick(deadline);
+            insert(timeout);
+        }
+    }
+
+    private boolean cancel(Timeout timeout)
+    {
+        synchronized (_lock)
+        {
+            ++timeout._version;
+            if (timeout._bucket == null)
+                return false;
+            remove(timeout);
+            --_timeouts;
+            return true;
+        }
+    }
+
+    private boolean isScheduled(Timeout timeout)
+    {
+        synchronized (_lock)
+        {
+            return timeout._bucket != null;
+        }
+    }
+
+    /**
+     * <p>A timeout scheduled on a {@link SessionTimingWheel}, with an API similar
+     * to {@link org.eclipse.jetty.io.CyclicTimeout}.</p>
+     */
+    public abstract static class Timeout
+    {
+        private final SessionTimingWheel _wheel;
+        private Bucket _bucket;
+        private Timeout _prev;
+        private Timeout _next;
+        private int _level;
+        private long _deadline;
+        private long _deadlineTick;
+        private long _version;
+
+        /**
+         * @param wheel the wheel to schedule this timeout on
+         */
+        protected Timeout(SessionTimingWheel wheel)
+        {
+            _wheel = wheel;
+        }
+
+        /**
+         * <p>Schedules this timeout, replacing the current deadline if already scheduled.</p>
+         *
+         * @param delay the delay from now
+         * @param units the unit of the delay
+         */
+        public void schedule(long delay, TimeUnit units)
+        {
+            _wheel.schedule(this, units.toMillis(delay));
+        }
+
+        /**
+         * <p>Cancels this timeout, if scheduled.</p>
+         *
+         * @return whether this timeout was scheduled
+         */
+        public boolean cancel()
+        {
+            return _wheel.cancel(this);
+        }
+
+        public void destroy()
+        {
+            cancel();
+        }
+
+        /**
+         * @return whether this timeout is scheduled
+         */
+        public boolean isScheduled()
+        {
+            return _wheel.isScheduled(this);
+        }
+
+        /**
+         * <p>Invoked when the deadline of this timeout is reached.</p>
+         */
+        public abstract void onTimeoutExpired();
+    }
+
+    /**
+     * <p>A doubly linked list of timeouts, so that a timeout can be unlinked in O(1).</p>
+     */
+    private static class Bucket
+    {
+        private Timeout _first;
+
+        private void add(Timeout timeout)
+        {
+            timeout._bucket = this;
+            timeout._prev = null;
+            timeout._next = _first;
+            if (_first != null)
+                _first._prev = timeout;
+            _first = timeout;
+        }
+
+        private void remove(Timeout timeout)
+        {
+            if (timeout._prev == null)
+                _first = timeout._next;
+            else
+                timeout._prev._next = timeout._next;
+            if (timeout._next != null)
+                timeout._next._prev = timeout._prev;
+            timeout._bucket = null;
+            timeout._prev = null;
+            timeout._next = null;
+        }
+
+        private Timeout poll()
+        {
+            Timeout timeout = _first;
+            if (timeout != null)
+                remove(timeout);
+            return timeout;
+        }
+
+        private void clear()
+        {
+            Timeout timeout = poll();
+            while (timeout != null)
+            {
+                timeout = poll();
+            }
+        }
+    }
+
+    private static class Expired
+    {
+        private final Timeout _timeout;
+        private final long _version;
+
+        private Expired(Timeout timeout, long version)
+        {
+            _timeout = timeout;
+            _version = version;
+        }
+    }
+}
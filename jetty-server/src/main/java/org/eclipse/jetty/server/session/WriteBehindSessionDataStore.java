@@ -0,0 +1,450 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.ClassLoadingObjectInputStream;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.component.ContainerLifeCycle;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.util.thread.ScheduledExecutorScheduler;
+import org.eclipse.jetty.util.thread.Scheduler;
+
+/**
+ * WriteBehindSessionDataStore
+ *
+ * A SessionDataStore that delays the writes of session data to a delegate
+ * SessionDataStore, so that slow stores such as the JDBCSessionDataStore or
+ * the FileSessionDataStore do not add to the latency of requests.
+ *
+ * When a session is stored, a snapshot of its data is taken and queued, with its
+ * attributes serialized so that later changes to their values are not written; snapshots
+ * of the same session that are queued before they are written are coalesced, so
+ * that only the latest one is written. The queued snapshots are written in batches
+ * by a background thread at most every {@link #getFlushIntervalMs() flush interval},
+ * or earlier if more than {@link #getMaxPendingSessions() max pending} sessions are queued.
+ * All the queued snapshots are written when this store is stopped.
+ *
+ * Loading a session whose snapshot is queued writes the snapshot first, so that
+ * the delegate store always returns the most recent data. The writes, loads and
+ * deletes of a session are serialized by a lock striped by session id, so that
+ * requests only wait for the writes of the sessions they use.
+ */
+@ManagedObject
+public class WriteBehindSessionDataStore extends ContainerLifeCycle implements SessionDataStore
+{
+    private static final Logger LOG = Log.getLogger("org.eclipse.jetty.server.session");
+
+    protected final SessionDataStore _store;
+    private final Map<String, Pending> _pending = new ConcurrentHashMap<>();
+    private final Object _flushLock = new Object();
+    private final Object[] _sessionLocks = new Object[64];
+    private final AtomicBoolean _flushScheduled = new AtomicBoolean();
+    private final LongAdder _stores = new LongAdder();
+    private final LongAdder _coalesced = new LongAdder();
+    private final LongAdder _writes = new LongAdder();
+    private final LongAdder _failures = new LongAdder();
+    private long _flushIntervalMs = 1000;
+    private int _maxPendingSessions = 1024;
+    private Scheduler _scheduler;
+    private Scheduler.Task _task;
+    private SessionContext _context;
+
+    public WriteBehindSessionDataStore(SessionDataStore store)
+    {
+        _store = store;
+        addBean(_store, true);
+        for (int i = 0; i < _sessionLocks.length; ++i)
+        {
+            _sessionLocks[i] = new Object();
+        }
+    }
+
+    public SessionDataStore getSessionStore()
+    {
+        return _store;
+    }
+
+    /**
+     * @return the max time in milliseconds a stored session may wait before being written to the delegate store
+     */
+    @ManagedAttribute(value = "max time in ms before a stored session is written", readonly = true)
+    public long getFlushIntervalMs()
+    {
+        return _flushIntervalMs;
+    }
+
+    /**
+     * @param flushIntervalMs the max time in milliseconds a stored session may wait before being written to the delegate store
+     */
+    public void setFlushIntervalMs(long flushIntervalMs)
+    {
+        if (flushIntervalMs <= 0)
+            throw new IllegalArgumentException("Invalid flush interval " + flushIntervalMs);
+        _flushIntervalMs = flushIntervalMs;
+    }
+
+    /**
+     * @return the number of queued sessions that triggers a write before the flush interval expires
+     */
+    @ManagedAttribute(value = "number of queued sessions that triggers an early write", readonly = true)
+    public int getMaxPendingSessions()
+    {
+        return _maxPendingSessions;
+    }
+
+    /**
+     * @param maxPendingSessions the number of queued sessions that triggers a write before the flush interval expires
+     */
+    public void setMaxPendingSessions(int maxPendingSessions)
+    {
+        _maxPendingSessions = maxPendingSessions;
+    }
+
+    @ManagedAttribute(value = "number of sessions waiting to be written", readonly = true)
+    public int getPendingSessions()
+    {
+        return _pending.size();
+    }
+
+    @ManagedAttribute(value = "number of stores requested", readonly = true)
+    public long getStores()
+    {
+        return _stores.sum();
+    }
+
+    @ManagedAttribute(value = "number of stores coalesced with a queued store", readonly = true)
+    public long getCoalescedStores()
+    {
+        return _coalesced.sum();
+    }
+
+    @ManagedAttribute(value = "number of writes to the delegate store", readonly = true)
+    public long getWrites()
+    {
+        return _writes.sum();
+    }
+
+    @ManagedAttribute(value = "number of failed writes to the delegate store", readonly = true)
+    public long getFailedWrites()
+    {
+        return _failures.sum();
+    }
+
+    @ManagedOperation(value = "reset statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        _stores.reset();
+        _coalesced.reset();
+        _writes.reset();
+        _failures.reset();
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        if (_scheduler == null)
+        {
+            _scheduler = new ScheduledExecutorScheduler(String.format("WriteBehind-Scheduler-%x", hashCode()), true);
+            addBean(_scheduler, true);
+        }
+        super.doStart();
+        _task = _scheduler.schedule(this::scheduledFlush, _flushIntervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        Scheduler.Task task = _task;
+        if (task != null)
+            task.cancel();
+        _task = null;
+        // Write all the queued sessions before stopping the delegate store.
+        flush();
+        super.doStop();
+    }
+
+    @Override
+    public void initialize(SessionContext context) throws Exception
+    {
+        _context = context;
+        _store.initialize(context);
+    }
+
+    @Override
+    public SessionData newSessionData(String id, long created, long accessed, long lastAccessed, long maxInactiveMs)
+    {
+        return _store.newSessionData(id, created, accessed, lastAccessed, maxInactiveMs);
+    }
+
+    @Override
+    public SessionData load(String id) throws Exception
+    {
+        // Make sure the delegate store has the latest data.
+        synchronized (lockFor(id))
+        {
+            Pending pending = _pending.remove(id);
+            if (pending != null)
+                writeOrRequeue(id, pending);
+            return _store.load(id);
+        }
+    }
+
+    @Override
+    public void store(String id, SessionData data) throws Exception
+    {
+        if (!isStarted())
+            throw new IllegalStateException("Not started");
+
+        if (data == null)
+            return;
+
+        _stores.increment();
+
+        // Called with the session locked, so the snapshot is consistent.
+        // The attribute values may be changed by the application after
+        // the session is unlocked, so they are serialized now.
+        // The snapshot keeps the time of the previous save, so that the
+        // delegate store knows whether to insert or to update the session.
+        SessionData snapshot = _store.newSessionData(id, data.getCreated(), data.getAccessed(), data.getLastAccessed(), data.getMaxInactiveMs());
+        snapshot.copy(data);
+        snapshot.clearAllAttributes();
+        snapshot.setDirty(data.isDirty());
+        snapshot.setMetaDataDirty(data.isMetaDataDirty());
+        byte[] attributes;
+        try (ByteArrayOutputStream baos = new ByteArrayOutputStream();
+             ObjectOutputStream oos = new ObjectOutputStream(baos))
+        {
+            SessionData.serializeAttributes(data, oos);
+            oos.flush();
+            attributes = baos.toByteArray();
+        }
+        // The dirty state now belongs to the snapshot, which will be saved.
+        data.setLastSaved(System.currentTimeMillis());
+        data.clean();
+
+        Pending pending = new Pending(snapshot, attributes);
+        Pending previous = _pending.put(id, pending);
+        if (previous != null)
+        {
+            _coalesced.increment();
+            pending.merge(previous);
+        }
+
+        if (_pending.size() >= _maxPendingSessions && _flushScheduled.compareAndSet(false, true))
+            _scheduler.schedule(this::earlyFlush, 0, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public boolean delete(String id) throws Exception
+    {
+        synchronized (lockFor(id))
+        {
+            boolean pending = _pending.remove(id) != null;
+            return _store.delete(id) || pending;
+        }
+    }
+
+    @Override
+    public boolean exists(String id) throws Exception
+    {
+        Pending pending = _pending.get(id);
+        if (pending != null)
+            return !pending._snapshot.isExpiredAt(System.currentTimeMillis());
+        return _store.exists(id);
+    }
+
+    @Override
+    public Set<String> getExpired(Set<String> candidates)
+    {
+        // Queued sessions are not yet in the delegate store, so they
+        // may appear as expired to it even if they are not.
+        long now = System.currentTimeMillis();
+        Set<String> expired = new HashSet<>(_store.getExpired(candidates));
+        for (Map.Entry<String, Pending> entry : _pending.entrySet())
+        {
+            if (entry.getValue()._snapshot.isExpiredAt(now))
+                expired.add(entry.getKey());
+            else
+                expired.remove(entry.getKey());
+        }
+        return expired;
+    }
+
+    @Override
+    public boolean isPassivating()
+    {
+        return _store.isPassivating();
+    }
+
+    /**
+     * Writes all the queued sessions to the delegate store.
+     */
+    @ManagedOperation(value = "write all queued sessions", impact = "ACTION")
+    public void flush()
+    {
+        synchronized (_flushLock)
+        {
+            int count = 0;
+            for (String id : _pending.keySet())
+            {
+                synchronized (lockFor(id))
+                {
+                    Pending pending = _pending.remove(id);
+                    if (pending == null)
+                        continue;
+                    try
+                    {
+                        writeOrRequeue(id, pending);
+                        ++count;
+                    }
+                    catch (Exception e)
+                    {
+                        LOG.warn("Unable to write session " + id, e);
+                    }
+                }
+            }
+            if (LOG.isDebugEnabled())
+                LOG.debug("Wrote {} sessions, {} pending", count, _pending.size());
+        }
+    }
+
+    private Object lockFor(String id)
+    {
+        return _sessionLocks[(id.hashCode() & Integer.MAX_VALUE) % _sessionLocks.length];
+    }
+
+    /**
+     * <p>Writes the given snapshot, which has been removed from the queue,
+     * or queues it again if the write fails, so that its data is not lost.</p>
+     */
+    private void writeOrRequeue(String id, Pending pending) throws Exception
+    {
+        try
+        {
+            write(id, pending);
+        }
+        catch (Exception e)
+        {
+            // Retry at the next flush, unless a newer snapshot has been queued.
+            Pending newer = _pending.putIfAbsent(id, pending);
+            if (newer != null)
+                newer.merge(pending);
+            throw e;
+        }
+    }
+
+    private void write(String id, Pending pending) throws Exception
+    {
+        SessionData snapshot = pending._snapshot;
+        if (pending._attributes != null)
+        {
+            // Deserialize in the context, so that the webapp classes can be loaded.
+            AtomicReference<Exception> exception = new AtomicReference<>();
+            _context.run(() ->
+            {
+                try (ClassLoadingObjectInputStream ois = new ClassLoadingObjectInputStream(new ByteArrayInputStream(pending._attributes)))
+                {
+                    SessionData.deserializeAttributes(snapshot, ois);
+                }
+                catch (Exception e)
+                {
+                    exception.set(e);
+                }
+            });
+            if (exception.get() != null)
+                throw exception.get();
+            pending._attributes = null;
+        }
+        try
+        {
+            _store.store(id, snapshot);
+            _writes.increment();
+        }
+        catch (Exception e)
+        {
+            _failures.increment();
+            throw e;
+        }
+    }
+
+    private void scheduledFlush()
+    {
+        try
+        {
+            flush();
+        }
+        finally
+        {
+            if (isRunning())
+                _task = _scheduler.schedule(this::scheduledFlush, _flushIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void earlyFlush()
+    {
+        _flushScheduled.set(false);
+        flush();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[pending=%d,interval=%dms,store=%s]", getClass().getSimpleName(), hashCode(), _pending.size(), _flushIntervalMs, _store);
+    }
+
+    private static class Pending
+    {
+        private final SessionData _snapshot;
+        private byte[] _attributes;
+
+        private Pending(SessionData snapshot, byte[] attributes)
+        {
+            _snapshot = snapshot;
+            _attributes = attributes;
+        }
+
+        /**
+         * Keeps the dirty state and the save time of an older snapshot that has not been written.
+         */
+        private void merge(Pending older)
+        {
+            // The session has not been saved since the older snapshot was taken.
+            _snapshot.setLastSaved(older._snapshot.getLastSaved());
+            if (older._snapshot.isDirty())
+                _snapshot.setDirty(true);
+            if (older._snapshot.isMetaDataDirty())
+                _snapshot.setMetaDataDirty(true);
+        }
+    }
+}
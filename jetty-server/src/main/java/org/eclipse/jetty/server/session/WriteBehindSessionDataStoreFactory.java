@@ -0,0 +1,87 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+/**
+ * WriteBehindSessionDataStoreFactory
+ */
+public class WriteBehindSessionDataStoreFactory extends AbstractSessionDataStoreFactory
+{
+    /**
+     * The SessionDataStore that will store session data.
+     */
+    protected SessionDataStoreFactory _sessionStoreFactory;
+
+    protected long _flushIntervalMs = 1000;
+
+    protected int _maxPendingSessions = 1024;
+
+    /**
+     * @param factory The factory for the actual SessionDataStore that the
+     * WriteBehindSessionDataStore will delegate to
+     */
+    public void setSessionStoreFactory(SessionDataStoreFactory factory)
+    {
+        _sessionStoreFactory = factory;
+    }
+
+    /**
+     * @return the max time in milliseconds a stored session may wait before being written
+     */
+    public long getFlushIntervalMs()
+    {
+        return _flushIntervalMs;
+    }
+
+    /**
+     * @param flushIntervalMs the max time in milliseconds a stored session may wait before being written
+     */
+    public void setFlushIntervalMs(long flushIntervalMs)
+    {
+        _flushIntervalMs = flushIntervalMs;
+    }
+
+    /**
+     * @return the number of queued sessions that triggers an early write
+     */
+    public int getMaxPendingSessions()
+    {
+        return _maxPendingSessions;
+    }
+
+    /**
+     * @param maxPendingSessions the number of queued sessions that triggers an early write
+     */
+    public void setMaxPendingSessions(int maxPendingSessions)
+    {
+        _maxPendingSessions = maxPendingSessions;
+    }
+
+    /**
+     * @see org.eclipse.jetty.server.session.SessionDataStoreFactory#getSessionDataStore(org.eclipse.jetty.server.session.SessionHandler)
+     */
+    @Override
+    public SessionDataStore getSessionDataStore(SessionHandler handler) throws Exception
+    {
+        WriteBehindSessionDataStore store = new WriteBehindSessionDataStore(_sessionStoreFactory.getSessionDataStore(handler));
+        store.setFlushIntervalMs(getFlushIntervalMs());
+        store.setMaxPendingSessions(getMaxPendingSessions());
+        return store;
+    }
+}
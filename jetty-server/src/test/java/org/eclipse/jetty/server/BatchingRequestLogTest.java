@@ -0,0 +1,218 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.util.BlockingArrayQueue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class BatchingRequestLogTest
+{
+    private Server _server;
+    private LocalConnector _connector;
+    private Path _file;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        Path dir = MavenTestingUtils.getTargetTestingPath(BatchingRequestLogTest.class.getSimpleName());
+        Files.createDirectories(dir);
+        _file = dir.resolve("request.log");
+        Files.deleteIfExists(_file);
+
+        _server = new Server();
+        _connector = new LocalConnector(_server);
+        _server.addConnector(_connector);
+        _server.setHandler(new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                String status = request.getParameter("status");
+                if (status != null)
+                    response.setStatus(Integer.parseInt(status));
+                response.getOutputStream().write(new byte[Integer.parseInt(request.getParameter("size"))]);
+            }
+        });
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        _server.stop();
+    }
+
+    @Test
+    public void testSameLinesAsCustomRequestLog() throws Exception
+    {
+        BlockingQueue<String> expected = new BlockingArrayQueue<>();
+        CustomRequestLog customLog = new CustomRequestLog(expected::add, CustomRequestLog.EXTENDED_NCSA_FORMAT);
+        BatchingRequestLog batchingLog = new BatchingRequestLog(new RequestLogWriter(_file.toString()), CustomRequestLog.EXTENDED_NCSA_FORMAT);
+        // A small batch buffer, to exercise the writes of partial and oversized batches.
+        batchingLog.setBatchSize(256);
+        _server.setRequestLog(new RequestLog.Collection(customLog, batchingLog));
+        _server.addBean(customLog);
+        _server.addBean(batchingLog);
+        _server.start();
+
+        int requests = 20;
+        for (int i = 0; i < requests; ++i)
+        {
+            String longQuery = i % 5 == 0 ? "&q=" + new String(new char[300]).replace('\0', 'x') : "";
+            String response = _connector.getResponse("GET /path/" + i + "?size=" + i + "&status=" + (200 + i) + longQuery + " HTTP/1.1\r\n" +
+                "Host: localhost\r\n" +
+                "Referer: http://localhost/r" + i + "\r\n" +
+                (i % 2 == 0 ? "User-Agent: test\r\n" : "") +
+                "Connection: close\r\n" +
+                "\r\n");
+            assertThat(response, containsString(" " + (200 + i) + " "));
+        }
+
+        List<String> expectedLines = new ArrayList<>();
+        for (int i = 0; i < requests; ++i)
+        {
+            String line = expected.poll(5, TimeUnit.SECONDS);
+            assertNotNull(line);
+            expectedLines.add(line);
+        }
+        // The request is logged after the response is sent.
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (batchingLog.getLoggedRecords() < requests && System.nanoTime() < end)
+        {
+            Thread.sleep(10);
+        }
+        // Stopping writes the pending records.
+        _server.stop();
+
+        assertEquals(requests, batchingLog.getLoggedRecords());
+        assertEquals(0, batchingLog.getDroppedRecords());
+        assertTrue(batchingLog.getOversizedRecords() > 0);
+        assertEquals(expectedLines, Files.readAllLines(_file, StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testRecordsDroppedWhenFull() throws Exception
+    {
+        CountDownLatch writing = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        RequestLogWriter writer = new RequestLogWriter(_file.toString())
+        {
+            @Override
+            public void write(ByteBuffer lines) throws IOException
+            {
+                writing.countDown();
+                try
+                {
+                    release.await(5, TimeUnit.SECONDS);
+                }
+                catch (InterruptedException x)
+                {
+                    throw new IOException(x);
+                }
+                super.write(lines);
+            }
+        };
+        BatchingRequestLog log = new BatchingRequestLog(writer, CustomRequestLog.NCSA_FORMAT);
+        log.setCapacity(2);
+        _server.setRequestLog(log);
+        _server.start();
+
+        // The first record is taken by the background thread, that blocks writing it.
+        _connector.getResponse("GET /?size=1 HTTP/1.0\r\n\r\n");
+        assertTrue(writing.await(5, TimeUnit.SECONDS));
+
+        // Fill the ring buffer, then overflow it.
+        for (int i = 0; i < 3; ++i)
+        {
+            _connector.getResponse("GET /?size=1 HTTP/1.0\r\n\r\n");
+        }
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (log.getLoggedRecords() + log.getDroppedRecords() < 4 && System.nanoTime() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(3, log.getLoggedRecords());
+        assertEquals(1, log.getDroppedRecords());
+
+        release.countDown();
+        _server.stop();
+        assertEquals(3, Files.readAllLines(_file, StandardCharsets.UTF_8).size());
+    }
+
+    @Test
+    public void testRunsOnServerExecutor() throws Exception
+    {
+        BatchingRequestLog log = new BatchingRequestLog(new RequestLogWriter(_file.toString()), CustomRequestLog.NCSA_FORMAT);
+        log.setExecutor(_server.getThreadPool());
+        _server.setRequestLog(log);
+        _server.start();
+
+        int requests = 3;
+        for (int i = 0; i < requests; ++i)
+        {
+            _connector.getResponse("GET /?size=1 HTTP/1.0\r\n\r\n");
+        }
+        // The request is logged after the response is sent.
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (log.getLoggedRecords() < requests && System.nanoTime() < end)
+        {
+            Thread.sleep(10);
+        }
+
+        // Stopping writes the pending records and ends the background task.
+        _server.stop();
+        List<String> lines = Files.readAllLines(_file, StandardCharsets.UTF_8);
+        assertEquals(requests, lines.size());
+        for (String line : lines)
+        {
+            assertThat(line, startsWith("0.0.0.0 - "));
+        }
+    }
+
+    @Test
+    public void testUnsupportedFormat()
+    {
+        assertThrows(IllegalArgumentException.class, () -> new BatchingRequestLog(new RequestLogWriter(), "%r"));
+    }
+}
@@ -0,0 +1,267 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import javax.servlet.AsyncContext;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.handler.AbstractHandler;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.eclipse.jetty.util.Callback;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FileChannelTransferTest
+{
+    private Server _server;
+    private ServerConnector _connector;
+    private Path _file;
+    private byte[] _bytes;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        _bytes = new byte[4 * 1024 * 1024 + 17];
+        new Random(1234).nextBytes(_bytes);
+        Path dir = MavenTestingUtils.getTargetTestingPath(FileChannelTransferTest.class.getSimpleName());
+        Files.createDirectories(dir);
+        _file = dir.resolve("content.bin");
+        Files.write(_file, _bytes);
+    }
+
+    private void start(boolean transfer, AbstractHandler handler) throws Exception
+    {
+        _server = new Server();
+        HttpConnectionFactory http = new HttpConnectionFactory();
+        http.getHttpConfiguration().setUseFileChannelTransfer(transfer);
+        _connector = new ServerConnector(_server, http);
+        _server.addConnector(_connector);
+        _server.setHandler(handler);
+        _server.start();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (_server != null)
+            _server.stop();
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testSendWholeFileAsync(boolean transfer) throws Exception
+    {
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        start(transfer, new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                response.setContentLengthLong(_bytes.length);
+                AsyncContext context = request.startAsync();
+                HttpOutput output = (HttpOutput)response.getOutputStream();
+                output.sendContent(FileChannel.open(_file, StandardOpenOption.READ), new Callback()
+                {
+                    @Override
+                    public void succeeded()
+                    {
+                        context.complete();
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void failed(Throwable x)
+                    {
+                        failure.set(x);
+                        context.complete();
+                        latch.countDown();
+                    }
+                });
+            }
+        });
+
+        Response response = request("GET / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n", true);
+        assertThat(response.head, containsString(" 200 "));
+        assertArrayEquals(_bytes, response.content);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(null, failure.get());
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testSendRange(boolean transfer) throws Exception
+    {
+        int position = 1000;
+        int count = 2 * 1024 * 1024 + 3;
+        start(transfer, new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+                response.setContentLengthLong(count);
+                HttpOutput output = (HttpOutput)response.getOutputStream();
+                output.sendContent(FileChannel.open(_file, StandardOpenOption.READ), position, count);
+            }
+        });
+
+        // Two requests on the same connection, to verify the connection is reusable.
+        try (Socket socket = new Socket("localhost", _connector.getLocalPort()))
+        {
+            for (int i = 0; i < 2; ++i)
+            {
+                Response response = exchange(socket, "GET / HTTP/1.1\r\nHost: localhost\r\n\r\n", i % 2 == 0);
+                assertThat(response.head, containsString(" 206 "));
+                assertArrayEquals(Arrays.copyOfRange(_bytes, position, position + count), response.content);
+            }
+        }
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {true, false})
+    public void testHeadRequest(boolean transfer) throws Exception
+    {
+        start(transfer, new AbstractHandler()
+        {
+            @Override
+            public void handle(String target, Request baseRequest, HttpServletRequest request, HttpServletResponse response) throws IOException
+            {
+                baseRequest.setHandled(true);
+                response.setContentLengthLong(_bytes.length);
+                HttpOutput output = (HttpOutput)response.getOutputStream();
+                output.sendContent(FileChannel.open(_file, StandardOpenOption.READ), 0, _bytes.length);
+            }
+        });
+
+        try (Socket socket = new Socket("localhost", _connector.getLocalPort()))
+        {
+            OutputStream output = socket.getOutputStream();
+            output.write("HEAD / HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            output.flush();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            InputStream input = socket.getInputStream();
+            byte[] buffer = new byte[1024];
+            int read;
+            while ((read = input.read(buffer)) >= 0)
+            {
+                bytes.write(buffer, 0, read);
+            }
+            String response = bytes.toString("ISO-8859-1");
+            assertThat(response, containsString(" 200 "));
+            assertThat(response.endsWith("\r\n\r\n"), is(true));
+        }
+    }
+
+    private Response request(String request, boolean slow) throws IOException
+    {
+        try (Socket socket = new Socket("localhost", _connector.getLocalPort()))
+        {
+            return exchange(socket, request, slow);
+        }
+    }
+
+    private Response exchange(Socket socket, String request, boolean slow) throws IOException
+    {
+        OutputStream output = socket.getOutputStream();
+        output.write(request.getBytes(StandardCharsets.ISO_8859_1));
+        output.flush();
+
+        InputStream input = socket.getInputStream();
+        ByteArrayOutputStream head = new ByteArrayOutputStream();
+        int state = 0;
+        while (state < 4)
+        {
+            int b = input.read();
+            if (b < 0)
+                throw new IOException("EOF");
+            head.write(b);
+            state = (b == '\r' || b == '\n') ? state + 1 : 0;
+        }
+        String headers = head.toString("ISO-8859-1");
+        String lengthHeader = "Content-Length: ";
+        int index = headers.indexOf(lengthHeader);
+        int length = Integer.parseInt(headers.substring(index + lengthHeader.length(), headers.indexOf('\r', index)));
+
+        byte[] content = new byte[length];
+        int offset = 0;
+        while (offset < length)
+        {
+            // Read slowly at the beginning, so that the socket is not always writable.
+            if (slow && offset < length / 8)
+                sleep();
+            int read = input.read(content, offset, Math.min(length - offset, 64 * 1024));
+            if (read < 0)
+                throw new IOException("EOF");
+            offset += read;
+        }
+        return new Response(headers, content);
+    }
+
+    private static void sleep()
+    {
+        try
+        {
+            Thread.sleep(1);
+        }
+        catch (InterruptedException x)
+        {
+            throw new RuntimeException(x);
+        }
+    }
+
+    private static class Response
+    {
+        private final String head;
+        private final byte[] content;
+
+        private Response(String head, byte[] content)
+        {
+            this.head = head;
+            this.content = content;
+        }
+    }
+}
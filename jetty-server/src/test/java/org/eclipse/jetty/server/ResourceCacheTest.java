@@ -346,6 +346,48 @@ public class ResourceCacheTest
         cache.flushCache();
     }
 
+    @Test
+    public void testTinyLFUEvictionPolicy() throws Exception
+    {
+        Path basePath = workDir.getEmptyPathDir();
+        for (int i = 0; i < 20; i++)
+        {
+            makeFile(basePath.resolve("R-" + i + ".txt"), "content " + i);
+        }
+
+        CachedContentFactory cache = new CachedContentFactory(null, new PathResource(basePath), new MimeTypes(), false, false, CompressedContentFormat.NONE);
+        TinyLFUEvictionPolicy policy = new TinyLFUEvictionPolicy(4);
+        cache.setEvictionPolicy(policy);
+        cache.setMaxCachedFiles(4);
+
+        // Make R-0 and R-1 popular.
+        for (int i = 0; i < 10; i++)
+        {
+            assertThat(getContent(cache, "R-0.txt"), is("content 0"));
+            assertThat(getContent(cache, "R-1.txt"), is("content 1"));
+        }
+        assertEquals(2, cache.getCachedFiles());
+        assertEquals(2, cache.getMisses());
+        assertEquals(18, cache.getHits());
+
+        // Scan other resources only once, they must not evict the popular ones.
+        for (int i = 2; i < 20; i++)
+        {
+            assertThat(getContent(cache, "R-" + i + ".txt"), is("content " + i));
+        }
+        assertEquals(4, cache.getCachedFiles());
+        assertThat(cache.getEvictions(), is(16L));
+
+        long hits = cache.getHits();
+        assertThat(getContent(cache, "R-0.txt"), is("content 0"));
+        assertThat(getContent(cache, "R-1.txt"), is("content 1"));
+        assertEquals(hits + 2, cache.getHits());
+
+        cache.flushCache();
+        assertEquals(0, cache.getCachedFiles());
+        assertEquals(0, policy.getWindowSize() + policy.getProbationSize() + policy.getProtectedSize());
+    }
+
     @Test
     public void testNoextension() throws Exception
     {
@@ -0,0 +1,96 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.handler.gzip;
+
+import java.nio.ByteBuffer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class GzipContentCacheTest
+{
+    @Test
+    public void testEvictionKeepsFrequentlyAccessedEntries()
+    {
+        GzipContentCache cache = new GzipContentCache();
+        cache.setMaxCachedFiles(4);
+
+        String hot = GzipContentCache.key("gzip", "/hot", "W/\"1\"");
+        cache.put(hot, ByteBuffer.allocate(10));
+        for (int i = 0; i < 32; i++)
+        {
+            assertNotNull(cache.get(hot));
+        }
+
+        // A scan of entries requested only once must not evict the hot entry.
+        for (int i = 0; i < 64; i++)
+        {
+            cache.put(GzipContentCache.key("gzip", "/cold/" + i, "W/\"1\""), ByteBuffer.allocate(10));
+        }
+
+        assertNotNull(cache.get(hot));
+        assertEquals(4, cache.getCachedFiles());
+        assertEquals(40, cache.getCachedSize());
+        assertEquals(61, cache.getEvictions());
+    }
+
+    @Test
+    public void testEvictionBoundsCacheSize()
+    {
+        GzipContentCache cache = new GzipContentCache();
+        cache.setMaxCacheSize(100);
+
+        for (int i = 0; i < 10; i++)
+        {
+            cache.put(GzipContentCache.key("gzip", "/" + i, "W/\"1\""), ByteBuffer.allocate(30));
+        }
+
+        assertEquals(3, cache.getCachedFiles());
+        assertEquals(90, cache.getCachedSize());
+
+        cache.flushCache();
+        assertEquals(0, cache.getCachedFiles());
+        assertEquals(0, cache.getCachedSize());
+        assertNull(cache.get(GzipContentCache.key("gzip", "/9", "W/\"1\"")));
+    }
+
+    @Test
+    public void testReducingMaxCachedFilesEvicts()
+    {
+        GzipContentCache cache = new GzipContentCache();
+        for (int i = 0; i < 10; i++)
+        {
+            cache.put(GzipContentCache.key("gzip", "/" + i, "W/\"1\""), ByteBuffer.allocate(10));
+        }
+        assertEquals(10, cache.getCachedFiles());
+
+        // The entries cached before the change are still tracked for eviction.
+        cache.setMaxCachedFiles(4);
+        assertEquals(4, cache.getCachedFiles());
+        assertEquals(40, cache.getCachedSize());
+        assertEquals(6, cache.getEvictions());
+
+        cache.put(GzipContentCache.key("gzip", "/10", "W/\"1\""), ByteBuffer.allocate(10));
+        assertEquals(4, cache.getCachedFiles());
+        assertEquals(7, cache.getEvictions());
+    }
+}
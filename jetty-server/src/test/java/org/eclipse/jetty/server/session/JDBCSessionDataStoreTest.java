@@ -0,0 +1,332 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.lang.reflect.Proxy;
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * JDBCSessionDataStoreTest
+ *
+ * Tests the batching of the writes and the expiry query of the JDBCSessionDataStore
+ * against a fake database that records the statements it executes.
+ */
+public class JDBCSessionDataStoreTest
+{
+    private FakeDatabase _database;
+    private JDBCSessionDataStore _store;
+    private ExecutorService _executor;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        _database = new FakeDatabase();
+        _store = new JDBCSessionDataStore()
+        {
+            @Override
+            public void initialize()
+            {
+                // The tables of the fake database need no preparation.
+                _sessionTableSchema = new SessionTableSchema();
+                _sessionTableSchema.setDatabaseAdaptor(_dbAdaptor);
+            }
+        };
+        _store.setDatabaseAdaptor(new DatabaseAdaptor()
+        {
+            @Override
+            public boolean isEmptyStringNull()
+            {
+                return false;
+            }
+
+            @Override
+            protected Connection getConnection()
+            {
+                return _database.newConnection();
+            }
+        });
+        _store.initialize(new SessionContext("0", null));
+        _executor = Executors.newCachedThreadPool();
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        _store.stop();
+        _executor.shutdownNow();
+    }
+
+    private void store(String id, int value) throws Exception
+    {
+        long now = System.currentTimeMillis();
+        SessionData data = _store.newSessionData(id, now, now, now, TimeUnit.MINUTES.toMillis(30));
+        data.setAttribute("value", value);
+        _store.doStore(id, data, 0);
+    }
+
+    private static void await(BooleanSupplier condition) throws Exception
+    {
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean() && System.nanoTime() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    @Test
+    public void testStoreDoesNotWaitForBatch() throws Exception
+    {
+        _store.setBatchWindowMs(TimeUnit.HOURS.toMillis(1));
+        _store.start();
+
+        store("1234", 1);
+        assertEquals(1, _store.getPendingWrites());
+        assertTrue(_database._batches.isEmpty());
+
+        // Checking the session writes its queued store first.
+        _store.exists("1234");
+        assertEquals(0, _store.getPendingWrites());
+        assertEquals(1, _database._batches.size());
+    }
+
+    @Test
+    public void testWritesAreBatched() throws Exception
+    {
+        _store.setBatchWindowMs(TimeUnit.HOURS.toMillis(1));
+        _store.setMaxBatchSize(3);
+        _store.start();
+
+        store("id1", 1);
+        store("id2", 2);
+        assertEquals(2, _store.getPendingWrites());
+        assertEquals(0, _database._batches.size());
+
+        // The max batch size is reached, so the batch is written without waiting for the window.
+        Future<Boolean> delete = _executor.submit(() -> _store.delete("id3"));
+        assertTrue(delete.get(5, TimeUnit.SECONDS));
+
+        assertEquals(1, _store.getBatches());
+        assertEquals(3, _store.getBatchedWrites());
+        assertEquals(1, _database._commits.get());
+        assertEquals(2, _database._batches.size());
+        assertThat(_database._batches.get(0).get(0), containsString("insert"));
+        assertEquals(2, _database._batches.get(0).size() - 1);
+        assertThat(_database._batches.get(1).get(0), containsString("delete"));
+        assertEquals(1, _database._batches.get(1).size() - 1);
+        assertTrue(_database._updates.isEmpty());
+    }
+
+    @Test
+    public void testWritesOfSameSessionAreCoalesced() throws Exception
+    {
+        _store.setBatchWindowMs(TimeUnit.HOURS.toMillis(1));
+        _store.setMaxBatchSize(2);
+        _store.start();
+
+        store("1234", 1);
+        store("1234", 2);
+        assertEquals(1, _store.getCoalescedWrites());
+        assertEquals(1, _store.getPendingWrites());
+
+        store("5678", 3);
+        await(() -> _store.getBatches() == 1);
+
+        assertEquals(2, _store.getBatchedWrites());
+        assertEquals(1, _database._batches.size());
+        List<String> batch = _database._batches.get(0);
+        assertEquals(Arrays.asList("1234", "5678"), batch.subList(1, batch.size()));
+    }
+
+    @Test
+    public void testFailedBatchIsWrittenWriteByWrite() throws Exception
+    {
+        _database._failBatches = true;
+        _database._failingIds.add("bad");
+        _store.setBatchWindowMs(TimeUnit.HOURS.toMillis(1));
+        _store.setMaxBatchSize(2);
+        _store.start();
+
+        store("good", 1);
+        store("bad", 2);
+
+        // The failure is reported after the store has returned.
+        await(() -> _store.getFailedWrites() == 1);
+        assertEquals(0, _store.getBatches());
+        assertEquals(1, _database._rollbacks.get());
+        assertEquals(Collections.singletonList("good"), _database._updates);
+    }
+
+    @Test
+    public void testExpiredSessionsAreSelectedByContext() throws Exception
+    {
+        _store.start();
+
+        _store.getExpired(Collections.emptySet());
+
+        assertEquals(1, _database._queries.size());
+        List<Object> query = _database._queries.get(0);
+        String sql = (String)query.get(0);
+        assertThat(sql, containsString("contextPath = ?"));
+        assertThat(sql, containsString("virtualHost = ?"));
+        // The context and virtual host are bound, rather than filtered after the query.
+        assertEquals("", query.get(1));
+        assertEquals("0.0.0.0", query.get(2));
+        assertTrue((Long)query.get(3) > (Long)query.get(4));
+    }
+
+    /**
+     * A database that records the statements executed on its connections.
+     * Batched and updated rows are recorded by session id.
+     */
+    private static class FakeDatabase
+    {
+        private final List<List<String>> _batches = new CopyOnWriteArrayList<>();
+        private final List<String> _updates = new CopyOnWriteArrayList<>();
+        private final List<List<Object>> _queries = new CopyOnWriteArrayList<>();
+        private final Set<String> _failingIds = Collections.synchronizedSet(new HashSet<>());
+        private final AtomicInteger _commits = new AtomicInteger();
+        private final AtomicInteger _rollbacks = new AtomicInteger();
+        private volatile boolean _failBatches;
+
+        private Connection newConnection()
+        {
+            return proxy(Connection.class, (method, args) ->
+            {
+                switch (method)
+                {
+                    case "prepareStatement":
+                        return newStatement((String)args[0]);
+                    case "commit":
+                        return _commits.incrementAndGet();
+                    case "rollback":
+                        return _rollbacks.incrementAndGet();
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        private PreparedStatement newStatement(String sql)
+        {
+            Map<Integer, Object> parameters = new HashMap<>();
+            List<String> rows = new ArrayList<>();
+            return proxy(PreparedStatement.class, (method, args) ->
+            {
+                switch (method)
+                {
+                    case "setString":
+                    case "setLong":
+                        parameters.put((Integer)args[0], args[1]);
+                        return null;
+                    case "clearParameters":
+                        parameters.clear();
+                        return null;
+                    case "addBatch":
+                        rows.add(sessionId(sql, parameters));
+                        return null;
+                    case "executeBatch":
+                        if (_failBatches)
+                            throw new BatchUpdateException();
+                        List<String> batch = new ArrayList<>();
+                        batch.add(sql);
+                        batch.addAll(rows);
+                        _batches.add(batch);
+                        int[] counts = new int[rows.size()];
+                        Arrays.fill(counts, 1);
+                        rows.clear();
+                        return counts;
+                    case "executeUpdate":
+                        String id = sessionId(sql, parameters);
+                        if (_failingIds.contains(id))
+                            throw new SQLException("Cannot write " + id);
+                        _updates.add(id);
+                        return 1;
+                    case "executeQuery":
+                        List<Object> query = new ArrayList<>();
+                        query.add(sql);
+                        for (int i = 1; i <= parameters.size(); ++i)
+                        {
+                            query.add(parameters.get(i));
+                        }
+                        _queries.add(query);
+                        return proxy(ResultSet.class, (m, a) -> null);
+                    default:
+                        return null;
+                }
+            });
+        }
+
+        private static String sessionId(String sql, Map<Integer, Object> parameters)
+        {
+            // The update statement binds the session id after the session fields.
+            return (String)parameters.get(sql.startsWith("update") ? 8 : 1);
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <T> T proxy(Class<T> type, Handler handler)
+        {
+            return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, (proxy, method, args) ->
+            {
+                Object result = handler.handle(method.getName(), args);
+                Class<?> returnType = method.getReturnType();
+                if (result == null && returnType == boolean.class)
+                    return false;
+                if (result == null && returnType == int.class)
+                    return 0;
+                if (result == null && returnType == long.class)
+                    return 0L;
+                return result;
+            });
+        }
+    }
+
+    private interface Handler
+    {
+        Object handle(String method, Object[] args) throws Exception;
+    }
+}
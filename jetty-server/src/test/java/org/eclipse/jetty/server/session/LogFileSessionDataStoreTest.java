@@ -0,0 +1,287 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.eclipse.jetty.toolchain.test.FS;
+import org.eclipse.jetty.toolchain.test.MavenTestingUtils;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * LogFileSessionDataStoreTest
+ */
+public class LogFileSessionDataStoreTest
+{
+    private File _storeDir;
+    private LogFileSessionDataStore _store;
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        _storeDir = MavenTestingUtils.getTargetTestingDir(LogFileSessionDataStoreTest.class.getSimpleName());
+        FS.ensureEmpty(_storeDir);
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        if (_store != null)
+            _store.stop();
+    }
+
+    private LogFileSessionDataStore start(long maxSegmentSize) throws Exception
+    {
+        return start(maxSegmentSize, LogFileSessionDataStore.SyncPolicy.NONE);
+    }
+
+    private LogFileSessionDataStore start(long maxSegmentSize, LogFileSessionDataStore.SyncPolicy syncPolicy) throws Exception
+    {
+        LogFileSessionDataStore store = new LogFileSessionDataStore();
+        store.setStoreDir(_storeDir);
+        store.setMaxSegmentSize(maxSegmentSize);
+        store.setSyncPolicy(syncPolicy);
+        store.setCompactionIntervalSec(0);
+        store.initialize(new SessionContext("w0", null));
+        store.start();
+        _store = store;
+        return store;
+    }
+
+    private void restart() throws Exception
+    {
+        long maxSegmentSize = _store.getMaxSegmentSize();
+        LogFileSessionDataStore.SyncPolicy syncPolicy = _store.getSyncPolicy();
+        _store.stop();
+        _store = null;
+        start(maxSegmentSize, syncPolicy);
+    }
+
+    private SessionData store(String id, long maxInactiveMs, Object value) throws Exception
+    {
+        long now = System.currentTimeMillis();
+        SessionData data = _store.newSessionData(id, now, now, now, maxInactiveMs);
+        data.setLastNode("w0");
+        data.setAttribute("value", value);
+        _store.store(id, data);
+        return data;
+    }
+
+    private long segmentFiles() throws Exception
+    {
+        try (Stream<Path> files = Files.list(_storeDir.toPath()))
+        {
+            return files.count();
+        }
+    }
+
+    @Test
+    public void testStoreLoadDelete() throws Exception
+    {
+        start(1024 * 1024);
+
+        store("1234", TimeUnit.MINUTES.toMillis(30), "a");
+        store("1234", TimeUnit.MINUTES.toMillis(30), "b");
+        store("5678", TimeUnit.MINUTES.toMillis(30), "c");
+        assertEquals(2, _store.getSessions());
+
+        SessionData loaded = _store.load("1234");
+        assertNotNull(loaded);
+        assertEquals("b", loaded.getAttribute("value"));
+        assertEquals("w0", loaded.getLastNode());
+        assertTrue(loaded.getLastSaved() > 0);
+        assertTrue(_store.exists("1234"));
+
+        assertTrue(_store.delete("1234"));
+        assertFalse(_store.delete("1234"));
+        assertNull(_store.load("1234"));
+        assertFalse(_store.exists("1234"));
+        assertEquals("c", _store.load("5678").getAttribute("value"));
+    }
+
+    @Test
+    public void testReplayOnRestart() throws Exception
+    {
+        start(1024);
+
+        for (int i = 0; i < 50; ++i)
+        {
+            store("id" + i, TimeUnit.MINUTES.toMillis(30), "v" + i);
+        }
+        store("id7", TimeUnit.MINUTES.toMillis(30), "updated");
+        _store.delete("id9");
+        assertTrue(_store.getSegments() > 1);
+
+        restart();
+
+        assertEquals(49, _store.getSessions());
+        assertEquals("updated", _store.load("id7").getAttribute("value"));
+        assertNull(_store.load("id9"));
+        assertEquals("v42", _store.load("id42").getAttribute("value"));
+    }
+
+    @Test
+    public void testCorruptedTailIsTruncated() throws Exception
+    {
+        start(1024 * 1024);
+        store("1234", TimeUnit.MINUTES.toMillis(30), "a");
+        store("5678", TimeUnit.MINUTES.toMillis(30), "b");
+        _store.stop();
+        _store = null;
+
+        // Simulate a crash in the middle of an append.
+        Path segment;
+        try (Stream<Path> files = Files.list(_storeDir.toPath()))
+        {
+            segment = files.findFirst().orElseThrow(IllegalStateException::new);
+        }
+        Files.write(segment, new byte[]{0, 0, 1, 0, 1, 2, 3}, StandardOpenOption.APPEND);
+
+        start(1024 * 1024);
+        assertEquals(2, _store.getSessions());
+        assertEquals("b", _store.load("5678").getAttribute("value"));
+    }
+
+    @Test
+    public void testExpired() throws Exception
+    {
+        start(1024 * 1024);
+
+        store("expired", 1, "a");
+        store("immortal", -1, "b");
+        store("alive", TimeUnit.MINUTES.toMillis(30), "c");
+        Thread.sleep(10);
+
+        Set<String> expired = _store.doGetExpired(Collections.singleton("unknown"));
+        assertEquals(2, expired.size());
+        assertTrue(expired.contains("expired"));
+        assertTrue(expired.contains("unknown"));
+        assertFalse(_store.exists("expired"));
+        assertTrue(_store.exists("immortal"));
+
+        // Storing again with a new expiry moves the session in the expiry index.
+        store("expired", TimeUnit.MINUTES.toMillis(30), "d");
+        assertTrue(_store.doGetExpired(Collections.emptySet()).isEmpty());
+    }
+
+    @Test
+    public void testCompaction() throws Exception
+    {
+        start(2048);
+
+        // Rewrite the same few sessions many times, so that most records are dead.
+        for (int i = 0; i < 200; ++i)
+        {
+            store("id" + (i % 4), TimeUnit.MINUTES.toMillis(30), "v" + i);
+        }
+        _store.delete("id3");
+        long before = segmentFiles();
+        assertTrue(before > 2);
+
+        _store.compact();
+
+        assertTrue(segmentFiles() < before);
+        assertEquals(3, _store.getSessions());
+        assertEquals("v196", _store.load("id0").getAttribute("value"));
+        assertEquals("v198", _store.load("id2").getAttribute("value"));
+        assertNull(_store.load("id3"));
+
+        restart();
+
+        assertEquals(3, _store.getSessions());
+        assertEquals("v197", _store.load("id1").getAttribute("value"));
+        assertNull(_store.load("id3"));
+    }
+
+    @Test
+    public void testOtherContextsAreNotReplayed() throws Exception
+    {
+        start(1024 * 1024);
+        store("1234", TimeUnit.MINUTES.toMillis(30), "a");
+        String contextString = _store._contextString;
+        _store.stop();
+        _store = null;
+
+        // Files of a context whose name starts with the name of this context, and other files.
+        Path other = _storeDir.toPath().resolve(contextString + "_other_0000000000000000.slog");
+        Files.write(other, new byte[]{1, 2, 3});
+        Path backup = _storeDir.toPath().resolve(contextString + "_0000000000000000.slog.bak");
+        Files.write(backup, new byte[]{1, 2, 3});
+
+        start(1024 * 1024);
+        assertEquals(1, _store.getSessions());
+        assertEquals("a", _store.load("1234").getAttribute("value"));
+        assertEquals(3, Files.size(other));
+        assertEquals(3, Files.size(backup));
+    }
+
+    @Test
+    public void testInterruptedThreadDoesNotCloseSegments() throws Exception
+    {
+        start(1024 * 1024);
+        store("1234", TimeUnit.MINUTES.toMillis(30), "a");
+
+        Thread.currentThread().interrupt();
+        try
+        {
+            assertEquals("a", _store.load("1234").getAttribute("value"));
+            store("5678", TimeUnit.MINUTES.toMillis(30), "b");
+        }
+        finally
+        {
+            // The interrupt status is kept.
+            assertTrue(Thread.interrupted());
+        }
+
+        assertEquals("a", _store.load("1234").getAttribute("value"));
+        assertEquals("b", _store.load("5678").getAttribute("value"));
+    }
+
+    @Test
+    public void testSyncPolicy() throws Exception
+    {
+        start(1024, LogFileSessionDataStore.SyncPolicy.ALWAYS);
+        for (int i = 0; i < 20; ++i)
+        {
+            store("id" + i, TimeUnit.MINUTES.toMillis(30), "v" + i);
+        }
+        _store.delete("id0");
+
+        restart();
+
+        assertEquals(LogFileSessionDataStore.SyncPolicy.ALWAYS, _store.getSyncPolicy());
+        assertEquals(19, _store.getSessions());
+        assertEquals("v19", _store.load("id19").getAttribute("value"));
+    }
+}
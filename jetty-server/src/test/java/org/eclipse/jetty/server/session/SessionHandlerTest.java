@@ -23,9 +23,14 @@ import java.util.Collections;
 import java.util.HashSet;
 import javax.servlet.SessionTrackingMode;
 
+import org.eclipse.jetty.server.Server;
 import org.junit.jupiter.api.Test;
 
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class SessionHandlerTest
 {
@@ -38,4 +43,36 @@ public class SessionHandlerTest
         assertThrows(IllegalArgumentException.class, () ->
             sessionHandler.setSessionTrackingModes(new HashSet<>(Arrays.asList(SessionTrackingMode.SSL, SessionTrackingMode.URL))));
     }
+
+    @Test
+    public void testServerTimingWheelIsManagedByServer() throws Exception
+    {
+        Server server = new Server();
+        SessionHandler sessionHandler = new SessionHandler();
+        server.setHandler(sessionHandler);
+        // Added after the handler, so the handler starts before the wheel.
+        SessionTimingWheel wheel = new SessionTimingWheel();
+        server.addBean(wheel);
+
+        server.start();
+        try
+        {
+            assertSame(wheel, sessionHandler.getSessionTimingWheel());
+            assertTrue(wheel.isRunning());
+            assertTrue(server.isManaged(wheel));
+
+            // The wheel is shared by the contexts, so it outlives the handler.
+            sessionHandler.stop();
+            assertNull(sessionHandler.getSessionTimingWheel());
+            assertTrue(wheel.isRunning());
+
+            sessionHandler.start();
+            assertSame(wheel, sessionHandler.getSessionTimingWheel());
+        }
+        finally
+        {
+            server.stop();
+        }
+        assertFalse(wheel.isRunning());
+    }
 }
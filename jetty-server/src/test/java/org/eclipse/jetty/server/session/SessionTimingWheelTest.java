@@ -0,0 +1,155 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThanOrEqualTo;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SessionTimingWheelTest
+{
+    private SessionTimingWheel _wheel;
+
+    @BeforeEach
+    public void before() throws Exception
+    {
+        _wheel = new SessionTimingWheel();
+        _wheel.setTickMs(10);
+        _wheel.setWheelSize(4);
+        _wheel.setLevels(2);
+        _wheel.start();
+    }
+
+    @AfterEach
+    public void after() throws Exception
+    {
+        _wheel.stop();
+    }
+
+    @Test
+    public void testTimeoutsExpireNotBeforeDeadline() throws Exception
+    {
+        // Deadlines in the first level, in the second level and beyond the range of the wheel.
+        long[] delays = {5, 25, 120, 400};
+        CountDownLatch latch = new CountDownLatch(delays.length);
+        AtomicLong early = new AtomicLong();
+        for (long delay : delays)
+        {
+            long deadline = System.currentTimeMillis() + delay;
+            new SessionTimingWheel.Timeout(_wheel)
+            {
+                @Override
+                public void onTimeoutExpired()
+                {
+                    if (System.currentTimeMillis() < deadline)
+                        early.incrementAndGet();
+                    latch.countDown();
+                }
+            }.schedule(delay, TimeUnit.MILLISECONDS);
+        }
+        assertEquals(delays.length, _wheel.getTimeouts());
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, early.get());
+        assertEquals(0, _wheel.getTimeouts());
+        assertArrayEquals(new int[]{0, 0}, _wheel.getLevelOccupancy());
+        assertEquals(delays.length, _wheel.getExpiredTimeouts());
+        assertThat(_wheel.getMaxScavengeLagMs(), greaterThanOrEqualTo(0L));
+    }
+
+    @Test
+    public void testCancelledTimeoutDoesNotExpire() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        SessionTimingWheel.Timeout timeout = new SessionTimingWheel.Timeout(_wheel)
+        {
+            @Override
+            public void onTimeoutExpired()
+            {
+                latch.countDown();
+            }
+        };
+        timeout.schedule(50, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.isScheduled());
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.isScheduled());
+        assertFalse(timeout.cancel());
+        assertEquals(0, _wheel.getTimeouts());
+
+        assertFalse(latch.await(200, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testRescheduleReplacesDeadline() throws Exception
+    {
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicLong expiredAt = new AtomicLong();
+        SessionTimingWheel.Timeout timeout = new SessionTimingWheel.Timeout(_wheel)
+        {
+            @Override
+            public void onTimeoutExpired()
+            {
+                expiredAt.set(System.currentTimeMillis());
+                latch.countDown();
+            }
+        };
+        timeout.schedule(20, TimeUnit.MILLISECONDS);
+        long deadline = System.currentTimeMillis() + 150;
+        timeout.schedule(150, TimeUnit.MILLISECONDS);
+        assertEquals(1, _wheel.getTimeouts());
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertThat(expiredAt.get(), greaterThanOrEqualTo(deadline));
+        assertEquals(1, _wheel.getExpiredTimeouts());
+    }
+
+    @Test
+    public void testTimeoutsExpireInBatches() throws Exception
+    {
+        int count = 100;
+        CountDownLatch latch = new CountDownLatch(count);
+        for (int i = 0; i < count; ++i)
+        {
+            new SessionTimingWheel.Timeout(_wheel)
+            {
+                @Override
+                public void onTimeoutExpired()
+                {
+                    latch.countDown();
+                }
+            }.schedule(30, TimeUnit.MILLISECONDS);
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(count, _wheel.getExpiredTimeouts());
+        // Timeouts scheduled so close to each other span at most a couple of ticks.
+        assertTrue(_wheel.getExpiredBatches() <= 2);
+    }
+}
@@ -0,0 +1,336 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * WriteBehindSessionDataStoreTest
+ */
+public class WriteBehindSessionDataStoreTest
+{
+    private TestSessionDataStore _delegate;
+    private WriteBehindSessionDataStore _store;
+
+    public static class TestSessionDataStore extends AbstractSessionDataStore
+    {
+        final Map<String, SessionData> _map = new ConcurrentHashMap<>();
+        final List<Long> _lastSaveTimes = new CopyOnWriteArrayList<>();
+        final CountDownLatch _storing = new CountDownLatch(1);
+        final CountDownLatch _resume = new CountDownLatch(1);
+        volatile String _blockedId;
+        volatile boolean _fail;
+
+        @Override
+        public boolean isPassivating()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean exists(String id)
+        {
+            return _map.containsKey(id);
+        }
+
+        @Override
+        public SessionData doLoad(String id)
+        {
+            SessionData data = _map.get(id);
+            if (data == null)
+                return null;
+            SessionData copy = newSessionData(id, data.getCreated(), data.getAccessed(), data.getLastAccessed(), data.getMaxInactiveMs());
+            copy.copy(data);
+            return copy;
+        }
+
+        @Override
+        public boolean delete(String id)
+        {
+            return _map.remove(id) != null;
+        }
+
+        @Override
+        public void doStore(String id, SessionData data, long lastSaveTime) throws Exception
+        {
+            if (_fail)
+                throw new IllegalStateException("Failed write of " + id);
+            if (id.equals(_blockedId))
+            {
+                _storing.countDown();
+                _resume.await();
+            }
+            _lastSaveTimes.add(lastSaveTime);
+            SessionData copy = newSessionData(id, data.getCreated(), data.getAccessed(), data.getLastAccessed(), data.getMaxInactiveMs());
+            copy.copy(data);
+            _map.put(id, copy);
+        }
+
+        @Override
+        public Set<String> doGetExpired(Set<String> candidates)
+        {
+            // Candidates that are not stored are considered expired.
+            Set<String> expired = new HashSet<>();
+            for (String id : candidates)
+            {
+                if (!_map.containsKey(id))
+                    expired.add(id);
+            }
+            return expired;
+        }
+    }
+
+    @BeforeEach
+    public void prepare() throws Exception
+    {
+        _delegate = new TestSessionDataStore();
+        _store = new WriteBehindSessionDataStore(_delegate);
+        _store.initialize(new SessionContext("w0", null));
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        _store.stop();
+    }
+
+    private SessionData newSessionData(String id)
+    {
+        long now = System.currentTimeMillis();
+        return _store.newSessionData(id, now, now, now, TimeUnit.MINUTES.toMillis(30));
+    }
+
+    @Test
+    public void testStoresAreCoalesced() throws Exception
+    {
+        _store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        _store.start();
+
+        SessionData data = newSessionData("1234");
+        for (int i = 0; i < 5; ++i)
+        {
+            data.setAttribute("count", i);
+            _store.store("1234", data);
+        }
+        assertEquals(0, _delegate._lastSaveTimes.size());
+        assertEquals(1, _store.getPendingSessions());
+        assertEquals(4, _store.getCoalescedStores());
+
+        _store.flush();
+        assertEquals(1, _delegate._lastSaveTimes.size());
+        assertEquals(0L, _delegate._lastSaveTimes.get(0));
+        assertEquals(4, _delegate._map.get("1234").getAttribute("count"));
+        assertTrue(data.getLastSaved() > 0);
+
+        // A second write is an update of the first.
+        data.setAttribute("count", 5);
+        _store.store("1234", data);
+        long lastSaved = data.getLastSaved();
+        _store.flush();
+        assertEquals(2, _delegate._lastSaveTimes.size());
+        // The flush does not modify the session data.
+        assertEquals(lastSaved, data.getLastSaved());
+        assertTrue(_delegate._lastSaveTimes.get(1) > 0);
+        assertEquals(5, _delegate._map.get("1234").getAttribute("count"));
+    }
+
+    @Test
+    public void testAttributeChangesAfterStoreAreNotWritten() throws Exception
+    {
+        _store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        _store.start();
+
+        SessionData data = newSessionData("1234");
+        List<String> list = new ArrayList<>();
+        list.add("a");
+        data.setAttribute("list", list);
+        _store.store("1234", data);
+
+        // The application changes the value after the session is released.
+        list.add("b");
+
+        _store.flush();
+        assertEquals(Collections.singletonList("a"), _delegate._map.get("1234").getAttribute("list"));
+    }
+
+    @Test
+    public void testWrittenWithinFlushInterval() throws Exception
+    {
+        _store.setFlushIntervalMs(50);
+        _store.start();
+
+        SessionData data = newSessionData("1234");
+        data.setAttribute("a", "b");
+        _store.store("1234", data);
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (_delegate._map.isEmpty() && System.nanoTime() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals("b", _delegate._map.get("1234").getAttribute("a"));
+        assertEquals(0, _store.getPendingSessions());
+    }
+
+    @Test
+    public void testMaxPendingSessionsTriggersWrite() throws Exception
+    {
+        _store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        _store.setMaxPendingSessions(3);
+        _store.start();
+
+        for (int i = 0; i < 3; ++i)
+        {
+            SessionData data = newSessionData("id" + i);
+            data.setAttribute("a", i);
+            _store.store("id" + i, data);
+        }
+
+        long end = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (_delegate._map.size() < 3 && System.nanoTime() < end)
+        {
+            Thread.sleep(10);
+        }
+        assertEquals(3, _delegate._map.size());
+    }
+
+    @Test
+    public void testLoadWritesPendingSession() throws Exception
+    {
+        _store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        _store.start();
+
+        SessionData data = newSessionData("1234");
+        data.setAttribute("a", "b");
+        _store.store("1234", data);
+        assertTrue(_store.exists("1234"));
+        assertFalse(_delegate.exists("1234"));
+
+        SessionData loaded = _store.load("1234");
+        assertNotNull(loaded);
+        assertEquals("b", loaded.getAttribute("a"));
+        assertEquals(0, _store.getPendingSessions());
+    }
+
+    @Test
+    public void testFailedWriteOnLoadIsQueuedAgain() throws Exception
+    {
+        _store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        _store.start();
+
+        SessionData data = newSessionData("1234");
+        data.setAttribute("a", "b");
+        _store.store("1234", data);
+
+        _delegate._fail = true;
+        assertThrows(IllegalStateException.class, () -> _store.load("1234"));
+        assertEquals(1, _store.getPendingSessions());
+
+        _delegate._fail = false;
+        _store.flush();
+        assertEquals(0, _store.getPendingSessions());
+        assertEquals(0L, _delegate._lastSaveTimes.get(0));
+        assertEquals("b", _delegate._map.get("1234").getAttribute("a"));
+    }
+
+    @Test
+    public void testLoadDoesNotWaitForWritesOfOtherSessions() throws Exception
+    {
+        _store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        _store.start();
+
+        _store.store("slow", newSessionData("slow"));
+        _store.store("fast", newSessionData("fast"));
+        _delegate._blockedId = "slow";
+
+        Thread flusher = new Thread(_store::flush);
+        flusher.start();
+        try
+        {
+            assertTrue(_delegate._storing.await(5, TimeUnit.SECONDS));
+            // The flush is blocked writing the other session.
+            assertNotNull(_store.load("fast"));
+        }
+        finally
+        {
+            _delegate._resume.countDown();
+            flusher.join(5000);
+        }
+        assertEquals(2, _delegate._map.size());
+    }
+
+    @Test
+    public void testPendingSessionsAreNotExpired() throws Exception
+    {
+        _store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        _store.start();
+
+        SessionData data = newSessionData("1234");
+        _store.store("1234", data);
+
+        assertEquals(Collections.singleton("5678"), _store.getExpired(new HashSet<>(Arrays.asList("1234", "5678"))));
+    }
+
+    @Test
+    public void testDeleteDiscardsPendingSession() throws Exception
+    {
+        _store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        _store.start();
+
+        SessionData data = newSessionData("1234");
+        _store.store("1234", data);
+        assertTrue(_store.delete("1234"));
+        _store.flush();
+        assertTrue(_delegate._map.isEmpty());
+    }
+
+    @Test
+    public void testStopWritesPendingSessions() throws Exception
+    {
+        _store.setFlushIntervalMs(TimeUnit.HOURS.toMillis(1));
+        _store.start();
+
+        for (int i = 0; i < 10; ++i)
+        {
+            _store.store("id" + i, newSessionData("id" + i));
+        }
+        _store.stop();
+        assertEquals(10, _delegate._map.size());
+    }
+}
@@ -39,6 +39,7 @@ import org.eclipse.jetty.server.CachedContentFactory;
 import org.eclipse.jetty.server.ResourceContentFactory;
 import org.eclipse.jetty.server.ResourceService;
 import org.eclipse.jetty.server.ResourceService.WelcomeFactory;
+import org.eclipse.jetty.server.TinyLFUEvictionPolicy;
 import org.eclipse.jetty.server.handler.ContextHandler;
 import org.eclipse.jetty.server.handler.ResourceHandler;
 import org.eclipse.jetty.util.URIUtil;
@@ -107,6 +108,10 @@ import org.eclipse.jetty.util.resource.ResourceFactory;
  *  maxCacheSize      The maximum total size of the cache or 0 for no cache.
  *  maxCachedFileSize The maximum size of a file to cache
  *  maxCachedFiles    The maximum number of files to cache
+ *  cacheEvictionPolicy
+ *                    The policy used to evict files from the cache: "lru" (the default) to evict
+ *                    the least recently accessed files, or "tinylfu" to admit files into the cache
+ *                    depending on their access frequency (see {@link TinyLFUEvictionPolicy}).
  *
  *  useFileMappedBuffer
  *                    If set to true, it will use mapped file buffer to serve static content
@@ -263,6 +268,12 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
                     _cache.setMaxCachedFileSize(maxCachedFileSize);
                 if (maxCachedFiles >= -1)
                     _cache.setMaxCachedFiles(maxCachedFiles);
+                String evictionPolicy = getInitParameter("cacheEvictionPolicy");
+                if ("tinylfu".equalsIgnoreCase(evictionPolicy))
+                    _cache.setEvictionPolicy(new TinyLFUEvictionPolicy(Math.max(_cache.getMaxCachedFiles(), 1)));
+                else if (evictionPolicy != null && !"lru".equalsIgnoreCase(evictionPolicy))
+                    throw new UnavailableException("Unknown cacheEvictionPolicy " + evictionPolicy);
+                _contextHandler.addBean(_cache);
                 _servletContext.setAttribute(resourceCache == null ? "resourceCache" : resourceCache, _cache);
             }
         }
@@ -486,7 +497,10 @@ public class DefaultServlet extends HttpServlet implements ResourceFactory, Welc
     public void destroy()
     {
         if (_cache != null)
+        {
             _cache.flushCache();
+            _contextHandler.removeBean(_cache);
+        }
         super.destroy();
     }
 
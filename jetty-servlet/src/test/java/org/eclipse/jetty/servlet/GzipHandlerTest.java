@@ -30,6 +30,7 @@ import java.util.EnumSet;
 import java.util.Enumeration;
 import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
 import javax.servlet.AsyncContext;
 import javax.servlet.DispatcherType;
 import javax.servlet.Filter;
@@ -48,7 +49,11 @@ import org.eclipse.jetty.http.CompressedContentFormat;
 import org.eclipse.jetty.http.HttpTester;
 import org.eclipse.jetty.server.HttpOutput;
 import org.eclipse.jetty.server.LocalConnector;
+import org.eclipse.jetty.server.Request;
 import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.handler.gzip.ContentEncoder;
+import org.eclipse.jetty.server.handler.gzip.DeflateContentEncoder;
+import org.eclipse.jetty.server.handler.gzip.GzipContentCache;
 import org.eclipse.jetty.server.handler.gzip.GzipHandler;
 import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.IO;
@@ -349,6 +354,155 @@ public class GzipHandlerTest
         assertEquals(__content, testOut.toString("UTF8"));
     }
 
+    @Test
+    public void testCompressedContentCache() throws Exception
+    {
+        GzipContentCache cache = new GzipContentCache();
+        ((GzipHandler)_server.getHandler()).setCompressedContentCache(cache);
+
+        byte[] compressed = null;
+        for (int i = 0; i < 3; ++i)
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/content?vary=Accept-Encoding,Other");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host", "tester");
+            request.setHeader("accept-encoding", "gzip");
+
+            HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+
+            assertThat(response.getStatus(), is(200));
+            assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+            assertThat(response.get("ETag"), is(__contentETagGzip));
+            assertThat(response.getCSV("Vary", false), Matchers.contains("Accept-Encoding", "Other"));
+            assertThat(response.get("Content-Length"), is(String.valueOf(response.getContentBytes().length)));
+
+            InputStream testIn = new GZIPInputStream(new ByteArrayInputStream(response.getContentBytes()));
+            ByteArrayOutputStream testOut = new ByteArrayOutputStream();
+            IO.copy(testIn, testOut);
+            assertEquals(__content, testOut.toString("UTF8"));
+
+            if (compressed == null)
+                compressed = response.getContentBytes();
+            else
+                assertThat(response.getContentBytes(), is(compressed));
+        }
+
+        assertEquals(1, cache.getCachedFiles());
+        assertEquals(2, cache.getHits());
+        assertEquals(1, cache.getMisses());
+
+        // Without the ETag the compressed body is not cached.
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/buffer/info");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "gzip");
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), Matchers.equalToIgnoringCase("gzip"));
+        assertEquals(1, cache.getCachedFiles());
+    }
+
+    @Test
+    public void testEncoderTrailerWrittenWhenLastEncodeProducesNothing() throws Exception
+    {
+        ((GzipHandler)_server.getHandler()).addContentEncoderFactory(new ContentEncoder.Factory("x-trailer")
+        {
+            @Override
+            public ContentEncoder newContentEncoder(Request request)
+            {
+                return new ContentEncoder()
+                {
+                    private boolean stalled;
+
+                    @Override
+                    public boolean encode(ByteBuffer input, boolean last, ByteBuffer output)
+                    {
+                        if (BufferUtil.append(output, input) > 0 || !last)
+                            return false;
+                        // Like a Deflater with buffered input, produce nothing the first time.
+                        if (!stalled)
+                        {
+                            stalled = true;
+                            return false;
+                        }
+                        BufferUtil.append(output, BufferUtil.toBuffer("END"));
+                        return true;
+                    }
+                };
+            }
+        });
+
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "x-trailer");
+
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(200));
+        assertThat(response.get("Content-Encoding"), is("x-trailer"));
+        assertEquals(__content + "END", response.getContent());
+    }
+
+    @Test
+    public void testContentEncodingNegotiation() throws Exception
+    {
+        ((GzipHandler)_server.getHandler()).addContentEncoderFactory(new DeflateContentEncoder.Factory());
+
+        String[][] cases = {
+            {"gzip;q=0.5, deflate", "deflate"},
+            {"gzip, deflate", "deflate"},
+            {"gzip, deflate;q=0.1", "gzip"},
+            {"deflate;q=0, gzip", "gzip"},
+            {"identity", null}
+        };
+        for (String[] c : cases)
+        {
+            HttpTester.Request request = HttpTester.newRequest();
+            request.setMethod("GET");
+            request.setURI("/ctx/content");
+            request.setVersion("HTTP/1.0");
+            request.setHeader("Host", "tester");
+            request.setHeader("accept-encoding", c[0]);
+
+            HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+            assertThat(c[0], response.getStatus(), is(200));
+            assertThat(c[0], response.get("Content-Encoding"), is(c[1]));
+
+            InputStream testIn = new ByteArrayInputStream(response.getContentBytes());
+            if ("deflate".equals(c[1]))
+            {
+                testIn = new InflaterInputStream(testIn);
+                assertThat(response.get("ETag"), is(String.format("W/\"%x--deflate\"", __content.hashCode())));
+            }
+            else if ("gzip".equals(c[1]))
+            {
+                testIn = new GZIPInputStream(testIn);
+                assertThat(response.get("ETag"), is(__contentETagGzip));
+            }
+            ByteArrayOutputStream testOut = new ByteArrayOutputStream();
+            IO.copy(testIn, testOut);
+            assertEquals(__content, testOut.toString("UTF8"));
+        }
+
+        // The deflate ETag is recognized in conditional requests.
+        HttpTester.Request request = HttpTester.newRequest();
+        request.setMethod("GET");
+        request.setURI("/ctx/content");
+        request.setVersion("HTTP/1.0");
+        request.setHeader("Host", "tester");
+        request.setHeader("accept-encoding", "deflate");
+        request.setHeader("If-None-Match", String.format("W/\"%x--deflate\"", __content.hashCode()));
+        HttpTester.Response response = HttpTester.parseResponse(_connector.getResponse(request.generate()));
+        assertThat(response.getStatus(), is(304));
+        assertThat(response.get("ETag"), is(String.format("W/\"%x--deflate\"", __content.hashCode())));
+    }
+
     @Test
     public void testAsyncResponse() throws Exception
     {
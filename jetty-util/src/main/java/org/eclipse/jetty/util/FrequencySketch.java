@@ -0,0 +1,141 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+/**
+ * <p>A probabilistic estimator of the popularity of keys.</p>
+ * <p>The sketch is a count-min sketch of 4-bit counters packed into an array of
+ * {@code long}s, so that a key costs no memory other than the fixed size table.
+ * Each key increments four counters selected by independent hashes and its
+ * estimated frequency is the minimum of those counters, capped at 15.</p>
+ * <p>Once the number of recorded samples reaches ten times the table capacity,
+ * all the counters are halved so that the estimated frequencies age and keys
+ * that were popular long ago do not remain popular forever.</p>
+ * <p>This class is not thread safe and callers must provide mutual exclusion
+ * if they record or estimate from multiple threads.</p>
+ */
+public class FrequencySketch
+{
+    private static final long[] SEEDS = {0xC3A5C85C97CB3127L, 0xB492B66FBE98F273L, 0x9AE16A3B2F90404FL, 0xCBF29CE484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long ONE_MASK = 0x1111111111111111L;
+
+    private final long[] _table;
+    private final int _tableMask;
+    private final int _sampleSize;
+    private int _size;
+
+    /**
+     * @param capacity the expected maximum number of distinct keys being tracked
+     */
+    public FrequencySketch(int capacity)
+    {
+        int length = capacity <= 1 ? 1 : Integer.highestOneBit(Math.min(capacity, 1 << 30) - 1) << 1;
+        _table = new long[length];
+        _tableMask = length - 1;
+        _sampleSize = 10 * length;
+    }
+
+    /**
+     * @param hash the hash of the key
+     * @return the estimated number of occurrences of the key, from 0 to 15
+     */
+    public int frequency(int hash)
+    {
+        int h = spread(hash);
+        int start = (h & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++)
+        {
+            int index = indexOf(h, i);
+            int count = (int)((_table[index] >>> ((start + i) << 2)) & 0xFL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    /**
+     * <p>Records an occurrence of a key, possibly aging all the counters.</p>
+     *
+     * @param hash the hash of the key
+     */
+    public void increment(int hash)
+    {
+        int h = spread(hash);
+        int start = (h & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++)
+        {
+            added |= incrementAt(indexOf(h, i), start + i);
+        }
+        if (added && ++_size >= _sampleSize)
+            reset();
+    }
+
+    /**
+     * @return the number of samples recorded since the last aging
+     */
+    public int getSampleCount()
+    {
+        return _size;
+    }
+
+    private boolean incrementAt(int index, int counter)
+    {
+        int offset = counter << 2;
+        long mask = 0xFL << offset;
+        if ((_table[index] & mask) != mask)
+        {
+            _table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset()
+    {
+        int odd = 0;
+        for (int i = 0; i < _table.length; i++)
+        {
+            odd += Long.bitCount(_table[i] & ONE_MASK);
+            _table[i] = (_table[i] >>> 1) & RESET_MASK;
+        }
+        _size = (_size >>> 1) - (odd >>> 2);
+    }
+
+    private int indexOf(int hash, int i)
+    {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int)h) & _tableMask;
+    }
+
+    private static int spread(int hash)
+    {
+        int h = ((hash >>> 16) ^ hash) * 0x45D9F3B;
+        h = ((h >>> 16) ^ h) * 0x45D9F3B;
+        return (h >>> 16) ^ h;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{capacity=%d,samples=%d}", getClass().getSimpleName(), hashCode(), _table.length, _size);
+    }
+}
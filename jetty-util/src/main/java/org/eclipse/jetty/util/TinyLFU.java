@@ -0,0 +1,346 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToIntFunction;
+
+/**
+ * <p>Tracks the elements of a cache to select which ones to evict with the W-TinyLFU algorithm.</p>
+ * <p>New elements enter a small LRU <em>window</em>. When the window overflows, its least
+ * recently used element moves to the tail of the <em>main</em> area, which is a segmented
+ * LRU made of a <em>probation</em> and a <em>protected</em> segment.
+ * When an element must be evicted, the most recent entrant of the probation segment is
+ * retained only if its estimated access frequency, as recorded by a {@link FrequencySketch},
+ * is higher than the frequency of the least recently used probation element, so that
+ * elements accessed only once cannot push out the hot set.</p>
+ * <p>All the operations are O(1). Accesses are recorded in a lossy buffer and applied
+ * in batches, so that threads looking up the cache rarely contend on the lock.</p>
+ * <p>This class is thread safe.</p>
+ *
+ * @param <T> the type of the tracked elements
+ */
+public class TinyLFU<T>
+{
+    private static final int READ_BUFFER_SIZE = 128;
+    private static final int READ_BUFFER_MASK = READ_BUFFER_SIZE - 1;
+    private static final int DRAIN_THRESHOLD = 16;
+
+    private final ReentrantLock _lock = new ReentrantLock();
+    private final AtomicReferenceArray<T> _readBuffer = new AtomicReferenceArray<>(READ_BUFFER_SIZE);
+    private final AtomicLong _reads = new AtomicLong();
+    private final Map<T, Node<T>> _nodes = new HashMap<>();
+    private final Queue<T> _window = new Queue<>();
+    private final Queue<T> _probation = new Queue<>();
+    private final Queue<T> _protected = new Queue<>();
+    private final FrequencySketch _sketch;
+    private final ToIntFunction<T> _hash;
+    private final int _windowPercent;
+    private long _admitted;
+    private long _rejected;
+
+    /**
+     * @param capacity the expected maximum number of tracked elements
+     * @param windowPercent the percentage of the tracked elements kept in the admission window
+     * @param hash the function that hashes elements for the frequency sketch, so that
+     * different elements that represent the same cache key share their frequency
+     */
+    public TinyLFU(int capacity, int windowPercent, ToIntFunction<T> hash)
+    {
+        if (windowPercent < 0 || windowPercent > 100)
+            throw new IllegalArgumentException("Invalid window percent " + windowPercent);
+        _sketch = new FrequencySketch(Math.max(16, capacity));
+        _windowPercent = windowPercent;
+        _hash = hash;
+    }
+
+    /**
+     * <p>Starts tracking the given element, if it is not tracked already.</p>
+     *
+     * @param element the element added to the cache
+     */
+    public void add(T element)
+    {
+        _lock.lock();
+        try
+        {
+            drainReads();
+            _sketch.increment(_hash.applyAsInt(element));
+            if (!_nodes.containsKey(element))
+            {
+                Node<T> node = new Node<>(element);
+                _nodes.put(element, node);
+                _window.addLast(node);
+                int maxWindow = Math.max(1, _nodes.size() * _windowPercent / 100);
+                while (_window._size > maxWindow)
+                {
+                    Node<T> overflow = _window.first();
+                    _window.remove(overflow);
+                    _probation.addLast(overflow);
+                }
+            }
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Records an access to the given element.</p>
+     *
+     * @param element the element accessed
+     */
+    public void access(T element)
+    {
+        long reads = _reads.getAndIncrement();
+        // The buffer is lossy: a slot not drained yet is overwritten.
+        _readBuffer.lazySet((int)(reads & READ_BUFFER_MASK), element);
+        if ((reads % DRAIN_THRESHOLD) == 0 && _lock.tryLock())
+        {
+            try
+            {
+                drainReads();
+            }
+            finally
+            {
+                _lock.unlock();
+            }
+        }
+    }
+
+    /**
+     * <p>Stops tracking the given element.</p>
+     *
+     * @param element the element removed from the cache
+     */
+    public void remove(T element)
+    {
+        _lock.lock();
+        try
+        {
+            Node<T> node = _nodes.remove(element);
+            if (node != null)
+                node._queue.remove(node);
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * <p>Selects the next element to evict and stops tracking it.</p>
+     *
+     * @return the element to evict, or null if there are no tracked elements
+     */
+    public T evict()
+    {
+        _lock.lock();
+        try
+        {
+            drainReads();
+
+            // The candidate is the most recent entrant of the probation segment,
+            // which competes with the least recently used probation element.
+            Node<T> candidate = _probation.last();
+            Node<T> victim = _probation.first();
+            if (victim == null)
+                victim = _protected.first();
+            if (victim == null)
+                victim = _window.first();
+
+            Node<T> evicted;
+            if (candidate == null || candidate == victim)
+            {
+                evicted = victim;
+            }
+            else if (_sketch.frequency(_hash.applyAsInt(candidate._element)) > _sketch.frequency(_hash.applyAsInt(victim._element)))
+            {
+                _admitted++;
+                evicted = victim;
+            }
+            else
+            {
+                _rejected++;
+                evicted = candidate;
+            }
+
+            if (evicted == null)
+                return null;
+            evicted._queue.remove(evicted);
+            _nodes.remove(evicted._element);
+            return evicted._element;
+        }
+        finally
+        {
+            _lock.unlock();
+        }
+    }
+
+    /**
+     * @return the number of elements in the admission window
+     */
+    public int getWindowSize()
+    {
+        return _window._size;
+    }
+
+    /**
+     * @return the number of elements in the probation segment
+     */
+    public int getProbationSize()
+    {
+        return _probation._size;
+    }
+
+    /**
+     * @return the number of elements in the protected segment
+     */
+    public int getProtectedSize()
+    {
+        return _protected._size;
+    }
+
+    /**
+     * @return the number of candidates retained by the admission filter
+     */
+    public long getAdmitted()
+    {
+        return _admitted;
+    }
+
+    /**
+     * @return the number of candidates evicted by the admission filter
+     */
+    public long getRejected()
+    {
+        return _rejected;
+    }
+
+    private void drainReads()
+    {
+        for (int i = 0; i < READ_BUFFER_SIZE; i++)
+        {
+            T element = _readBuffer.getAndSet(i, null);
+            if (element != null)
+                onAccess(element);
+        }
+    }
+
+    private void onAccess(T element)
+    {
+        _sketch.increment(_hash.applyAsInt(element));
+        Node<T> node = _nodes.get(element);
+        if (node == null)
+            return;
+
+        Queue<T> queue = node._queue;
+        queue.remove(node);
+        if (queue == _probation)
+        {
+            _protected.addLast(node);
+            // Keep the protected segment at most 80% of the main area.
+            int maxProtected = (_probation._size + _protected._size) * 4 / 5;
+            while (_protected._size > maxProtected)
+            {
+                Node<T> demoted = _protected.first();
+                _protected.remove(demoted);
+                _probation.addLast(demoted);
+            }
+        }
+        else
+        {
+            queue.addLast(node);
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x{window=%d,probation=%d,protected=%d,%s}",
+            getClass().getSimpleName(), hashCode(), _window._size, _probation._size, _protected._size, _sketch);
+    }
+
+    private static class Node<T>
+    {
+        private final T _element;
+        private Queue<T> _queue;
+        private Node<T> _prev;
+        private Node<T> _next;
+
+        private Node(T element)
+        {
+            _element = element;
+        }
+    }
+
+    /**
+     * An intrusive doubly linked list ordered from least to most recently used.
+     */
+    private static class Queue<T>
+    {
+        private Node<T> _head;
+        private Node<T> _tail;
+        private int _size;
+
+        private Node<T> first()
+        {
+            return _head;
+        }
+
+        private Node<T> last()
+        {
+            return _tail;
+        }
+
+        private void addLast(Node<T> node)
+        {
+            node._queue = this;
+            node._prev = _tail;
+            node._next = null;
+            if (_tail == null)
+                _head = node;
+            else
+                _tail._next = node;
+            _tail = node;
+            _size++;
+        }
+
+        private void remove(Node<T> node)
+        {
+            if (node._prev == null)
+                _head = node._next;
+            else
+                node._prev._next = node._next;
+            if (node._next == null)
+                _tail = node._prev;
+            else
+                node._next._prev = node._prev;
+            node._prev = null;
+            node._next = null;
+            node._queue = null;
+            _size--;
+        }
+    }
+}
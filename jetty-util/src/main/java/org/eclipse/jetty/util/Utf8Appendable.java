@@ -20,6 +20,7 @@ package org.eclipse.jetty.util;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
@@ -55,6 +56,8 @@ public abstract class Utf8Appendable
     public static final byte[] REPLACEMENT_UTF8 = new byte[]{(byte)0xEF, (byte)0xBF, (byte)0xBD};
     private static final int UTF8_ACCEPT = 0;
     private static final int UTF8_REJECT = 12;
+    private static final long ASCII_MASK = 0x8080808080808080L;
+    private static final int ASCII_BULK_LENGTH = 32;
 
     protected final Appendable _appendable;
     protected int _state = UTF8_ACCEPT;
@@ -164,9 +167,33 @@ public abstract class Utf8Appendable
     {
         try
         {
-            while (buf.remaining() > 0)
+            byte[] array = buf.hasArray() ? buf.array() : null;
+            int shift = array == null ? 0 : buf.arrayOffset();
+            int i = buf.position();
+            int end = buf.limit();
+            try
+            {
+                while (i < end)
+                {
+                    if (_state == UTF8_ACCEPT)
+                    {
+                        int ascii = array == null ? asciiLength(buf, i, end) : asciiLength(array, shift + i, shift + end);
+                        if (ascii > 0)
+                        {
+                            if (array == null)
+                                appendAscii(buf, i, ascii);
+                            else
+                                appendAscii(array, shift + i, ascii);
+                            i += ascii;
+                            continue;
+                        }
+                    }
+                    appendByte(buf.get(i++));
+                }
+            }
+            finally
             {
-                appendByte(buf.get());
+                buf.position(i);
             }
         }
         catch (IOException e)
@@ -185,9 +212,20 @@ public abstract class Utf8Appendable
         try
         {
             int end = offset + length;
-            for (int i = offset; i < end; i++)
+            int i = offset;
+            while (i < end)
             {
-                appendByte(b[i]);
+                if (_state == UTF8_ACCEPT)
+                {
+                    int ascii = asciiLength(b, i, end);
+                    if (ascii > 0)
+                    {
+                        appendAscii(b, i, ascii);
+                        i += ascii;
+                        continue;
+                    }
+                }
+                appendByte(b[i++]);
             }
         }
         catch (IOException e)
@@ -215,6 +253,76 @@ public abstract class Utf8Appendable
         }
     }
 
+    private void appendAscii(byte[] b, int offset, int length) throws IOException
+    {
+        if (length >= ASCII_BULK_LENGTH)
+        {
+            _appendable.append(new String(b, offset, length, StandardCharsets.ISO_8859_1));
+        }
+        else
+        {
+            int end = offset + length;
+            for (int i = offset; i < end; i++)
+            {
+                _appendable.append((char)b[i]);
+            }
+        }
+    }
+
+    private void appendAscii(ByteBuffer buf, int offset, int length) throws IOException
+    {
+        if (length >= ASCII_BULK_LENGTH)
+        {
+            byte[] bytes = new byte[length];
+            ByteBuffer run = buf.duplicate();
+            run.position(offset);
+            run.get(bytes);
+            appendAscii(bytes, 0, length);
+        }
+        else
+        {
+            int end = offset + length;
+            for (int i = offset; i < end; i++)
+            {
+                _appendable.append((char)buf.get(i));
+            }
+        }
+    }
+
+    /**
+     * @return the number of ASCII bytes from {@code offset}, tested a word at a time
+     */
+    private static int asciiLength(byte[] b, int offset, int end)
+    {
+        int i = offset;
+        while (end - i >= 8 && (b[i] | b[i + 1] | b[i + 2] | b[i + 3] | b[i + 4] | b[i + 5] | b[i + 6] | b[i + 7]) >= 0)
+        {
+            i += 8;
+        }
+        while (i < end && b[i] >= 0)
+        {
+            i++;
+        }
+        return i - offset;
+    }
+
+    /**
+     * @return the number of ASCII bytes from absolute index {@code offset}, tested a long at a time
+     */
+    private static int asciiLength(ByteBuffer buf, int offset, int end)
+    {
+        int i = offset;
+        while (end - i >= 8 && (buf.getLong(i) & ASCII_MASK) == 0)
+        {
+            i += 8;
+        }
+        while (i < end && buf.get(i) >= 0)
+        {
+            i++;
+        }
+        return i - offset;
+    }
+
     protected void appendByte(byte b) throws IOException
     {
         if (b > 0 && _state == UTF8_ACCEPT)
@@ -0,0 +1,178 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>Utility class to use virtual threads in a way that allows to compile
+ * the code with Java 8, but use virtual threads when running on Java 21+.</p>
+ * <p>All the virtual thread APIs are looked up reflectively, so this class
+ * reports that virtual threads are not supported on earlier runtimes.</p>
+ */
+public class VirtualThreads
+{
+    private static final Logger LOG = Log.getLogger(VirtualThreads.class);
+    private static final Method OF_VIRTUAL = probeOfVirtual();
+    private static final Method IS_VIRTUAL = probeIsVirtual();
+    private static final Executor DEFAULT_EXECUTOR = probeDefaultExecutor();
+
+    private static Method probeOfVirtual()
+    {
+        try
+        {
+            return Thread.class.getMethod("ofVirtual");
+        }
+        catch (Throwable x)
+        {
+            return null;
+        }
+    }
+
+    private static Method probeIsVirtual()
+    {
+        try
+        {
+            return Thread.class.getMethod("isVirtual");
+        }
+        catch (Throwable x)
+        {
+            return null;
+        }
+    }
+
+    private static Executor probeDefaultExecutor()
+    {
+        try
+        {
+            if (OF_VIRTUAL == null)
+                return null;
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (Executor)method.invoke(null);
+        }
+        catch (Throwable x)
+        {
+            // Virtual threads are a preview feature in Java 19 and 20.
+            if (LOG.isDebugEnabled())
+                LOG.debug("Virtual threads not supported", x);
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the runtime supports virtual threads
+     */
+    public static boolean areSupported()
+    {
+        return DEFAULT_EXECUTOR != null;
+    }
+
+    /**
+     * @return the default virtual thread per task executor, or null if virtual threads are not supported
+     */
+    public static Executor getDefaultVirtualThreadsExecutor()
+    {
+        return DEFAULT_EXECUTOR;
+    }
+
+    /**
+     * <p>Creates a new virtual thread per task executor, whose threads are named
+     * with the given prefix followed by an increasing counter.</p>
+     *
+     * @param namePrefix the prefix of the virtual threads names
+     * @return a new virtual thread per task executor, or null if virtual threads are not supported
+     */
+    public static ExecutorService newVirtualThreadsExecutor(String namePrefix)
+    {
+        if (!areSupported())
+            return null;
+        try
+        {
+            Object builder = OF_VIRTUAL.invoke(null);
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builder = builderClass.getMethod("name", String.class, long.class).invoke(builder, namePrefix, 0L);
+            ThreadFactory factory = (ThreadFactory)builderClass.getMethod("factory").invoke(builder);
+            Method method = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+            return (ExecutorService)method.invoke(null, factory);
+        }
+        catch (Throwable x)
+        {
+            LOG.warn("Could not create virtual threads executor", x);
+            return null;
+        }
+    }
+
+    /**
+     * @return whether the current thread is a virtual thread
+     */
+    public static boolean isVirtualThread()
+    {
+        return isVirtualThread(Thread.currentThread());
+    }
+
+    /**
+     * @param thread the thread to test
+     * @return whether the given thread is a virtual thread
+     */
+    public static boolean isVirtualThread(Thread thread)
+    {
+        try
+        {
+            return IS_VIRTUAL != null && (Boolean)IS_VIRTUAL.invoke(thread);
+        }
+        catch (Throwable x)
+        {
+            return false;
+        }
+    }
+
+    /**
+     * @param executor the executor that may be configured with virtual threads
+     * @return the virtual threads executor of the given executor, or null if it does not use virtual threads
+     */
+    public static Executor getVirtualThreadsExecutor(Executor executor)
+    {
+        if (executor instanceof Configurable)
+            return ((Configurable)executor).getVirtualThreadsExecutor();
+        return null;
+    }
+
+    /**
+     * <p>Implementations of this interface can be configured to run
+     * blocking tasks in virtual threads.</p>
+     */
+    public interface Configurable
+    {
+        /**
+         * @return the executor of blocking tasks in virtual threads, or null if virtual threads are not used
+         */
+        Executor getVirtualThreadsExecutor();
+    }
+
+    private VirtualThreads()
+    {
+    }
+}
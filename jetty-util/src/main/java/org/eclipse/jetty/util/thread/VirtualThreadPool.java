@@ -0,0 +1,169 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.Name;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+
+/**
+ * <p>A {@link QueuedThreadPool} that runs blocking tasks in virtual threads.</p>
+ * <p>The platform threads of this pool run the selectors, the acceptors and the
+ * production of tasks by {@link ExecutionStrategy execution strategies}, and the
+ * tasks that are declared {@link Invocable.InvocationType#NON_BLOCKING non blocking}.
+ * Execution strategies that are aware of {@link VirtualThreads.Configurable} run the
+ * {@link Invocable.InvocationType#BLOCKING blocking} tasks they produce, typically the
+ * handling of requests, in the {@link #getVirtualThreadsExecutor() virtual threads executor},
+ * so that blocking application code does not need a large number of platform threads.</p>
+ * <p>Virtual threads are looked up reflectively, so that this class can be used on any
+ * Java runtime: when virtual threads are not supported, a warning is logged and this
+ * pool behaves like a {@link QueuedThreadPool}.</p>
+ */
+@ManagedObject("A thread pool that runs blocking tasks in virtual threads")
+public class VirtualThreadPool extends QueuedThreadPool implements VirtualThreads.Configurable
+{
+    private static final Logger LOG = Log.getLogger(VirtualThreadPool.class);
+
+    private final LongAdder _virtualTasks = new LongAdder();
+    private final LongAdder _activeVirtualTasks = new LongAdder();
+    private Executor _configuredExecutor;
+    private volatile Executor _virtualThreadsExecutor;
+    private ExecutorService _ownedExecutor;
+
+    public VirtualThreadPool()
+    {
+        this(200);
+    }
+
+    /**
+     * @param maxThreads the max number of platform threads
+     */
+    public VirtualThreadPool(@Name("maxThreads") int maxThreads)
+    {
+        super(maxThreads);
+    }
+
+    /**
+     * @param maxThreads the max number of platform threads
+     * @param minThreads the min number of platform threads
+     */
+    public VirtualThreadPool(@Name("maxThreads") int maxThreads, @Name("minThreads") int minThreads)
+    {
+        super(maxThreads, minThreads);
+    }
+
+    /**
+     * <p>Sets the executor of blocking tasks, which should create a new virtual thread per task.</p>
+     * <p>If not set, an executor is created when this pool is started, with threads
+     * named after this pool.</p>
+     *
+     * @param executor the virtual threads executor
+     */
+    public void setVirtualThreadsExecutor(Executor executor)
+    {
+        if (isRunning())
+            throw new IllegalStateException(getState());
+        _configuredExecutor = executor;
+    }
+
+    @Override
+    public Executor getVirtualThreadsExecutor()
+    {
+        return _virtualThreadsExecutor;
+    }
+
+    @ManagedAttribute("Whether blocking tasks are run in virtual threads")
+    public boolean isUseVirtualThreads()
+    {
+        return _virtualThreadsExecutor != null;
+    }
+
+    @ManagedAttribute("The number of tasks run in virtual threads")
+    public long getVirtualTasks()
+    {
+        return _virtualTasks.sum();
+    }
+
+    @ManagedAttribute("The number of tasks currently running in virtual threads")
+    public long getActiveVirtualTasks()
+    {
+        return _activeVirtualTasks.sum();
+    }
+
+    @Override
+    protected void doStart() throws Exception
+    {
+        Executor executor = _configuredExecutor;
+        if (executor == null)
+        {
+            _ownedExecutor = VirtualThreads.newVirtualThreadsExecutor(getName() + "-virtual-");
+            executor = _ownedExecutor;
+        }
+        if (executor == null)
+        {
+            LOG.warn("Virtual threads are not supported by this Java runtime, using platform threads for {}", this);
+            _virtualThreadsExecutor = null;
+        }
+        else
+        {
+            Executor virtual = executor;
+            _virtualThreadsExecutor = task -> virtual.execute(() -> runVirtual(task));
+        }
+        super.doStart();
+    }
+
+    @Override
+    protected void doStop() throws Exception
+    {
+        super.doStop();
+        _virtualThreadsExecutor = null;
+        if (_ownedExecutor != null)
+        {
+            _ownedExecutor.shutdown();
+            _ownedExecutor = null;
+        }
+    }
+
+    private void runVirtual(Runnable task)
+    {
+        _virtualTasks.increment();
+        _activeVirtualTasks.increment();
+        try
+        {
+            task.run();
+        }
+        finally
+        {
+            _activeVirtualTasks.decrement();
+        }
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s{virtual=%b,active=%d}", super.toString(), isUseVirtualThreads(), getActiveVirtualTasks());
+    }
+}
@@ -25,6 +25,7 @@ import java.util.concurrent.Executor;
 import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.LongAdder;
 
+import org.eclipse.jetty.util.VirtualThreads;
 import org.eclipse.jetty.util.annotation.ManagedAttribute;
 import org.eclipse.jetty.util.annotation.ManagedObject;
 import org.eclipse.jetty.util.annotation.ManagedOperation;
@@ -52,6 +53,9 @@ import org.eclipse.jetty.util.thread.TryExecutor;
  * indicated it is non-blocking, then this strategy will dispatch the execution of
  * the task and immediately continue production. When operating in this pattern, the
  * sub-strategy is called ProduceExecuteConsume (PEC).</p>
+ * <p>If the executor is {@link VirtualThreads.Configurable configured} to use virtual
+ * threads, blocking tasks are always dispatched to a virtual thread with the PEC
+ * sub-strategy, so that production stays on the platform threads.</p>
  * <p>The EatWhatYouKill strategy is named after a hunting proverb, in the
  * sense that one should kill(produce) only to eat(consume).</p>
  */
@@ -238,7 +242,13 @@ public class EatWhatYouKill extends ContainerLifeCycle implements ExecutionStrat
 
                 case BLOCKING:
                     // The task is blocking, so PC is not an option. Thus we choose
-                    // between EPC and PEC based on the availability of a reserved thread.
+                    // between EPC and PEC based on the availability of a reserved thread,
+                    // unless the task can be executed by a virtual thread.
+                    if (VirtualThreads.getVirtualThreadsExecutor(_executor) != null)
+                    {
+                        mode = Mode.PRODUCE_EXECUTE_CONSUME;
+                        break;
+                    }
                     synchronized (this)
                     {
                         if (_pending)
@@ -372,7 +382,14 @@ public class EatWhatYouKill extends ContainerLifeCycle implements ExecutionStrat
     {
         try
         {
-            _executor.execute(task);
+            Executor executor = _executor;
+            if (Invocable.getInvocationType(task) == Invocable.InvocationType.BLOCKING)
+            {
+                Executor virtualExecutor = VirtualThreads.getVirtualThreadsExecutor(executor);
+                if (virtualExecutor != null)
+                    executor = virtualExecutor;
+            }
+            executor.execute(task);
         }
         catch (RejectedExecutionException e)
         {
@@ -0,0 +1,89 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.lessThanOrEqualTo;
+
+public class FrequencySketchTest
+{
+    @Test
+    public void testIncrement()
+    {
+        FrequencySketch sketch = new FrequencySketch(64);
+        int hash = "/index.html".hashCode();
+        assertThat(sketch.frequency(hash), is(0));
+        for (int i = 1; i <= 10; i++)
+        {
+            sketch.increment(hash);
+            assertThat(sketch.frequency(hash), is(i));
+        }
+    }
+
+    @Test
+    public void testSaturation()
+    {
+        FrequencySketch sketch = new FrequencySketch(64);
+        int hash = "/index.html".hashCode();
+        for (int i = 0; i < 100; i++)
+        {
+            sketch.increment(hash);
+        }
+        assertThat(sketch.frequency(hash), is(15));
+    }
+
+    @Test
+    public void testHotKeyEstimatedHigherThanColdKeys()
+    {
+        FrequencySketch sketch = new FrequencySketch(512);
+        int hot = "/hot".hashCode();
+        for (int i = 0; i < 200; i++)
+        {
+            sketch.increment(hot);
+            sketch.increment(("/cold/" + i).hashCode());
+        }
+        assertThat(sketch.frequency(hot), greaterThan(sketch.frequency("/cold/7".hashCode())));
+        assertThat(sketch.frequency("/cold/7".hashCode()), lessThanOrEqualTo(2));
+    }
+
+    @Test
+    public void testAging()
+    {
+        FrequencySketch sketch = new FrequencySketch(16);
+        int hot = "/hot".hashCode();
+        for (int i = 0; i < 15; i++)
+        {
+            sketch.increment(hot);
+        }
+        assertThat(sketch.frequency(hot), is(15));
+
+        // Record enough samples to trigger the aging of the counters.
+        for (int i = 0; i < 1000; i++)
+        {
+            sketch.increment(("/other/" + i).hashCode());
+        }
+        assertThat(sketch.frequency(hot), lessThan(15));
+        assertThat(sketch.getSampleCount(), lessThan(160));
+    }
+}
@@ -19,6 +19,7 @@
 package org.eclipse.jetty.util;
 
 import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Iterator;
@@ -285,6 +286,52 @@ public class Utf8AppendableTest
         assertThat("Seq3", ret3, is("\uC3A4\uC3BC\uC3A0\uC3A1-UTF-8!!"));
     }
 
+    @ParameterizedTest
+    @MethodSource("implementations")
+    public void testAsciiRunsBetweenMultiByte(Class<Utf8Appendable> impl) throws Exception
+    {
+        String source = "0123456789abcdef\u00a4ABCDEFGHIJKLMNOPQRSTUVWXYZ\uC2B5\u0000\u0000\u0000\u0000\u0000\u0000\u0000\u0000" +
+            "\uD83D\uDE00jetty-0123456789-jetty\u10fbx";
+        byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+
+        for (int offset = 0; offset < 9; offset++)
+        {
+            byte[] shifted = new byte[bytes.length + offset];
+            System.arraycopy(bytes, 0, shifted, offset, bytes.length);
+
+            Utf8Appendable array = impl.getDeclaredConstructor().newInstance();
+            array.append(shifted, offset, bytes.length);
+            assertEquals(source, array.toString());
+
+            ByteBuffer heap = ByteBuffer.wrap(shifted, offset, bytes.length);
+            Utf8Appendable fromHeap = impl.getDeclaredConstructor().newInstance();
+            fromHeap.append(heap);
+            assertEquals(source, fromHeap.toString());
+            assertEquals(0, heap.remaining());
+
+            ByteBuffer direct = ByteBuffer.allocateDirect(shifted.length);
+            direct.put(shifted).flip().position(offset);
+            Utf8Appendable fromDirect = impl.getDeclaredConstructor().newInstance();
+            fromDirect.append(direct);
+            assertEquals(source, fromDirect.toString());
+            assertEquals(0, direct.remaining());
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource("implementations")
+    public void testInvalidAfterAsciiRun(Class<Utf8Appendable> impl) throws Exception
+    {
+        byte[] bytes = "0123456789abcdef\u00a4xyz".getBytes(StandardCharsets.UTF_8);
+        bytes[16] = (byte)0xFF;
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Utf8Appendable utf8 = impl.getDeclaredConstructor().newInstance();
+        assertThrows(NotUtf8Exception.class, () -> utf8.append(buffer));
+        assertEquals(17, buffer.position());
+        assertTrue(utf8.getPartialString().startsWith("0123456789abcdef"));
+    }
+
     @TestFactory
     public Iterator<DynamicTest> testBadUtf8()
     {
@@ -0,0 +1,143 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.util.thread;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.eclipse.jetty.util.VirtualThreads;
+import org.eclipse.jetty.util.thread.strategy.EatWhatYouKill;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.startsWith;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+public class VirtualThreadPoolTest
+{
+    private VirtualThreadPool _pool;
+
+    @AfterEach
+    public void after() throws Exception
+    {
+        if (_pool != null)
+            _pool.stop();
+    }
+
+    @Test
+    public void testFallbackToPlatformThreads() throws Exception
+    {
+        _pool = new VirtualThreadPool();
+        _pool.start();
+
+        assertThat(_pool.isUseVirtualThreads(), is(VirtualThreads.areSupported()));
+
+        CountDownLatch latch = new CountDownLatch(1);
+        _pool.execute(latch::countDown);
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testVirtualThreads() throws Exception
+    {
+        assumeTrue(VirtualThreads.areSupported());
+
+        _pool = new VirtualThreadPool();
+        _pool.setName("vtp");
+        _pool.start();
+
+        AtomicReference<Thread> thread = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(1);
+        _pool.getVirtualThreadsExecutor().execute(() ->
+        {
+            thread.set(Thread.currentThread());
+            latch.countDown();
+        });
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertTrue(VirtualThreads.isVirtualThread(thread.get()));
+        assertThat(thread.get().getName(), startsWith("vtp-virtual-"));
+    }
+
+    @Test
+    public void testEatWhatYouKillRunsBlockingTasksInVirtualThreadsExecutor() throws Exception
+    {
+        // Simulate the virtual threads with platform threads, so that the test runs on any JVM.
+        _pool = new VirtualThreadPool();
+        _pool.setVirtualThreadsExecutor(task -> new Thread(task, "virtual").start());
+        _pool.start();
+
+        BlockingQueue<Runnable> tasks = new ArrayBlockingQueue<>(4);
+        EatWhatYouKill strategy = new EatWhatYouKill(tasks::poll, _pool);
+        strategy.start();
+
+        AtomicReference<String> blocking = new AtomicReference<>();
+        AtomicReference<String> nonBlocking = new AtomicReference<>();
+        CountDownLatch latch = new CountDownLatch(2);
+        tasks.offer(() ->
+        {
+            blocking.set(Thread.currentThread().getName());
+            latch.countDown();
+        });
+        tasks.offer(new NonBlockingTask(() ->
+        {
+            nonBlocking.set(Thread.currentThread().getName());
+            latch.countDown();
+        }));
+        strategy.produce();
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals("virtual", blocking.get());
+        assertNotNull(nonBlocking.get());
+        assertThat(nonBlocking.get(), is(Thread.currentThread().getName()));
+        assertEquals(1, _pool.getVirtualTasks());
+        assertEquals(1, strategy.getPECTasksExecuted());
+
+        strategy.stop();
+    }
+
+    private static class NonBlockingTask implements Runnable, Invocable
+    {
+        private final Runnable _task;
+
+        private NonBlockingTask(Runnable task)
+        {
+            _task = task;
+        }
+
+        @Override
+        public void run()
+        {
+            _task.run();
+        }
+
+        @Override
+        public InvocationType getInvocationType()
+        {
+            return InvocationType.NON_BLOCKING;
+        }
+    }
+}
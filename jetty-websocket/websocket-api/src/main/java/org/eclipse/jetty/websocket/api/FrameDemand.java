@@ -0,0 +1,40 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.api;
+
+/**
+ * Demand for incoming WebSocket TEXT/BINARY/CONTINUATION frames, in the style of a reactive streams subscription.
+ * <p>
+ * Each data frame delivered consumes one unit of demand. When the demand is exhausted, reads from the
+ * connection are suspended, so that neither frames nor control frames are read until more demand is requested.
+ *
+ * @see WebSocketDemandListener
+ */
+public interface FrameDemand
+{
+    /**
+     * Requests that more data frames be delivered.
+     * <p>
+     * May be called from any thread, including from within a listener callback.
+     * A demand of {@link Long#MAX_VALUE} is unbounded, and never suspends reads.
+     *
+     * @param n the number of additional data frames to deliver, must be positive
+     */
+    void request(long n);
+}
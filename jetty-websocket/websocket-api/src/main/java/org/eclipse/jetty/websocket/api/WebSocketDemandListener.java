@@ -0,0 +1,37 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.api;
+
+/**
+ * WebSocket Partial Message Listener that receives frames only as fast as it demands them.
+ * <p>
+ * No frame is delivered until demand is requested through the {@link FrameDemand} given to
+ * {@link #onWebSocketDemand(FrameDemand)}. A large message can so be consumed one frame at a time,
+ * for example relaying each frame asynchronously before requesting the next one, without buffering
+ * the whole message and without blocking a thread.
+ */
+public interface WebSocketDemandListener extends WebSocketPartialListener
+{
+    /**
+     * Called once, after {@link #onWebSocketConnect(Session)}, with the demand used to request frames.
+     *
+     * @param demand the frame demand
+     */
+    void onWebSocketDemand(FrameDemand demand);
+}
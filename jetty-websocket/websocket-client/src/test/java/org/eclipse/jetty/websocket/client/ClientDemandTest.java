@@ -0,0 +1,179 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.client;
+
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.websocket.api.FrameDemand;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketDemandListener;
+import org.eclipse.jetty.websocket.common.frames.BinaryFrame;
+import org.eclipse.jetty.websocket.common.frames.ContinuationFrame;
+import org.eclipse.jetty.websocket.common.frames.TextFrame;
+import org.eclipse.jetty.websocket.common.test.BlockheadConnection;
+import org.eclipse.jetty.websocket.common.test.BlockheadServer;
+import org.eclipse.jetty.websocket.common.test.Timeouts;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClientDemandTest
+{
+    public static class DemandSocket implements WebSocketDemandListener
+    {
+        final CountDownLatch openLatch = new CountDownLatch(1);
+        final BlockingQueue<String> fragments = new LinkedBlockingQueue<>();
+        final long initialDemand;
+        final boolean demandFromCallback;
+        volatile FrameDemand demand;
+
+        public DemandSocket(long initialDemand, boolean demandFromCallback)
+        {
+            this.initialDemand = initialDemand;
+            this.demandFromCallback = demandFromCallback;
+        }
+
+        @Override
+        public void onWebSocketConnect(Session session)
+        {
+        }
+
+        @Override
+        public void onWebSocketDemand(FrameDemand demand)
+        {
+            this.demand = demand;
+            if (initialDemand > 0)
+                demand.request(initialDemand);
+            openLatch.countDown();
+        }
+
+        @Override
+        public void onWebSocketPartialBinary(ByteBuffer payload, boolean fin)
+        {
+            fragments.offer(payload.remaining() + (fin ? "!" : ""));
+            if (demandFromCallback)
+                demand.request(1);
+        }
+
+        @Override
+        public void onWebSocketPartialText(String payload, boolean fin)
+        {
+            fragments.offer(payload + (fin ? "!" : ""));
+            if (demandFromCallback)
+                demand.request(1);
+        }
+
+        @Override
+        public void onWebSocketClose(int statusCode, String reason)
+        {
+        }
+
+        @Override
+        public void onWebSocketError(Throwable cause)
+        {
+        }
+    }
+
+    private BlockheadServer server;
+    private WebSocketClient client;
+
+    @BeforeEach
+    public void start() throws Exception
+    {
+        server = new BlockheadServer();
+        server.start();
+        client = new WebSocketClient();
+        client.start();
+    }
+
+    @AfterEach
+    public void stop() throws Exception
+    {
+        client.stop();
+        server.stop();
+    }
+
+    private BlockheadConnection connect(DemandSocket socket) throws Exception
+    {
+        CompletableFuture<BlockheadConnection> serverConnFut = new CompletableFuture<>();
+        server.addConnectFuture(serverConnFut);
+        URI wsURI = server.getWsUri();
+        client.connect(socket, wsURI);
+        assertTrue(socket.openLatch.await(Timeouts.CONNECT, Timeouts.CONNECT_UNIT));
+        return serverConnFut.get(Timeouts.CONNECT, Timeouts.CONNECT_UNIT);
+    }
+
+    @Test
+    public void testFramesDeliveredOnDemand() throws Exception
+    {
+        DemandSocket socket = new DemandSocket(0, false);
+        try (BlockheadConnection serverConn = connect(socket))
+        {
+            serverConn.write(new TextFrame().setPayload("Hello").setFin(false));
+            serverConn.write(new ContinuationFrame().setPayload(" ").setFin(false));
+            serverConn.write(new ContinuationFrame().setPayload("World").setFin(true));
+
+            // No demand, no frames.
+            assertNull(socket.fragments.poll(1, TimeUnit.SECONDS));
+
+            socket.demand.request(1);
+            assertThat(socket.fragments.poll(5, TimeUnit.SECONDS), is("Hello"));
+            assertNull(socket.fragments.poll(1, TimeUnit.SECONDS));
+
+            socket.demand.request(2);
+            assertThat(socket.fragments.poll(5, TimeUnit.SECONDS), is(" "));
+            assertThat(socket.fragments.poll(5, TimeUnit.SECONDS), is("World!"));
+            assertNull(socket.fragments.poll(1, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testStreamLargeMessageDemandingFromCallback() throws Exception
+    {
+        DemandSocket socket = new DemandSocket(1, true);
+        try (BlockheadConnection serverConn = connect(socket))
+        {
+            int fragments = 64;
+            for (int i = 0; i < fragments; ++i)
+            {
+                ByteBuffer payload = BufferUtil.toBuffer(new byte[4096]);
+                serverConn.write(i == 0 ? new BinaryFrame().setPayload(payload).setFin(false)
+                    : new ContinuationFrame().setPayload(payload).setFin(i == fragments - 1));
+            }
+
+            for (int i = 0; i < fragments - 1; ++i)
+            {
+                assertThat(socket.fragments.poll(5, TimeUnit.SECONDS), is("4096"));
+            }
+            assertThat(socket.fragments.poll(5, TimeUnit.SECONDS), is("4096!"));
+        }
+    }
+}
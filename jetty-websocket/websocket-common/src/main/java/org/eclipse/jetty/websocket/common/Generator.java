@@ -28,6 +28,7 @@ import org.eclipse.jetty.websocket.api.WebSocketBehavior;
 import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.api.extensions.Extension;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
+import org.eclipse.jetty.websocket.common.io.payload.DeMaskProcessor;
 
 /**
  * Generating a frame in WebSocket land.
@@ -310,24 +311,7 @@ public class Generator
             ByteBuffer payload = frame.getPayload();
             if ((payload != null) && (payload.remaining() > 0))
             {
-                int maskOffset = 0;
-                int start = payload.position();
-                int end = payload.limit();
-                int remaining;
-                while ((remaining = end - start) > 0)
-                {
-                    if (remaining >= 4)
-                    {
-                        payload.putInt(start, payload.getInt(start) ^ maskInt);
-                        start += 4;
-                    }
-                    else
-                    {
-                        payload.put(start, (byte)(payload.get(start) ^ mask[maskOffset & 3]));
-                        ++start;
-                        ++maskOffset;
-                    }
-                }
+                DeMaskProcessor.mask(payload, payload.position(), payload.limit(), mask, maskInt, 0);
             }
         }
 
@@ -0,0 +1,394 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.Deflater;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.RetainableByteBuffer;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.util.annotation.ManagedAttribute;
+import org.eclipse.jetty.util.annotation.ManagedObject;
+import org.eclipse.jetty.util.annotation.ManagedOperation;
+import org.eclipse.jetty.util.compression.DeflaterPool;
+import org.eclipse.jetty.util.log.Log;
+import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.RemoteEndpoint;
+import org.eclipse.jetty.websocket.api.Session;
+import org.eclipse.jetty.websocket.api.WebSocketBehavior;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.Extension;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionFactory;
+import org.eclipse.jetty.websocket.api.extensions.OutgoingFrames;
+import org.eclipse.jetty.websocket.common.extensions.ExtensionStack;
+import org.eclipse.jetty.websocket.common.extensions.WebSocketExtensionFactory;
+import org.eclipse.jetty.websocket.common.extensions.compress.CompressExtension;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
+import org.eclipse.jetty.websocket.common.frames.PreEncodedFrame;
+
+/**
+ * <p>Sends the same message to many sessions, encoding it once.</p>
+ * <p>Sending a message with {@link RemoteEndpoint#sendString(String, WriteCallback)} encodes it,
+ * and compresses it if permessage-deflate has been negotiated, once per session.
+ * This class instead encodes the message once in a pooled {@link RetainableByteBuffer}
+ * that is shared by the frames written to all the server sessions that negotiated either
+ * no extensions or only permessage-deflate without outgoing context takeover, since the
+ * compressed payload then does not depend on the previous messages of the session.
+ * The buffer is released to the pool when the last write completes.</p>
+ * <p>The message is sent with the regular {@link RemoteEndpoint} API to the other sessions,
+ * such as client sessions, whose frames are masked in place, or sessions with other extensions.</p>
+ */
+@ManagedObject("Sends messages to many sessions")
+public class WebSocketBroadcaster
+{
+    private static final Logger LOG = Log.getLogger(WebSocketBroadcaster.class);
+    private static final byte[] TAIL_BYTES = new byte[]{0x00, 0x00, (byte)0xFF, (byte)0xFF};
+
+    private final LongAdder messages = new LongAdder();
+    private final LongAdder encodings = new LongAdder();
+    private final LongAdder sharedFrames = new LongAdder();
+    private final LongAdder unsharedFrames = new LongAdder();
+
+    /**
+     * <p>Sends a text message to the given sessions.</p>
+     *
+     * @param sessions the sessions to send the message to
+     * @param text the text message
+     * @param callback the callback notified once the message has been written to all the sessions,
+     * either successfully or with the first failure
+     */
+    public void broadcast(Iterable<? extends Session> sessions, String text, WriteCallback callback)
+    {
+        broadcast(sessions, OpCode.TEXT, text, ByteBuffer.wrap(text.getBytes(StandardCharsets.UTF_8)), callback);
+    }
+
+    /**
+     * <p>Sends a binary message to the given sessions.</p>
+     *
+     * @param sessions the sessions to send the message to
+     * @param data the binary message, which is not consumed
+     * @param callback the callback notified once the message has been written to all the sessions,
+     * either successfully or with the first failure
+     */
+    public void broadcast(Iterable<? extends Session> sessions, ByteBuffer data, WriteCallback callback)
+    {
+        broadcast(sessions, OpCode.BINARY, null, data.slice(), callback);
+    }
+
+    private void broadcast(Iterable<? extends Session> sessions, byte opCode, String text, ByteBuffer data, WriteCallback callback)
+    {
+        messages.increment();
+        Completion completion = new Completion(callback);
+        RetainableByteBuffer identity = null;
+        RetainableByteBuffer deflated = null;
+        try
+        {
+            for (Session session : sessions)
+            {
+                if (!session.isOpen())
+                    continue;
+
+                completion.retain();
+                try
+                {
+                    switch (getEncoding(session))
+                    {
+                        case IDENTITY:
+                            if (identity == null)
+                                identity = encode((WebSocketSession)session, data);
+                            send((WebSocketSession)session, opCode, identity, false, completion);
+                            break;
+                        case DEFLATE:
+                            if (deflated == null)
+                                deflated = deflate((WebSocketSession)session, data);
+                            send((WebSocketSession)session, opCode, deflated, true, completion);
+                            break;
+                        default:
+                            unsharedFrames.increment();
+                            if (text != null)
+                                session.getRemote().sendString(text, completion);
+                            else
+                                session.getRemote().sendBytes(data.slice(), completion);
+                            break;
+                    }
+                }
+                catch (Throwable x)
+                {
+                    if (LOG.isDebugEnabled())
+                        LOG.debug("Could not broadcast to {}", session, x);
+                    completion.writeFailed(x);
+                }
+            }
+        }
+        finally
+        {
+            // Release the references held while sending.
+            if (identity != null)
+                identity.release();
+            if (deflated != null)
+                deflated.release();
+            completion.writeSuccess();
+        }
+    }
+
+    private void send(WebSocketSession session, byte opCode, RetainableByteBuffer buffer, boolean compressed, WriteCallback callback)
+    {
+        buffer.retain();
+        PreEncodedFrame frame = new PreEncodedFrame(opCode, buffer.getBuffer().asReadOnlyBuffer(), compressed);
+        try
+        {
+            ((WebSocketRemoteEndpoint)session.getRemote()).sendPreEncoded(frame, new WriteCallback()
+            {
+                @Override
+                public void writeFailed(Throwable x)
+                {
+                    buffer.release();
+                    callback.writeFailed(x);
+                }
+
+                @Override
+                public void writeSuccess()
+                {
+                    buffer.release();
+                    callback.writeSuccess();
+                }
+            });
+            sharedFrames.increment();
+        }
+        catch (Throwable x)
+        {
+            buffer.release();
+            throw x;
+        }
+    }
+
+    private Encoding getEncoding(Session session)
+    {
+        if (!(session instanceof WebSocketSession))
+            return Encoding.NONE;
+        WebSocketSession webSocketSession = (WebSocketSession)session;
+        // Client frames are masked in place, so their payload cannot be shared.
+        if (webSocketSession.getPolicy().getBehavior() != WebSocketBehavior.SERVER)
+            return Encoding.NONE;
+        if (!(webSocketSession.getRemote() instanceof WebSocketRemoteEndpoint))
+            return Encoding.NONE;
+        OutgoingFrames outgoing = webSocketSession.getOutgoingHandler();
+        if (!(outgoing instanceof ExtensionStack))
+            return Encoding.NONE;
+        List<Extension> extensions = ((ExtensionStack)outgoing).getExtensions();
+        if (extensions == null)
+            return Encoding.NONE;
+        if (extensions.isEmpty())
+            return Encoding.IDENTITY;
+        if (extensions.size() == 1 && extensions.get(0) instanceof PerMessageDeflateExtension)
+        {
+            // A shared payload is compressed on its own and with the largest window.
+            PerMessageDeflateExtension deflate = (PerMessageDeflateExtension)extensions.get(0);
+            if (!deflate.isOutgoingContextTakeover() && deflate.getOutgoingWindowBits() == CompressExtension.MAX_WINDOW_BITS)
+                return Encoding.DEFLATE;
+        }
+        return Encoding.NONE;
+    }
+
+    private RetainableByteBuffer encode(WebSocketSession session, ByteBuffer data)
+    {
+        encodings.increment();
+        ByteBufferPool bufferPool = session.getBufferPool();
+        RetainableByteBuffer buffer = new RetainableByteBuffer(bufferPool, data.remaining(), true);
+        BufferUtil.append(buffer.getBuffer(), data.slice());
+        return buffer;
+    }
+
+    private RetainableByteBuffer deflate(WebSocketSession session, ByteBuffer data)
+    {
+        encodings.increment();
+        byte[] input;
+        int offset;
+        int length = data.remaining();
+        if (data.hasArray())
+        {
+            input = data.array();
+            offset = data.arrayOffset() + data.position();
+        }
+        else
+        {
+            input = new byte[length];
+            data.slice().get(input);
+            offset = 0;
+        }
+
+        DeflaterPool deflaterPool = null;
+        ExtensionFactory extensionFactory = session.getExtensionFactory();
+        if (extensionFactory instanceof WebSocketExtensionFactory)
+            deflaterPool = ((WebSocketExtensionFactory)extensionFactory).getDeflaterPool();
+        Deflater deflater = deflaterPool == null ? new Deflater(Deflater.DEFAULT_COMPRESSION, true) : deflaterPool.acquire();
+        try
+        {
+            deflater.setInput(input, offset, length);
+            byte[] output = new byte[Math.max(256, length / 2)];
+            int compressed = 0;
+            while (true)
+            {
+                compressed += deflater.deflate(output, compressed, output.length - compressed, Deflater.SYNC_FLUSH);
+                if (compressed < output.length)
+                    break;
+                byte[] larger = new byte[output.length * 2];
+                System.arraycopy(output, 0, larger, 0, compressed);
+                output = larger;
+            }
+
+            // The tail bytes generated by SYNC_FLUSH are dropped
+            // from the last frame of a message, see RFC 7692.
+            if (endsWithTail(output, compressed))
+                compressed -= TAIL_BYTES.length;
+            if (compressed == 0)
+                output[compressed++] = 0x00;
+
+            RetainableByteBuffer buffer = new RetainableByteBuffer(session.getBufferPool(), compressed, true);
+            BufferUtil.append(buffer.getBuffer(), output, 0, compressed);
+            return buffer;
+        }
+        finally
+        {
+            if (deflaterPool == null)
+                deflater.end();
+            else
+                deflaterPool.release(deflater);
+        }
+    }
+
+    private static boolean endsWithTail(byte[] bytes, int length)
+    {
+        if (length < TAIL_BYTES.length)
+            return false;
+        for (int i = 0; i < TAIL_BYTES.length; ++i)
+        {
+            if (bytes[length - TAIL_BYTES.length + i] != TAIL_BYTES[i])
+                return false;
+        }
+        return true;
+    }
+
+    @ManagedAttribute("The number of messages broadcast")
+    public long getMessages()
+    {
+        return messages.longValue();
+    }
+
+    @ManagedAttribute("The number of times a message was encoded to be shared")
+    public long getEncodings()
+    {
+        return encodings.longValue();
+    }
+
+    @ManagedAttribute("The number of frames sent with a shared payload")
+    public long getSharedFrames()
+    {
+        return sharedFrames.longValue();
+    }
+
+    @ManagedAttribute("The number of frames encoded for a single session")
+    public long getUnsharedFrames()
+    {
+        return unsharedFrames.longValue();
+    }
+
+    @ManagedOperation(value = "Resets the statistics", impact = "ACTION")
+    public void resetStatistics()
+    {
+        messages.reset();
+        encodings.reset();
+        sharedFrames.reset();
+        unsharedFrames.reset();
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[messages=%d,encodings=%d,shared/unshared=%d/%d]",
+            getClass().getSimpleName(),
+            hashCode(),
+            getMessages(),
+            getEncodings(),
+            getSharedFrames(),
+            getUnsharedFrames());
+    }
+
+    private enum Encoding
+    {
+        NONE, IDENTITY, DEFLATE
+    }
+
+    /**
+     * <p>Notifies the broadcast callback once the writes to all the sessions have completed.</p>
+     * <p>The count starts at one for the broadcast loop itself, so that the callback
+     * cannot be notified before all the writes have been initiated.</p>
+     */
+    private static class Completion implements WriteCallback
+    {
+        private final AtomicInteger count = new AtomicInteger(1);
+        private final AtomicReference<Throwable> failure = new AtomicReference<>();
+        private final WriteCallback callback;
+
+        private Completion(WriteCallback callback)
+        {
+            this.callback = callback;
+        }
+
+        private void retain()
+        {
+            count.incrementAndGet();
+        }
+
+        @Override
+        public void writeFailed(Throwable x)
+        {
+            failure.compareAndSet(null, x);
+            writeSuccess();
+        }
+
+        @Override
+        public void writeSuccess()
+        {
+            if (count.decrementAndGet() != 0)
+                return;
+            if (callback == null)
+                return;
+            Throwable x = failure.get();
+            try
+            {
+                if (x == null)
+                    callback.writeSuccess();
+                else
+                    callback.writeFailed(x);
+            }
+            catch (Throwable t)
+            {
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Exception while notifying callback " + callback, t);
+            }
+        }
+    }
+}
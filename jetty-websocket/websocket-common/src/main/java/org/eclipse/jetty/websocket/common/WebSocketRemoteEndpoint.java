@@ -39,6 +39,7 @@ import org.eclipse.jetty.websocket.common.frames.ContinuationFrame;
 import org.eclipse.jetty.websocket.common.frames.DataFrame;
 import org.eclipse.jetty.websocket.common.frames.PingFrame;
 import org.eclipse.jetty.websocket.common.frames.PongFrame;
+import org.eclipse.jetty.websocket.common.frames.PreEncodedFrame;
 import org.eclipse.jetty.websocket.common.frames.TextFrame;
 import org.eclipse.jetty.websocket.common.io.FrameFlusher;
 import org.eclipse.jetty.websocket.common.io.FutureWriteCallback;
@@ -301,6 +302,30 @@ public class WebSocketRemoteEndpoint implements RemoteEndpoint
         }
     }
 
+    /**
+     * Asynchronous write of a message already encoded for the extensions of this endpoint.
+     *
+     * @param frame the pre-encoded message
+     * @param callback the callback notified when the write completes
+     * @see WebSocketBroadcaster
+     */
+    public void sendPreEncoded(PreEncodedFrame frame, WriteCallback callback)
+    {
+        lockMsg(MsgType.ASYNC);
+        try
+        {
+            if (LOG.isDebugEnabled())
+            {
+                LOG.debug("sendPreEncoded({},{})", frame, callback);
+            }
+            uncheckedSendFrame(frame, callback == null ? NOOP_CALLBACK : callback);
+        }
+        finally
+        {
+            unlockMsg(MsgType.ASYNC);
+        }
+    }
+
     public void uncheckedSendFrame(WebSocketFrame frame, WriteCallback callback)
     {
         BatchMode batchMode = BatchMode.OFF;
@@ -28,7 +28,10 @@ import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Utf8StringBuilder;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
+import org.eclipse.jetty.websocket.api.FrameDemand;
+import org.eclipse.jetty.websocket.api.SuspendToken;
 import org.eclipse.jetty.websocket.api.WebSocketConnectionListener;
+import org.eclipse.jetty.websocket.api.WebSocketDemandListener;
 import org.eclipse.jetty.websocket.api.WebSocketFrameListener;
 import org.eclipse.jetty.websocket.api.WebSocketListener;
 import org.eclipse.jetty.websocket.api.WebSocketPartialListener;
@@ -57,6 +60,7 @@ public class JettyListenerEventDriver extends AbstractEventDriver
     private Utf8StringBuilder utf8Partial;
     private PartialMode partialMode = PartialMode.NONE;
     private boolean hasCloseBeenCalled = false;
+    private ListenerFrameDemand demand;
 
     public JettyListenerEventDriver(WebSocketPolicy policy, WebSocketConnectionListener listener)
     {
@@ -157,6 +161,13 @@ public class JettyListenerEventDriver extends AbstractEventDriver
             LOG.debug("onConnect({}) - listener={}", session, this.listener.getClass().getName());
         }
         listener.onWebSocketConnect(session);
+
+        if (listener instanceof WebSocketDemandListener)
+        {
+            demand = new ListenerFrameDemand();
+            ((WebSocketDemandListener)listener).onWebSocketDemand(demand);
+            demand.suspendIfNoDemand();
+        }
     }
 
     @Override
@@ -169,6 +180,14 @@ public class JettyListenerEventDriver extends AbstractEventDriver
         listener.onWebSocketError(cause);
     }
 
+    @Override
+    public void incomingFrame(Frame frame)
+    {
+        super.incomingFrame(frame);
+        if (demand != null && frame.getType().isData())
+            demand.consume();
+    }
+
     @Override
     public void onFrame(Frame frame)
     {
@@ -336,4 +355,73 @@ public class JettyListenerEventDriver extends AbstractEventDriver
     {
         return String.format("%s[%s]", JettyListenerEventDriver.class.getSimpleName(), listener.getClass().getName());
     }
+
+    /**
+     * <p>Suspends reads from the connection when the demand is exhausted,
+     * and resumes them when more demand is requested.</p>
+     */
+    private class ListenerFrameDemand implements FrameDemand
+    {
+        private long demand;
+        private SuspendToken suspendToken;
+
+        @Override
+        public void request(long n)
+        {
+            if (n <= 0)
+                throw new IllegalArgumentException("Invalid demand " + n);
+
+            SuspendToken token;
+            synchronized (this)
+            {
+                demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                token = suspendToken;
+                suspendToken = null;
+            }
+
+            if (LOG.isDebugEnabled())
+                LOG.debug("request({}) resume={} {}", n, token != null, this);
+            if (token != null)
+                token.resume();
+        }
+
+        private void consume()
+        {
+            synchronized (this)
+            {
+                if (demand > 0 && demand < Long.MAX_VALUE)
+                    --demand;
+            }
+            suspendIfNoDemand();
+        }
+
+        private void suspendIfNoDemand()
+        {
+            synchronized (this)
+            {
+                // Suspending while holding the lock orders it before the resume of a concurrent request().
+                if (demand > 0 || suspendToken != null || !session.isOpen())
+                    return;
+
+                try
+                {
+                    suspendToken = session.suspend();
+                }
+                catch (IllegalStateException x)
+                {
+                    // Already suspended by the application, or closing.
+                    LOG.ignore(x);
+                }
+            }
+        }
+
+        @Override
+        public String toString()
+        {
+            synchronized (this)
+            {
+                return String.format("%s@%x[demand=%d,suspended=%b]", getClass().getSimpleName(), hashCode(), demand, suspendToken != null);
+            }
+        }
+    }
 }
@@ -33,6 +33,7 @@ import org.eclipse.jetty.websocket.api.extensions.Extension;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionFactory;
 import org.eclipse.jetty.websocket.common.extensions.compress.CompressExtension;
+import org.eclipse.jetty.websocket.common.extensions.compress.PerMessageDeflateExtension;
 import org.eclipse.jetty.websocket.common.scopes.WebSocketContainerScope;
 
 public class WebSocketExtensionFactory extends ExtensionFactory implements LifeCycle, Dumpable
@@ -41,6 +42,9 @@ public class WebSocketExtensionFactory extends ExtensionFactory implements LifeC
     private final WebSocketContainerScope container;
     private final InflaterPool inflaterPool;
     private final DeflaterPool deflaterPool;
+    private boolean compressIdleRelease;
+    private byte[] compressPresetDictionary;
+    private int deflateMaxWindowBits = CompressExtension.MAX_WINDOW_BITS;
 
     public WebSocketExtensionFactory(WebSocketContainerScope container)
     {
@@ -80,6 +84,60 @@ public class WebSocketExtensionFactory extends ExtensionFactory implements LifeC
         return deflaterPool;
     }
 
+    /**
+     * @return whether compression extensions release their compressors when a message is complete
+     * @see CompressExtension#setIdleRelease(boolean)
+     */
+    public boolean isCompressIdleRelease()
+    {
+        return compressIdleRelease;
+    }
+
+    /**
+     * @param compressIdleRelease whether compression extensions release their compressors when a message is complete
+     * @see CompressExtension#setIdleRelease(boolean)
+     */
+    public void setCompressIdleRelease(boolean compressIdleRelease)
+    {
+        this.compressIdleRelease = compressIdleRelease;
+    }
+
+    /**
+     * @return the dictionary compression contexts start with, or null
+     * @see CompressExtension#setPresetDictionary(byte[])
+     */
+    public byte[] getCompressPresetDictionary()
+    {
+        return compressPresetDictionary;
+    }
+
+    /**
+     * @param compressPresetDictionary the dictionary compression contexts start with, or null
+     * @see CompressExtension#setPresetDictionary(byte[])
+     */
+    public void setCompressPresetDictionary(byte[] compressPresetDictionary)
+    {
+        this.compressPresetDictionary = compressPresetDictionary;
+    }
+
+    /**
+     * @return the largest LZ77 window size, as a power of 2, negotiated by permessage-deflate
+     * @see PerMessageDeflateExtension#setMaxWindowBits(int)
+     */
+    public int getDeflateMaxWindowBits()
+    {
+        return deflateMaxWindowBits;
+    }
+
+    /**
+     * @param deflateMaxWindowBits the largest LZ77 window size, as a power of 2, negotiated by permessage-deflate
+     * @see PerMessageDeflateExtension#setMaxWindowBits(int)
+     */
+    public void setDeflateMaxWindowBits(int deflateMaxWindowBits)
+    {
+        this.deflateMaxWindowBits = deflateMaxWindowBits;
+    }
+
     @Override
     public Extension newInstance(ExtensionConfig config)
     {
@@ -114,6 +172,13 @@ public class WebSocketExtensionFactory extends ExtensionFactory implements LifeC
                 CompressExtension cext = (CompressExtension)ext;
                 cext.setInflaterPool(inflaterPool);
                 cext.setDeflaterPool(deflaterPool);
+                cext.setIdleRelease(compressIdleRelease);
+                cext.setPresetDictionary(compressPresetDictionary);
+            }
+            if (ext instanceof PerMessageDeflateExtension)
+            {
+                // Negotiates the configuration again with the max window bits.
+                ((PerMessageDeflateExtension)ext).setMaxWindowBits(deflateMaxWindowBits);
             }
 
             return ext;
@@ -41,6 +41,7 @@ import org.eclipse.jetty.websocket.api.extensions.Frame;
 import org.eclipse.jetty.websocket.common.OpCode;
 import org.eclipse.jetty.websocket.common.extensions.AbstractExtension;
 import org.eclipse.jetty.websocket.common.frames.DataFrame;
+import org.eclipse.jetty.websocket.common.frames.PreEncodedFrame;
 
 public abstract class CompressExtension extends AbstractExtension
 {
@@ -72,6 +73,15 @@ public abstract class CompressExtension extends AbstractExtension
      */
     protected static final int RSV_USE_ONLY_FIRST = 1;
 
+    /**
+     * Smallest LZ77 window size, as a power of 2, that can be negotiated
+     */
+    public static final int MIN_WINDOW_BITS = 8;
+    /**
+     * Largest LZ77 window size, as a power of 2, which is the window size of {@link Deflater} and {@link Inflater}
+     */
+    public static final int MAX_WINDOW_BITS = 15;
+
     /**
      * Inflater / Decompressed Buffer Size
      */
@@ -93,6 +103,10 @@ public abstract class CompressExtension extends AbstractExtension
     private InflaterPool inflaterPool;
     private Deflater deflaterImpl;
     private Inflater inflaterImpl;
+    private DeflateWindow deflaterWindow;
+    private DeflateWindow inflaterWindow;
+    private boolean idleRelease;
+    private byte[] presetDictionary;
     protected AtomicInteger decompressCount = new AtomicInteger(0);
     private int tailDrop = TAIL_DROP_NEVER;
     private int rsvUse = RSV_USE_ALWAYS;
@@ -113,11 +127,86 @@ public abstract class CompressExtension extends AbstractExtension
         this.deflaterPool = deflaterPool;
     }
 
+    /**
+     * @return whether the {@link Deflater} and the {@link Inflater} are released to their pools
+     * when a message is complete
+     */
+    public boolean isIdleRelease()
+    {
+        return idleRelease;
+    }
+
+    /**
+     * <p>Sets whether the {@link Deflater} and the {@link Inflater} are released to their pools
+     * when a message is complete, rather than held for the lifetime of the connection.</p>
+     * <p>When the compression context is taken over from one message to the next, only the
+     * LZ77 window is retained, which is much smaller than the native state of the compressors,
+     * and is used as dictionary when the compressors are acquired again.</p>
+     *
+     * @param idleRelease whether to release the compressors of idle connections
+     */
+    public void setIdleRelease(boolean idleRelease)
+    {
+        this.idleRelease = idleRelease;
+    }
+
+    /**
+     * @return the dictionary the compression context starts with, or null
+     */
+    public byte[] getPresetDictionary()
+    {
+        return presetDictionary;
+    }
+
+    /**
+     * <p>Sets the dictionary the compression context starts with, and is reset to.</p>
+     * <p>The dictionary is not negotiated, so the remote peer must be configured with the same one.</p>
+     *
+     * @param presetDictionary the preset dictionary, or null for none
+     */
+    public void setPresetDictionary(byte[] presetDictionary)
+    {
+        this.presetDictionary = presetDictionary;
+    }
+
+    /**
+     * @return whether the compression context of outgoing messages is kept from one message to the next
+     */
+    public boolean isOutgoingContextTakeover()
+    {
+        return true;
+    }
+
+    /**
+     * @return whether the compression context of incoming messages is kept from one message to the next
+     */
+    public boolean isIncomingContextTakeover()
+    {
+        return true;
+    }
+
+    /**
+     * @return the LZ77 window size of outgoing messages, as a power of 2
+     */
+    public int getOutgoingWindowBits()
+    {
+        return MAX_WINDOW_BITS;
+    }
+
+    /**
+     * @return the LZ77 window size of incoming messages, as a power of 2
+     */
+    public int getIncomingWindowBits()
+    {
+        return MAX_WINDOW_BITS;
+    }
+
     public Deflater getDeflater()
     {
         if (deflaterImpl == null)
         {
             deflaterImpl = deflaterPool.acquire();
+            primeDeflater();
         }
         return deflaterImpl;
     }
@@ -127,10 +216,117 @@ public abstract class CompressExtension extends AbstractExtension
         if (inflaterImpl == null)
         {
             inflaterImpl = inflaterPool.acquire();
+            primeInflater();
         }
         return inflaterImpl;
     }
 
+    private DeflateWindow getDeflaterWindow()
+    {
+        if (deflaterWindow == null)
+        {
+            int bits = getOutgoingWindowBits();
+            if (bits < MAX_WINDOW_BITS)
+            {
+                // Half of the window primes the Deflater and half is compressed,
+                // so that no back reference reaches farther than the window.
+                deflaterWindow = new DeflateWindow(1 << (bits - 1), presetDictionary);
+            }
+            else if (idleRelease && isOutgoingContextTakeover())
+            {
+                deflaterWindow = new DeflateWindow(1 << bits, presetDictionary);
+            }
+        }
+        return deflaterWindow;
+    }
+
+    private DeflateWindow getInflaterWindow()
+    {
+        if (inflaterWindow == null && idleRelease && isIncomingContextTakeover())
+            inflaterWindow = new DeflateWindow(1 << getIncomingWindowBits(), presetDictionary);
+        return inflaterWindow;
+    }
+
+    private void primeDeflater()
+    {
+        DeflateWindow window = getDeflaterWindow();
+        if (window != null)
+            window.prime(deflaterImpl);
+        else if (presetDictionary != null)
+            deflaterImpl.setDictionary(presetDictionary);
+    }
+
+    private void primeInflater()
+    {
+        DeflateWindow window = getInflaterWindow();
+        if (window != null)
+            window.prime(inflaterImpl);
+        else if (presetDictionary != null)
+            inflaterImpl.setDictionary(presetDictionary);
+    }
+
+    /**
+     * <p>Resets the compression context of outgoing messages, back to the preset dictionary if any.</p>
+     */
+    protected void resetDeflater()
+    {
+        if (deflaterWindow != null)
+            deflaterWindow.reset();
+        if (deflaterImpl != null)
+        {
+            deflaterImpl.reset();
+            primeDeflater();
+        }
+    }
+
+    /**
+     * <p>Resets the compression context of incoming messages, back to the preset dictionary if any.</p>
+     */
+    protected void resetInflater()
+    {
+        if (inflaterWindow != null)
+            inflaterWindow.reset();
+        if (inflaterImpl != null)
+        {
+            inflaterImpl.reset();
+            primeInflater();
+        }
+    }
+
+    private void releaseDeflater()
+    {
+        if (deflaterImpl != null)
+        {
+            deflaterPool.release(deflaterImpl);
+            deflaterImpl = null;
+        }
+    }
+
+    private void releaseInflater()
+    {
+        if (inflaterImpl != null)
+        {
+            inflaterPool.release(inflaterImpl);
+            inflaterImpl = null;
+        }
+    }
+
+    /**
+     * @return the number of {@link Deflater} and {@link Inflater} instances held
+     */
+    int getHeldCompressors()
+    {
+        return (deflaterImpl == null ? 0 : 1) + (inflaterImpl == null ? 0 : 1);
+    }
+
+    /**
+     * @return the number of bytes retained by the LZ77 windows
+     */
+    int getWindowBytes()
+    {
+        return (deflaterWindow == null ? 0 : deflaterWindow.getLength()) + (inflaterWindow == null ? 0 : inflaterWindow.getLength());
+    }
+
     /**
      * Indicates use of RSV1 flag for indicating deflation is in use.
      */
@@ -172,6 +368,9 @@ public abstract class CompressExtension extends AbstractExtension
         {
             getBufferPool().release(buffer);
         }
+
+        if (idleRelease && frame.isFin())
+            releaseInflater();
     }
 
     protected ByteAccumulator newByteAccumulator()
@@ -202,6 +401,8 @@ public abstract class CompressExtension extends AbstractExtension
                 int decompressed = inflater.inflate(buffer.array(), buffer.arrayOffset() + buffer.limit(), buffer.capacity() - buffer.limit());
                 buffer.limit(buffer.limit() + decompressed);
                 accumulator.addLength(decompressed);
+                if (inflaterWindow != null)
+                    inflaterWindow.append(buffer.array(), buffer.arrayOffset() + buffer.limit() - decompressed, decompressed);
                 if (LOG.isDebugEnabled())
                     LOG.debug("Decompressed {} bytes into buffer {} from {}", decompressed, BufferUtil.toDetailString(buffer), toDetail(inflater));
 
@@ -382,18 +583,8 @@ public abstract class CompressExtension extends AbstractExtension
     @Override
     protected void doStop() throws Exception
     {
-        if (deflaterImpl != null)
-        {
-            deflaterPool.release(deflaterImpl);
-            deflaterImpl = null;
-        }
-
-        if (inflaterImpl != null)
-        {
-            inflaterPool.release(inflaterImpl);
-            inflaterImpl = null;
-        }
-
+        releaseDeflater();
+        releaseInflater();
         super.doStop();
     }
 
@@ -427,6 +618,7 @@ public abstract class CompressExtension extends AbstractExtension
     {
         private FrameEntry current;
         private boolean finished = true;
+        private boolean fragmented;
 
         @Override
         public void failed(Throwable x)
@@ -446,7 +638,11 @@ public abstract class CompressExtension extends AbstractExtension
                 if (LOG.isDebugEnabled())
                     LOG.debug("Processing {}", current);
                 if (current == null)
+                {
+                    if (idleRelease && !fragmented)
+                        releaseDeflater();
                     return Action.IDLE;
+                }
                 deflate(current);
             }
             else
@@ -467,6 +663,13 @@ public abstract class CompressExtension extends AbstractExtension
                 return;
             }
 
+            if (frame instanceof PreEncodedFrame && ((PreEncodedFrame)frame).isCompressed())
+            {
+                // Do not deflate frames already deflated by the application
+                nextOutgoingFrame(frame, this, batchMode);
+                return;
+            }
+
             compress(entry, true);
         }
 
@@ -487,25 +690,30 @@ public abstract class CompressExtension extends AbstractExtension
             if (LOG.isDebugEnabled())
                 LOG.debug("Compressing {}: {} bytes in {} bytes chunk", entry, remaining, outputLength);
 
+            fragmented = !fin;
+            DeflateWindow window = deflaterWindow;
+            boolean bounded = getOutgoingWindowBits() < MAX_WINDOW_BITS;
+            ByteBuffer input = data.slice();
+
             ByteBuffer payload = BufferUtil.EMPTY_BUFFER;
             WriteCallback callback = this;
-            if (!deflater.needsInput() || supplyInput(deflater, data))
+            if (bounded ? data.hasRemaining() : (!deflater.needsInput() || supplyInput(deflater, data)))
             {
                 ByteBufferPool bufferPool = getBufferPool();
                 try (ByteBufferAccumulator accumulator = new ByteBufferAccumulator(bufferPool, false))
                 {
-                    while (true)
+                    if (bounded)
                     {
-                        // The buffer returned by the accumulator might not be empty, so we must append starting from the limit.
-                        ByteBuffer buffer = accumulator.ensureBuffer(8, outputLength);
-                        int compressed = deflater.deflate(buffer.array(), buffer.arrayOffset() + buffer.limit(), buffer.capacity() - buffer.limit(), Deflater.SYNC_FLUSH);
-                        buffer.limit(buffer.limit() + compressed);
-
-                        if (LOG.isDebugEnabled())
-                            LOG.debug("Wrote {} bytes to output buffer", accumulator);
-
-                        if (compressed <= 0)
-                            break;
+                        compressBounded(deflater, window, data, accumulator, outputLength);
+                    }
+                    else
+                    {
+                        compress(deflater, accumulator, outputLength);
+                        if (window != null)
+                        {
+                            input.limit(remaining - data.remaining());
+                            window.append(input);
+                        }
                     }
 
                     ByteBuffer buffer = accumulator.takeByteBuffer();
@@ -580,6 +788,43 @@ public abstract class CompressExtension extends AbstractExtension
             nextOutgoingFrame(chunk, callback, entry.batchMode);
         }
 
+        private void compress(Deflater deflater, ByteBufferAccumulator accumulator, int outputLength)
+        {
+            while (true)
+            {
+                // The buffer returned by the accumulator might not be empty, so we must append starting from the limit.
+                ByteBuffer buffer = accumulator.ensureBuffer(8, outputLength);
+                int compressed = deflater.deflate(buffer.array(), buffer.arrayOffset() + buffer.limit(), buffer.capacity() - buffer.limit(), Deflater.SYNC_FLUSH);
+                buffer.limit(buffer.limit() + compressed);
+
+                if (LOG.isDebugEnabled())
+                    LOG.debug("Wrote {} bytes to output buffer", accumulator);
+
+                if (compressed <= 0)
+                    break;
+            }
+        }
+
+        private void compressBounded(Deflater deflater, DeflateWindow window, ByteBuffer data, ByteBufferAccumulator accumulator, int outputLength)
+        {
+            // The Deflater always uses the largest window, so it is restarted every half
+            // window, primed with the previous half window, to honour a smaller window.
+            while (data.hasRemaining())
+            {
+                ByteBuffer chunk = data.slice();
+                chunk.limit(Math.min(chunk.remaining(), window.getSize()));
+                data.position(data.position() + chunk.remaining());
+
+                deflater.reset();
+                window.prime(deflater);
+                window.append(chunk);
+                while (supplyInput(deflater, chunk))
+                {
+                    compress(deflater, accumulator, outputLength);
+                }
+            }
+        }
+
         @Override
         protected void onCompleteSuccess()
         {
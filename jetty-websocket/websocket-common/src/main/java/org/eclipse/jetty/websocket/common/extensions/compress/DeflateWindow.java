@@ -0,0 +1,139 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.extensions.compress;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * <p>The most recent uncompressed bytes of one direction of a deflate stream.</p>
+ * <p>Since a deflate stream may only refer back to its window, a {@link Deflater}
+ * or an {@link Inflater} can be released to its pool between messages and a fresh
+ * one primed with {@code setDictionary(...)} later, without the other peer noticing.</p>
+ * <p>The bytes are kept in a circular buffer that is allocated on first use.</p>
+ */
+class DeflateWindow
+{
+    private final int size;
+    private final byte[] dictionary;
+    private byte[] bytes;
+    private int end;
+    private int length;
+
+    /**
+     * @param size the max number of bytes kept
+     * @param dictionary the preset dictionary the window starts with, or null
+     */
+    DeflateWindow(int size, byte[] dictionary)
+    {
+        this.size = size;
+        this.dictionary = dictionary;
+        reset();
+    }
+
+    int getSize()
+    {
+        return size;
+    }
+
+    int getLength()
+    {
+        return length;
+    }
+
+    /**
+     * <p>Empties the window back to the preset dictionary, if any.</p>
+     */
+    void reset()
+    {
+        end = 0;
+        length = 0;
+        if (dictionary != null)
+            append(dictionary, 0, dictionary.length);
+    }
+
+    /**
+     * <p>Appends the remaining bytes of the given buffer, without consuming them.</p>
+     *
+     * @param buffer the uncompressed bytes
+     */
+    void append(ByteBuffer buffer)
+    {
+        if (buffer.hasArray())
+        {
+            append(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        else
+        {
+            ByteBuffer slice = buffer.slice();
+            if (slice.remaining() > size)
+                slice.position(slice.remaining() - size);
+            byte[] copy = new byte[slice.remaining()];
+            slice.get(copy);
+            append(copy, 0, copy.length);
+        }
+    }
+
+    void append(byte[] b, int offset, int len)
+    {
+        if (len <= 0)
+            return;
+        if (bytes == null)
+            bytes = new byte[size];
+        if (len > size)
+        {
+            offset += len - size;
+            len = size;
+        }
+        int chunk = Math.min(len, size - end);
+        System.arraycopy(b, offset, bytes, end, chunk);
+        System.arraycopy(b, offset + chunk, bytes, 0, len - chunk);
+        end = (end + len) % size;
+        length = Math.min(size, length + len);
+    }
+
+    void prime(Deflater deflater)
+    {
+        if (length > 0)
+            deflater.setDictionary(toArray());
+    }
+
+    void prime(Inflater inflater)
+    {
+        if (length > 0)
+            inflater.setDictionary(toArray());
+    }
+
+    private byte[] toArray()
+    {
+        byte[] result = new byte[length];
+        int start = (end - length + size) % size;
+        int chunk = Math.min(length, size - start);
+        System.arraycopy(bytes, start, result, 0, chunk);
+        System.arraycopy(bytes, 0, result, chunk, length - chunk);
+        return result;
+    }
+
+    @Override
+    public String toString()
+    {
+        return String.format("%s@%x[%d/%d]", getClass().getSimpleName(), hashCode(), length, size);
+    }
+}
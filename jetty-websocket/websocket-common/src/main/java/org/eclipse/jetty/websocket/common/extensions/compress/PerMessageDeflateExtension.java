@@ -21,11 +21,14 @@ package org.eclipse.jetty.websocket.common.extensions.compress;
 import java.nio.ByteBuffer;
 import java.util.zip.DataFormatException;
 
+import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.util.log.Log;
 import org.eclipse.jetty.util.log.Logger;
 import org.eclipse.jetty.websocket.api.BadPayloadException;
 import org.eclipse.jetty.websocket.api.BatchMode;
 import org.eclipse.jetty.websocket.api.ProtocolException;
+import org.eclipse.jetty.websocket.api.WebSocketBehavior;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
 import org.eclipse.jetty.websocket.api.WriteCallback;
 import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
 import org.eclipse.jetty.websocket.api.extensions.Frame;
@@ -45,6 +48,9 @@ public class PerMessageDeflateExtension extends CompressExtension
     private boolean incomingContextTakeover = true;
     private boolean outgoingContextTakeover = true;
     private boolean incomingCompressed;
+    private int maxWindowBits = MAX_WINDOW_BITS;
+    private int outgoingWindowBits = MAX_WINDOW_BITS;
+    private int incomingWindowBits = MAX_WINDOW_BITS;
 
     @Override
     public String getName()
@@ -52,6 +58,60 @@ public class PerMessageDeflateExtension extends CompressExtension
         return "permessage-deflate";
     }
 
+    @Override
+    public boolean isOutgoingContextTakeover()
+    {
+        return outgoingContextTakeover;
+    }
+
+    @Override
+    public boolean isIncomingContextTakeover()
+    {
+        return incomingContextTakeover;
+    }
+
+    @Override
+    public int getOutgoingWindowBits()
+    {
+        return outgoingWindowBits;
+    }
+
+    @Override
+    public int getIncomingWindowBits()
+    {
+        return incomingWindowBits;
+    }
+
+    /**
+     * @return the largest LZ77 window size, as a power of 2, that a server negotiates
+     */
+    public int getMaxWindowBits()
+    {
+        return maxWindowBits;
+    }
+
+    /**
+     * <p>Sets the largest LZ77 window size, as a power of 2, that a server negotiates.</p>
+     * <p>A smaller window reduces the memory retained by idle connections, see
+     * {@link #setIdleRelease(boolean)}, at the cost of a lower compression ratio.
+     * If the configuration has already been set, it is negotiated again.</p>
+     *
+     * @param maxWindowBits the max window bits, between 8 and 15
+     */
+    public void setMaxWindowBits(int maxWindowBits)
+    {
+        this.maxWindowBits = checkWindowBits(maxWindowBits);
+        if (configRequested != null && getPolicy() != null)
+            negotiate();
+    }
+
+    private static int checkWindowBits(int windowBits)
+    {
+        if (windowBits < MIN_WINDOW_BITS || windowBits > MAX_WINDOW_BITS)
+            throw new IllegalArgumentException("Invalid window bits: " + windowBits);
+        return windowBits;
+    }
+
     @Override
     public void incomingFrame(Frame frame)
     {
@@ -106,7 +166,7 @@ public class PerMessageDeflateExtension extends CompressExtension
             if (LOG.isDebugEnabled())
                 LOG.debug("Incoming Context Reset");
             decompressCount.set(0);
-            getInflater().reset();
+            resetInflater();
         }
         super.nextIncomingFrame(frame);
     }
@@ -118,7 +178,7 @@ public class PerMessageDeflateExtension extends CompressExtension
         {
             if (LOG.isDebugEnabled())
                 LOG.debug("Outgoing Context Reset");
-            getDeflater().reset();
+            resetDeflater();
         }
         super.nextOutgoingFrame(frame, callback, batchMode);
     }
@@ -135,11 +195,47 @@ public class PerMessageDeflateExtension extends CompressExtension
         return TAIL_DROP_FIN_ONLY;
     }
 
+    @Override
+    public void init(WebSocketPolicy policy, ByteBufferPool bufferPool)
+    {
+        super.init(policy, bufferPool);
+        if (configRequested != null && policy != null)
+            negotiate();
+    }
+
+    @Override
+    public void setPolicy(WebSocketPolicy policy)
+    {
+        super.setPolicy(policy);
+        if (configRequested != null && policy != null)
+            negotiate();
+    }
+
+    /**
+     * <p>Sets the requested configuration, which is negotiated when the
+     * {@link #getPolicy() policy} is known, as it depends on whether this
+     * extension is used by a client or by a server.</p>
+     */
     @Override
     public void setConfig(final ExtensionConfig config)
     {
         configRequested = new ExtensionConfig(config);
         configNegotiated = new ExtensionConfig(config.getName());
+        if (getPolicy() == null)
+            super.setConfig(configNegotiated);
+        else
+            negotiate();
+    }
+
+    private void negotiate()
+    {
+        ExtensionConfig config = configRequested;
+        configNegotiated = new ExtensionConfig(config.getName());
+        incomingContextTakeover = true;
+        outgoingContextTakeover = true;
+        outgoingWindowBits = MAX_WINDOW_BITS;
+        incomingWindowBits = MAX_WINDOW_BITS;
+        boolean server = getPolicy().getBehavior() == WebSocketBehavior.SERVER;
 
         for (String key : config.getParameterKeys())
         {
@@ -147,10 +243,37 @@ public class PerMessageDeflateExtension extends CompressExtension
             switch (key)
             {
                 case "client_max_window_bits":
+                {
+                    int bits = checkWindowBits(config.getParameter(key, MAX_WINDOW_BITS));
+                    if (server)
+                    {
+                        // The client may use a smaller window, which makes the retained window smaller.
+                        incomingWindowBits = Math.min(bits, maxWindowBits);
+                        if (incomingWindowBits < MAX_WINDOW_BITS)
+                            configNegotiated.setParameter("client_max_window_bits", incomingWindowBits);
+                    }
+                    else
+                    {
+                        outgoingWindowBits = bits;
+                        if (config.getParameter(key, (String)null) != null)
+                            configNegotiated.setParameter(key, bits);
+                    }
+                    break;
+                }
                 case "server_max_window_bits":
                 {
-                    // Not supported by Jetty
-                    // Don't negotiate these parameters
+                    int bits = checkWindowBits(config.getParameter(key, MAX_WINDOW_BITS));
+                    if (server)
+                    {
+                        outgoingWindowBits = Math.min(bits, maxWindowBits);
+                        configNegotiated.setParameter("server_max_window_bits", outgoingWindowBits);
+                    }
+                    else
+                    {
+                        incomingWindowBits = bits;
+                        if (config.getParameter(key, (String)null) != null)
+                            configNegotiated.setParameter(key, bits);
+                    }
                     break;
                 }
                 case "client_no_context_takeover":
@@ -188,8 +311,16 @@ public class PerMessageDeflateExtension extends CompressExtension
             }
         }
 
+        // A server may limit its own window even if the client did not ask for it.
+        if (server && outgoingWindowBits > maxWindowBits)
+        {
+            outgoingWindowBits = maxWindowBits;
+            configNegotiated.setParameter("server_max_window_bits", outgoingWindowBits);
+        }
+
         if (LOG.isDebugEnabled())
-            LOG.debug("config: outgoingContextTakeover={}, incomingContextTakeover={} : {}", outgoingContextTakeover, incomingContextTakeover, this);
+            LOG.debug("config: outgoingContextTakeover={}, incomingContextTakeover={}, outgoingWindowBits={}, incomingWindowBits={} : {}",
+                outgoingContextTakeover, incomingContextTakeover, outgoingWindowBits, incomingWindowBits, this);
 
         super.setConfig(configNegotiated);
     }
@@ -0,0 +1,61 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common.frames;
+
+import java.nio.ByteBuffer;
+
+import org.eclipse.jetty.websocket.common.OpCode;
+
+/**
+ * A complete TEXT or BINARY message whose payload has already been encoded
+ * for the extensions negotiated by the session it is sent to.
+ * <p>
+ * The payload is typically a read-only view of a buffer shared by the frames
+ * sent to many sessions, see {@link org.eclipse.jetty.websocket.common.WebSocketBroadcaster}.
+ * When the payload is already compressed, compression extensions forward the
+ * frame without compressing it again.
+ */
+public class PreEncodedFrame extends DataFrame
+{
+    private final boolean compressed;
+
+    /**
+     * @param opcode the opcode, either {@link OpCode#TEXT} or {@link OpCode#BINARY}
+     * @param payload the encoded payload
+     * @param compressed whether the payload has been compressed with permessage-deflate
+     */
+    public PreEncodedFrame(byte opcode, ByteBuffer payload, boolean compressed)
+    {
+        super(opcode);
+        if (opcode != OpCode.TEXT && opcode != OpCode.BINARY)
+            throw new IllegalArgumentException("Not a TEXT or BINARY opcode: " + OpCode.name(opcode));
+        this.compressed = compressed;
+        setFin(true);
+        setRsv1(compressed);
+        setPayload(payload);
+    }
+
+    /**
+     * @return whether the payload has been compressed with permessage-deflate
+     */
+    public boolean isCompressed()
+    {
+        return compressed;
+    }
+}
@@ -91,7 +91,7 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
     {
         private Flusher(ByteBufferPool bufferPool, Generator generator, EndPoint endpoint)
         {
-            super(bufferPool, generator, endpoint, getPolicy().getMaxBinaryMessageBufferSize(), 8);
+            super(bufferPool, generator, endpoint, getPolicy().getMaxBinaryMessageBufferSize(), CONCURRENT_FRAME_QUEUE ? 0 : 8, CONCURRENT_FRAME_QUEUE);
         }
 
         @Override
@@ -127,6 +127,10 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
 
     private static final Logger LOG = Log.getLogger(AbstractWebSocketConnection.class);
     private static final AtomicLong ID_GEN = new AtomicLong(0);
+    /**
+     * Whether the frames are queued without locking, and written in gathers as large as possible
+     */
+    private static final boolean CONCURRENT_FRAME_QUEUE = Boolean.getBoolean("org.eclipse.jetty.websocket.common.io.concurrentFrameQueue");
 
     /**
      * Minimum size of a buffer is the determined to be what would be the maximum framing header size (not including payload)
@@ -259,10 +263,16 @@ public abstract class AbstractWebSocketConnection extends AbstractConnection imp
             {
                 if (LOG.isDebugEnabled())
                     LOG.debug("Parsing upgrade initial buffer ({} remaining)", initialBuffer.remaining());
-                parser.parse(initialBuffer);
+                // Parse through the read loop, so that a suspend from onOpen() is honoured.
+                ByteBuffer buffer = bufferPool.acquire(Math.max(getInputBufferSize(), initialBuffer.remaining()), true);
+                BufferUtil.append(buffer, initialBuffer);
                 initialBuffer = null;
+                onFillable(buffer);
+            }
+            else
+            {
+                fillInterested();
             }
-            fillInterested();
             return true;
         }
         return false;
@@ -25,6 +25,10 @@ import java.util.ArrayList;
 import java.util.Deque;
 import java.util.List;
 import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.atomic.LongAdder;
 
 import org.eclipse.jetty.io.ByteBufferPool;
@@ -40,9 +44,22 @@ import org.eclipse.jetty.websocket.common.Generator;
 import org.eclipse.jetty.websocket.common.OpCode;
 import org.eclipse.jetty.websocket.common.frames.BinaryFrame;
 
+/**
+ * <p>Writes the frames of a connection, gathering the queued frames in a single
+ * {@link EndPoint#write(org.eclipse.jetty.util.Callback, ByteBuffer...) write}.</p>
+ * <p>By default the frames are queued in a deque guarded by a lock, and at most
+ * {@code maxGather} frames are written at once. When created with a concurrent queue,
+ * producers queue frames without locking in multiple-producer, single-consumer queues,
+ * and the flusher gathers as many frames as fit in a single gathering write,
+ * up to {@code maxGather} frames if positive.</p>
+ */
 public class FrameFlusher extends IteratingCallback
 {
     public static final BinaryFrame FLUSH_FRAME = new BinaryFrame();
+    /**
+     * The max number of buffers of a gathering write, which is the usual value of IOV_MAX.
+     */
+    public static final int MAX_GATHER_BUFFERS = 1024;
     private static final Logger LOG = Log.getLogger(FrameFlusher.class);
 
     private final ByteBufferPool bufferPool;
@@ -50,7 +67,7 @@ public class FrameFlusher extends IteratingCallback
     private final int bufferSize;
     private final Generator generator;
     private final int maxGather;
-    private final Deque<FrameEntry> queue = new ArrayDeque<>();
+    private final FrameQueue queue;
     private final List<FrameEntry> entries;
     private final List<ByteBuffer> buffers;
 
@@ -58,57 +75,44 @@ public class FrameFlusher extends IteratingCallback
     private final LongAdder messagesOut = new LongAdder();
     private final LongAdder bytesOut = new LongAdder();
 
-    private boolean closed;
-    private boolean canEnqueue = true;
-    private Throwable terminated;
+    private volatile boolean closed;
     private ByteBuffer aggregate;
     private BatchMode batchMode;
 
     public FrameFlusher(ByteBufferPool bufferPool, Generator generator, EndPoint endPoint, int bufferSize, int maxGather)
+    {
+        this(bufferPool, generator, endPoint, bufferSize, maxGather, false);
+    }
+
+    /**
+     * @param bufferPool the pool of the aggregate buffer
+     * @param generator the frame generator
+     * @param endPoint the endpoint to write to
+     * @param bufferSize the size of the aggregate buffer
+     * @param maxGather the max number of frames written at once, or a non-positive
+     * value to gather as many frames as fit in {@link #MAX_GATHER_BUFFERS} buffers
+     * @param concurrentQueue whether frames are queued without locking
+     */
+    public FrameFlusher(ByteBufferPool bufferPool, Generator generator, EndPoint endPoint, int bufferSize, int maxGather, boolean concurrentQueue)
     {
         this.bufferPool = bufferPool;
         this.endPoint = endPoint;
         this.bufferSize = bufferSize;
         this.generator = Objects.requireNonNull(generator);
-        this.maxGather = maxGather;
-        this.entries = new ArrayList<>(maxGather);
-        this.buffers = new ArrayList<>((maxGather * 2) + 1);
+        // Each frame takes a header and a payload buffer, plus one for the aggregate buffer.
+        int maxFrames = (MAX_GATHER_BUFFERS - 1) / 2;
+        this.maxGather = maxGather > 0 ? Math.min(maxGather, maxFrames) : maxFrames;
+        this.queue = concurrentQueue ? new ConcurrentFrameQueue() : new LockingFrameQueue();
+        int capacity = Math.min(this.maxGather, 8);
+        this.entries = new ArrayList<>(capacity);
+        this.buffers = new ArrayList<>((capacity * 2) + 1);
     }
 
     public boolean enqueue(Frame frame, WriteCallback callback, BatchMode batchMode)
     {
         FrameEntry entry = new FrameEntry(frame, callback, batchMode);
 
-        Throwable dead;
-
-        synchronized (this)
-        {
-            if (canEnqueue)
-            {
-                dead = terminated;
-                if (dead == null)
-                {
-                    byte opCode = frame.getOpCode();
-                    if (opCode == OpCode.PING || opCode == OpCode.PONG)
-                    {
-                        queue.offerFirst(entry);
-                    }
-                    else
-                    {
-                        queue.offerLast(entry);
-                    }
-
-                    if (opCode == OpCode.CLOSE)
-                    {
-                        this.canEnqueue = false;
-                    }
-                }
-            }
-            else
-            {
-                dead = new ClosedChannelException();
-            }
-        }
+        Throwable dead = queue.offer(entry);
 
         if (dead == null)
         {
@@ -131,42 +135,52 @@ public class FrameFlusher extends IteratingCallback
 
         int space = aggregate == null ? bufferSize : BufferUtil.space(aggregate);
         BatchMode currentBatchMode = BatchMode.AUTO;
-        synchronized (this)
+
+        if (closed)
         {
-            if (closed)
-            {
-                return Action.SUCCEEDED;
-            }
+            // Fail the frames that raced with the CLOSE frame.
+            failEntries(queue.drain(), new ClosedChannelException());
+            return Action.SUCCEEDED;
+        }
 
-            if (terminated != null)
-            {
-                throw terminated;
-            }
+        Throwable failure = queue.poll(entries, maxGather);
+        if (failure != null)
+        {
+            throw failure;
+        }
 
-            while (!queue.isEmpty() && entries.size() < maxGather)
+        // Frames that raced with the CLOSE frame must not be written after it.
+        for (int i = 0; i < entries.size() - 1; ++i)
+        {
+            if (entries.get(i).frame.getOpCode() == OpCode.CLOSE)
             {
-                FrameEntry entry = queue.poll();
-                currentBatchMode = BatchMode.max(currentBatchMode, entry.batchMode);
-                messagesOut.increment();
+                List<FrameEntry> rejected = entries.subList(i + 1, entries.size());
+                failEntries(rejected, new ClosedChannelException());
+                rejected.clear();
+                break;
+            }
+        }
 
-                // Force flush if we need to.
-                if (entry.frame == FLUSH_FRAME)
-                    currentBatchMode = BatchMode.OFF;
+        for (FrameEntry entry : entries)
+        {
+            currentBatchMode = BatchMode.max(currentBatchMode, entry.batchMode);
+            messagesOut.increment();
 
-                int payloadLength = BufferUtil.length(entry.frame.getPayload());
-                int approxFrameLength = Generator.MAX_HEADER_LENGTH + payloadLength;
+            // Force flush if we need to.
+            if (entry.frame == FLUSH_FRAME)
+                currentBatchMode = BatchMode.OFF;
 
-                // If it is a "big" frame, avoid copying into the aggregate buffer.
-                if (approxFrameLength > (bufferSize >> 2))
-                    currentBatchMode = BatchMode.OFF;
+            int payloadLength = BufferUtil.length(entry.frame.getPayload());
+            int approxFrameLength = Generator.MAX_HEADER_LENGTH + payloadLength;
 
-                // If the aggregate buffer overflows, do not batch.
-                space -= approxFrameLength;
-                if (space <= 0)
-                    currentBatchMode = BatchMode.OFF;
+            // If it is a "big" frame, avoid copying into the aggregate buffer.
+            if (approxFrameLength > (bufferSize >> 2))
+                currentBatchMode = BatchMode.OFF;
 
-                entries.add(entry);
-            }
+            // If the aggregate buffer overflows, do not batch.
+            space -= approxFrameLength;
+            if (space <= 0)
+                currentBatchMode = BatchMode.OFF;
         }
 
         if (LOG.isDebugEnabled())
@@ -268,10 +282,7 @@ public class FrameFlusher extends IteratingCallback
 
     private int getQueueSize()
     {
-        synchronized (this)
-        {
-            return queue.size();
-        }
+        return queue.size();
     }
 
     @Override
@@ -289,12 +300,9 @@ public class FrameFlusher extends IteratingCallback
             entry.release();
             if (entry.frame.getOpCode() == OpCode.CLOSE)
             {
-                synchronized (this)
-                {
-                    // we know that enqueue protects us.
-                    // and the processing will not contain extra frame entries.
-                    closed = true;
-                }
+                // The queue rejects the frames enqueued after the CLOSE frame;
+                // those that raced with it are failed by the next process().
+                closed = true;
                 endPoint.shutdownOutput();
             }
         }
@@ -306,24 +314,24 @@ public class FrameFlusher extends IteratingCallback
     {
         releaseAggregate();
 
-        synchronized (this)
+        if (queue.terminate(failure))
         {
-            if (terminated == null)
-            {
-                terminated = failure;
-                if (LOG.isDebugEnabled())
-                    LOG.debug("Write flush failure", failure);
-            }
-            entries.addAll(queue);
-            queue.clear();
+            if (LOG.isDebugEnabled())
+                LOG.debug("Write flush failure", failure);
         }
+        entries.addAll(queue.drain());
+
+        failEntries(entries, failure);
+        entries.clear();
+    }
 
+    private void failEntries(List<FrameEntry> entries, Throwable failure)
+    {
         for (FrameEntry entry : entries)
         {
             notifyCallbackFailure(entry.callback, failure);
             entry.release();
         }
-        entries.clear();
     }
 
     private void releaseAggregate()
@@ -337,16 +345,10 @@ public class FrameFlusher extends IteratingCallback
 
     void terminate(Throwable cause)
     {
-        Throwable reason;
-        synchronized (this)
-        {
-            reason = terminated;
-            if (reason == null)
-                terminated = cause;
-        }
+        boolean terminating = queue.terminate(cause);
         if (LOG.isDebugEnabled())
-            LOG.debug("{} {}", reason == null ? "Terminating" : "Terminated", this);
-        if (reason == null)
+            LOG.debug("{} {}", terminating ? "Terminating" : "Terminated", this);
+        if (terminating)
             iterate();
     }
 
@@ -403,7 +405,203 @@ public class FrameFlusher extends IteratingCallback
             super.toString(),
             getQueueSize(),
             aggSize,
-            terminated);
+            queue.getTerminated());
+    }
+
+    /**
+     * <p>The queue of frames, which also tracks whether frames can still be enqueued.</p>
+     */
+    private interface FrameQueue
+    {
+        /**
+         * @param entry the entry to enqueue
+         * @return null if the entry was enqueued, or the reason why it was not
+         */
+        Throwable offer(FrameEntry entry);
+
+        /**
+         * @param entries the list to add the entries to
+         * @param maxEntries the max number of entries to add
+         * @return null if the entries were polled, or the failure that terminated this queue
+         */
+        Throwable poll(List<FrameEntry> entries, int maxEntries);
+
+        /**
+         * @param failure the failure that terminates this queue
+         * @return whether this queue was not already terminated
+         */
+        boolean terminate(Throwable failure);
+
+        /**
+         * @return the entries removed from this queue
+         */
+        List<FrameEntry> drain();
+
+        Throwable getTerminated();
+
+        int size();
+    }
+
+    private static class LockingFrameQueue implements FrameQueue
+    {
+        private final Deque<FrameEntry> queue = new ArrayDeque<>();
+        private boolean canEnqueue = true;
+        private Throwable terminated;
+
+        @Override
+        public synchronized Throwable offer(FrameEntry entry)
+        {
+            if (!canEnqueue)
+                return new ClosedChannelException();
+            if (terminated != null)
+                return terminated;
+
+            byte opCode = entry.frame.getOpCode();
+            if (opCode == OpCode.PING || opCode == OpCode.PONG)
+                queue.offerFirst(entry);
+            else
+                queue.offerLast(entry);
+
+            if (opCode == OpCode.CLOSE)
+                canEnqueue = false;
+            return null;
+        }
+
+        @Override
+        public synchronized Throwable poll(List<FrameEntry> entries, int maxEntries)
+        {
+            if (terminated != null)
+                return terminated;
+            while (!queue.isEmpty() && entries.size() < maxEntries)
+            {
+                entries.add(queue.poll());
+            }
+            return null;
+        }
+
+        @Override
+        public synchronized boolean terminate(Throwable failure)
+        {
+            if (terminated != null)
+                return false;
+            terminated = failure;
+            return true;
+        }
+
+        @Override
+        public synchronized List<FrameEntry> drain()
+        {
+            List<FrameEntry> entries = new ArrayList<>(queue);
+            queue.clear();
+            return entries;
+        }
+
+        @Override
+        public synchronized Throwable getTerminated()
+        {
+            return terminated;
+        }
+
+        @Override
+        public synchronized int size()
+        {
+            return queue.size();
+        }
+    }
+
+    /**
+     * <p>A lock-free queue for many producers and the single flusher consumer.</p>
+     * <p>PING and PONG frames are queued separately, so that they are written before the other frames.
+     * A producer that races with {@link #drain()} removes
+     * its entry after enqueuing it, unless the flusher already took it.</p>
+     */
+    private static class ConcurrentFrameQueue implements FrameQueue
+    {
+        private final Queue<FrameEntry> controls = new ConcurrentLinkedQueue<>();
+        private final Queue<FrameEntry> frames = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean closing = new AtomicBoolean();
+        private final AtomicReference<Throwable> terminated = new AtomicReference<>();
+        private volatile boolean drained;
+
+        @Override
+        public Throwable offer(FrameEntry entry)
+        {
+            byte opCode = entry.frame.getOpCode();
+            if (opCode == OpCode.CLOSE ? !closing.compareAndSet(false, true) : closing.get())
+                return new ClosedChannelException();
+            Throwable failure = terminated.get();
+            if (failure != null)
+                return failure;
+
+            Queue<FrameEntry> queue = opCode == OpCode.PING || opCode == OpCode.PONG ? controls : frames;
+            queue.offer(entry);
+
+            // Check whether the queue was drained concurrently.
+            if (drained)
+            {
+                if (queue.remove(entry))
+                {
+                    failure = terminated.get();
+                    return failure == null ? new ClosedChannelException() : failure;
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Throwable poll(List<FrameEntry> entries, int maxEntries)
+        {
+            Throwable failure = terminated.get();
+            if (failure != null)
+                return failure;
+            while (entries.size() < maxEntries)
+            {
+                FrameEntry entry = controls.poll();
+                if (entry == null)
+                    entry = frames.poll();
+                if (entry == null)
+                    break;
+                entries.add(entry);
+            }
+            return null;
+        }
+
+        @Override
+        public boolean terminate(Throwable failure)
+        {
+            return terminated.compareAndSet(null, failure);
+        }
+
+        @Override
+        public List<FrameEntry> drain()
+        {
+            drained = true;
+            List<FrameEntry> entries = new ArrayList<>();
+            poll(controls, entries);
+            poll(frames, entries);
+            return entries;
+        }
+
+        private void poll(Queue<FrameEntry> queue, List<FrameEntry> entries)
+        {
+            FrameEntry entry;
+            while ((entry = queue.poll()) != null)
+            {
+                entries.add(entry);
+            }
+        }
+
+        @Override
+        public Throwable getTerminated()
+        {
+            return terminated.get();
+        }
+
+        @Override
+        public int size()
+        {
+            return controls.size() + frames.size();
+        }
     }
 
     private class FrameEntry
@@ -442,7 +640,7 @@ public class FrameFlusher extends IteratingCallback
         @Override
         public String toString()
         {
-            return String.format("%s[%s,%s,%s,%s]", getClass().getSimpleName(), frame, callback, batchMode, terminated);
+            return String.format("%s[%s,%s,%s,%s]", getClass().getSimpleName(), frame, callback, batchMode, queue.getTerminated());
         }
     }
 }
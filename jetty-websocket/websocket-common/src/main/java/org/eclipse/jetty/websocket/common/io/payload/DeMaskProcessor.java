@@ -19,6 +19,7 @@
 package org.eclipse.jetty.websocket.common.io.payload;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 
 import org.eclipse.jetty.websocket.api.extensions.Frame;
 
@@ -36,27 +37,56 @@ public class DeMaskProcessor implements PayloadProcessor
             return;
         }
 
-        int maskInt = this.maskInt;
-        int start = payload.position();
-        int end = payload.limit();
-        int offset = this.maskOffset;
-        int remaining;
-        while ((remaining = end - start) > 0)
+        maskOffset = mask(payload, payload.position(), payload.limit(), maskBytes, maskInt, maskOffset);
+    }
+
+    /**
+     * XORs the bytes between {@code start} and {@code end} with the mask, eight bytes at a time
+     * once the mask offset is aligned.
+     *
+     * @param payload the buffer to mask in place, using absolute indexes
+     * @param start the index of the first byte to mask
+     * @param end the index after the last byte to mask
+     * @param mask the 4 mask bytes
+     * @param maskInt the mask bytes as a big endian int
+     * @param offset the mask offset of the byte at {@code start}
+     * @return the mask offset of the byte at {@code end}
+     */
+    public static int mask(ByteBuffer payload, int start, int end, byte[] mask, int maskInt, int offset)
+    {
+        while (start < end && (offset & 3) != 0)
         {
-            if (remaining >= 4 && (offset & 3) == 0)
+            payload.put(start, (byte)(payload.get(start) ^ mask[offset & 3]));
+            ++start;
+            ++offset;
+        }
+
+        if (end - start >= 4)
+        {
+            if (payload.order() == ByteOrder.LITTLE_ENDIAN)
+                maskInt = Integer.reverseBytes(maskInt);
+            long maskLong = ((long)maskInt << 32) | (maskInt & 0xFFFFFFFFL);
+            while (end - start >= 8)
+            {
+                payload.putLong(start, payload.getLong(start) ^ maskLong);
+                start += 8;
+                offset += 8;
+            }
+            if (end - start >= 4)
             {
                 payload.putInt(start, payload.getInt(start) ^ maskInt);
                 start += 4;
                 offset += 4;
             }
-            else
-            {
-                payload.put(start, (byte)(payload.get(start) ^ maskBytes[offset & 3]));
-                ++start;
-                ++offset;
-            }
         }
-        maskOffset = offset;
+
+        while (start < end)
+        {
+            payload.put(start, (byte)(payload.get(start) ^ mask[offset & 3]));
+            ++start;
+            ++offset;
+        }
+        return offset;
     }
 
     public void reset(byte[] mask)
@@ -0,0 +1,171 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.websocket.common;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.Inflater;
+
+import org.eclipse.jetty.io.ByteBufferPool;
+import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
+import org.eclipse.jetty.websocket.api.WebSocketAdapter;
+import org.eclipse.jetty.websocket.api.WebSocketPolicy;
+import org.eclipse.jetty.websocket.api.WriteCallback;
+import org.eclipse.jetty.websocket.api.extensions.ExtensionConfig;
+import org.eclipse.jetty.websocket.common.events.EventDriverFactory;
+import org.eclipse.jetty.websocket.common.extensions.ExtensionStack;
+import org.eclipse.jetty.websocket.common.extensions.WebSocketExtensionFactory;
+import org.eclipse.jetty.websocket.common.io.LocalWebSocketSession;
+import org.eclipse.jetty.websocket.common.scopes.SimpleContainerScope;
+import org.eclipse.jetty.websocket.common.scopes.WebSocketContainerScope;
+import org.eclipse.jetty.websocket.common.test.OutgoingFramesCapture;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.is;
+
+public class WebSocketBroadcasterTest
+{
+    private static final String TEXT = "Hello, Hello, Hello, Hello, Hello World";
+
+    private final ByteBufferPool bufferPool = new MappedByteBufferPool();
+    private final List<LocalWebSocketSession> sessions = new ArrayList<>();
+    private final List<OutgoingFramesCapture> captures = new ArrayList<>();
+    private WebSocketContainerScope containerScope;
+
+    @BeforeEach
+    public void prepare()
+    {
+        containerScope = new SimpleContainerScope(WebSocketPolicy.newServerPolicy(), bufferPool);
+    }
+
+    @AfterEach
+    public void dispose() throws Exception
+    {
+        for (LocalWebSocketSession session : sessions)
+        {
+            session.stop();
+        }
+    }
+
+    private OutgoingFramesCapture newSession(String extensions) throws Exception
+    {
+        WebSocketExtensionFactory extensionFactory = new WebSocketExtensionFactory(containerScope);
+        LocalWebSocketSession session = new LocalWebSocketSession(containerScope, "session" + sessions.size(), new EventDriverFactory(containerScope).wrap(new WebSocketAdapter()));
+        session.setPolicy(containerScope.getPolicy());
+        session.setExtensionFactory(extensionFactory);
+
+        ExtensionStack stack = new ExtensionStack(extensionFactory);
+        stack.negotiate(extensions == null ? new ArrayList<>() : ExtensionConfig.parseList(extensions));
+        stack.setPolicy(containerScope.getPolicy());
+        OutgoingFramesCapture capture = new OutgoingFramesCapture();
+        stack.setNextOutgoing(capture);
+        stack.setNextIncoming(session);
+        stack.start();
+        session.setOutgoingHandler(stack);
+
+        session.start();
+        session.open();
+        sessions.add(session);
+        captures.add(capture);
+        return capture;
+    }
+
+    @Test
+    public void testEncodeOncePerExtensions() throws Exception
+    {
+        for (int i = 0; i < 3; ++i)
+        {
+            newSession(null);
+            newSession("permessage-deflate; client_no_context_takeover; server_no_context_takeover");
+        }
+        // Context takeover prevents sharing the compressed payload.
+        newSession("permessage-deflate");
+
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster();
+        AtomicInteger completed = new AtomicInteger();
+        broadcaster.broadcast(sessions, TEXT, new WriteCallback()
+        {
+            @Override
+            public void writeFailed(Throwable x)
+            {
+            }
+
+            @Override
+            public void writeSuccess()
+            {
+                completed.incrementAndGet();
+            }
+        });
+
+        assertThat(completed.get(), is(1));
+        assertThat(broadcaster.getEncodings(), is(2L));
+        assertThat(broadcaster.getSharedFrames(), is(6L));
+        assertThat(broadcaster.getUnsharedFrames(), is(1L));
+
+        for (int i = 0; i < captures.size(); ++i)
+        {
+            OutgoingFramesCapture capture = captures.get(i);
+            capture.assertFrameCount(1);
+            WebSocketFrame frame = capture.getFrames().poll();
+            assertThat(frame.getOpCode(), is(OpCode.TEXT));
+            assertThat(frame.isFin(), is(true));
+            boolean compressed = i % 2 == 1 || i == captures.size() - 1;
+            assertThat(frame.isRsv1(), is(compressed));
+            ByteBuffer payload = frame.getPayload();
+            String text = compressed ? inflate(payload) : BufferUtil.toUTF8String(payload);
+            assertThat(text, is(TEXT));
+        }
+    }
+
+    @Test
+    public void testBinaryIsNotConsumed() throws Exception
+    {
+        OutgoingFramesCapture capture = newSession(null);
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{1, 2, 3});
+
+        WebSocketBroadcaster broadcaster = new WebSocketBroadcaster();
+        broadcaster.broadcast(sessions, data, null);
+        broadcaster.broadcast(sessions, data, null);
+
+        assertThat(data.remaining(), is(3));
+        capture.assertHasFrame(OpCode.BINARY, 2);
+        assertThat(capture.getFrames().poll().getPayload(), is(data));
+    }
+
+    private static String inflate(ByteBuffer payload) throws Exception
+    {
+        byte[] input = new byte[payload.remaining() + 4];
+        payload.slice().get(input, 0, payload.remaining());
+        input[input.length - 2] = (byte)0xFF;
+        input[input.length - 1] = (byte)0xFF;
+        Inflater inflater = new Inflater(true);
+        inflater.setInput(input);
+        byte[] output = new byte[1024];
+        int length = inflater.inflate(output);
+        inflater.end();
+        return new String(output, 0, length, StandardCharsets.UTF_8);
+    }
+}
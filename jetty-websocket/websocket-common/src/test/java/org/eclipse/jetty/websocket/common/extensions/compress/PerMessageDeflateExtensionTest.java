@@ -22,9 +22,13 @@ import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.TimeUnit;
+import java.util.zip.DataFormatException;
 import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.MappedByteBufferPool;
@@ -43,6 +47,7 @@ import org.eclipse.jetty.websocket.common.OpCode;
 import org.eclipse.jetty.websocket.common.WebSocketFrame;
 import org.eclipse.jetty.websocket.common.extensions.AbstractExtensionTest;
 import org.eclipse.jetty.websocket.common.extensions.ExtensionTool.Tester;
+import org.eclipse.jetty.websocket.common.frames.BinaryFrame;
 import org.eclipse.jetty.websocket.common.frames.ContinuationFrame;
 import org.eclipse.jetty.websocket.common.frames.PingFrame;
 import org.eclipse.jetty.websocket.common.frames.TextFrame;
@@ -51,7 +56,10 @@ import org.eclipse.jetty.websocket.common.test.OutgoingFramesCapture;
 import org.junit.jupiter.api.Test;
 
 import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 /**
@@ -586,4 +594,186 @@ public class PerMessageDeflateExtensionTest extends AbstractExtensionTest
 
         tester.assertHasFrames("tora", "tora", "tora");
     }
+
+    private PerMessageDeflateExtension newExtension(WebSocketPolicy policy, String config, boolean idleRelease, byte[] dictionary)
+    {
+        PerMessageDeflateExtension ext = new PerMessageDeflateExtension();
+        ext.setBufferPool(bufferPool);
+        ext.setDeflaterPool(deflaterPool);
+        ext.setInflaterPool(inflaterPool);
+        ext.setPolicy(policy);
+        ext.setIdleRelease(idleRelease);
+        ext.setPresetDictionary(dictionary);
+        ext.setConfig(ExtensionConfig.parse(config));
+        return ext;
+    }
+
+    private static byte[] inflate(Inflater inflater, ByteBuffer payload) throws DataFormatException
+    {
+        byte[] input = new byte[payload.remaining() + CompressExtension.TAIL_BYTES.length];
+        payload.slice().get(input, 0, payload.remaining());
+        System.arraycopy(CompressExtension.TAIL_BYTES, 0, input, payload.remaining(), CompressExtension.TAIL_BYTES.length);
+        inflater.setInput(input);
+        byte[] output = new byte[64 * 1024];
+        int length = 0;
+        while (true)
+        {
+            int inflated = inflater.inflate(output, length, output.length - length);
+            if (inflated <= 0)
+                break;
+            length += inflated;
+        }
+        return Arrays.copyOf(output, length);
+    }
+
+    private static byte[] deflate(Deflater deflater, String message)
+    {
+        deflater.setInput(message.getBytes(StandardCharsets.UTF_8));
+        byte[] output = new byte[1024];
+        int length = deflater.deflate(output, 0, output.length, Deflater.SYNC_FLUSH);
+        // Drop the tail bytes.
+        return Arrays.copyOf(output, length - CompressExtension.TAIL_BYTES.length);
+    }
+
+    @Test
+    public void testOutgoingIdleReleaseKeepsContext() throws Exception
+    {
+        PerMessageDeflateExtension ext = newExtension(WebSocketPolicy.newServerPolicy(), "permessage-deflate", true, null);
+        OutgoingFramesCapture capture = new OutgoingFramesCapture();
+        ext.setNextOutgoingFrames(capture);
+
+        String message = "The quick brown fox jumps over the lazy dog, again and again.";
+        Inflater inflater = new Inflater(true);
+        for (int i = 0; i < 3; ++i)
+        {
+            ext.outgoingFrame(new TextFrame().setPayload(message), null, BatchMode.OFF);
+
+            // The Deflater is back to the pool, only the window is retained.
+            assertThat(ext.getHeldCompressors(), is(0));
+            assertThat(ext.getWindowBytes(), is(message.length() * (i + 1)));
+
+            WebSocketFrame frame = capture.getFrames().poll(1, TimeUnit.SECONDS);
+            assertThat(frame.isRsv1(), is(true));
+            assertThat(new String(inflate(inflater, frame.getPayload()), StandardCharsets.UTF_8), is(message));
+            // Messages after the first refer to the previous ones.
+            if (i > 0)
+                assertThat(frame.getPayloadLength(), lessThan(message.length() / 4));
+        }
+        inflater.end();
+    }
+
+    @Test
+    public void testIncomingIdleReleaseKeepsContext()
+    {
+        PerMessageDeflateExtension ext = newExtension(WebSocketPolicy.newClientPolicy(), "permessage-deflate", true, null);
+        IncomingFramesCapture capture = new IncomingFramesCapture();
+        ext.setNextIncomingFrames(capture);
+
+        String message = "The quick brown fox jumps over the lazy dog, again and again.";
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        for (int i = 0; i < 3; ++i)
+        {
+            Frame frame = new TextFrame().setPayload(ByteBuffer.wrap(deflate(deflater, message))).setRsv1(true);
+            ext.incomingFrame(frame);
+
+            assertThat(ext.getHeldCompressors(), is(0));
+            WebSocketFrame actual = capture.getFrames().poll();
+            assertThat(actual.getPayloadAsUTF8(), is(message));
+        }
+        deflater.end();
+    }
+
+    @Test
+    public void testServerMaxWindowBits() throws Exception
+    {
+        PerMessageDeflateExtension ext = newExtension(WebSocketPolicy.newServerPolicy(), "permessage-deflate; server_max_window_bits=8", false, null);
+        assertThat(ext.getConfig().getParameterizedName(), is("permessage-deflate;server_max_window_bits=8"));
+        assertThat(ext.getOutgoingWindowBits(), is(8));
+        OutgoingFramesCapture capture = new OutgoingFramesCapture();
+        ext.setNextOutgoingFrames(capture);
+
+        // A block that repeats farther than the window cannot be referred to.
+        byte[] block = new byte[1000];
+        new Random(1).nextBytes(block);
+        byte[] bytes = new byte[block.length * 2];
+        System.arraycopy(block, 0, bytes, 0, block.length);
+        System.arraycopy(block, 0, bytes, block.length, block.length);
+        ext.outgoingFrame(new BinaryFrame().setPayload(bytes), null, BatchMode.OFF);
+
+        WebSocketFrame frame = capture.getFrames().poll(1, TimeUnit.SECONDS);
+        assertThat(frame.getPayloadLength(), greaterThan(bytes.length * 3 / 4));
+        Inflater inflater = new Inflater(true);
+        assertArrayEquals(bytes, inflate(inflater, frame.getPayload()));
+        inflater.end();
+    }
+
+    @Test
+    public void testMaxWindowBitsLimitsServerAndClient()
+    {
+        PerMessageDeflateExtension ext = new PerMessageDeflateExtension();
+        ext.setPolicy(WebSocketPolicy.newServerPolicy());
+        ext.setMaxWindowBits(10);
+        ext.setConfig(ExtensionConfig.parse("permessage-deflate; client_max_window_bits"));
+
+        assertThat(ext.getOutgoingWindowBits(), is(10));
+        assertThat(ext.getIncomingWindowBits(), is(10));
+        ExtensionConfig negotiated = ext.getConfig();
+        assertThat(negotiated.getParameter("client_max_window_bits", 0), is(10));
+        assertThat(negotiated.getParameter("server_max_window_bits", 0), is(10));
+
+        assertThrows(IllegalArgumentException.class, () -> ext.setMaxWindowBits(7));
+    }
+
+    @Test
+    public void testConfigIsNegotiatedWhenPolicyIsSet()
+    {
+        PerMessageDeflateExtension ext = new PerMessageDeflateExtension();
+        ext.setConfig(ExtensionConfig.parse("permessage-deflate; client_no_context_takeover; server_max_window_bits=12"));
+        ext.setPolicy(WebSocketPolicy.newServerPolicy());
+
+        assertThat(ext.isOutgoingContextTakeover(), is(false));
+        assertThat(ext.getOutgoingWindowBits(), is(12));
+        assertThat(ext.getConfig().getParameter("server_max_window_bits", 0), is(12));
+    }
+
+    @Test
+    public void testMaxWindowBitsAfterConfig()
+    {
+        PerMessageDeflateExtension ext = new PerMessageDeflateExtension();
+        ext.setPolicy(WebSocketPolicy.newServerPolicy());
+        ext.setConfig(ExtensionConfig.parse("permessage-deflate; client_max_window_bits"));
+        assertThat(ext.getOutgoingWindowBits(), is(15));
+
+        ext.setMaxWindowBits(10);
+        assertThat(ext.getOutgoingWindowBits(), is(10));
+        assertThat(ext.getIncomingWindowBits(), is(10));
+        assertThat(ext.getConfig().getParameter("server_max_window_bits", 0), is(10));
+    }
+
+    @Test
+    public void testPresetDictionary() throws Exception
+    {
+        byte[] dictionary = "{\"type\":\"quote\",\"symbol\":\"\",\"price\":}".getBytes(StandardCharsets.UTF_8);
+        PerMessageDeflateExtension ext = newExtension(WebSocketPolicy.newServerPolicy(), "permessage-deflate", true, dictionary);
+        OutgoingFramesCapture capture = new OutgoingFramesCapture();
+        ext.setNextOutgoingFrames(capture);
+
+        String message = "{\"type\":\"quote\",\"symbol\":\"ACME\",\"price\":42}";
+        ext.outgoingFrame(new TextFrame().setPayload(message), null, BatchMode.OFF);
+
+        // The first message already refers to the dictionary.
+        WebSocketFrame frame = capture.getFrames().poll(1, TimeUnit.SECONDS);
+        assertThat(frame.getPayloadLength(), lessThan(message.length() / 2));
+        Inflater inflater = new Inflater(true);
+        inflater.setDictionary(dictionary);
+        assertThat(new String(inflate(inflater, frame.getPayload()), StandardCharsets.UTF_8), is(message));
+
+        // The window retained on release includes the dictionary.
+        assertThat(ext.getHeldCompressors(), is(0));
+        assertThat(ext.getWindowBytes(), is(dictionary.length + message.length()));
+        ext.outgoingFrame(new TextFrame().setPayload(message), null, BatchMode.OFF);
+        frame = capture.getFrames().poll(1, TimeUnit.SECONDS);
+        assertThat(new String(inflate(inflater, frame.getPayload()), StandardCharsets.UTF_8), is(message));
+        inflater.end();
+    }
 }
@@ -21,7 +21,9 @@ package org.eclipse.jetty.websocket.common.io;
 import java.nio.ByteBuffer;
 import java.nio.channels.ClosedChannelException;
 import java.nio.channels.WritePendingException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Objects;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutionException;
@@ -31,6 +33,7 @@ import java.util.concurrent.TimeoutException;
 
 import org.eclipse.jetty.io.ByteBufferPool;
 import org.eclipse.jetty.io.MappedByteBufferPool;
+import org.eclipse.jetty.util.BufferUtil;
 import org.eclipse.jetty.util.Callback;
 import org.eclipse.jetty.websocket.api.BatchMode;
 import org.eclipse.jetty.websocket.api.StatusCode;
@@ -43,10 +46,13 @@ import org.eclipse.jetty.websocket.common.Parser;
 import org.eclipse.jetty.websocket.common.WebSocketFrame;
 import org.eclipse.jetty.websocket.common.frames.TextFrame;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
 
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.hamcrest.MatcherAssert.assertThat;
 import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -146,6 +152,87 @@ public class FrameFlusherTest
         System.out.printf("Received: %,d frames%n", endPoint.incomingFrames.size());
     }
 
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testPostCloseFrameCallbacksQueue(boolean concurrentQueue) throws Exception
+    {
+        WebSocketPolicy policy = WebSocketPolicy.newServerPolicy();
+        Generator generator = new Generator(policy, bufferPool);
+        CapturingEndPoint endPoint = new CapturingEndPoint(WebSocketPolicy.newClientPolicy(), bufferPool);
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, generator, endPoint, policy.getMaxBinaryMessageBufferSize(), 0, concurrentQueue);
+
+        FutureWriteCallback textCallback = new FutureWriteCallback();
+        FutureWriteCallback closeCallback = new FutureWriteCallback();
+        FutureWriteCallback lateCallback = new FutureWriteCallback();
+        assertTrue(frameFlusher.enqueue(new TextFrame().setPayload("Hello"), textCallback, BatchMode.OFF));
+        assertTrue(frameFlusher.enqueue(new CloseInfo(StatusCode.NORMAL, "Bye").asFrame(), closeCallback, BatchMode.OFF));
+        assertFalse(frameFlusher.enqueue(new TextFrame().setPayload("World"), lateCallback, BatchMode.OFF));
+        frameFlusher.iterate();
+
+        textCallback.get(5, TimeUnit.SECONDS);
+        closeCallback.get(5, TimeUnit.SECONDS);
+        ExecutionException x = assertThrows(ExecutionException.class, () -> lateCallback.get(5, TimeUnit.SECONDS));
+        assertThat(x.getCause(), instanceOf(ClosedChannelException.class));
+        assertThat(endPoint.incomingFrames.size(), is(2));
+    }
+
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    public void testConcurrentProducers(boolean concurrentQueue) throws Exception
+    {
+        WebSocketPolicy policy = WebSocketPolicy.newServerPolicy();
+        Generator generator = new Generator(policy, bufferPool);
+        CapturingEndPoint endPoint = new CapturingEndPoint(WebSocketPolicy.newClientPolicy(), bufferPool);
+        FrameFlusher frameFlusher = new FrameFlusher(bufferPool, generator, endPoint, policy.getMaxBinaryMessageBufferSize(), concurrentQueue ? 0 : 8, concurrentQueue);
+
+        int producers = 4;
+        int messages = 1000;
+        List<CompletableFuture<Void>> tasks = new ArrayList<>();
+        for (int p = 0; p < producers; ++p)
+        {
+            int producer = p;
+            tasks.add(CompletableFuture.runAsync(() ->
+            {
+                FutureWriteCallback callback = null;
+                for (int i = 0; i < messages; ++i)
+                {
+                    callback = new FutureWriteCallback();
+                    frameFlusher.enqueue(new TextFrame().setPayload(producer + ":" + i), callback, BatchMode.AUTO);
+                    frameFlusher.iterate();
+                }
+                FutureWriteCallback flushCallback = new FutureWriteCallback();
+                frameFlusher.enqueue(FrameFlusher.FLUSH_FRAME, flushCallback, BatchMode.OFF);
+                frameFlusher.iterate();
+                try
+                {
+                    callback.get(5, TimeUnit.SECONDS);
+                    flushCallback.get(5, TimeUnit.SECONDS);
+                }
+                catch (Exception x)
+                {
+                    throw new RuntimeException(x);
+                }
+            }));
+        }
+        for (CompletableFuture<Void> task : tasks)
+        {
+            task.get(10, TimeUnit.SECONDS);
+        }
+
+        // The frames of each producer are received in order.
+        int[] next = new int[producers];
+        for (Frame frame : endPoint.incomingFrames)
+        {
+            String[] parts = BufferUtil.toUTF8String(frame.getPayload()).split(":");
+            int producer = Integer.parseInt(parts[0]);
+            assertThat(Integer.parseInt(parts[1]), is(next[producer]++));
+        }
+        for (int p = 0; p < producers; ++p)
+        {
+            assertThat(next[p], is(messages));
+        }
+    }
+
     public static class CapturingEndPoint extends MockEndPoint implements IncomingFrames
     {
         public Parser parser;
@@ -160,7 +247,7 @@ public class FrameFlusherTest
         @Override
         public void incomingFrame(Frame frame)
         {
-            incomingFrames.offer(frame);
+            incomingFrames.offer(WebSocketFrame.copy(frame));
         }
 
         @Override
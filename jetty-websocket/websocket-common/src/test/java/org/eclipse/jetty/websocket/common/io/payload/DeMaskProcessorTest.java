@@ -19,6 +19,7 @@
 package org.eclipse.jetty.websocket.common.io.payload;
 
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.util.Arrays;
 
 import org.eclipse.jetty.util.BufferUtil;
@@ -106,4 +107,41 @@ public class DeMaskProcessorTest
             assertThat("payload[" + i + "]", payload.get(i), is(msgChar));
         }
     }
+
+    @Test
+    public void testDeMaskAllSlicePoints()
+    {
+        byte[] mask = TypeUtil.fromHexString("A1B2C3D4");
+        byte[] message = new byte[61];
+        for (int i = 0; i < message.length; i++)
+        {
+            message[i] = (byte)i;
+        }
+
+        for (ByteOrder order : new ByteOrder[]{ByteOrder.BIG_ENDIAN, ByteOrder.LITTLE_ENDIAN})
+        {
+            for (int slicePoint = 0; slicePoint <= message.length; slicePoint++)
+            {
+                ByteBuffer payload = ByteBuffer.allocateDirect(message.length).order(order);
+                for (int i = 0; i < message.length; i++)
+                {
+                    payload.put(i, (byte)(message[i] ^ mask[i & 3]));
+                }
+
+                DeMaskProcessor demask = new DeMaskProcessor();
+                demask.reset(mask);
+                ByteBuffer slice1 = payload.duplicate().order(order);
+                slice1.limit(slicePoint);
+                ByteBuffer slice2 = payload.duplicate().order(order);
+                slice2.position(slicePoint);
+                demask.process(slice1);
+                demask.process(slice2);
+
+                for (int i = 0; i < message.length; i++)
+                {
+                    assertThat(order + " slice " + slicePoint + " payload[" + i + "]", payload.get(i), is(message[i]));
+                }
+            }
+        }
+    }
 }
@@ -0,0 +1,44 @@
+//
+//  ========================================================================
+//  Copyright (c) 1995-2022 Mort Bay Consulting Pty Ltd and others.
+//  ------------------------------------------------------------------------
+//  All rights reserved. This program and the accompanying materials
+//  are made available under the terms of the Eclipse Public License v1.0
+//  and Apache License v2.0 which accompanies this distribution.
+//
+//      The Eclipse Public License is available at
+//      http://www.eclipse.org/legal/epl-v10.html
+//
+//      The Apache License v2.0 is available at
+//      http://www.opensource.org/licenses/apache2.0.php
+//
+//  You may elect to redistribute this code under either of these licenses.
+//  ========================================================================
+//
+
+package org.eclipse.jetty.server.session;
+
+import org.testcontainers.junit.jupiter.Testcontainers;
+
+/**
+ * JDBCBatchingSessionDataStoreTest
+ *
+ * Runs the session data store tests with batched writes.
+ */
+@Testcontainers(disabledWithoutDocker = true)
+public class JDBCBatchingSessionDataStoreTest extends JDBCSessionDataStoreTest
+{
+    public JDBCBatchingSessionDataStoreTest() throws Exception
+    {
+        super();
+    }
+
+    @Override
+    public SessionDataStoreFactory createSessionDataStoreFactory()
+    {
+        JDBCSessionDataStoreFactory factory = (JDBCSessionDataStoreFactory)super.createSessionDataStoreFactory();
+        factory.setBatchWindowMs(5);
+        factory.setMaxBatchSize(16);
+        return factory;
+    }
+}
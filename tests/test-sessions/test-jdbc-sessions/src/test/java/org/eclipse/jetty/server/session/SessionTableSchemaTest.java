@@ -245,6 +245,66 @@ public class SessionTableSchemaTest
         }
     }
 
+    @Test
+    public void testExpiredSessionsOfContext()
+        throws Exception
+    {
+        //set up the db
+        _da.initialize();
+        _tableSchema.prepareTables();
+
+        String id = Long.toString(System.nanoTime());
+
+        //insert a fake session at the root context
+        insertSessionWithoutAttributes(id, "/", "0.0.0.0");
+
+        try (Connection con = _da.getConnection())
+        {
+            ContextHandler handler = new ContextHandler();
+            handler.setContextPath("/");
+            SessionContext sc = new SessionContext("0", handler.getServletContext());
+            PreparedStatement s = _tableSchema.getExpiredSessionsStatement(con,
+                sc,
+                (System.currentTimeMillis() + 100L),
+                0L);
+            ResultSet rs = s.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(id, rs.getString(1));
+        }
+    }
+
+    @Test
+    public void testAncientExpiredSessionsOfOtherContext()
+        throws Exception
+    {
+        //set up the db
+        _da.initialize();
+        _tableSchema.prepareTables();
+
+        String id = Long.toString(System.nanoTime());
+
+        //insert a fake session at another context
+        insertSessionWithoutAttributes(id, "/other", "0.0.0.0");
+
+        try (Connection con = _da.getConnection())
+        {
+            ContextHandler handler = new ContextHandler();
+            handler.setContextPath("/");
+            SessionContext sc = new SessionContext("0", handler.getServletContext());
+
+            //not expired long enough ago to be scavenged by another context
+            long expiry = System.currentTimeMillis() + 100L;
+            PreparedStatement s = _tableSchema.getExpiredSessionsStatement(con, sc, expiry, 0L);
+            ResultSet rs = s.executeQuery();
+            assertFalse(rs.next());
+
+            s = _tableSchema.getExpiredSessionsStatement(con, sc, expiry, expiry);
+            rs = s.executeQuery();
+            assertTrue(rs.next());
+            assertEquals(id, rs.getString(1));
+        }
+    }
+
     @Test
     public void testUpdate()
         throws Exception